@@ -0,0 +1,126 @@
+package org.questgame.webquestgame.Additional;
+
+import java.net.URI;
+
+/**
+ * The {@code ChatEndpoint} class describes a server with OpenAI-compatible chat-completions API:
+ * its URI, API key and model, together with pre-encoded request bodies for that model.
+ * <p>
+ * {@link #getDefault()} returns the OpenAI endpoint configured in {@link Settings}, other endpoints
+ * (e.g. a local model server) are created with the constructor and passed to {@link ChatGPTClient}.
+ * </p>
+ *
+ * @see ChatGPTClient
+ * @see ChatRequestBody
+ */
+public class ChatEndpoint {
+
+	/**
+	 * System message with context and story example
+	 */
+	public static final String SYSTEM_CONTEXT = Settings.PROMPT_CONTEXT_FOR_GENERATING_MAIN_STORY + " " + Settings.PERFECT_STORY_EXAMPLE;
+
+	/**
+	 * OpenAI endpoint, created lazily by {@link #getDefault()}
+	 */
+	private static ChatEndpoint defaultEndpoint;
+
+	/**
+	 * URI of the chat-completions API
+	 */
+	private final URI uri;
+
+	/**
+	 * API key, sent as a bearer token, may be empty for local servers
+	 */
+	private final String apiKey;
+
+	/**
+	 * Model name
+	 */
+	private final String model;
+
+	/**
+	 * Sampling temperature
+	 */
+	private final double temperature;
+
+	/**
+	 * Pre-encoded request body templates
+	 */
+	private final ChatRequestBody requestBody;
+	private final ChatRequestBody streamRequestBody;
+
+	/**
+	 * Creates endpoint and encodes request body templates
+	 * @param uri         URI of the chat-completions API
+	 * @param apiKey      API key, may be empty
+	 * @param model       model name
+	 * @param temperature sampling temperature
+	 */
+	public ChatEndpoint(URI uri, String apiKey, String model, double temperature) {
+		this.uri = uri;
+		this.apiKey = apiKey;
+		this.model = model;
+		this.temperature = temperature;
+		this.requestBody = new ChatRequestBody(model, temperature, SYSTEM_CONTEXT);
+		this.streamRequestBody = new ChatRequestBody(model, temperature, SYSTEM_CONTEXT, true);
+	}
+
+	/**
+	 * Returns OpenAI endpoint configured with values from {@link Settings}
+	 * @return shared {@link ChatEndpoint}
+	 */
+	public static synchronized ChatEndpoint getDefault() {
+		if (defaultEndpoint == null) {
+			defaultEndpoint = new ChatEndpoint(Settings.ChatGptURI, Settings.API_KEY, Settings.model, Settings.TEMPERATURE);
+		}
+		return defaultEndpoint;
+	}
+
+	/**
+	 * Returns request body template
+	 * @param completions number of completions (choices), that the API generates for one request
+	 * @return {@link ChatRequestBody}
+	 */
+	public ChatRequestBody getRequestBody(int completions) {
+		return completions > 1 ? new ChatRequestBody(model, temperature, SYSTEM_CONTEXT, false, completions) : requestBody;
+	}
+
+	/**
+	 * Creates request body with another system context, e.g. for requests, that are not full stories
+	 * @param systemContext system message, that is sent before the user prompt
+	 * @return new {@link ChatRequestBody}, it should be created once and reused
+	 */
+	public ChatRequestBody createRequestBody(String systemContext) {
+		return new ChatRequestBody(model, temperature, systemContext);
+	}
+
+	/**
+	 * @return request body template for streamed generation
+	 */
+	public ChatRequestBody getStreamRequestBody() {
+		return streamRequestBody;
+	}
+
+	/**
+	 * @return URI of the chat-completions API
+	 */
+	public URI getUri() {
+		return uri;
+	}
+
+	/**
+	 * @return API key, may be empty
+	 */
+	public String getApiKey() {
+		return apiKey;
+	}
+
+	/**
+	 * @return model name
+	 */
+	public String getModel() {
+		return model;
+	}
+}
@@ -4,11 +4,32 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+import org.questgame.webquestgame.Exceptions.ChatGptHttpException;
+import org.questgame.webquestgame.Exceptions.CircuitBreakerOpenException;
+import org.questgame.webquestgame.Simulator.Recordings;
 
 import java.io.IOException;
+import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
 /**
  * The {@code ChatGPTClient} class provides an interface for interacting with OpenAI's ChatGPT API.
@@ -21,8 +42,22 @@ import java.net.http.HttpResponse;
  *     <li>Sending requests and handling responses</li>
  *     <li>Error handling for API failures</li>
  * </ul>
+ * All requests are sent through one shared {@link HttpClient} (HTTP/2, keep-alive, bounded executor), so
+ * TLS handshake and connection pool are paid only once, not for every generated story. Idle time of pooled connections
+ * is a JVM-wide setting of the JDK client, it is tuned with {@code -Djdk.httpclient.keepalive.timeout} (seconds).
+ * Every request is admitted by the shared {@link RateLimiter}, token usage of every response is reported back to it.
+ * Transient failures are retried according to {@link RetryPolicy}, and while the API keeps failing, requests are
+ * rejected immediately by {@link CircuitBreaker}.
+ * <p>
+ * Requests are sent to the OpenAI endpoint from {@link Settings} ({@link ChatEndpoint#getDefault()}), every method
+ * has an overload, that sends the request to another OpenAI-compatible endpoint, e.g. a local model server.
+ * </p>
  *
  * @see Settings
+ * @see ChatEndpoint
+ * @see RateLimiter
+ * @see RetryPolicy
+ * @see CircuitBreaker
  * @see ChatGptGenerationException
  */
 public class ChatGPTClient {
@@ -31,21 +66,47 @@ public class ChatGPTClient {
 	 */
 	private static final Logger log = LogManager.getLogger();
 
+	/**
+	 * Number of retried attempts
+	 */
+	private static final AtomicLong retries = new AtomicLong();
+
+	/**
+	 * Bounded executor of the shared {@link HttpClient}
+	 */
+	private static ExecutorService executor;
+
+	/**
+	 * Shared long-lived {@link HttpClient}, created lazily by {@link #getHttpClient()}
+	 */
+	private static HttpClient httpClient;
+
 	/**
 	 * Generates a main quest storyline based on the user-provided prompt by interacting with the ChatGPT API.
 	 * @param userPrompt the input prompt from the user to generate the main storyline
 	 * @return the generated storyline as a {@link String}
 	 * @throws ChatGptGenerationException if the prompt is invalid or an error occurs during API interaction
+	 * @throws org.questgame.webquestgame.Exceptions.RateLimitExceededException if the request is rejected by {@link RateLimiter}
+	 * @throws CircuitBreakerOpenException if requests are suspended by {@link CircuitBreaker}
 	 */
 	public static String generateMainQuestLine(String userPrompt)  {
-		if (StringUtils.isEmpty(userPrompt) || StringUtils.isBlank(userPrompt)) {
-			log.warn("User prompt is not valid, request sending denied");
-			throw new ChatGptGenerationException("User prompt is not valid, request sending denied");
-		}
+		return generateMainQuestLine(ChatEndpoint.getDefault(), userPrompt);
+	}
+
+	/**
+	 * Generates a main quest storyline with the specified endpoint, see {@link #generateMainQuestLine(String)}.
+	 * @param endpoint   OpenAI-compatible endpoint
+	 * @param userPrompt the input prompt from the user to generate the main storyline
+	 * @return the generated storyline as a {@link String}
+	 * @throws ChatGptGenerationException if the prompt is invalid or an error occurs during API interaction
+	 */
+	public static String generateMainQuestLine(ChatEndpoint endpoint, String userPrompt)  {
+		validatePrompt(userPrompt);
 		log.info("Generating main story line");
 
-		String jsonMessage = createJsonWithSystemContextAndExample(Settings.PROMPT_CONTEXT_FOR_GENERATING_MAIN_STORY, Settings.PERFECT_STORY_EXAMPLE, userPrompt);
-		HttpResponse<String> response = sendRequest(jsonMessage);
+		HttpResponse<String> response = sendRequest(endpoint, endpoint.getRequestBody(1).publisher(userPrompt), Settings.ESTIMATED_TOKENS_PER_STORY,
+				HttpResponse.BodyHandlers.ofString(), ChatGPTClient::totalTokens);
+		Recordings.record(response.body());
 
 		log.debug("ChatGpt Answer: {}", response.body());
 		log.info("Generated story line");
@@ -53,51 +114,658 @@ public class ChatGPTClient {
 	}
 
 	/**
-	 * Sends an HTTP POST request to the ChatGPT API with the specified JSON message.
-	 * @param jsonMessage the JSON message to send to the API
+	 * Generates several main quest storylines for the same prompt with one request to the ChatGPT API.
+	 * <p>Every storyline is returned as a separate choice of the response, see
+	 * {@link org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer#createStoriesFromAiResponse(String)}.</p>
+	 * @param userPrompt  the input prompt from the user to generate the main storylines
+	 * @param completions number of storylines to generate
+	 * @return the API response with generated storylines as a {@link String}
+	 * @throws ChatGptGenerationException if the prompt is invalid or an error occurs during API interaction
+	 */
+	public static String generateMainQuestLines(String userPrompt, int completions) {
+		return generateMainQuestLines(ChatEndpoint.getDefault(), userPrompt, completions);
+	}
+
+	/**
+	 * Generates several main quest storylines with the specified endpoint, see {@link #generateMainQuestLines(String, int)}.
+	 * @param endpoint    OpenAI-compatible endpoint
+	 * @param userPrompt  the input prompt from the user to generate the main storylines
+	 * @param completions number of storylines to generate
+	 * @return the API response with generated storylines as a {@link String}
+	 * @throws ChatGptGenerationException if the prompt is invalid or an error occurs during API interaction
+	 */
+	public static String generateMainQuestLines(ChatEndpoint endpoint, String userPrompt, int completions) {
+		validatePrompt(userPrompt);
+		log.info("Generating {} main story lines", completions);
+		ChatRequestBody body = endpoint.getRequestBody(completions);
+
+		HttpResponse<String> response = sendRequest(endpoint, body.publisher(userPrompt), Settings.ESTIMATED_TOKENS_PER_STORY * Math.max(1, completions),
+				HttpResponse.BodyHandlers.ofString(), ChatGPTClient::totalTokens);
+		Recordings.record(response.body());
+
+		log.debug("ChatGpt Answer: {}", response.body());
+		log.info("Generated {} story lines", completions);
+		return response.body();
+	}
+
+	/**
+	 * Generates several main quest storylines with the specified endpoint and parses the response while it is received.
+	 * <p>Unlike {@link #generateMainQuestLines(ChatEndpoint, String, int)}, the response is never collected into a string:
+	 * it is read with {@link ChatResponseSubscriber}, that passes unescaped contents of all choices to the sink
+	 * piece by piece. A new sink is requested for every attempt, so contents of a failed attempt are discarded.</p>
+	 * @param endpoint    OpenAI-compatible endpoint
+	 * @param userPrompt  the input prompt from the user to generate the main storylines
+	 * @param completions number of storylines to generate
+	 * @param sinks       creates receiver of contents for every attempt
+	 * @param <T>         type of the result of the sink
+	 * @return result of the sink of the successful attempt
+	 * @throws ChatGptGenerationException if the prompt is invalid, an error occurs during API interaction
+	 * or the contents can't be processed by the sink
+	 */
+	public static <T> T generateMainQuestLines(ChatEndpoint endpoint, String userPrompt, int completions, Supplier<? extends ContentSink<T>> sinks) {
+		validatePrompt(userPrompt);
+		log.info("Generating {} main story lines, response is parsed while it is received", completions);
+		ChatRequestBody body = endpoint.getRequestBody(completions);
+
+		HttpResponse<ChatResponseSubscriber<T>> response = sendRequest(endpoint, body.publisher(userPrompt),
+				Settings.ESTIMATED_TOKENS_PER_STORY * Math.max(1, completions), contentHandler(sinks), ChatResponseSubscriber::getTotalTokens);
+		T result = finishContents(response.body());
+
+		log.info("Generated {} story lines", completions);
+		return result;
+	}
+
+	/**
+	 * Asynchronous version of {@link #generateMainQuestLine(String)}.
+	 * <p>The calling thread is not blocked: the request is sent with {@link HttpClient#sendAsync}, so the number of
+	 * simultaneous generations is limited by the executor of the shared client, not by the caller's threads.</p>
+	 * @param userPrompt the input prompt from the user to generate the main storyline
+	 * @return {@link CompletableFuture} completed with the generated storyline, or completed exceptionally
+	 * with {@link ChatGptGenerationException} if the prompt is invalid or an error occurs during API interaction
+	 * ({@link org.questgame.webquestgame.Exceptions.RateLimitExceededException} if the request is rejected by {@link RateLimiter},
+	 * {@link CircuitBreakerOpenException} if requests are suspended by {@link CircuitBreaker})
+	 */
+	public static CompletableFuture<String> generateMainQuestLineAsync(String userPrompt) {
+		return generateMainQuestLineAsync(ChatEndpoint.getDefault(), userPrompt);
+	}
+
+	/**
+	 * Generates a main quest storyline asynchronously with the specified endpoint, see {@link #generateMainQuestLineAsync(String)}.
+	 * @param endpoint   OpenAI-compatible endpoint
+	 * @param userPrompt the input prompt from the user to generate the main storyline
+	 * @return {@link CompletableFuture} completed with the generated storyline
+	 */
+	public static CompletableFuture<String> generateMainQuestLineAsync(ChatEndpoint endpoint, String userPrompt) {
+		try {
+			validatePrompt(userPrompt);
+		} catch (ChatGptGenerationException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		log.info("Generating main story line asynchronously");
+
+		RateLimiter limiter = RateLimiter.getDefault();
+		return sendWithRetries(timeout -> sendGuarded(limiter, permit -> {
+			CompletableFuture<HttpResponse<String>> exchange = getHttpClient()
+					.sendAsync(buildRequest(endpoint, endpoint.getRequestBody(1).publisher(userPrompt), timeout), HttpResponse.BodyHandlers.ofString());
+			return cancelling(exchange.thenApply(response -> {
+				checkResponse(response);
+				limiter.complete(permit, totalTokens(response.body()));
+				Recordings.record(response.body());
+				log.debug("ChatGpt Answer: {}", response.body());
+				log.info("Generated story line");
+				return response.body();
+			}), exchange);
+		}));
+	}
+
+	/**
+	 * Asynchronous version of {@link #generateMainQuestLines(ChatEndpoint, String, int, Supplier)}, the response is parsed
+	 * on HttpClient threads while it is received.
+	 * @param endpoint    OpenAI-compatible endpoint
+	 * @param userPrompt  the input prompt from the user to generate the main storylines
+	 * @param completions number of storylines to generate
+	 * @param sinks       creates receiver of contents for every attempt
+	 * @param <T>         type of the result of the sink
+	 * @return {@link CompletableFuture} completed with result of the sink of the successful attempt, or completed
+	 * exceptionally with {@link ChatGptGenerationException}
+	 */
+	public static <T> CompletableFuture<T> generateMainQuestLinesAsync(ChatEndpoint endpoint, String userPrompt, int completions,
+																	   Supplier<? extends ContentSink<T>> sinks) {
+		try {
+			validatePrompt(userPrompt);
+		} catch (ChatGptGenerationException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		log.info("Generating {} main story lines asynchronously, response is parsed while it is received", completions);
+		return completeAsync(endpoint, endpoint.getRequestBody(completions), userPrompt, sinks);
+	}
+
+	/**
+	 * Sends the prompt with the specified request body (e.g. with another system context) and parses the response
+	 * on HttpClient threads while it is received. The request shares rate limiter, retries and circuit breaker with
+	 * generation of stories.
+	 * @param endpoint   OpenAI-compatible endpoint
+	 * @param body       request body template
+	 * @param userPrompt the user message
+	 * @param sinks      creates receiver of contents for every attempt
+	 * @param <T>        type of the result of the sink
+	 * @return {@link CompletableFuture} completed with result of the sink of the successful attempt, or completed
+	 * exceptionally with {@link ChatGptGenerationException}
+	 */
+	public static <T> CompletableFuture<T> completeAsync(ChatEndpoint endpoint, ChatRequestBody body, String userPrompt,
+														 Supplier<? extends ContentSink<T>> sinks) {
+		RateLimiter limiter = RateLimiter.getDefault();
+		return sendWithRetries(timeout -> sendGuarded(limiter, permit -> {
+			CompletableFuture<HttpResponse<ChatResponseSubscriber<T>>> exchange = getHttpClient()
+					.sendAsync(buildRequest(endpoint, body.publisher(userPrompt), timeout), contentHandler(sinks));
+			return cancelling(exchange.thenApply(response -> {
+				limiter.complete(permit, response.body().getTotalTokens());
+				T result = finishContents(response.body());
+				log.info("Generated {} contents", response.body().getContents());
+				return result;
+			}), exchange);
+		}));
+	}
+
+	/**
+	 * Generates a main quest storyline as a stream: the API sends the story in small pieces while it is being generated,
+	 * and every piece of the story content is passed to {@code contentConsumer} as soon as it arrives.
+	 * <p>Unlike {@link #generateMainQuestLineAsync(String)}, the consumer receives only the story content
+	 * (already unescaped), not the whole API response. The request is retried only if it failed before
+	 * the first piece of content was received.</p>
+	 * @param userPrompt      the input prompt from the user to generate the main storyline
+	 * @param contentConsumer consumer of story content pieces, it is called sequentially from HttpClient threads
+	 * @return {@link CompletableFuture} completed when the stream is finished, or completed exceptionally
+	 * with {@link ChatGptGenerationException} if the prompt is invalid or an error occurs during API interaction
+	 * ({@link org.questgame.webquestgame.Exceptions.RateLimitExceededException} if the request is rejected by {@link RateLimiter},
+	 * {@link CircuitBreakerOpenException} if requests are suspended by {@link CircuitBreaker})
+	 */
+	public static CompletableFuture<Void> streamMainQuestLine(String userPrompt, Consumer<String> contentConsumer) {
+		return streamMainQuestLine(ChatEndpoint.getDefault(), userPrompt, contentConsumer);
+	}
+
+	/**
+	 * Generates a main quest storyline as a stream with the specified endpoint, see {@link #streamMainQuestLine(String, Consumer)}.
+	 * @param endpoint        OpenAI-compatible endpoint
+	 * @param userPrompt      the input prompt from the user to generate the main storyline
+	 * @param contentConsumer consumer of story content pieces
+	 * @return {@link CompletableFuture} completed when the stream is finished
+	 */
+	public static CompletableFuture<Void> streamMainQuestLine(ChatEndpoint endpoint, String userPrompt, Consumer<String> contentConsumer) {
+		try {
+			validatePrompt(userPrompt);
+		} catch (ChatGptGenerationException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		log.info("Generating main story line as a stream");
+
+		RateLimiter limiter = RateLimiter.getDefault();
+		return sendWithRetries(timeout -> {
+			ChatStreamSubscriber subscriber = new ChatStreamSubscriber(contentConsumer);
+			return sendGuarded(limiter, permit -> {
+				CompletableFuture<HttpResponse<Void>> exchange = getHttpClient()
+						.sendAsync(buildRequest(endpoint, endpoint.getStreamRequestBody().publisher(userPrompt), timeout), streamHandler(subscriber));
+				return cancelling(exchange.handle((response, e) -> {
+								if (e != null && subscriber.isContentReceived()) {
+									log.error("Error while streaming response from ChatGPT", e);
+									throw new ChatGptGenerationException("Stream is interrupted", unwrap(e));
+								}
+								if (e != null) {
+									throw e instanceof CompletionException completionException ? completionException : new CompletionException(e);
+								}
+								limiter.complete(permit, subscriber.getTotalTokens());
+								if (subscriber.getError() != null) {
+									throw new ChatGptGenerationException("Streamed content can't be processed", subscriber.getError());
+								}
+								log.info("Generated story line (stream)");
+								return null;
+							}), exchange);
+			});
+		});
+	}
+
+	/**
+	 * Creates {@link HttpResponse.BodyHandler} for streamed responses. Successful response is read line by line with
+	 * {@code subscriber}, error response is read as a string and converted to {@link ChatGptHttpException}
+	 * @param subscriber subscriber of response lines
+	 * @return new {@link HttpResponse.BodyHandler}
+	 */
+	private static HttpResponse.BodyHandler<Void> streamHandler(ChatStreamSubscriber subscriber) {
+		return responseInfo -> {
+			if (responseInfo.statusCode() != 200) return errorSubscriber(responseInfo);
+			return HttpResponse.BodySubscribers.fromLineSubscriber(subscriber, s -> null, StandardCharsets.UTF_8, null);
+		};
+	}
+
+	/**
+	 * Creates {@link HttpResponse.BodyHandler} for responses, that are parsed while they are received. Successful response
+	 * is read with a new {@link ChatResponseSubscriber}, error response is read as a string and converted to {@link ChatGptHttpException}
+	 * @param sinks creates receiver of contents
+	 * @param <T>   type of the result of the sink
+	 * @return new {@link HttpResponse.BodyHandler}
+	 */
+	private static <T> HttpResponse.BodyHandler<ChatResponseSubscriber<T>> contentHandler(Supplier<? extends ContentSink<T>> sinks) {
+		return responseInfo -> {
+			if (responseInfo.statusCode() != 200) return errorSubscriber(responseInfo);
+			return HttpResponse.BodySubscribers.fromSubscriber(new ChatResponseSubscriber<T>(sinks.get()), subscriber -> subscriber);
+		};
+	}
+
+	/**
+	 * Creates {@link HttpResponse.BodySubscriber} for error responses: the body is read as a string and converted to {@link ChatGptHttpException}
+	 * @param responseInfo status and headers of the response
+	 * @param <T>          type of the body of successful response
+	 * @return new {@link HttpResponse.BodySubscriber}, that always completes exceptionally
+	 */
+	private static <T> HttpResponse.BodySubscriber<T> errorSubscriber(HttpResponse.ResponseInfo responseInfo) {
+		return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8), body -> {
+			log.error("Request failed with status: {}. Details: {}", responseInfo.statusCode(), body);
+			throw new ChatGptHttpException("Error Details: " + body, responseInfo.statusCode(),
+					RetryPolicy.parseRetryAfter(responseInfo.headers().firstValue("Retry-After").orElse(null)));
+		});
+	}
+
+	/**
+	 * Finishes contents of the successfully read response
+	 * @param subscriber subscriber, that read the response
+	 * @param <T>        type of the result of the sink
+	 * @return result of the sink
+	 * @throws ChatGptGenerationException if the sink failed to process the contents
+	 */
+	private static <T> T finishContents(ChatResponseSubscriber<T> subscriber) {
+		if (subscriber.getError() != null) {
+			throw new ChatGptGenerationException("Response content can't be processed", subscriber.getError());
+		}
+		if (subscriber.getRecording() != null) Recordings.record(subscriber.getRecording());
+		return subscriber.getSink().finish();
+	}
+
+	/**
+	 * @param body body of the response
+	 * @return total tokens used by the request, or -1 if the response doesn't contain usage
+	 */
+	private static long totalTokens(String body) {
+		return JsonUtils.extractLong(body, "total_tokens");
+	}
+
+	/**
+	 * Checks that user prompt is not empty
+	 * @param userPrompt the input prompt from the user
+	 * @throws ChatGptGenerationException if the prompt is null, empty or blank
+	 */
+	private static void validatePrompt(String userPrompt) {
+		if (StringUtils.isEmpty(userPrompt) || StringUtils.isBlank(userPrompt)) {
+			log.warn("User prompt is not valid, request sending denied");
+			throw new ChatGptGenerationException("User prompt is not valid, request sending denied");
+		}
+	}
+
+	/**
+	 * Sends an HTTP POST request to the ChatGPT API with the specified JSON body, after it is admitted by {@link RateLimiter}.
+	 * Transient failures are retried according to {@link RetryPolicy}, the calling thread sleeps between attempts.
+	 * @param endpoint        OpenAI-compatible endpoint
+	 * @param body            the JSON body to send to the API
+	 * @param estimatedTokens number of tokens the request is expected to use
+	 * @param handler         handler of the response body
+	 * @param usage           reads total tokens used by the request from the response body
+	 * @param <T>             type of the response body
 	 * @return the {@link HttpResponse} containing the API response
 	 * @throws ChatGptGenerationException if an error occurs during the API request or response processing
 	 */
-	private static HttpResponse<String> sendRequest(String jsonMessage) {
-		try {
-			HttpRequest request = HttpRequest.newBuilder()
-					.uri(Settings.ChatGptURI)
-					.header("Authorization", "Bearer " + Settings.API_KEY)
-					.header("Content-Type", "application/json")
-					.POST(HttpRequest.BodyPublishers.ofString(jsonMessage))
-					.build();
-
-			HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
-
-			if (response.statusCode() != 200) {
-				log.error("Request failed with status: {}. Details: {}", response.statusCode(), response.body());
-				throw new ChatGptGenerationException("Error Details: " + response.body());
+	private static <T> HttpResponse<T> sendRequest(ChatEndpoint endpoint, HttpRequest.BodyPublisher body, int estimatedTokens,
+												   HttpResponse.BodyHandler<T> handler, ToLongFunction<T> usage) {
+		RetryPolicy policy = RetryPolicy.getDefault();
+		long deadline = System.nanoTime() + policy.getDeadline().toNanos();
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return sendOnce(endpoint, body, estimatedTokens, remaining(deadline), handler, usage);
+			} catch (IOException | ChatGptGenerationException e) {
+				Duration delay = policy.nextDelay(attempt, e, remaining(deadline));
+				if (delay == null) throw failure(e);
+				logRetry(attempt, delay, e);
+				try {
+					Thread.sleep(delay.toMillis());
+				} catch (InterruptedException interruptedException) {
+					Thread.currentThread().interrupt();
+					throw new ChatGptGenerationException("Request error", interruptedException);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				log.error("Error while sending request to ChatGPT", e);
+				throw new ChatGptGenerationException("Request error", e);
 			}
+		}
+	}
+
+	/**
+	 * Sends one attempt of the request, if it is permitted by {@link CircuitBreaker} and admitted by {@link RateLimiter}
+	 * @param endpoint        OpenAI-compatible endpoint
+	 * @param body            the JSON body to send to the API
+	 * @param estimatedTokens number of tokens the request is expected to use
+	 * @param timeout         timeout of the attempt
+	 * @param handler         handler of the response body
+	 * @param usage           reads total tokens used by the request from the response body
+	 * @param <T>             type of the response body
+	 * @return the {@link HttpResponse} containing the API response
+	 * @throws IOException          if an I/O error occurs when sending or receiving
+	 * @throws InterruptedException if the calling thread is interrupted
+	 */
+	private static <T> HttpResponse<T> sendOnce(ChatEndpoint endpoint, HttpRequest.BodyPublisher body, int estimatedTokens, Duration timeout,
+												HttpResponse.BodyHandler<T> handler, ToLongFunction<T> usage) throws IOException, InterruptedException {
+		CircuitBreaker breaker = CircuitBreaker.getDefault();
+		if (!breaker.tryAcquirePermission()) throw breakerOpen();
+		RateLimiter limiter = RateLimiter.getDefault();
+		RateLimiter.Permit permit;
+		try {
+			permit = limiter.acquire(estimatedTokens);
+		} catch (RuntimeException e) {
+			breaker.onIgnored();
+			throw e;
+		}
+		try {
+			HttpResponse<T> response = getHttpClient().send(buildRequest(endpoint, body, timeout), handler);
+			checkResponse(response);
+			breaker.onSuccess();
+			limiter.complete(permit, usage.applyAsLong(response.body()));
 			return response;
+		} catch (IOException e) {
+			recordResult(breaker, e);
+			if (unwrap(e) instanceof ChatGptGenerationException generationException) throw generationException;
+			throw e;
+		} catch (RuntimeException e) {
+			recordResult(breaker, e);
+			throw e;
+		} catch (InterruptedException e) {
+			breaker.onIgnored();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sends the request asynchronously, transient failures are retried according to {@link RetryPolicy}
+	 * without blocking any thread between attempts
+	 * @param attempt function, that sends one attempt with the specified timeout
+	 * @param <T>     type of the result
+	 * @return {@link CompletableFuture} completed with the result of the first successful attempt, or completed
+	 * exceptionally with {@link ChatGptGenerationException} when the request can't be retried
+	 */
+	private static <T> CompletableFuture<T> sendWithRetries(Function<Duration, CompletableFuture<T>> attempt) {
+		RetryPolicy policy = RetryPolicy.getDefault();
+		long deadline = System.nanoTime() + policy.getDeadline().toNanos();
+		CompletableFuture<T> result = new CompletableFuture<>();
+		AtomicReference<CompletableFuture<T>> current = new AtomicReference<>();
+		result.whenComplete((value, e) -> {
+			CompletableFuture<T> pending = current.get();
+			if (result.isCancelled() && pending != null) pending.cancel(true);
+		});
+		sendAttempt(attempt, policy, deadline, 1, result, current);
+		return result;
+	}
+
+	/**
+	 * Sends one attempt and schedules the next one, if the attempt failed and may be retried
+	 * @param attempt  function, that sends one attempt with the specified timeout
+	 * @param policy   retry policy
+	 * @param deadline overall deadline, in nanoseconds
+	 * @param number   number of the attempt, starting from 1
+	 * @param result   future to complete with the result, if it is cancelled, the current attempt is cancelled too
+	 * @param current  the current attempt
+	 * @param <T>      type of the result
+	 */
+	private static <T> void sendAttempt(Function<Duration, CompletableFuture<T>> attempt, RetryPolicy policy, long deadline,
+										int number, CompletableFuture<T> result, AtomicReference<CompletableFuture<T>> current) {
+		if (result.isDone()) return;
+		CompletableFuture<T> pending = attempt.apply(remaining(deadline));
+		current.set(pending);
+		if (result.isCancelled()) pending.cancel(true);
+		pending.whenComplete((value, e) -> {
+			if (e == null) {
+				result.complete(value);
+				return;
+			}
+			if (result.isCancelled()) return;
+			Throwable cause = unwrap(e);
+			Duration delay = policy.nextDelay(number, cause, remaining(deadline));
+			if (delay == null) {
+				result.completeExceptionally(failure(cause));
+				return;
+			}
+			logRetry(number, delay, cause);
+			CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS)
+					.execute(() -> sendAttempt(attempt, policy, deadline, number + 1, result, current));
+		});
+	}
+
+	/**
+	 * Sends one asynchronous attempt, if it is permitted by {@link CircuitBreaker} and admitted by {@link RateLimiter},
+	 * and records its result in the breaker
+	 * @param limiter rate limiter
+	 * @param call    function, that sends the request after it is admitted
+	 * @param <T>     type of the result
+	 * @return {@link CompletableFuture} of the attempt
+	 */
+	private static <T> CompletableFuture<T> sendGuarded(RateLimiter limiter, Function<RateLimiter.Permit, CompletableFuture<T>> call) {
+		CircuitBreaker breaker = CircuitBreaker.getDefault();
+		if (!breaker.tryAcquirePermission()) return CompletableFuture.failedFuture(breakerOpen());
+		AtomicReference<CompletableFuture<T>> sent = new AtomicReference<>();
+		CompletableFuture<T> guarded = limiter.acquireAsync(Settings.ESTIMATED_TOKENS_PER_STORY)
+				.whenComplete((permit, e) -> {
+					if (e != null) breaker.onIgnored();
+				})
+				.thenCompose(permit -> {
+					CompletableFuture<T> request = call.apply(permit);
+					sent.set(request);
+					return request.whenComplete((value, e) -> recordResult(breaker, e));
+				});
+		return cancelling(guarded, sent::get);
+	}
+
+	/**
+	 * Cancels the source of the result, when the result is cancelled. Futures returned by {@link HttpClient#sendAsync}
+	 * abort the exchange when they are cancelled, dependent futures don't, so the source must be cancelled explicitly.
+	 * Generators use it too, when they return futures derived from futures of this client
+	 * @param result future, that is returned to the caller
+	 * @param source future, that the result depends on
+	 * @param <T>    type of the result
+	 * @return the same result
+	 */
+	public static <T> CompletableFuture<T> cancelling(CompletableFuture<T> result, Future<?> source) {
+		return cancelling(result, () -> source);
+	}
+
+	/**
+	 * Cancels the source of the result, when the result is cancelled
+	 * @param result future, that is returned to the caller
+	 * @param source supplier of the future, that the result depends on, it may supply null, if the source is not started yet
+	 * @param <T>    type of the result
+	 * @return the same result
+	 */
+	public static <T> CompletableFuture<T> cancelling(CompletableFuture<T> result, Supplier<? extends Future<?>> source) {
+		result.whenComplete((value, e) -> {
+			Future<?> future = source.get();
+			if (result.isCancelled() && future != null) future.cancel(true);
+		});
+		return result;
+	}
+
+	/**
+	 * Records result of the attempt in the breaker, only transient failures are counted as failures, cancelled attempts are ignored
+	 * @param breaker circuit breaker
+	 * @param e       the cause of the failure, null if the attempt succeeded
+	 */
+	private static void recordResult(CircuitBreaker breaker, Throwable e) {
+		if (e != null && unwrap(e) instanceof CancellationException) breaker.onIgnored();
+		else if (e != null && RetryPolicy.getDefault().isRetryable(unwrap(e))) breaker.onFailure();
+		else breaker.onSuccess();
+	}
+
+	/**
+	 * Logs and counts the retry
+	 * @param attempt number of the failed attempt
+	 * @param delay   delay before the next attempt
+	 * @param e       the cause of the failure
+	 */
+	private static void logRetry(int attempt, Duration delay, Throwable e) {
+		retries.incrementAndGet();
+		log.warn("Request to ChatGPT failed (attempt {}): {}, retrying in {} ms", attempt, e.getMessage(), delay.toMillis());
+	}
+
+	/**
+	 * Creates exception for the request, that is rejected by {@link CircuitBreaker}
+	 * @return new {@link CircuitBreakerOpenException}
+	 */
+	private static CircuitBreakerOpenException breakerOpen() {
+		log.warn("Request to ChatGPT is rejected, circuit breaker is open");
+		return new CircuitBreakerOpenException("ChatGPT API is unavailable, requests are suspended");
+	}
+
+	/**
+	 * Converts the cause of the last failed attempt to {@link ChatGptGenerationException}
+	 * @param e the cause of the failure
+	 * @return {@link ChatGptGenerationException}
+	 */
+	private static ChatGptGenerationException failure(Throwable e) {
+		if (e instanceof ChatGptGenerationException generationException) return generationException;
+		log.error("Error while sending request to ChatGPT", e);
+		return new ChatGptGenerationException("Request error", e);
+	}
+
+	/**
+	 * Returns the actual cause of the failure of asynchronous attempt
+	 * @param e exception, that completed the future
+	 * @return the cause without {@link CompletionException}, {@link ExecutionException} and I/O wrappers of
+	 * {@link ChatGptGenerationException}
+	 */
+	private static Throwable unwrap(Throwable e) {
+		Throwable cause = e;
+		while (cause.getCause() != null && (cause instanceof CompletionException || cause instanceof ExecutionException
+				|| (cause instanceof IOException && cause.getCause() instanceof ChatGptGenerationException))) {
+			cause = cause.getCause();
+		}
+		return cause;
+	}
+
+	/**
+	 * @param deadline deadline, in nanoseconds
+	 * @return time left until the deadline, zero if it is passed
+	 */
+	private static Duration remaining(long deadline) {
+		return Duration.ofNanos(Math.max(0, deadline - System.nanoTime()));
+	}
+
+	/**
+	 * Builds an HTTP POST request to the ChatGPT API with the specified JSON body.
+	 * @param endpoint OpenAI-compatible endpoint
+	 * @param body     the JSON body to send to the API
+	 * @param timeout  timeout of the request, it is not longer than {@link Settings#REQUEST_TIMEOUT}
+	 * @return new {@link HttpRequest}
+	 */
+	private static HttpRequest buildRequest(ChatEndpoint endpoint, HttpRequest.BodyPublisher body, Duration timeout) {
+		Duration requestTimeout = timeout.compareTo(Settings.REQUEST_TIMEOUT) < 0 && !timeout.isZero() ? timeout : Settings.REQUEST_TIMEOUT;
+		HttpRequest.Builder builder = HttpRequest.newBuilder()
+				.uri(endpoint.getUri())
+				.timeout(requestTimeout)
+				.header("Content-Type", "application/json")
+				.POST(body);
+		if (StringUtils.isNotBlank(endpoint.getApiKey())) {
+			builder.header("Authorization", "Bearer " + endpoint.getApiKey());
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Checks the status code of the ChatGPT API response
+	 * @param response the {@link HttpResponse} to check
+	 * @throws ChatGptHttpException if the status code is not 200
+	 */
+	private static void checkResponse(HttpResponse<?> response) {
+		int status = response.statusCode();
+		if (status != 200) {
+			log.error("Request failed with status: {}. Details: {}", status, response.body());
+			String retryAfter = response.headers() == null ? null : response.headers().firstValue("Retry-After").orElse(null);
+			throw new ChatGptHttpException("Error Details: " + response.body(), status, RetryPolicy.parseRetryAfter(retryAfter));
+		}
+	}
+
+	/**
+	 * @return number of retried attempts
+	 */
+	public static long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * Opens connection to the ChatGPT API in background, so the first player does not pay for TCP and TLS handshake.
+	 * Response of the warm-up request is ignored.
+	 */
+	public static void warmUp() {
+		URI uri = ChatEndpoint.getDefault().getUri();
+		log.info("Warming up HttpClient connection to {}", uri);
+		HttpRequest request = HttpRequest.newBuilder()
+				.uri(uri)
+				.timeout(Settings.CONNECT_TIMEOUT)
+				.method("HEAD", HttpRequest.BodyPublishers.noBody())
+				.build();
+		getHttpClient().sendAsync(request, HttpResponse.BodyHandlers.discarding())
+				.whenComplete((response, e) -> {
+					if (e != null) log.warn("HttpClient warm-up failed: {}", e.getMessage());
+					else log.info("HttpClient warmed up, protocol: {}", response.version());
+				});
+	}
 
-		} catch (IOException | InterruptedException e) {
-			log.error("Error while sending request to ChatGPT", e);
-			throw new ChatGptGenerationException("Request error", e);
+	/**
+	 * Returns shared {@link HttpClient}, creating it on the first call
+	 * @return shared {@link HttpClient}
+	 */
+	public static synchronized HttpClient getHttpClient() {
+		if (httpClient == null) {
+			httpClient = createHttpClient();
+		}
+		return httpClient;
+	}
+
+	/**
+	 * Replaces shared {@link HttpClient}, e.g. with a client with custom configuration or with a mock in tests
+	 * @param client new {@link HttpClient}, if null - default client will be created on next request
+	 */
+	public static synchronized void setHttpClient(HttpClient client) {
+		httpClient = client;
+	}
+
+	/**
+	 * Stops executor of shared {@link HttpClient}, should be called when application is stopped
+	 */
+	public static synchronized void shutdown() {
+		log.info("Shutting down HttpClient executor");
+		httpClient = null;
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				if (!executor.awaitTermination(5, TimeUnit.SECONDS)) executor.shutdownNow();
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+			executor = null;
 		}
 	}
 
 	/**
-	 * Constructs a JSON message to send to the ChatGPT API.
-	 * The JSON includes a system context, an example of a perfect story, and the user's prompt.
-	 *
-	 * @param systemContext the system context to guide the AI's response
-	 * @param example       an example of a perfect story to provide additional context
-	 * @param userPrompt    the user's input prompt
-	 * @return a {@link String} representing the JSON message
+	 * Creates {@link HttpClient} configured with values from {@link Settings}
+	 * @return new {@link HttpClient}
 	 */
-	private static String createJsonWithSystemContextAndExample(String systemContext, String example, String userPrompt) {
-		return  "{\n" +
-				"\"model\": \"" + Settings.model + "\",\n" +
-				"\"messages\": [\n" +
-				"  {\"role\": \"system\", \"content\": \"" + systemContext + " " + example + "\"},\n" +
-				"  {\"role\": \"user\", \"content\": \"" + userPrompt + "\"}\n" +
-				"],\n" +
-				"\"temperature\": 0.2" +
-				"}";
+	private static HttpClient createHttpClient() {
+		AtomicInteger threadCounter = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(Settings.HTTP_CLIENT_THREADS, runnable -> {
+			Thread thread = new Thread(runnable, "chatgpt-http-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		log.info("Creating shared HttpClient (HTTP/2, {} threads)", Settings.HTTP_CLIENT_THREADS);
+		return HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.connectTimeout(Settings.CONNECT_TIMEOUT)
+				.executor(executor)
+				.build();
 	}
-}
\ No newline at end of file
+}
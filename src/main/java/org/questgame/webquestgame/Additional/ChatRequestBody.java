@@ -0,0 +1,99 @@
+package org.questgame.webquestgame.Additional;
+
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The {@code ChatRequestBody} class builds JSON bodies for the chat-completions API.
+ * <p>
+ * Everything except the user prompt is the same for every request, so the static part of the body
+ * (model, temperature and the huge system context) is escaped and encoded to UTF-8 only once, in the constructor.
+ * For every request only the user prompt is escaped and spliced between the prepared prefix and suffix.
+ * </p>
+ * Resulting JSON looks like:
+ * <pre>
+ * {"model": "gpt-4o", "temperature": 0.2, "messages": [
+ *   {"role": "system", "content": "system context"},
+ *   {"role": "user", "content": "user prompt"}]}
+ * </pre>
+ *
+ * @see ChatGPTClient
+ * @see JsonUtils
+ */
+public class ChatRequestBody {
+
+	/**
+	 * Pre-encoded part of the body, that goes before the user prompt
+	 */
+	private final byte[] prefix;
+
+	/**
+	 * Pre-encoded part of the body, that goes after the user prompt
+	 */
+	private final byte[] suffix;
+
+	/**
+	 * Creates request body template and encodes its static part
+	 * @param model         model name, e.g. "gpt-4o"
+	 * @param temperature   sampling temperature
+	 * @param systemContext system message, that is sent before the user prompt
+	 */
+	public ChatRequestBody(String model, double temperature, String systemContext) {
+		this(model, temperature, systemContext, false);
+	}
+
+	/**
+	 * Creates request body template and encodes its static part
+	 * @param model         model name, e.g. "gpt-4o"
+	 * @param temperature   sampling temperature
+	 * @param systemContext system message, that is sent before the user prompt
+	 * @param stream        if true, the API will send the answer as a stream of server-sent events,
+	 *                      the last event contains token usage
+	 */
+	public ChatRequestBody(String model, double temperature, String systemContext, boolean stream) {
+		this(model, temperature, systemContext, stream, 1);
+	}
+
+	/**
+	 * Creates request body template and encodes its static part
+	 * @param model         model name, e.g. "gpt-4o"
+	 * @param temperature   sampling temperature
+	 * @param systemContext system message, that is sent before the user prompt
+	 * @param stream        if true, the API will send the answer as a stream of server-sent events
+	 * @param completions   number of completions (choices), that the API generates for one request
+	 */
+	public ChatRequestBody(String model, double temperature, String systemContext, boolean stream, int completions) {
+		String prefixJson = "{\"model\": \"" + JsonUtils.escape(model) + "\", " +
+				"\"temperature\": " + temperature + ", " +
+				(stream ? "\"stream\": true, \"stream_options\": {\"include_usage\": true}, " : "") +
+				(completions > 1 ? "\"n\": " + completions + ", " : "") +
+				"\"messages\": [" +
+				"{\"role\": \"system\", \"content\": \"" + JsonUtils.escape(systemContext) + "\"}, " +
+				"{\"role\": \"user\", \"content\": \"";
+		this.prefix = prefixJson.getBytes(StandardCharsets.UTF_8);
+		this.suffix = "\"}]}".getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Builds the full request body for the user prompt
+	 * @param userPrompt the user's input prompt
+	 * @return UTF-8 encoded JSON body
+	 */
+	public byte[] toBytes(String userPrompt) {
+		byte[] prompt = JsonUtils.escape(userPrompt).getBytes(StandardCharsets.UTF_8);
+		byte[] body = new byte[prefix.length + prompt.length + suffix.length];
+		System.arraycopy(prefix, 0, body, 0, prefix.length);
+		System.arraycopy(prompt, 0, body, prefix.length, prompt.length);
+		System.arraycopy(suffix, 0, body, prefix.length + prompt.length, suffix.length);
+		return body;
+	}
+
+	/**
+	 * Creates {@link HttpRequest.BodyPublisher} with the full request body for the user prompt
+	 * @param userPrompt the user's input prompt
+	 * @return body publisher with known content length
+	 */
+	public HttpRequest.BodyPublisher publisher(String userPrompt) {
+		return HttpRequest.BodyPublishers.ofByteArray(toBytes(userPrompt));
+	}
+}
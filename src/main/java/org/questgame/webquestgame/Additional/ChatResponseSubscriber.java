@@ -0,0 +1,384 @@
+package org.questgame.webquestgame.Additional;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Simulator.Recordings;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * The {@code ChatResponseSubscriber} class reads non-streamed chat-completions response while its bytes arrive
+ * and passes unescaped values of all {@code content} fields to {@link ContentSink}.
+ * <p>
+ * The response is never collected into a string: bytes are decoded into a small reusable buffer
+ * and scanned once by a minimal JSON state machine, that remembers only the last key. Characters of a content
+ * are unescaped on the fly and passed to the sink once per received buffer, so memory used for the response
+ * does not depend on its size. Value of {@code total_tokens} is available with {@link #getTotalTokens()}.
+ * </p>
+ * If the sink throws an exception, the rest of the contents is skipped (usage is still read) and the exception
+ * is available with {@link #getError()}. If responses are recorded ({@link Settings#SIMULATOR_RECORD_DIRECTORY}),
+ * the raw response is kept for {@link Recordings}, it is available with {@link #getRecording()}.
+ *
+ * @param <T> type of the result of the sink
+ * @see ChatGPTClient
+ * @see ChatStreamSubscriber
+ */
+public class ChatResponseSubscriber<T> implements Flow.Subscriber<List<ByteBuffer>> {
+
+	/**
+	 * Logger instance for recording response processing events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * States of the JSON scanner
+	 */
+	private static final int STRUCTURE = 0;
+	private static final int STRING = 1;
+	private static final int ESCAPE = 2;
+	private static final int UNICODE = 3;
+	private static final int NUMBER = 4;
+
+	/**
+	 * Kinds of the value, that follows the last key
+	 */
+	private static final int OTHER_VALUE = 0;
+	private static final int CONTENT_VALUE = 1;
+	private static final int TOKENS_VALUE = 2;
+
+	/**
+	 * Keys are compared only if they are not longer than this length
+	 */
+	private static final int MAX_KEY_LENGTH = 32;
+
+	/**
+	 * Receiver of contents
+	 */
+	private final ContentSink<T> sink;
+
+	/**
+	 * Incremental UTF-8 decoder, characters split between two buffers are decoded when the second one arrives
+	 */
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	/**
+	 * Reusable buffer of decoded characters
+	 */
+	private final CharBuffer chars = CharBuffer.allocate(8192);
+
+	/**
+	 * Last string, that may be a key
+	 */
+	private final StringBuilder key = new StringBuilder(MAX_KEY_LENGTH);
+
+	/**
+	 * Unescaped characters of the current content, that are not passed to the sink yet
+	 */
+	private final StringBuilder pending = new StringBuilder();
+
+	/**
+	 * Raw response, null if responses are not recorded
+	 */
+	private final StringBuilder recording;
+
+	/**
+	 * Bytes of a character, that is split between two buffers
+	 */
+	private ByteBuffer carry;
+
+	/**
+	 * Current state of the scanner
+	 */
+	private int state = STRUCTURE;
+
+	/**
+	 * Kind of the value, that is expected after the colon
+	 */
+	private int valueKind = OTHER_VALUE;
+
+	/**
+	 * Shows that the last token is a string, that becomes a key if it is followed by a colon
+	 */
+	private boolean keyCandidate;
+
+	/**
+	 * Shows that the current string is a content
+	 */
+	private boolean inContent;
+
+	/**
+	 * Value and number of read digits of the current {@code \\u} escape
+	 */
+	private int unicode;
+	private int unicodeDigits;
+
+	/**
+	 * Value of the number, that is being read
+	 */
+	private long number;
+
+	/**
+	 * Consumer of the current content
+	 */
+	private Consumer<String> content;
+
+	/**
+	 * Number of contents passed to the sink
+	 */
+	private int contents;
+
+	/**
+	 * First error thrown by the sink
+	 */
+	private volatile RuntimeException error;
+
+	/**
+	 * Total tokens used by the request, -1 until usage is read
+	 */
+	private volatile long totalTokens = -1;
+
+	/**
+	 * Creates subscriber, that passes contents of the response to {@code sink}
+	 * @param sink receiver of contents
+	 */
+	public ChatResponseSubscriber(ContentSink<T> sink) {
+		this.sink = sink;
+		this.recording = Recordings.isEnabled() ? new StringBuilder() : null;
+	}
+
+	/**
+	 * Returns the sink of this subscriber, its {@link ContentSink#finish()} should be called when the response is read
+	 * @return receiver of contents
+	 */
+	public ContentSink<T> getSink() {
+		return sink;
+	}
+
+	/**
+	 * Returns the first error thrown by the sink
+	 * @return error, or null if contents were consumed successfully
+	 */
+	public RuntimeException getError() {
+		return error;
+	}
+
+	/**
+	 * Returns total tokens (prompt and completion) used by the request
+	 * @return number of tokens, or -1 if the response didn't contain usage
+	 */
+	public long getTotalTokens() {
+		return totalTokens;
+	}
+
+	/**
+	 * @return number of contents found in the response
+	 */
+	public int getContents() {
+		return contents;
+	}
+
+	/**
+	 * @return raw response, or null if responses are not recorded
+	 */
+	public String getRecording() {
+		return recording == null ? null : recording.toString();
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		subscription.request(Long.MAX_VALUE);
+	}
+
+	@Override
+	public void onNext(List<ByteBuffer> buffers) {
+		for (ByteBuffer buffer : buffers) {
+			decode(buffer, false);
+		}
+		flush();
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		log.error("Error while reading response", throwable);
+	}
+
+	@Override
+	public void onComplete() {
+		decode(ByteBuffer.allocate(0), true);
+		if (state == NUMBER) totalTokens = number;
+		flush();
+		log.debug("Response completed, {} contents read", contents);
+	}
+
+	/**
+	 * Decodes bytes and scans decoded characters
+	 * @param bytes      received bytes
+	 * @param endOfInput true if no more bytes will be received
+	 */
+	private void decode(ByteBuffer bytes, boolean endOfInput) {
+		ByteBuffer input = bytes;
+		if (carry != null) {
+			input = ByteBuffer.allocate(carry.remaining() + bytes.remaining()).put(carry).put(bytes).flip();
+			carry = null;
+		}
+		CoderResult result;
+		do {
+			result = decoder.decode(input, chars, endOfInput);
+			if (endOfInput && result.isUnderflow()) result = decoder.flush(chars);
+			chars.flip();
+			scan(chars);
+			chars.clear();
+		} while (result.isOverflow());
+		if (input.hasRemaining()) {
+			carry = ByteBuffer.allocate(input.remaining()).put(input).flip();
+		}
+	}
+
+	/**
+	 * Moves the scanner over decoded characters
+	 * @param buffer decoded characters
+	 */
+	private void scan(CharBuffer buffer) {
+		if (recording != null) recording.append(buffer);
+		for (int i = buffer.position(); i < buffer.limit(); i++) {
+			char c = buffer.get(i);
+			switch (state) {
+				case STRING -> {
+					if (c == '\\') state = ESCAPE;
+					else if (c == '"') endString();
+					else append(c);
+				}
+				case ESCAPE -> {
+					state = STRING;
+					switch (c) {
+						case 'n' -> append('\n');
+						case 't' -> append('\t');
+						case 'r' -> append('\r');
+						case 'b' -> append('\b');
+						case 'f' -> append('\f');
+						case 'u' -> {
+							state = UNICODE;
+							unicode = 0;
+							unicodeDigits = 0;
+						}
+						default -> append(c);
+					}
+				}
+				case UNICODE -> {
+					unicode = unicode * 16 + Character.digit(c, 16);
+					if (++unicodeDigits == 4) {
+						append((char) unicode);
+						state = STRING;
+					}
+				}
+				case NUMBER -> {
+					if (c >= '0' && c <= '9') {
+						number = number * 10 + (c - '0');
+					} else {
+						totalTokens = number;
+						state = STRUCTURE;
+						structure(c);
+					}
+				}
+				default -> structure(c);
+			}
+		}
+	}
+
+	/**
+	 * Handles a character outside of strings and numbers
+	 * @param c the character
+	 */
+	private void structure(char c) {
+		if (Character.isWhitespace(c)) return;
+		if (c == '"') {
+			state = STRING;
+			inContent = valueKind == CONTENT_VALUE;
+			if (inContent) startContent();
+			else key.setLength(0);
+		} else if (c == ':' && keyCandidate) {
+			valueKind = "content".contentEquals(key) ? CONTENT_VALUE : "total_tokens".contentEquals(key) ? TOKENS_VALUE : OTHER_VALUE;
+			keyCandidate = false;
+			return;
+		} else if (c >= '0' && c <= '9' && valueKind == TOKENS_VALUE) {
+			state = NUMBER;
+			number = c - '0';
+		}
+		keyCandidate = false;
+		valueKind = OTHER_VALUE;
+	}
+
+	/**
+	 * Appends unescaped character to the current string
+	 * @param c the character
+	 */
+	private void append(char c) {
+		if (inContent) {
+			pending.append(c);
+		} else if (key.length() <= MAX_KEY_LENGTH) {
+			key.append(c);
+		}
+	}
+
+	/**
+	 * Finishes the current string
+	 */
+	private void endString() {
+		state = STRUCTURE;
+		if (inContent) {
+			flush();
+			inContent = false;
+			content = null;
+		} else {
+			keyCandidate = true;
+		}
+	}
+
+	/**
+	 * Requests consumer of the next content from the sink
+	 */
+	private void startContent() {
+		contents++;
+		if (error != null) return;
+		try {
+			content = sink.nextContent();
+		} catch (RuntimeException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Passes pending characters of the current content to its consumer
+	 */
+	private void flush() {
+		if (pending.isEmpty()) return;
+		String piece = pending.toString();
+		pending.setLength(0);
+		if (error != null || content == null) return;
+		try {
+			content.accept(piece);
+		} catch (RuntimeException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Stores the error of the sink, the rest of the contents is skipped
+	 * @param e the error
+	 */
+	private void fail(RuntimeException e) {
+		log.error("Error while consuming response content, rest of the contents is skipped", e);
+		error = e;
+		content = null;
+	}
+}
@@ -0,0 +1,115 @@
+package org.questgame.webquestgame.Additional;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * The {@code ChatStreamSubscriber} class reads server-sent events of the streamed chat-completions API line by line
+ * and passes every piece of generated content to the consumer as soon as it arrives.
+ * <p>
+ * Every event has a form of {@code data: {"choices": [{"delta": {"content": "..."}}]}}, the stream is finished
+ * with {@code data: [DONE]} event. Lines without data (empty lines, comments) are ignored.
+ * The last event before {@code [DONE]} contains token usage of the request, it is available with {@link #getTotalTokens()}.
+ * </p>
+ * If the consumer throws an exception, the rest of the stream is skipped and the exception is available
+ * with {@link #getError()}.
+ *
+ * @see ChatGPTClient
+ */
+public class ChatStreamSubscriber implements Flow.Subscriber<String> {
+
+	/**
+	 * Logger instance for recording stream processing events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Consumer of generated content
+	 */
+	private final Consumer<String> contentConsumer;
+
+	/**
+	 * First error thrown by the consumer
+	 */
+	private volatile RuntimeException error;
+
+	/**
+	 * Total tokens used by the request, -1 until the usage event is received
+	 */
+	private volatile long totalTokens = -1;
+
+	/**
+	 * Shows that at least one piece of content was passed to the consumer
+	 */
+	private volatile boolean contentReceived;
+
+	/**
+	 * Creates subscriber, that passes generated content to {@code contentConsumer}
+	 * @param contentConsumer consumer of generated content
+	 */
+	public ChatStreamSubscriber(Consumer<String> contentConsumer) {
+		this.contentConsumer = contentConsumer;
+	}
+
+	/**
+	 * Returns the first error thrown by the consumer
+	 * @return error, or null if content was consumed successfully
+	 */
+	public RuntimeException getError() {
+		return error;
+	}
+
+	/**
+	 * Returns total tokens (prompt and completion) used by the request
+	 * @return number of tokens, or -1 if the stream didn't contain usage
+	 */
+	public long getTotalTokens() {
+		return totalTokens;
+	}
+
+	/**
+	 * @return true if at least one piece of content was passed to the consumer, such stream can't be sent again
+	 */
+	public boolean isContentReceived() {
+		return contentReceived;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		subscription.request(Long.MAX_VALUE);
+	}
+
+	@Override
+	public void onNext(String line) {
+		if (error != null || !line.startsWith("data:")) return;
+		String data = line.substring("data:".length()).trim();
+		if (data.equals("[DONE]")) {
+			log.debug("Stream finished");
+			return;
+		}
+		long tokens = JsonUtils.extractLong(data, "total_tokens");
+		if (tokens >= 0) totalTokens = tokens;
+		String content = JsonUtils.extractString(data, "content");
+		if (content == null || content.isEmpty()) return;
+		contentReceived = true;
+		try {
+			contentConsumer.accept(content);
+		} catch (RuntimeException e) {
+			log.error("Error while consuming streamed content, rest of the stream is skipped", e);
+			error = e;
+		}
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		log.error("Error while reading stream", throwable);
+	}
+
+	@Override
+	public void onComplete() {
+		log.debug("Stream completed");
+	}
+}
@@ -0,0 +1,279 @@
+package org.questgame.webquestgame.Additional;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * The {@code CircuitBreaker} class stops sending requests to the ChatGPT API, when most of the recent requests failed.
+ * <p>
+ * States:
+ * <ul>
+ *     <li>{@link State#CLOSED} - requests are sent, results of the last {@code windowSize} requests are recorded.
+ *     When at least {@code minimumCalls} are recorded and the share of failures reaches the threshold, the breaker opens;</li>
+ *     <li>{@link State#OPEN} - requests are rejected immediately, players don't wait for a timeout of an unavailable API.
+ *     After {@code openDuration} the breaker becomes half-open;</li>
+ *     <li>{@link State#HALF_OPEN} - only {@code halfOpenCalls} trial requests are sent. If all of them succeed,
+ *     the breaker closes, if any of them fails, the breaker opens again.</li>
+ * </ul>
+ * Every transition is logged, counted and passed to listeners added with {@link #addListener(BiConsumer)}.
+ * </p>
+ * Only transient failures (see {@link RetryPolicy#isRetryable(Throwable)}) should be recorded as failures.
+ *
+ * @see RetryPolicy
+ * @see ChatGPTClient
+ * @see Settings
+ */
+public class CircuitBreaker {
+
+	/**
+	 * Logger instance for recording state transitions.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Breaker configured with values from {@link Settings}, created lazily by {@link #getDefault()}
+	 */
+	private static CircuitBreaker defaultBreaker;
+
+	/**
+	 * States of the breaker
+	 */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/**
+	 * Results of the last requests, true - failure
+	 */
+	private final boolean[] window;
+
+	/**
+	 * Minimum number of recorded requests to calculate failure rate
+	 */
+	private final int minimumCalls;
+
+	/**
+	 * Failure rate in percent, at which the breaker opens
+	 */
+	private final int failureRateThreshold;
+
+	/**
+	 * Time the breaker stays open
+	 */
+	private final Duration openDuration;
+
+	/**
+	 * Number of trial requests in half-open state
+	 */
+	private final int halfOpenCalls;
+
+	/**
+	 * Listeners of state transitions, receive previous and new state
+	 */
+	private final List<BiConsumer<State, State>> listeners = new CopyOnWriteArrayList<>();
+
+	private State state = State.CLOSED;
+
+	/**
+	 * Position of the next result in {@code window}, number of recorded results and failures among them
+	 */
+	private int position;
+	private int recorded;
+	private int failures;
+
+	/**
+	 * Time the breaker opened, in nanoseconds
+	 */
+	private long openedAt;
+
+	/**
+	 * Trial requests sent and succeeded in half-open state
+	 */
+	private int halfOpenStarted;
+	private int halfOpenSucceeded;
+
+	/**
+	 * Counters of transitions and rejected requests
+	 */
+	private long opened;
+	private long halfOpened;
+	private long rejected;
+
+	/**
+	 * Creates closed breaker
+	 * @param windowSize           number of last requests, which results are recorded
+	 * @param minimumCalls         minimum number of recorded requests to calculate failure rate
+	 * @param failureRateThreshold failure rate in percent, at which the breaker opens
+	 * @param openDuration         time the breaker stays open
+	 * @param halfOpenCalls        number of trial requests in half-open state
+	 */
+	public CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold, Duration openDuration, int halfOpenCalls) {
+		this.window = new boolean[Math.max(1, windowSize)];
+		this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+		this.failureRateThreshold = failureRateThreshold;
+		this.openDuration = openDuration;
+		this.halfOpenCalls = Math.max(1, halfOpenCalls);
+	}
+
+	/**
+	 * Returns breaker configured with values from {@link Settings}
+	 * @return shared {@link CircuitBreaker}
+	 */
+	public static synchronized CircuitBreaker getDefault() {
+		if (defaultBreaker == null) {
+			defaultBreaker = new CircuitBreaker(Settings.BREAKER_WINDOW_SIZE, Settings.BREAKER_MINIMUM_CALLS,
+					Settings.BREAKER_FAILURE_RATE, Settings.BREAKER_OPEN_DURATION, Settings.BREAKER_HALF_OPEN_CALLS);
+		}
+		return defaultBreaker;
+	}
+
+	/**
+	 * Replaces shared breaker, e.g. with a new closed breaker in tests
+	 * @param breaker new {@link CircuitBreaker}, if null - breaker configured with values from {@link Settings} will be created on next request
+	 */
+	public static synchronized void setDefault(CircuitBreaker breaker) {
+		defaultBreaker = breaker;
+	}
+
+	/**
+	 * Checks, whether the request may be sent. Every permitted request must be finished with
+	 * {@link #onSuccess()}, {@link #onFailure()} or {@link #onIgnored()}
+	 * @return true if the request may be sent, false if it must be rejected
+	 */
+	public synchronized boolean tryAcquirePermission() {
+		if (state == State.OPEN) {
+			if (System.nanoTime() - openedAt < openDuration.toNanos()) {
+				rejected++;
+				return false;
+			}
+			transition(State.HALF_OPEN);
+		}
+		if (state == State.HALF_OPEN) {
+			if (halfOpenStarted >= halfOpenCalls) {
+				rejected++;
+				return false;
+			}
+			halfOpenStarted++;
+		}
+		return true;
+	}
+
+	/**
+	 * Records successful request
+	 */
+	public synchronized void onSuccess() {
+		if (state == State.HALF_OPEN) {
+			if (++halfOpenSucceeded >= halfOpenCalls) transition(State.CLOSED);
+			return;
+		}
+		if (state == State.CLOSED) record(false);
+	}
+
+	/**
+	 * Records failed request
+	 */
+	public synchronized void onFailure() {
+		if (state == State.HALF_OPEN) {
+			transition(State.OPEN);
+			return;
+		}
+		if (state != State.CLOSED) return;
+		record(true);
+		if (recorded >= minimumCalls && failures * 100 >= failureRateThreshold * recorded) {
+			log.warn("{} of {} last requests to ChatGPT failed", failures, recorded);
+			transition(State.OPEN);
+		}
+	}
+
+	/**
+	 * Finishes permitted request, that was not sent (e.g. rejected by rate limiter), without recording its result
+	 */
+	public synchronized void onIgnored() {
+		if (state == State.HALF_OPEN && halfOpenStarted > 0) halfOpenStarted--;
+	}
+
+	/**
+	 * Adds listener of state transitions, it is called under the breaker's lock and must not block
+	 * @param listener consumer of previous and new state
+	 */
+	public void addListener(BiConsumer<State, State> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * @return current state, open breaker, which open duration is elapsed, is shown as open until the next request
+	 */
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * @return number of transitions to open state
+	 */
+	public synchronized long getOpened() {
+		return opened;
+	}
+
+	/**
+	 * @return number of transitions to half-open state
+	 */
+	public synchronized long getHalfOpened() {
+		return halfOpened;
+	}
+
+	/**
+	 * @return number of requests rejected without sending
+	 */
+	public synchronized long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * Records result of the request in the window
+	 * @param failure true if the request failed
+	 */
+	private void record(boolean failure) {
+		if (recorded == window.length) {
+			if (window[position]) failures--;
+		} else {
+			recorded++;
+		}
+		window[position] = failure;
+		if (failure) failures++;
+		position = (position + 1) % window.length;
+	}
+
+	/**
+	 * Changes state, resets recorded results and notifies listeners
+	 * @param newState new state
+	 */
+	private void transition(State newState) {
+		State previous = state;
+		state = newState;
+		position = 0;
+		recorded = 0;
+		failures = 0;
+		halfOpenStarted = 0;
+		halfOpenSucceeded = 0;
+		switch (newState) {
+			case OPEN -> {
+				opened++;
+				openedAt = System.nanoTime();
+				log.warn("Circuit breaker is open, requests to ChatGPT are suspended for {} seconds", openDuration.toSeconds());
+			}
+			case HALF_OPEN -> {
+				halfOpened++;
+				log.info("Circuit breaker is half-open, sending trial requests to ChatGPT");
+			}
+			case CLOSED -> log.info("Circuit breaker is closed, requests to ChatGPT are resumed");
+		}
+		for (BiConsumer<State, State> listener : listeners) {
+			listener.accept(previous, newState);
+		}
+	}
+}
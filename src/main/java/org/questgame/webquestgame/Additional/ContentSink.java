@@ -0,0 +1,29 @@
+package org.questgame.webquestgame.Additional;
+
+import java.util.function.Consumer;
+
+/**
+ * The {@code ContentSink} interface receives contents of chat-completions response while the response is being read,
+ * see {@link ChatResponseSubscriber}.
+ * <p>
+ * A new sink is created for every attempt of the request, so a retried request never mixes contents of two responses.
+ * </p>
+ *
+ * @param <T> type of the result, built from the contents
+ * @see ChatGPTClient#generateMainQuestLines(ChatEndpoint, String, int, java.util.function.Supplier)
+ */
+public interface ContentSink<T> {
+
+	/**
+	 * Called when the next {@code content} field of the response starts (one for every choice of the response)
+	 * @return consumer of unescaped pieces of the content, it is called sequentially
+	 */
+	Consumer<String> nextContent();
+
+	/**
+	 * Called when the whole response is read
+	 * @return result, built from all contents
+	 * @throws org.questgame.webquestgame.Exceptions.ChatGptGenerationException if contents can't be converted to the result
+	 */
+	T finish();
+}
@@ -0,0 +1,161 @@
+package org.questgame.webquestgame.Additional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code JsonUtils} class contains small helpers for building JSON strings by hand.
+ * <p>
+ * The project does not use a JSON library, so all values that are spliced into request bodies
+ * must be escaped with {@link #escape(String)} to keep the request valid, and string fields of responses
+ * are read with {@link #extractString(String, String)} and {@link #extractLong(String, String)}.
+ * </p>
+ */
+public class JsonUtils {
+
+	/**
+	 * Escapes a string, so it can be placed between double quotes of a JSON string value.
+	 * @param value the raw string value
+	 * @return escaped string, or empty string if {@code value} is null
+	 */
+	public static String escape(String value) {
+		if (value == null) return "";
+		StringBuilder sb = null;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			String replacement = switch (c) {
+				case '"' -> "\\\"";
+				case '\\' -> "\\\\";
+				case '\n' -> "\\n";
+				case '\r' -> "\\r";
+				case '\t' -> "\\t";
+				case '\b' -> "\\b";
+				case '\f' -> "\\f";
+				default -> c < 0x20 ? String.format("\\u%04x", (int) c) : null;
+			};
+			if (replacement == null) {
+				if (sb != null) sb.append(c);
+				continue;
+			}
+			if (sb == null) {
+				sb = new StringBuilder(value.length() + 16);
+				sb.append(value, 0, i);
+			}
+			sb.append(replacement);
+		}
+		return sb == null ? value : sb.toString();
+	}
+
+	/**
+	 * Finds the first field with the specified name and returns its unescaped string value.
+	 * <p>The method does not parse the whole document, it is intended for small, well-formed objects,
+	 * e.g. chunks of the chat-completions stream.</p>
+	 * @param json  JSON document
+	 * @param field name of the field
+	 * @return unescaped value, or null if the field is not found or its value is not a string
+	 */
+	public static String extractString(String json, String field) {
+		String key = "\"" + field + "\"";
+		int i = json.indexOf(key);
+		return i < 0 ? null : readString(json, i + key.length());
+	}
+
+	/**
+	 * Finds all fields with the specified name and returns their unescaped string values,
+	 * e.g. contents of all choices of the chat-completions response.
+	 * @param json  JSON document
+	 * @param field name of the fields
+	 * @return unescaped values in the order of the document, fields with non-string values are skipped
+	 */
+	public static List<String> extractStrings(String json, String field) {
+		String key = "\"" + field + "\"";
+		List<String> values = new ArrayList<>();
+		for (int i = json.indexOf(key); i >= 0; i = json.indexOf(key, i + key.length())) {
+			String value = readString(json, i + key.length());
+			if (value != null) values.add(value);
+		}
+		return values;
+	}
+
+	/**
+	 * Finds the first field with the specified name and returns its integer value.
+	 * @param json  JSON document
+	 * @param field name of the field
+	 * @return value, or -1 if the field is not found or its value is not a non-negative integer
+	 */
+	public static long extractLong(String json, String field) {
+		String key = "\"" + field + "\"";
+		int i = json.indexOf(key);
+		if (i < 0) return -1;
+		i = skipWhitespace(json, i + key.length());
+		if (i >= json.length() || json.charAt(i) != ':') return -1;
+		i = skipWhitespace(json, i + 1);
+		int start = i;
+		while (i < json.length() && Character.isDigit(json.charAt(i))) i++;
+		return i == start ? -1 : Long.parseLong(json.substring(start, i));
+	}
+
+	/**
+	 * Reads string value of the field
+	 * @param json  JSON document
+	 * @param start index of the first character after the field name
+	 * @return unescaped value, or null if the value is not a string
+	 */
+	private static String readString(String json, int start) {
+		int i = skipWhitespace(json, start);
+		if (i >= json.length() || json.charAt(i) != ':') return null;
+		i = skipWhitespace(json, i + 1);
+		if (i >= json.length() || json.charAt(i) != '"') return null;
+		return unescape(json, i + 1);
+	}
+
+	/**
+	 * Reads escaped JSON string value until the closing double quote
+	 * @param json  JSON document
+	 * @param start index of the first character after the opening double quote
+	 * @return unescaped value
+	 */
+	private static String unescape(String json, int start) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = start; i < json.length(); i++) {
+			char c = json.charAt(i);
+			if (c == '"') return sb.toString();
+			if (c != '\\' || i + 1 >= json.length()) {
+				sb.append(c);
+				continue;
+			}
+			char escaped = json.charAt(++i);
+			switch (escaped) {
+				case 'n' -> sb.append('\n');
+				case 'r' -> sb.append('\r');
+				case 't' -> sb.append('\t');
+				case 'b' -> sb.append('\b');
+				case 'f' -> sb.append('\f');
+				case 'u' -> {
+					sb.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+					i += 4;
+				}
+				default -> sb.append(escaped);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Skips whitespace characters
+	 * @param json  JSON document
+	 * @param start index to start from
+	 * @return index of the first non-whitespace character
+	 */
+	private static int skipWhitespace(String json, int start) {
+		int i = start;
+		while (i < json.length() && Character.isWhitespace(json.charAt(i))) i++;
+		return i;
+	}
+
+	/**
+	 * Private constructor, utility class
+	 */
+	private JsonUtils() {
+	}
+}
@@ -0,0 +1,312 @@
+package org.questgame.webquestgame.Additional;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Exceptions.RateLimitExceededException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code RateLimiter} class limits outbound requests to the ChatGPT API, so the application stays within
+ * the account limits for requests per minute and tokens per minute.
+ * <p>
+ * Both limits are kept in {@link TokenBucket}s. Before a request is sent, one request and the estimated number
+ * of tokens are reserved; when the response arrives, the estimate is corrected with the actual usage from
+ * the {@code usage} block of the response.
+ * </p>
+ * <p>
+ * Admission control:
+ * <ul>
+ *     <li>if nobody waits and both buckets have enough tokens, the request is admitted immediately without locks;</li>
+ *     <li>otherwise the request joins a bounded wait queue and is admitted as soon as tokens are refilled;</li>
+ *     <li>if the queue is full, or the request waited longer than the maximum wait time, it is rejected with
+ *     {@link RateLimitExceededException}, so the player gets a "busy" page instead of a hanging request.</li>
+ * </ul>
+ * </p>
+ *
+ * @see TokenBucket
+ * @see ChatGPTClient
+ * @see Settings
+ */
+public class RateLimiter {
+
+	/**
+	 * Logger instance for recording admission events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Limiter configured with values from {@link Settings}, created lazily by {@link #getDefault()}
+	 */
+	private static RateLimiter defaultLimiter;
+
+	/**
+	 * Bucket of requests per minute
+	 */
+	private final TokenBucket requests;
+
+	/**
+	 * Bucket of tokens per minute
+	 */
+	private final TokenBucket tokens;
+
+	/**
+	 * Maximum number of waiting requests
+	 */
+	private final int maxQueue;
+
+	/**
+	 * Maximum time a request may wait
+	 */
+	private final Duration maxWait;
+
+	/**
+	 * Thread, that admits waiting requests
+	 */
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * Number of waiting requests
+	 */
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	/**
+	 * Counters of admission
+	 */
+	private final AtomicLong admitted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong delayed = new AtomicLong();
+
+	/**
+	 * Wait time of delayed requests, in nanoseconds
+	 */
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	/**
+	 * Creates limiter with full buckets
+	 * @param requestsPerMinute maximum number of requests per minute
+	 * @param tokensPerMinute   maximum number of tokens per minute
+	 * @param maxQueue          maximum number of waiting requests
+	 * @param maxWait           maximum time a request may wait
+	 */
+	public RateLimiter(int requestsPerMinute, int tokensPerMinute, int maxQueue, Duration maxWait) {
+		this.requests = new TokenBucket(requestsPerMinute, Duration.ofMinutes(1));
+		this.tokens = new TokenBucket(tokensPerMinute, Duration.ofMinutes(1));
+		this.maxQueue = maxQueue;
+		this.maxWait = maxWait;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "rate-limiter");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Returns limiter configured with values from {@link Settings}
+	 * @return shared {@link RateLimiter}
+	 */
+	public static synchronized RateLimiter getDefault() {
+		if (defaultLimiter == null) {
+			defaultLimiter = new RateLimiter(Settings.RATE_LIMIT_REQUESTS_PER_MINUTE, Settings.RATE_LIMIT_TOKENS_PER_MINUTE,
+					Settings.RATE_LIMIT_QUEUE_SIZE, Settings.RATE_LIMIT_MAX_WAIT);
+		}
+		return defaultLimiter;
+	}
+
+	/**
+	 * Replaces shared limiter, e.g. with a limiter with custom limits in tests
+	 * @param limiter new {@link RateLimiter}, if null - limiter configured with values from {@link Settings} will be created on next request
+	 */
+	public static synchronized void setDefault(RateLimiter limiter) {
+		defaultLimiter = limiter;
+	}
+
+	/**
+	 * Reserves one request and the estimated number of tokens without blocking the calling thread
+	 * @param estimatedTokens number of tokens the request is expected to use
+	 * @return {@link CompletableFuture} completed with {@link Permit} when the request is admitted, or completed
+	 * exceptionally with {@link RateLimitExceededException} if the queue is full or the request waited too long
+	 */
+	public CompletableFuture<Permit> acquireAsync(int estimatedTokens) {
+		int reserved = (int) Math.min(estimatedTokens, tokens.getCapacity());
+		if (waiting.get() == 0 && tryAcquire(reserved)) {
+			admitted.incrementAndGet();
+			return CompletableFuture.completedFuture(new Permit(reserved));
+		}
+		if (waiting.incrementAndGet() > maxQueue) {
+			waiting.decrementAndGet();
+			rejected.incrementAndGet();
+			log.warn("Rate limit queue is full ({} requests), request rejected", maxQueue);
+			return CompletableFuture.failedFuture(new RateLimitExceededException("Too many stories are being generated, try again later"));
+		}
+		log.info("Rate limit reached, request is waiting, queue depth: {}", waiting.get());
+		CompletableFuture<Permit> permit = new CompletableFuture<>();
+		retry(permit, reserved, System.nanoTime());
+		return permit;
+	}
+
+	/**
+	 * Reserves one request and the estimated number of tokens, blocking the calling thread while the request waits
+	 * @param estimatedTokens number of tokens the request is expected to use
+	 * @return {@link Permit} of the admitted request
+	 * @throws RateLimitExceededException if the queue is full or the request waited too long
+	 */
+	public Permit acquire(int estimatedTokens) {
+		try {
+			return acquireAsync(estimatedTokens).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RateLimitExceededException rateLimitException) throw rateLimitException;
+			throw e;
+		}
+	}
+
+	/**
+	 * Corrects reserved tokens with the actual usage of the request
+	 * @param permit       permit of the request
+	 * @param actualTokens number of tokens the request used, if negative (usage is unknown) - the estimate is kept
+	 */
+	public void complete(Permit permit, long actualTokens) {
+		if (actualTokens < 0) return;
+		tokens.release(permit.tokens() - actualTokens);
+		log.debug("Request used {} tokens, {} were reserved", actualTokens, permit.tokens());
+	}
+
+	/**
+	 * Checks, that a background request can be sent without delaying requests of players
+	 * @param reservedPercent share of both limits in percent, that must stay available for players
+	 * @return true if nobody waits and more than the reserved share of requests and tokens is available
+	 */
+	public boolean hasHeadroom(int reservedPercent) {
+		double share = Math.min(100, Math.max(0, reservedPercent)) / 100.0;
+		return waiting.get() == 0
+				&& requests.getAvailable() >= Math.max(1, requests.getCapacity() * share)
+				&& tokens.getAvailable() >= tokens.getCapacity() * share;
+	}
+
+	/**
+	 * Stops admitting waiting requests, should be called when application is stopped
+	 */
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * @return number of waiting requests
+	 */
+	public int getQueueDepth() {
+		return waiting.get();
+	}
+
+	/**
+	 * @return number of admitted requests
+	 */
+	public long getAdmitted() {
+		return admitted.get();
+	}
+
+	/**
+	 * @return number of rejected requests
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return average wait time of requests, that had to wait, in milliseconds
+	 */
+	public long getAverageWaitMillis() {
+		long count = delayed.get();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / count);
+	}
+
+	/**
+	 * @return maximum wait time of admitted requests, in milliseconds
+	 */
+	public long getMaxWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+	}
+
+	/**
+	 * @return number of requests, that can be sent now
+	 */
+	public long getAvailableRequests() {
+		return (long) requests.getAvailable();
+	}
+
+	/**
+	 * @return number of tokens, that can be used now
+	 */
+	public long getAvailableTokens() {
+		return (long) tokens.getAvailable();
+	}
+
+	/**
+	 * Tries to take one request and tokens from the buckets, taken request is returned if there are not enough tokens
+	 * @param reserved number of tokens
+	 * @return true if both request and tokens are taken
+	 */
+	private boolean tryAcquire(int reserved) {
+		if (!requests.tryAcquire(1)) return false;
+		if (tokens.tryAcquire(reserved)) return true;
+		requests.release(1);
+		return false;
+	}
+
+	/**
+	 * Tries to admit the waiting request, schedules the next attempt when tokens are expected to be refilled
+	 * @param permit   future of the waiting request
+	 * @param reserved number of tokens
+	 * @param start    time the request started waiting, in nanoseconds
+	 */
+	private void retry(CompletableFuture<Permit> permit, int reserved, long start) {
+		if (permit.isDone()) {
+			waiting.decrementAndGet();
+			return;
+		}
+		long waited = System.nanoTime() - start;
+		if (tryAcquire(reserved)) {
+			waiting.decrementAndGet();
+			admitted.incrementAndGet();
+			delayed.incrementAndGet();
+			totalWaitNanos.addAndGet(waited);
+			maxWaitNanos.accumulateAndGet(waited, Math::max);
+			log.info("Request admitted after {} ms", TimeUnit.NANOSECONDS.toMillis(waited));
+			if (!permit.complete(new Permit(reserved))) {
+				requests.release(1);
+				tokens.release(reserved);
+			}
+			return;
+		}
+		long remaining = maxWait.toNanos() - waited;
+		if (remaining <= 0) {
+			waiting.decrementAndGet();
+			rejected.incrementAndGet();
+			log.warn("Request waited for rate limit longer than {} seconds, request rejected", maxWait.toSeconds());
+			permit.completeExceptionally(new RateLimitExceededException("Too many stories are being generated, try again later"));
+			return;
+		}
+		long delay = Math.max(requests.nanosUntilAvailable(1), tokens.nanosUntilAvailable(reserved));
+		delay = Math.max(TimeUnit.MILLISECONDS.toNanos(10), Math.min(delay, remaining));
+		try {
+			scheduler.schedule(() -> retry(permit, reserved, start), delay, TimeUnit.NANOSECONDS);
+		} catch (RuntimeException e) {
+			waiting.decrementAndGet();
+			permit.completeExceptionally(new RateLimitExceededException("Rate limiter is stopped", e));
+		}
+	}
+
+	/**
+	 * Permit of the admitted request
+	 * @param tokens number of reserved tokens
+	 */
+	public record Permit(int tokens) {
+	}
+}
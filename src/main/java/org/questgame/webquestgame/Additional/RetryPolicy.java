@@ -0,0 +1,143 @@
+package org.questgame.webquestgame.Additional;
+
+import org.questgame.webquestgame.Exceptions.ChatGptHttpException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The {@code RetryPolicy} class decides, whether a failed request to the ChatGPT API should be sent again,
+ * and how long to wait before the next attempt.
+ * <p>
+ * Only transient failures are retried: I/O errors (connection reset, timeout) and responses with
+ * 408, 429 and 5xx status codes. Delay grows exponentially with "full jitter" (random value between zero and
+ * the exponential delay), so requests, that failed together, are not retried together.
+ * If the response has Retry-After header, the next attempt is sent not earlier than the server asked.
+ * </p>
+ * All attempts of one request must fit into the overall deadline, a retry, that can't fit into it, is not made.
+ *
+ * @see ChatGPTClient
+ * @see CircuitBreaker
+ * @see Settings
+ */
+public class RetryPolicy {
+
+	/**
+	 * Policy configured with values from {@link Settings}, created lazily by {@link #getDefault()}
+	 */
+	private static RetryPolicy defaultPolicy;
+
+	/**
+	 * Maximum number of attempts, including the first one
+	 */
+	private final int maxAttempts;
+
+	/**
+	 * Delay before the first retry, it is doubled for every next retry
+	 */
+	private final Duration baseDelay;
+
+	/**
+	 * Maximum delay between attempts
+	 */
+	private final Duration maxDelay;
+
+	/**
+	 * Time all attempts of one request must fit into
+	 */
+	private final Duration deadline;
+
+	/**
+	 * Creates policy
+	 * @param maxAttempts maximum number of attempts, including the first one
+	 * @param baseDelay   delay before the first retry
+	 * @param maxDelay    maximum delay between attempts
+	 * @param deadline    time all attempts of one request must fit into
+	 */
+	public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, Duration deadline) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Returns policy configured with values from {@link Settings}
+	 * @return shared {@link RetryPolicy}
+	 */
+	public static synchronized RetryPolicy getDefault() {
+		if (defaultPolicy == null) {
+			defaultPolicy = new RetryPolicy(Settings.RETRY_MAX_ATTEMPTS, Settings.RETRY_BASE_DELAY, Settings.RETRY_MAX_DELAY, Settings.RETRY_DEADLINE);
+		}
+		return defaultPolicy;
+	}
+
+	/**
+	 * Replaces shared policy, e.g. with a policy without delays in tests
+	 * @param policy new {@link RetryPolicy}, if null - policy configured with values from {@link Settings} will be created on next request
+	 */
+	public static synchronized void setDefault(RetryPolicy policy) {
+		defaultPolicy = policy;
+	}
+
+	/**
+	 * Checks, whether the failure is transient, so the request may succeed if it is sent again
+	 * @param e the cause of the failure
+	 * @return true for I/O errors and responses with 408, 429 and 5xx status codes
+	 */
+	public boolean isRetryable(Throwable e) {
+		if (e instanceof ChatGptHttpException httpException) {
+			int status = httpException.getStatusCode();
+			return status == 408 || status == 429 || status >= 500;
+		}
+		return e instanceof IOException;
+	}
+
+	/**
+	 * Calculates delay before the next attempt
+	 * @param attempt   number of the failed attempt, starting from 1
+	 * @param e         the cause of the failure
+	 * @param remaining time left until the overall deadline
+	 * @return delay, or null if the request must not be retried
+	 */
+	public Duration nextDelay(int attempt, Throwable e, Duration remaining) {
+		if (attempt >= maxAttempts || !isRetryable(e)) return null;
+		long exponential = Math.min(maxDelay.toMillis(), baseDelay.toMillis() << Math.min(attempt - 1, 20));
+		long delay = ThreadLocalRandom.current().nextLong(exponential + 1);
+		if (e instanceof ChatGptHttpException httpException && httpException.getRetryAfter() != null) {
+			delay = Math.max(delay, httpException.getRetryAfter().toMillis());
+		}
+		if (delay >= remaining.toMillis()) return null;
+		return Duration.ofMillis(delay);
+	}
+
+	/**
+	 * @return time all attempts of one request must fit into
+	 */
+	public Duration getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Parses value of Retry-After header, which may contain either number of seconds or HTTP date
+	 * @param value value of the header, may be null
+	 * @return time to wait, or null if the value is missing or can't be parsed
+	 */
+	public static Duration parseRetryAfter(String value) {
+		if (value == null || value.isBlank()) return null;
+		try {
+			return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+		} catch (NumberFormatException e) {
+			try {
+				Duration duration = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+				return duration.isNegative() ? Duration.ZERO : duration;
+			} catch (DateTimeParseException parseException) {
+				return null;
+			}
+		}
+	}
+}
@@ -1,17 +1,134 @@
 package org.questgame.webquestgame.Additional;
 
+import java.io.File;
 import java.net.URI;
+import java.time.Duration;
 
 public class Settings {
 
 	//Game Settings
-	public static final String UPLOAD_DIRECTORY = "uploads"; //Directory in which serialized stories will download (in /target directory)
+	public static final long UPLOAD_MAX_FILE_SIZE = 8L * 1024 * 1024; //Hard limit of uploaded files, enforced by the container (compile-time constant for @MultipartConfig)
+	public static final int UPLOAD_MEMORY_THRESHOLD = (int) UPLOAD_MAX_FILE_SIZE; //Uploads up to this size are kept in memory, so accepted uploads are never written to temporary files
+	public static final long UPLOAD_FORM_OVERHEAD = 64 * 1024; //Bytes of multipart headers and other form fields allowed in addition to the file
+	public static final boolean STREAMING_ENABLED = Boolean.parseBoolean(System.getProperty("questgame.generation.streaming", "true")); //Start game as soon as first situation is generated
+	public static final Duration STREAM_WAIT_TIMEOUT = Duration.ofSeconds(Long.getLong("questgame.generation.streamWait", 20)); //Time player waits for situation, that is still being generated
 
-	//ChatGPT Settings
-	public static final String API_KEY = "Enter Your API-key";
-	public static final String model = "gpt-4o";
-	public static final URI ChatGptURI = URI.create("https://api.openai.com/v1/chat/completions");
+	//Story Parsing Settings (can be overridden with -Dquestgame.parsing.* options)
+	public static final int PARALLEL_PARSING_THRESHOLD = Integer.getInteger("questgame.parsing.parallelThreshold", 262_144); //Stories of at least this many characters are parsed on ForkJoinPool, 0 - always sequentially
+
+	//Hedged Generation Settings (can be overridden with -Dquestgame.hedge.* options)
+	public static final int HEDGE_MAX_CANDIDATES = Integer.getInteger("questgame.hedge.candidates", 1); //Candidates generated in parallel for one story, 1 disables hedging
+	public static final int HEDGE_PERCENTILE = Integer.getInteger("questgame.hedge.percentile", 95); //Percentile of generation time, after which the next candidate is started
+	public static final Duration HEDGE_INITIAL_DELAY = Duration.ofMillis(Long.getLong("questgame.hedge.delay", 20000)); //Time before the next candidate, until enough generations are measured
+	public static final int HEDGE_BUDGET = Integer.getInteger("questgame.hedge.budget", 10); //Extra candidates in percent of generated stories, limits additional token spend
+
+	//Story Repair Settings (can be overridden with -Dquestgame.repair.* options)
+	public static final boolean REPAIR_ENABLED = Boolean.parseBoolean(System.getProperty("questgame.repair.enabled", "true")); //Repair generated stories, that can't be played, instead of rejecting them
+	public static final int REPAIR_MAX_BRANCHES = Integer.getInteger("questgame.repair.maxBranches", 3); //Broken branches regenerated for one story, 0 - only local fixes
+
+	//Lazy Story Settings (can be overridden with -Dquestgame.lazy.* options)
+	public static final boolean LAZY_ENABLED = Boolean.parseBoolean(System.getProperty("questgame.lazy.enabled", "false")); //Generate stories in parts, deeper branches are generated when the player approaches them
+	public static final int LAZY_DEPTH = Integer.getInteger("questgame.lazy.depth", 3); //Situations in a row generated in one part
+	public static final int LAZY_MAX_PARTS = Integer.getInteger("questgame.lazy.maxParts", 4); //Parts on one path of the story, the last part ends the story
+	public static final int LAZY_LOOKAHEAD = Integer.getInteger("questgame.lazy.lookahead", 1); //Situations ahead of the player, which pending branches are generated in background, 0 - only on demand
+
+	//Batch Generation Settings (can be overridden with -Dquestgame.batch.* options)
+	public static final boolean BATCH_ENABLED = Boolean.parseBoolean(System.getProperty("questgame.batch.enabled", "false")); //Allow batch generation with POST /batch, it spends tokens of the account
+	public static final int BATCH_CONCURRENCY = Integer.getInteger("questgame.batch.concurrency", 4); //Stories of a batch generated at the same time
+	public static final int BATCH_RESERVED_PERCENT = Integer.getInteger("questgame.batch.reserve", 50); //Share of rate limits in percent, that batch generation leaves to players
+	public static final int BATCH_MAX_PROMPTS = Integer.getInteger("questgame.batch.maxPrompts", 1000); //Prompts in one batch
+
+	//Story Cache Settings (can be overridden with -Dquestgame.cache.* options)
+	public static final int CACHE_MAX_ENTRIES = Integer.getInteger("questgame.cache.maxEntries", 200); //Stories kept in memory
+	public static final int CACHE_MAX_DISK_ENTRIES = Integer.getInteger("questgame.cache.maxDiskEntries", 2000); //Stories kept on disk
+	public static final Duration CACHE_TTL = Duration.ofHours(Long.getLong("questgame.cache.ttl", 24 * 7)); //Time after which cached story is generated again
+	public static final String CACHE_DIRECTORY = System.getProperty("questgame.cache.directory",
+			System.getProperty("user.home") + File.separator + "WebQuestGame" + File.separator + "cache"); //Directory outside webapp, so cache survives redeploy
+
+	//Upload Settings (can be overridden with -Dquestgame.upload.* options)
+	public static final long UPLOAD_MAX_BYTES = Math.min(Long.getLong("questgame.upload.maxBytes", 4 * 1024 * 1024), UPLOAD_MAX_FILE_SIZE); //Largest uploaded story file, at most UPLOAD_MAX_FILE_SIZE
+	public static final int UPLOAD_MAX_ELEMENTS = Integer.getInteger("questgame.upload.maxElements", 20000); //Most elements in uploaded story
+	public static final int UPLOAD_MAX_DEPTH = Integer.getInteger("questgame.upload.maxDepth", 2000); //Deepest nesting of objects in uploaded legacy .ser files
+
+	//Story Repository Settings (can be overridden with -Dquestgame.repository.* options)
+	public static final String REPOSITORY_DIRECTORY = System.getProperty("questgame.repository.directory",
+			System.getProperty("user.home") + File.separator + "WebQuestGame" + File.separator + "stories"); //Directory outside webapp, where stories are stored by content hash
+	public static final long REPOSITORY_QUOTA = Long.getLong("questgame.repository.quota", 512) * 1024 * 1024; //Disk space for stories in MB, least recently played stories are removed above it
+	public static final int REPOSITORY_DECODED_STORIES = Integer.getInteger("questgame.repository.decoded", 100); //Decoded stories kept in memory
+
+	//Story Registry Settings (can be overridden with -Dquestgame.registry.* options)
+	public static final Duration REGISTRY_IDLE_TIMEOUT = Duration.ofSeconds(Long.getLong("questgame.registry.idleTimeout", 600)); //Time story is kept, after the last session, that plays it, is finished
+
+	//Story Pool Settings (can be overridden with -Dquestgame.pool.* options)
+	public static final int POOL_SIZE = Integer.getInteger("questgame.pool.size", 3); //Ready-to-play random stories, 0 disables pool
+	public static final int POOL_WORKERS = Integer.getInteger("questgame.pool.workers", 1); //Threads, that generate stories for pool
+	public static final int POOL_COMPLETIONS_PER_REQUEST = Integer.getInteger("questgame.pool.completions", 1); //Stories generated with one API request
+	public static final Duration POOL_RETRY_DELAY = Duration.ofSeconds(Long.getLong("questgame.pool.retryDelay", 60)); //Pause after failed generation
+	public static final String[] RANDOM_STORY_PROMPTS = {
+			"Рыцарь и Дракон",
+			"Пираты и затерянный остров",
+			"Побег с космической станции",
+			"Детектив в старом особняке",
+			"Волшебник, который потерял память",
+			"Я - последний выживший в зомби-апокалипсисе"
+	};
+
+	//ChatGPT Settings (can be overridden with -Dquestgame.openai.* options)
+	public static final String API_KEY = System.getProperty("questgame.openai.apiKey", "Enter Your API-key");
+	public static final String model = System.getProperty("questgame.openai.model", "gpt-4o");
+	public static final URI ChatGptURI = URI.create(System.getProperty("questgame.openai.url", "https://api.openai.com/v1/chat/completions")); //Can point to LLM simulator for capacity tests
+	public static final double TEMPERATURE = 0.2;
+
+	//Story Generator Settings (can be overridden with -Dquestgame.generator.* options)
+	public static final String GENERATOR = System.getProperty("questgame.generator", "openai"); //openai, local, outline or deterministic
+	public static final URI LOCAL_GENERATOR_URI = URI.create(System.getProperty("questgame.generator.local.url", "http://localhost:11434/v1/chat/completions")); //OpenAI-compatible local server
+	public static final String LOCAL_GENERATOR_MODEL = System.getProperty("questgame.generator.local.model", "llama3.1");
+	public static final String LOCAL_GENERATOR_API_KEY = System.getProperty("questgame.generator.local.apiKey", ""); //Empty - Authorization header is not sent
+	public static final int DETERMINISTIC_STORY_SITUATIONS = Integer.getInteger("questgame.generator.deterministic.situations", 5); //Situations in generated story
+	public static final int DETERMINISTIC_STREAM_CHUNK = Integer.getInteger("questgame.generator.deterministic.chunk", 32); //Characters in one streamed piece
+	public static final int OUTLINE_BRANCHES = Integer.getInteger("questgame.generator.outline.branches", 4); //Branches of the outline, which descriptions are generated in parallel
+
+	//LLM Simulator Settings (can be overridden with -Dquestgame.simulator.* options)
+	public static final boolean SIMULATOR_ENABLED = Boolean.parseBoolean(System.getProperty("questgame.simulator.enabled", "false")); //Start simulator with the application, questgame.openai.url must point to it
+	public static final int SIMULATOR_PORT = Integer.getInteger("questgame.simulator.port", 8089);
+	public static final String SIMULATOR_RECORDINGS_DIRECTORY = System.getProperty("questgame.simulator.recordings", ""); //Recorded responses (*.json) to replay, empty - deterministic stories are replayed
+	public static final String SIMULATOR_RECORD_DIRECTORY = System.getProperty("questgame.simulator.record", ""); //Successful API responses are saved here, empty - responses are not recorded
+	public static final Duration SIMULATOR_LATENCY_P50 = Duration.ofMillis(Long.getLong("questgame.simulator.latency.p50", 8000)); //Median generation time
+	public static final Duration SIMULATOR_LATENCY_P99 = Duration.ofMillis(Long.getLong("questgame.simulator.latency.p99", 30000)); //99th percentile of generation time
+	public static final Duration SIMULATOR_LATENCY_MAX = Duration.ofMillis(Long.getLong("questgame.simulator.latency.max", 110000)); //Longest generation time
+	public static final double SIMULATOR_RATE_LIMIT_ERRORS = Double.parseDouble(System.getProperty("questgame.simulator.errors.rateLimit", "0")); //Share of 429 responses, 0.0-1.0
+	public static final double SIMULATOR_SERVER_ERRORS = Double.parseDouble(System.getProperty("questgame.simulator.errors.server", "0")); //Share of 500 responses, 0.0-1.0
+	public static final double SIMULATOR_TIMEOUTS = Double.parseDouble(System.getProperty("questgame.simulator.errors.timeout", "0")); //Share of requests, that are never answered, 0.0-1.0
+	public static final Duration SIMULATOR_RETRY_AFTER = Duration.ofSeconds(Long.getLong("questgame.simulator.retryAfter", 1)); //Retry-After of 429 responses
+	public static final Duration SIMULATOR_HANG_TIME = Duration.ofSeconds(Long.getLong("questgame.simulator.hangTime", 300)); //Time unanswered request is kept open
+	public static final int SIMULATOR_STREAM_CHUNK = Integer.getInteger("questgame.simulator.chunk", 16); //Characters in one streamed event
+	public static final int SIMULATOR_THREADS = Integer.getInteger("questgame.simulator.threads", 4);
+
+	//HTTP Client Settings (can be overridden with -Dquestgame.http.* options)
+	public static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(Long.getLong("questgame.http.connectTimeout", 10)); //Time to establish TCP + TLS connection
+	public static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(Long.getLong("questgame.http.requestTimeout", 120)); //Time to wait for the whole generation
+	public static final Duration ASYNC_TIMEOUT = Duration.ofSeconds(Long.getLong("questgame.http.asyncTimeout", 150)); //Time player's request may wait for generation
+	public static final int HTTP_CLIENT_THREADS = Integer.getInteger("questgame.http.threads", 4); //Threads of shared HttpClient executor
+	//Rate Limiter Settings (can be overridden with -Dquestgame.limiter.* options)
+	public static final int RATE_LIMIT_REQUESTS_PER_MINUTE = Integer.getInteger("questgame.limiter.requestsPerMinute", 500); //Requests to ChatGPT API per minute
+	public static final int RATE_LIMIT_TOKENS_PER_MINUTE = Integer.getInteger("questgame.limiter.tokensPerMinute", 30000); //Tokens (prompt + completion) per minute
+	public static final int ESTIMATED_TOKENS_PER_STORY = Integer.getInteger("questgame.limiter.estimatedTokens", 6000); //Tokens reserved for one story before actual usage is known
+	public static final int RATE_LIMIT_QUEUE_SIZE = Integer.getInteger("questgame.limiter.queueSize", 20); //Requests that may wait for the limit, others are rejected
+	public static final Duration RATE_LIMIT_MAX_WAIT = Duration.ofSeconds(Long.getLong("questgame.limiter.maxWait", 30)); //Time request may wait for the limit
+	//Retry and Circuit Breaker Settings (can be overridden with -Dquestgame.retry.* and -Dquestgame.breaker.* options)
+	public static final int RETRY_MAX_ATTEMPTS = Integer.getInteger("questgame.retry.maxAttempts", 3); //Attempts of one request, including the first one
+	public static final Duration RETRY_BASE_DELAY = Duration.ofMillis(Long.getLong("questgame.retry.baseDelay", 500)); //Delay before the first retry, doubled for every next retry
+	public static final Duration RETRY_MAX_DELAY = Duration.ofMillis(Long.getLong("questgame.retry.maxDelay", 10000)); //Maximum delay between attempts
+	public static final Duration RETRY_DEADLINE = Duration.ofSeconds(Long.getLong("questgame.retry.deadline", 140)); //Time all attempts of one request must fit into
+	public static final int BREAKER_WINDOW_SIZE = Integer.getInteger("questgame.breaker.window", 20); //Number of last requests used to calculate failure rate
+	public static final int BREAKER_MINIMUM_CALLS = Integer.getInteger("questgame.breaker.minimumCalls", 5); //Requests needed before the breaker may open
+	public static final int BREAKER_FAILURE_RATE = Integer.getInteger("questgame.breaker.failureRate", 50); //Failure rate in percent, at which the breaker opens
+	public static final Duration BREAKER_OPEN_DURATION = Duration.ofSeconds(Long.getLong("questgame.breaker.openDuration", 30)); //Time requests are rejected before trial requests
+	public static final int BREAKER_HALF_OPEN_CALLS = Integer.getInteger("questgame.breaker.halfOpenCalls", 1); //Trial requests needed to close the breaker
 	public static final String PROMPT_CONTEXT_FOR_GENERATING_MAIN_STORY = "привет, я сейчас тебе скину ситуацию, а твоя задача - на основе этой ситуации создать историю для пошаговой квест-игры с подробной линией повествования, состоящей из последовательных шагов. Каждый шаг должен включать описание ситуации и два варианта выбора, ведущие к разным концовкам В игре обязательно должна быть как минимум одна хорошая концовка (победа) и несколько плохих концовок (поражения). Каждый выбор в конце обязательно должен приводить к одной из концовок. Выборы должны содержать текстовое описание ситуации и четкие флаги. Общие требования: Общее количество шагов не больше 10. Каждая ситуация и концовка должна показывать какой выбор приводит к ней в таком формате: (привело номер и буква выбора).Каждый выбор должен иметь один или несколько следующих флагов:. укажи номер вопроса и его букву, например (Y1 / Y2 и т.д.). goBack (если этот выбор возвращает игрока на предыдущий шаг). goNext (если выбор ведет к следующему шагу). victory (если выбор приводит к хорошей концовке). fail (если выбор приводит к плохой концовке).  Описание должно быть четким, последовательным, и содержать флаги у всех вариантов выбора. Структура должна быть выдержана строго в json виде, например: 'Ситуация': { 'Описание': 'текстовое описание', 'Индекс ситуации (первая буква S и затем номер, S1, S2)': 'индекс', 'Привело из': 'Индекс выбора, который привел к этой ситуации (если нет то указать -', 'Выборы ситуации': [ { 'Описание': 'текстовое описание', 'Индекс выбора': 'индекс выборы(первая буква Y и затем номер, Y1, Y2)', 'Флаг': 'флаг (goNext, goBack, victory, fail', 'Ведет к': 'индекс ситуации куда ведет выбор (если есть флаг goBack, то этот выбор ведет к ситуации, которой принадлежит' } ] }, 'Победа': { 'Описание': 'текстовое описание', 'Индекс победы (первая буква V и затем номер, V1, V2)': 'индекс', 'Привело из': 'Индекс выбора, который привел к этой победе (если нет то указать -' }, 'Поражение': { 'Описание': 'текстовое описание', 'Индекс поражения (первая буква F и затем номер, F1, F2)': 'индекс', 'Привело из': 'Индекс выбора, который привел к этому поражению (если нет то указать -' }. Строго придерживайся этому формату, так как мне нужно будет парсить твою историю. Пришли json ответа в текстовом формате. Если в запросе указано 'я', то это значит придумай историю где польщователь является главным героем";
 	public static final String PERFECT_STORY_EXAMPLE = "вот тебе пример, на который ты сможешь опираться: { 'Ситуация': { 'Описание': 'Вы - детектив, расследующий кражу Великой Книги Рецептов из известного ресторана. У вас есть несколько зацепок: свидетель, который видел подозрительного повара, и странная записка, оставленная на месте преступления.', 'Индекс ситуации': 'S1', 'Привело из': '-', 'Выборы ситуации': [ { 'Описание': 'Допросить свидетеля.', 'Индекс выбора': 'Y1', 'Флаг': 'goNext', 'Ведет к': 'S2' }, { 'Описание': 'Изучить записку.', 'Индекс выбора': 'Y2', 'Флаг': 'goNext', 'Ведет к': 'S3' } ] }, 'Ситуация': { 'Описание': 'Свидетель рассказывает, что видел, как повар уезжал на машине с логотипом ресторана. Он также упоминает, что повар часто посещал странные места.', 'Индекс ситуации': 'S2', 'Привело из': 'Y1', 'Выборы ситуации': [ { 'Описание': 'Отправиться в одно из странных мест.', 'Индекс выбора': 'Y3', 'Флаг': 'goNext', 'Ведет к': 'S4' }, { 'Описание': 'Отследить машину по камерам наблюдения.', 'Индекс выбора': 'Y4', 'Флаг': 'fail', 'Ведет к': 'F1' } ] }, 'Ситуация': { 'Описание': 'Записка содержит загадочные символы и упоминание о тайной встрече в старом складе.', 'Индекс ситуации': 'S3', 'Привело из': 'Y2', 'Выборы ситуации': [ { 'Описание': 'Отправиться на старый склад.', 'Индекс выбора': 'Y5', 'Флаг': 'goNext', 'Ведет к': 'S4' }, { 'Описание': 'Попробовать расшифровать символы.', 'Индекс выбора': 'Y6', 'Флаг': 'fail', 'Ведет к': 'F2' } ] }, 'Ситуация': { 'Описание': 'Вы прибываете на старый склад и находите там повара, который пытается продать книгу на чёрном рынке. У вас есть шанс его задержать.', 'Индекс ситуации': 'S4', 'Привело из': 'Y3 / Y5', 'Выборы ситуации': [ { 'Описание': 'Арестовать повара.', 'Индекс выбора': 'Y7', 'Флаг': 'victory', 'Ведет к': 'V1' }, { 'Описание': 'Попробовать договориться с поваром.', 'Индекс выбора': 'Y8', 'Флаг': 'fail', 'Ведет к': 'F3' } ] }, 'Победа': { 'Описание': 'Вы успешно арестовали повара и вернули Великую Книгу Рецептов в ресторан. Ваша репутация как детектива возросла.', 'Индекс победы': 'V1', 'Привело из': 'Y7' }, 'Поражение': { 'Описание': 'Вы не смогли отследить машину, и следы повара затерялись. Книга утеряна навсегда.', 'Индекс поражения': 'F1', 'Привело из': 'Y4' }, 'Поражение': { 'Описание': 'Попытка расшифровать символы оказалась безуспешной, и вы упустили шанс поймать повара.', 'Индекс поражения': 'F2', 'Привело из': 'Y6' }, 'Поражение': { 'Описание': 'Повар не поддался на уговоры и сбежал, оставив вас ни с чем.', 'Индекс поражения': 'F3', 'Привело из': 'Y8' } }";
+	public static final String PROMPT_CONTEXT_FOR_OUTLINE = PROMPT_CONTEXT_FOR_GENERATING_MAIN_STORY + " Сейчас нужен только краткий план истории: каждое 'Описание' должно быть не длиннее пяти слов, подробные описания будут написаны отдельно.";
+	public static final String PROMPT_CONTEXT_FOR_DETAILS = "Ты пишешь подробные описания для готового плана пошаговой квест-игры. Тебе пришлют тему истории, весь план (индекс: краткое описание) и индексы элементов, которые нужно описать. Для каждого запрошенного элемента напиши ровно одну строку в формате 'индекс: описание', например 'S2: текст'. Ситуация (S) - два-четыре предложения, выбор (Y) - одно предложение от лица игрока, победа (V) и поражение (F) - два-три предложения. Не меняй индексы, не описывай другие элементы и не используй одинарные кавычки.";
+	public static final String PROMPT_FOR_LAZY_PART = ". Напиши только начало истории: не больше %d ситуаций подряд от первой. Выбор, после которого история должна продолжаться, отметь флагом 'continue' и 'Ведет к': '-', продолжение будет написано позже. Каждая ветка должна заканчиваться победой, поражением или выбором с флагом 'continue'";
 
 }
@@ -0,0 +1,41 @@
+package org.questgame.webquestgame.Additional;
+
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+
+import java.util.function.Consumer;
+
+/**
+ * The {@code TextContentSink} class collects the first content of chat-completions response into a string,
+ * for responses, that are not stories (e.g. outlines or descriptions)
+ *
+ * @see ContentSink
+ */
+public class TextContentSink implements ContentSink<String> {
+
+	/**
+	 * The first content of the response
+	 */
+	private final StringBuilder text = new StringBuilder();
+
+	/**
+	 * Shows that the first content is started
+	 */
+	private boolean started;
+
+	@Override
+	public Consumer<String> nextContent() {
+		if (started) return piece -> {};
+		started = true;
+		return text::append;
+	}
+
+	/**
+	 * @return the first content of the response
+	 * @throws ChatGptGenerationException if the response has no content
+	 */
+	@Override
+	public String finish() {
+		if (!started) throw new ChatGptGenerationException("AI Response doesn't contain content");
+		return text.toString();
+	}
+}
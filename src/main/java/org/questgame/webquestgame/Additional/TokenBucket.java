@@ -0,0 +1,116 @@
+package org.questgame.webquestgame.Additional;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The {@code TokenBucket} class is a lock-free token bucket: it holds up to {@code capacity} tokens,
+ * which are refilled continuously with the configured rate.
+ * <p>
+ * The state (number of tokens and time of the last refill) is replaced atomically with compare-and-set,
+ * so acquiring tokens never blocks other threads.
+ * </p>
+ *
+ * @see RateLimiter
+ */
+public class TokenBucket {
+
+	/**
+	 * Maximum number of tokens in the bucket
+	 */
+	private final double capacity;
+
+	/**
+	 * Number of tokens added per nanosecond
+	 */
+	private final double tokensPerNano;
+
+	/**
+	 * Current state of the bucket
+	 */
+	private final AtomicReference<State> state;
+
+	/**
+	 * Creates a full bucket
+	 * @param capacity maximum number of tokens, also the number of tokens added per {@code period}
+	 * @param period   time, in which the empty bucket is refilled completely
+	 */
+	public TokenBucket(long capacity, Duration period) {
+		this.capacity = capacity;
+		this.tokensPerNano = (double) capacity / period.toNanos();
+		this.state = new AtomicReference<>(new State(capacity, System.nanoTime()));
+	}
+
+	/**
+	 * Takes tokens from the bucket, if there are enough tokens
+	 * @param tokens number of tokens to take
+	 * @return true if tokens were taken
+	 */
+	public boolean tryAcquire(double tokens) {
+		while (true) {
+			State current = state.get();
+			State refilled = refill(current, System.nanoTime());
+			if (refilled.tokens() < tokens) return false;
+			if (state.compareAndSet(current, new State(refilled.tokens() - tokens, refilled.updatedAt()))) return true;
+		}
+	}
+
+	/**
+	 * Returns tokens to the bucket, or takes additional tokens, when {@code tokens} is negative.
+	 * Taking tokens may leave the bucket in debt (negative number of tokens)
+	 * @param tokens number of tokens to return
+	 */
+	public void release(double tokens) {
+		while (true) {
+			State current = state.get();
+			State refilled = refill(current, System.nanoTime());
+			double updated = Math.min(capacity, refilled.tokens() + tokens);
+			if (state.compareAndSet(current, new State(updated, refilled.updatedAt()))) return;
+		}
+	}
+
+	/**
+	 * Calculates time, after which the bucket will have enough tokens
+	 * @param tokens number of tokens
+	 * @return time in nanoseconds, 0 if tokens are available now
+	 */
+	public long nanosUntilAvailable(double tokens) {
+		State refilled = refill(state.get(), System.nanoTime());
+		double missing = tokens - refilled.tokens();
+		return missing <= 0 ? 0 : (long) Math.ceil(missing / tokensPerNano);
+	}
+
+	/**
+	 * @return number of tokens available now
+	 */
+	public double getAvailable() {
+		return refill(state.get(), System.nanoTime()).tokens();
+	}
+
+	/**
+	 * @return maximum number of tokens in the bucket
+	 */
+	public double getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Calculates state of the bucket at the specified time
+	 * @param current current state
+	 * @param now     time in nanoseconds
+	 * @return refilled state
+	 */
+	private State refill(State current, long now) {
+		long elapsed = now - current.updatedAt();
+		if (elapsed <= 0) return current;
+		return new State(Math.min(capacity, current.tokens() + elapsed * tokensPerNano), now);
+	}
+
+	/**
+	 * Immutable state of the bucket
+	 * @param tokens    number of tokens
+	 * @param updatedAt time of the last refill in nanoseconds
+	 */
+	private record State(double tokens, long updatedAt) {
+	}
+}
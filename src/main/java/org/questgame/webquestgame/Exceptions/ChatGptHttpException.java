@@ -0,0 +1,29 @@
+package org.questgame.webquestgame.Exceptions;
+
+import java.time.Duration;
+
+public class ChatGptHttpException extends ChatGptGenerationException {
+	/**
+	 * HTTP status code of the response
+	 */
+	private final int statusCode;
+
+	/**
+	 * Value of Retry-After header, or null if the response doesn't have it
+	 */
+	private final Duration retryAfter;
+
+	public ChatGptHttpException(String message, int statusCode, Duration retryAfter) {
+		super(message);
+		this.statusCode = statusCode;
+		this.retryAfter = retryAfter;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public Duration getRetryAfter() {
+		return retryAfter;
+	}
+}
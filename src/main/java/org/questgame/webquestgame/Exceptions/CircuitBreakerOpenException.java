@@ -0,0 +1,14 @@
+package org.questgame.webquestgame.Exceptions;
+
+public class CircuitBreakerOpenException extends ChatGptGenerationException {
+	public CircuitBreakerOpenException() {
+	}
+
+	public CircuitBreakerOpenException(String message) {
+		super(message);
+	}
+
+	public CircuitBreakerOpenException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,14 @@
+package org.questgame.webquestgame.Exceptions;
+
+public class RateLimitExceededException extends ChatGptGenerationException {
+	public RateLimitExceededException() {
+	}
+
+	public RateLimitExceededException(String message) {
+		super(message);
+	}
+
+	public RateLimitExceededException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,22 @@
+package org.questgame.webquestgame.Exceptions;
+
+public class RecordingException extends RuntimeException {
+	public RecordingException() {
+	}
+
+	public RecordingException(String message) {
+		super(message);
+	}
+
+	public RecordingException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public RecordingException(Throwable cause) {
+		super(cause);
+	}
+
+	public RecordingException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+		super(message, cause, enableSuppression, writableStackTrace);
+	}
+}
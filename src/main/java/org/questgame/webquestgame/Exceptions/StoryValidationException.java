@@ -0,0 +1,37 @@
+package org.questgame.webquestgame.Exceptions;
+
+import org.questgame.webquestgame.Logic.ElementHandlers.ValidationReport;
+import org.questgame.webquestgame.Logic.Story;
+
+public class StoryValidationException extends ChatGptGenerationException {
+	/**
+	 * Problems of the rejected story
+	 */
+	private final ValidationReport report;
+
+	/**
+	 * Rejected story, it may be repaired with {@link org.questgame.webquestgame.Logic.ElementHandlers.StoryRepairer}
+	 */
+	private final Story story;
+
+	public StoryValidationException(ValidationReport report) {
+		this(report, null);
+	}
+
+	public StoryValidationException(ValidationReport report, Story story) {
+		super(report.toString());
+		this.report = report;
+		this.story = story;
+	}
+
+	public ValidationReport getReport() {
+		return report;
+	}
+
+	/**
+	 * @return rejected story, or null if it is not available
+	 */
+	public Story getStory() {
+		return story;
+	}
+}
@@ -0,0 +1,57 @@
+package org.questgame.webquestgame.Listeners;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.ChatGPTClient;
+import org.questgame.webquestgame.Additional.RateLimiter;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryPool;
+import org.questgame.webquestgame.Simulator.LlmSimulator;
+
+/**
+ * The {@code ApplicationListener} class prepares shared resources when the application is deployed
+ * and releases them when the application is stopped.
+ * <p>
+ * On startup it starts {@link LlmSimulator}, if it is enabled, warms up the shared HTTP client of {@link ChatGPTClient},
+ * so the first generation does not pay for the connection setup, and starts filling {@link StoryPool}.
+ * On shutdown it stops the pool, the rate limiter, the client's executor and the simulator.
+ * </p>
+ *
+ * @see ChatGPTClient
+ * @see StoryPool
+ * @see RateLimiter
+ */
+public class ApplicationListener implements ServletContextListener {
+
+	/**
+	 * Logger instance for recording application lifecycle events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Called when the application is deployed
+	 * @param sce the {@link ServletContextEvent} containing the initialized context
+	 */
+	@Override
+	public void contextInitialized(ServletContextEvent sce) {
+		log.info("Application started, preparing shared resources");
+		if (Settings.SIMULATOR_ENABLED) LlmSimulator.getDefault().start();
+		ChatGPTClient.warmUp();
+		StoryPool.getDefault().start();
+	}
+
+	/**
+	 * Called when the application is stopped
+	 * @param sce the {@link ServletContextEvent} containing the destroyed context
+	 */
+	@Override
+	public void contextDestroyed(ServletContextEvent sce) {
+		log.info("Application stopped, releasing shared resources");
+		StoryPool.getDefault().shutdown();
+		RateLimiter.getDefault().shutdown();
+		ChatGPTClient.shutdown();
+		if (Settings.SIMULATOR_ENABLED) LlmSimulator.getDefault().stop();
+	}
+}
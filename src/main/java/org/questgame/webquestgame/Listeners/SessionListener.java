@@ -0,0 +1,33 @@
+package org.questgame.webquestgame.Listeners;
+
+import jakarta.servlet.http.HttpSessionEvent;
+import jakarta.servlet.http.HttpSessionListener;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryRegistry;
+
+/**
+ * The {@code SessionListener} class releases the shared story of a session, when the session is finished,
+ * so {@link StoryRegistry} can remove stories, that nobody plays.
+ *
+ * @see StoryRegistry
+ */
+public class SessionListener implements HttpSessionListener {
+
+	/**
+	 * Logger instance for recording session events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Called when the session is invalidated or expired
+	 * @param se the {@link HttpSessionEvent} containing the destroyed session
+	 */
+	@Override
+	public void sessionDestroyed(HttpSessionEvent se) {
+		String storyId = (String) se.getSession().getAttribute("storyId");
+		if (storyId == null) return;
+		log.debug("Session {} finished, story {} is released", se.getSession().getId(), storyId);
+		StoryRegistry.getDefault().release(storyId, se.getSession().getId());
+	}
+}
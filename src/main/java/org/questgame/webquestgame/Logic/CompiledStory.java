@@ -0,0 +1,364 @@
+package org.questgame.webquestgame.Logic;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Logic.Elements.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * An immutable, compact form of a complete {@link Story} for playing it.
+ * <p>
+ * Elements are numbered with ordinals and kept in a few primitive arrays instead of objects: a byte array of types,
+ * indexes of keys and descriptions in a pool of unique strings, situation choices as CSR arrays (choices of situation
+ * {@code s} are {@code choices[choiceOffsets[s]] .. choices[choiceOffsets[s + 1] - 1]}) and the situation, that every
+ * choice leads to, as an int array. A story takes a few int per element instead of an object with arrays of links,
+ * so thousands of stories can be kept in memory, and {@link org.questgame.webquestgame.Logic.ElementHandlers.ElementManager}
+ * moves through it without any lookups by keys.
+ * </p>
+ * <p>
+ * Elements are still available as views: {@link #situation(int)} creates a situation with its choices for pages, and
+ * {@link #toStory()} creates the whole linked {@link Story}. Stories, that are still being generated or have pending
+ * situations, change while they are played, so they are not compiled (see {@link #canCompile(Story)}).
+ * </p>
+ *
+ * @see Story
+ */
+public final class CompiledStory {
+
+	/**
+	 * Logger for recording compilation of stories
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Types of elements
+	 */
+	public static final byte MAIN_SITUATION = 0;
+	public static final byte SITUATION = 1;
+	public static final byte VICTORY = 2;
+	public static final byte FAIL = 3;
+	public static final byte CHOICE = 4;
+	public static final byte CHOICE_STAY = 5;
+
+	/**
+	 * Ordinal, that means no element
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * Types of elements by ordinals
+	 */
+	private final byte[] types;
+
+	/**
+	 * Pool of unique keys and descriptions
+	 */
+	private final String[] strings;
+
+	/**
+	 * Keys of elements, as indexes in the pool
+	 */
+	private final int[] keys;
+
+	/**
+	 * Descriptions of elements, as indexes in the pool, {@link #NONE} for null
+	 */
+	private final int[] descriptions;
+
+	/**
+	 * Start of choices of every element in {@link #choices}, the last item is the number of choices
+	 */
+	private final int[] choiceOffsets;
+
+	/**
+	 * Ordinals of choices of all situations, in order of situations
+	 */
+	private final int[] choices;
+
+	/**
+	 * Ordinal of the situation, that a choice comes from, {@link #NONE} for situations
+	 */
+	private final int[] sources;
+
+	/**
+	 * Ordinal of the situation, that a choice leads to, {@link #NONE} for situations
+	 */
+	private final int[] targets;
+
+	/**
+	 * Ordinal of the main situation (S1)
+	 */
+	private final int main;
+
+	private CompiledStory(byte[] types, String[] strings, int[] keys, int[] descriptions, int[] choiceOffsets, int[] choices,
+						  int[] sources, int[] targets, int main) {
+		this.types = types;
+		this.strings = strings;
+		this.keys = keys;
+		this.descriptions = descriptions;
+		this.choiceOffsets = choiceOffsets;
+		this.choices = choices;
+		this.sources = sources;
+		this.targets = targets;
+		this.main = main;
+	}
+
+	/**
+	 * Checks, that the story doesn't change any more, so it can be compiled
+	 * @param story story to check
+	 * @return true if the story is loaded, it has no expander and no pending situations
+	 */
+	public static boolean canCompile(Story story) {
+		if (story.isLoading() || story.getExpander() != null || story.getSTORY_ELEMENTS() == null) return false;
+		for (Element element : story.getSTORY_ELEMENTS().values()) {
+			if (element instanceof PendingSituation) return false;
+		}
+		return story.getSTORY_ELEMENTS().get("S1") instanceof MainSituation;
+	}
+
+	/**
+	 * Compiles the story. Links to elements, that are not in the story, are dropped
+	 * @param story complete story
+	 * @return compiled story
+	 * @throws IllegalArgumentException if the story can't be compiled
+	 */
+	public static CompiledStory compile(Story story) {
+		if (!canCompile(story)) throw new IllegalArgumentException("Story is not complete, it can't be compiled");
+		Map<String, Element> elements = story.getSTORY_ELEMENTS();
+		int size = elements.size();
+		Map<Element, Integer> ordinals = new IdentityHashMap<>(size);
+		Element[] byOrdinal = new Element[size];
+		byte[] types = new byte[size];
+		int[] keys = new int[size];
+		int[] descriptions = new int[size];
+		Map<String, Integer> pool = new HashMap<>(size * 3);
+		int ordinal = 0;
+		int choiceCount = 0;
+		for (Map.Entry<String, Element> entry : elements.entrySet()) {
+			Element element = entry.getValue();
+			ordinals.putIfAbsent(element, ordinal);
+			byOrdinal[ordinal] = element;
+			types[ordinal] = typeOf(element);
+			keys[ordinal] = pool.computeIfAbsent(entry.getKey(), key -> pool.size());
+			descriptions[ordinal] = element.getDescription() == null ? NONE
+					: pool.computeIfAbsent(element.getDescription(), description -> pool.size());
+			if (element instanceof MainSituation situation && situation.getChoices() != null) {
+				choiceCount += situation.getChoices().length;
+			}
+			ordinal++;
+		}
+
+		int[] choiceOffsets = new int[size + 1];
+		int[] choices = new int[choiceCount];
+		int[] sources = new int[size];
+		int[] targets = new int[size];
+		int next = 0;
+		for (int i = 0; i < size; i++) {
+			choiceOffsets[i] = next;
+			sources[i] = NONE;
+			targets[i] = NONE;
+			if (byOrdinal[i] instanceof Choice choice) {
+				sources[i] = ordinals.getOrDefault(choice.getLeadFrom(), NONE);
+				targets[i] = ordinals.getOrDefault(choice.goNext(), NONE);
+			} else if (((MainSituation) byOrdinal[i]).getChoices() != null) {
+				for (Choice choice : ((MainSituation) byOrdinal[i]).getChoices()) {
+					Integer choiceOrdinal = choice == null ? null : ordinals.get(choice);
+					if (choiceOrdinal != null) choices[next++] = choiceOrdinal;
+				}
+			}
+		}
+		choiceOffsets[size] = next;
+
+		String[] strings = new String[pool.size()];
+		pool.forEach((string, index) -> strings[index] = string);
+		CompiledStory compiled = new CompiledStory(types, strings, keys, descriptions, choiceOffsets,
+				next == choices.length ? choices : Arrays.copyOf(choices, next), sources, targets, ordinals.get(elements.get("S1")));
+		log.debug("Story of {} elements compiled, {} unique strings", size, strings.length);
+		return compiled;
+	}
+
+	private static byte typeOf(Element element) {
+		if (element instanceof Choice choice) return choice.isGoNext() ? CHOICE : CHOICE_STAY;
+		if (element instanceof Victory) return VICTORY;
+		if (element instanceof Fail) return FAIL;
+		if (element instanceof Situation) return SITUATION;
+		if (element instanceof MainSituation) return MAIN_SITUATION;
+		throw new IllegalArgumentException("Element " + element.getClass().getName() + " can't be compiled");
+	}
+
+	/**
+	 * @return number of elements
+	 */
+	public int size() {
+		return types.length;
+	}
+
+	/**
+	 * @return ordinal of the main situation (S1)
+	 */
+	public int getMain() {
+		return main;
+	}
+
+	/**
+	 * @param ordinal ordinal of the element
+	 * @return type of the element
+	 */
+	public byte type(int ordinal) {
+		return types[ordinal];
+	}
+
+	/**
+	 * @param ordinal ordinal of the element
+	 * @return key of the element, e.g. "S4"
+	 */
+	public String key(int ordinal) {
+		return strings[keys[ordinal]];
+	}
+
+	/**
+	 * @param ordinal ordinal of the element
+	 * @return description of the element
+	 */
+	public String description(int ordinal) {
+		return descriptions[ordinal] == NONE ? null : strings[descriptions[ordinal]];
+	}
+
+	/**
+	 * @param ordinal ordinal of the element
+	 * @return true if the element is a victory or a fail
+	 */
+	public boolean isEnding(int ordinal) {
+		return types[ordinal] == VICTORY || types[ordinal] == FAIL;
+	}
+
+	/**
+	 * @param situation ordinal of the situation
+	 * @return number of choices of the situation, 0 for choices
+	 */
+	public int choiceCount(int situation) {
+		return choiceOffsets[situation + 1] - choiceOffsets[situation];
+	}
+
+	/**
+	 * @param situation ordinal of the situation
+	 * @param index     index of the choice in the situation
+	 * @return ordinal of the choice
+	 * @throws IllegalArgumentException if the situation has no choice with this index
+	 */
+	public int choice(int situation, int index) {
+		if (index < 0 || index >= choiceCount(situation)) {
+			throw new IllegalArgumentException("Index is invalid, " + index + " >= " + choiceCount(situation));
+		}
+		return choices[choiceOffsets[situation] + index];
+	}
+
+	/**
+	 * @param choice ordinal of the choice
+	 * @return ordinal of the situation, that the choice leads to (the same situation, if the choice doesn't go next),
+	 * or {@link #NONE}
+	 */
+	public int target(int choice) {
+		return targets[choice];
+	}
+
+	/**
+	 * Finds element by key
+	 * @param key key of the element, e.g. "S4"
+	 * @return ordinal of the element, or {@link #NONE}
+	 */
+	public int ordinalOf(String key) {
+		for (int i = 0; i < keys.length; i++) {
+			if (strings[keys[i]].equals(key)) return i;
+		}
+		return NONE;
+	}
+
+	/**
+	 * Creates view of the situation for pages: the situation with its choices, choices come from the view, but
+	 * don't lead anywhere, the story is navigated by ordinals
+	 * @param ordinal ordinal of the situation
+	 * @return new {@link MainSituation} of the type of the situation
+	 */
+	public MainSituation situation(int ordinal) {
+		Choice[] views = new Choice[choiceCount(ordinal)];
+		for (int i = 0; i < views.length; i++) {
+			int choice = choices[choiceOffsets[ordinal] + i];
+			views[i] = new Choice(description(choice), types[choice] == CHOICE);
+		}
+		MainSituation situation = createSituation(ordinal, views, null);
+		for (Choice view : views) {
+			view.setLeadFrom(situation);
+		}
+		return situation;
+	}
+
+	/**
+	 * Creates the whole story from compiled elements, all links are restored, choices leading to a situation
+	 * are added to its {@code leadFrom}
+	 * @return new linked {@link Story}
+	 */
+	public Story toStory() {
+		int size = types.length;
+		Element[] elements = new Element[size];
+		int[] incoming = new int[size];
+		for (int i = 0; i < size; i++) {
+			if (types[i] != CHOICE && types[i] != CHOICE_STAY) continue;
+			elements[i] = new Choice(description(i), types[i] == CHOICE);
+			if (types[i] == CHOICE && targets[i] != NONE) incoming[targets[i]]++;
+		}
+		Choice[][] leadFrom = new Choice[size][];
+		for (int i = 0; i < size; i++) {
+			if (types[i] == CHOICE && targets[i] != NONE) {
+				Choice[] from = leadFrom[targets[i]];
+				if (from == null) from = leadFrom[targets[i]] = new Choice[incoming[targets[i]]];
+				from[from.length - incoming[targets[i]]--] = (Choice) elements[i];
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			if (elements[i] != null) continue;
+			Choice[] situationChoices = null;
+			if (choiceCount(i) > 0) {
+				situationChoices = new Choice[choiceCount(i)];
+				for (int c = 0; c < situationChoices.length; c++) {
+					situationChoices[c] = (Choice) elements[choices[choiceOffsets[i] + c]];
+				}
+			}
+			elements[i] = createSituation(i, situationChoices, leadFrom[i]);
+		}
+		Map<String, Element> story = new HashMap<>(size * 4 / 3 + 1);
+		for (int i = 0; i < size; i++) {
+			story.put(key(i), elements[i]);
+			if (elements[i] instanceof Choice choice) {
+				choice.setLeadFrom(sources[i] == NONE ? null : (MainSituation) elements[sources[i]]);
+				choice.setLeadTo(targets[i] == NONE ? null : (MainSituation) elements[targets[i]]);
+			}
+		}
+		return new Story(story);
+	}
+
+	/**
+	 * Creates situation of the type of the element
+	 * @param ordinal  ordinal of the situation
+	 * @param choices  choices of the situation, or null
+	 * @param leadFrom choices leading to the situation, or null
+	 * @return new {@link MainSituation}
+	 */
+	private MainSituation createSituation(int ordinal, Choice[] choices, Choice[] leadFrom) {
+		MainSituation situation = switch (types[ordinal]) {
+			case MAIN_SITUATION -> new MainSituation(description(ordinal), choices);
+			case SITUATION -> new Situation(description(ordinal), choices, leadFrom);
+			case VICTORY -> new Victory(description(ordinal), leadFrom);
+			case FAIL -> new Fail(description(ordinal), leadFrom);
+			default -> throw new IllegalArgumentException("Element " + key(ordinal) + " is not a situation");
+		};
+		if (choices != null && (types[ordinal] == VICTORY || types[ordinal] == FAIL)) {
+			for (Choice choice : choices) situation.addChoice(choice);
+		}
+		return situation;
+	}
+}
@@ -1,17 +1,20 @@
 package org.questgame.webquestgame.Logic.ElementHandlers;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.questgame.webquestgame.Exceptions.ChoiceInitializeException;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+import org.questgame.webquestgame.Exceptions.StoryValidationException;
 import org.questgame.webquestgame.Logic.Elements.*;
 import org.questgame.webquestgame.Logic.Story;
 
 import java.util.*;
-import java.util.function.Consumer;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * The {@code ElementInitializer} class is responsible for parsing and initializing game elements
@@ -36,6 +39,11 @@ public class ElementInitializer {
 	 */
 	private static Logger log = LogManager.getLogger();
 
+	/**
+	 * Parts of the story, that are parsed in parallel, are not shorter than this number of characters
+	 */
+	private static final int MIN_PARALLEL_PART = 16_384;
+
 	/**
 	 * A map of initialized elements, where the key is the element index and the value is the element object.
 	 * This map is replenishing with every method call.
@@ -55,19 +63,127 @@ public class ElementInitializer {
 	 */
 	private String story;
 
+	/**
+	 * Situation and next element of every choice, recorded while parsing, in the order of the story.
+	 * Links are resolved with this map and {@code elements} map, so linking doesn't search the story text.
+	 */
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final Map<String, ChoiceLink> choiceLinks = new LinkedHashMap<>();
+
+	/**
+	 * References of a choice
+	 * @param situationIndex index of the situation, that contains the choice
+	 * @param leadToIndex    index of the next element ('Ведет к'), null if it is not specified
+	 */
+	private record ChoiceLink(String situationIndex, String leadToIndex) {
+	}
+
+	/**
+	 * Index of the element, that lists the choice in its 'Привело из', by index of the choice.
+	 * Used to repair choices, which 'Ведет к' is missing or points to a missing situation
+	 */
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final Map<String, String> leadFromHints = new HashMap<>();
+
+	/**
+	 * Choices, that couldn't be linked with their situations, and elements with duplicate indexes
+	 */
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final List<ValidationReport.Problem> linkProblems = new ArrayList<>();
+
+	/**
+	 * Stories, that are not shorter than this number of characters, are parsed in parallel, 0 - always sequentially
+	 */
+	private int parallelThreshold = Settings.PARALLEL_PARSING_THRESHOLD;
+
+	/**
+	 * Pool, that parses parts of long stories
+	 */
+	private ForkJoinPool parsingPool = ForkJoinPool.commonPool();
+
 	/**
 	 * Public static method, that creates an instance of {@code ElementInitializer} and initialize all elements from AI Response
 	 * @param json AI Response, that contains Story Elements and data about AI Response
 	 * @return new {@link Story} with initialized and linked elements
+	 * @throws StoryValidationException if the story can't be played, see {@link StoryValidator}
 	 */
 	public static Story createStoryFromAiResponse(String json) {
-		ElementInitializer el = new ElementInitializer(json);
-		el.initializeAllElements();
+		return new ElementInitializer(json).createStory();
+	}
+
+	/**
+	 * Public static method, that creates a {@link Story} for every choice of AI Response,
+	 * when several stories were generated with one request
+	 * @param json AI Response, that contains several choices with Story Elements
+	 * @return list of new {@link Story} objects with initialized and linked elements
+	 * @throws StoryValidationException if the story can't be played, see {@link StoryValidator}
+	 */
+	public static List<Story> createStoriesFromAiResponse(String json) {
+		String[] contents = StringUtils.substringsBetween(json, "\"content\": \"", "\",");
+		List<Story> stories = new ArrayList<>();
+		if (contents == null) return stories;
+		for (String content : contents) {
+			stories.add(createStoryFromContent(content));
+		}
+		return stories;
+	}
+
+	/**
+	 * Public static method, that initializes all elements from story content, that is not wrapped into AI Response
+	 * @param content Story Elements in the same format, as the content of AI Response
+	 * @return new {@link Story} with initialized and linked elements
+	 * @throws StoryValidationException if the story can't be played, see {@link StoryValidator}
+	 */
+	public static Story createStoryFromContent(String content) {
+		ElementInitializer el = new ElementInitializer();
+		el.setStory(content);
+		return el.createStory();
+	}
+
+	/**
+	 * Initializes, links and validates all elements of {@code story}
+	 * @return new {@link Story} with initialized and linked elements
+	 * @throws StoryValidationException if the story can't be played, see {@link StoryValidator}
+	 */
+	private Story createStory() {
+		try {
+			initializeAllElements();
+		} catch (ChatGptGenerationException e) {
+			String repaired = StoryRepairer.repairText(story);
+			if (repaired.equals(story)) throw e;
+			log.warn("Story content is malformed ({}), parsing repaired content", e.getMessage());
+			elements.clear();
+			choiceLinks.clear();
+			leadFromHints.clear();
+			linkProblems.clear();
+			story = repaired;
+			initializeAllElements();
+		}
 		log.info("Started linking Situations and Choices");
-		el.setChoicesToSituation();
-		el.setNextSituationForChoice();
+		setChoicesToSituation();
+		setNextSituationForChoice();
 		log.info("Situations and Choices Linked");
-		return new Story(el.getElements());
+		ValidationReport report = StoryValidator.validate(elements, linkProblems);
+		if (!report.isValid()) throw new StoryValidationException(report, new Story(getElements()));
+		return new Story(getElements());
+	}
+
+	/**
+	 * Initializes and links elements of one top-level block of the story: a situation with its choices,
+	 * a victory or a fail. Used for parsing a story, that is still being generated.
+	 * <p>Choices are linked to their situation, links from choices to next situations are not set,
+	 * because next situations may be not generated yet.</p>
+	 * @param block text of the block, e.g. {@code 'Победа': { ... }}
+	 * @return map of initialized elements
+	 */
+	Map<String, Element> initializeBlock(String block) {
+		this.story = block + ",";
+		initializeAllElements();
+		setChoicesToSituation();
+		return elements;
 	}
 
 	/**
@@ -80,113 +196,206 @@ public class ElementInitializer {
 	}
 
 	/**
-	 * Initializes all elements
+	 * Initializes all elements of {@code story} in one pass with {@link StoryParser}
+	 * <p>All initialized elements will be put to {@code elements} map. Stories, that are not shorter than
+	 * {@code parallelThreshold}, are parsed in parallel with {@link #initializeInParallel()}</p>
 	 */
 	private void initializeAllElements() {
 		log.info("Started initializing elements from story");
-		initializeElements("'Ситуация': {", "]", this::initializeSituation);
-		initializeElements("'Победа': {", "},", this::initializeVictory);
-		initializeElements("'Поражение': {", "}", this::initializeFail);
-		initializeElements("'Выборы ситуации': [", "]", this::initializeChoices);
+		if (parallelThreshold > 0 && story.length() >= parallelThreshold && parsingPool.getParallelism() > 1) {
+			initializeInParallel();
+		} else {
+			StoryParser.parse(story, new ElementCollector(elements, choiceLinks, leadFromHints, linkProblems));
+		}
 		log.info("Elements initialized");
 	}
 
 	/**
-	 * Generic method for initializing elements based on specified tokens and an element creation method.
-	 * <p>All initialized elements will pe putted to {@code elements} map</p>
-	 * @param startToken     the starting token to identify the element block
-	 * @param endToken       the ending token to identify the element block
-	 * @param elementCreator a method reference to handle the specific element initialization
+	 * Splits {@code story} at top-level element boundaries, parses the parts on {@code parsingPool}
+	 * and merges their elements in the order of the story, so the result is the same, as of sequential parsing:
+	 * the first element with an index is kept, the others are reported as duplicates
 	 */
-	private void initializeElements(String startToken, String endToken, Consumer<String> elementCreator) {
-		String localStory = story;
-		while (localStory.contains(startToken)) {
-			String elementBlock = StringUtils.substringBetween(localStory, startToken, endToken);
-			elementCreator.accept(elementBlock);
-			localStory = StringUtils.substringAfter(localStory, startToken);
+	private void initializeInParallel() {
+		int granularity = Math.max(MIN_PARALLEL_PART, story.length() / (parsingPool.getParallelism() * 4));
+		List<ElementCollector> parts = parsingPool.invoke(new ParseTask(story, 0, story.length(), granularity));
+		for (ElementCollector part : parts) {
+			linkProblems.addAll(part.problems);
+			for (Map.Entry<String, Element> entry : part.elements.entrySet()) {
+				if (elements.putIfAbsent(entry.getKey(), entry.getValue()) != null) {
+					linkProblems.add(duplicate(entry.getKey(), entry.getValue()));
+				}
+			}
+			part.choiceLinks.forEach(choiceLinks::putIfAbsent);
+			part.leadFromHints.forEach(leadFromHints::putIfAbsent);
 		}
+		log.info("Story of {} characters parsed in {} parts", story.length(), parts.size());
 	}
 
 	/**
-	 * Initializes a situation element (either {@link MainSituation} or {@link Situation}) from the provided block of text.
-	 * @param situationBlock the block of text describing the situation
+	 * Creates problem of the element, that is skipped, because its index is already used
+	 * @param index   index of the element
+	 * @param element skipped element
+	 * @return {@link ValidationReport.ProblemType#DUPLICATE_INDEX} problem
 	 */
-	private void initializeSituation(String situationBlock) {
-		String description;
-		String situationIndex;
-		String leadFromIndex;
-
-		log.debug("Current Situation Block: \n{}", situationBlock);
-		description = StringUtils.substringBetween(situationBlock, "'Описание': '", "',");
-		situationIndex = StringUtils.substringBetween(situationBlock, "'Индекс ситуации': '", "',");
-		leadFromIndex = StringUtils.substringBetween(situationBlock, "'Привело из': '", "',");
-
-		if (leadFromIndex.equals("-")) {
-			elements.put(situationIndex, new MainSituation(description));
-			log.debug("MainSituation added to element Map, with index: {}, description: {}", situationIndex, description);
-		} else {
-			elements.put(situationIndex, new Situation(description));
-			log.debug("Situation added to element Map, with index: {}, description: {}", situationIndex, description);
-		}
-		log.info("Situation initialized");
+	private static ValidationReport.Problem duplicate(String index, Element element) {
+		log.error("Index {} is already used, {} is skipped", index, element.getClass().getSimpleName());
+		return new ValidationReport.Problem(ValidationReport.ProblemType.DUPLICATE_INDEX, index,
+				"Index is used by several elements, " + element.getClass().getSimpleName() + " is skipped");
 	}
 
 	/**
-	 * Initializes a {@link Victory} element from the provided block of text.
-	 * @param victoryBlock the block of text describing the victory
+	 * Puts parsed elements and references of choices to maps. An element, which index is already used, is skipped
+	 * and reported as a duplicate
 	 */
-	private void initializeVictory(String victoryBlock) {
-		String description;
-		String victoryIndex;
+	private static class ElementCollector implements StoryParser.Handler {
 
-		log.debug("Current Victory Block: \n{}", victoryBlock);
-		description = StringUtils.substringBetween(victoryBlock, "'Описание': '", "',");
-		victoryIndex = StringUtils.substringBetween(victoryBlock, "'Индекс победы': '", "',");
+		/**
+		 * Initialized elements
+		 */
+		private final Map<String, Element> elements;
 
-		elements.put(victoryIndex, new Victory(description));
-		log.debug("Victory added to element Map, with index: {}, description: {}", victoryIndex, description);
-		log.info("Victory initialized");
-	}
+		/**
+		 * References of choices, in the order of the story
+		 */
+		private final Map<String, ChoiceLink> choiceLinks;
 
-	/**
-	 * Initializes a {@link Fail} element from the provided block of text.
-	 * @param failBlock the block of text describing the failure
-	 */
-	private void initializeFail(String failBlock) {
-		String description;
-		String failIndex;
-
-		log.debug("Current Fail Block: \n{}", failBlock);
-		description = StringUtils.substringBetween(failBlock, "'Описание': '", "',");
-		failIndex = StringUtils.substringBetween(failBlock, "'Индекс поражения': '", "',");
-		elements.put(failIndex, new Fail(description));
-		log.debug("Fail added to element Map, with index: {}, description: {}", failIndex, description);
-		log.info("Fail initialized");
+		/**
+		 * Indexes of elements by indexes of choices, listed in their 'Привело из'
+		 */
+		private final Map<String, String> leadFromHints;
+
+		/**
+		 * Elements with duplicate indexes
+		 */
+		private final List<ValidationReport.Problem> problems;
+
+		/**
+		 * Creates collector, that puts elements to the specified maps
+		 * @param elements      map of initialized elements
+		 * @param choiceLinks   map of references of choices
+		 * @param leadFromHints map of elements by choices, that lead to them
+		 * @param problems      list of elements with duplicate indexes
+		 */
+		private ElementCollector(Map<String, Element> elements, Map<String, ChoiceLink> choiceLinks, Map<String, String> leadFromHints,
+								 List<ValidationReport.Problem> problems) {
+			this.elements = elements;
+			this.choiceLinks = choiceLinks;
+			this.leadFromHints = leadFromHints;
+			this.problems = problems;
+		}
+
+		/**
+		 * Puts the element to the map, if its index is not used yet
+		 * @param index   index of the element
+		 * @param element the element
+		 * @return true if the element is added
+		 */
+		private boolean put(String index, Element element) {
+			if (elements.putIfAbsent(index, element) == null) return true;
+			problems.add(duplicate(index, element));
+			return false;
+		}
+
+		/**
+		 * Remembers choices listed in 'Привело из' of the element, e.g. "Y3 / Y5"
+		 * @param index    index of the element
+		 * @param leadFrom value of 'Привело из', may be null
+		 */
+		private void hint(String index, String leadFrom) {
+			if (leadFrom == null) return;
+			for (String choiceIndex : StringUtils.split(leadFrom, "/,;() ")) {
+				if (choiceIndex.startsWith("Y")) leadFromHints.putIfAbsent(choiceIndex, index);
+			}
+		}
+
+		@Override
+		public void situation(String index, String description, boolean main, String leadFrom) {
+			if (!put(index, main ? new MainSituation(description) : new Situation(description))) return;
+			hint(index, leadFrom);
+			log.debug("{} added to element Map, with index: {}, description: {}", main ? "MainSituation" : "Situation", index, description);
+		}
+
+		@Override
+		public void choice(String situationIndex, String index, String description, String flag, String leadTo) {
+			if (!put(index, new Choice(description, flagHandler(flag)))) return;
+			if ("continue".equals(flag)) {
+				leadTo = PendingSituation.indexFor(index);
+				put(leadTo, new PendingSituation());
+			}
+			choiceLinks.put(index, new ChoiceLink(situationIndex, leadTo));
+			log.debug("Choice added to element Map, with index: {}, description: {}, goNext: {}", index, description, flag);
+		}
+
+		@Override
+		public void victory(String index, String description, String leadFrom) {
+			if (!put(index, new Victory(description))) return;
+			hint(index, leadFrom);
+			log.debug("Victory added to element Map, with index: {}, description: {}", index, description);
+		}
+
+		@Override
+		public void fail(String index, String description, String leadFrom) {
+			if (!put(index, new Fail(description))) return;
+			hint(index, leadFrom);
+			log.debug("Fail added to element Map, with index: {}, description: {}", index, description);
+		}
 	}
 
 	/**
-	 * Initializes {@link Choice} elements from the provided block of text.
-	 * @param choiceBlock the block of text describing the choices
+	 * Parses a range of the story: a long range is split in two at the element boundary nearest to its middle,
+	 * a short one is parsed with {@link StoryParser}
 	 */
-	private void initializeChoices(String choiceBlock) {
-		String description;
-		String choiceIndex;
-		String flag;
+	private static class ParseTask extends RecursiveTask<List<ElementCollector>> {
+
+		/**
+		 * Story content
+		 */
+		private final String story;
 
-		while (choiceBlock.contains("{")) {
-			String choice = StringUtils.substringBetween(choiceBlock, "{", "}");
-			log.debug("Current Choice Block: \n{}", choiceBlock);
+		/**
+		 * Bounds of the range
+		 */
+		private final int start;
+		private final int end;
 
-			description = StringUtils.substringBetween(choice, "'Описание': '", "',");
-			choiceIndex = StringUtils.substringBetween(choice, "'Индекс выбора': '", "',");
-			flag = StringUtils.substringBetween(choice, "'Флаг': '", "',");
+		/**
+		 * Ranges, that are not longer than this number of characters, are not split
+		 */
+		private final int granularity;
 
-			elements.put(choiceIndex, new Choice(description, flagHandler(flag)));
-			log.debug("Choice added to element Map, with index: {}, description: {}, goNext: {}", choiceIndex, description, flag);
+		/**
+		 * Creates task
+		 * @param story       story content
+		 * @param start       index of the first character of the range
+		 * @param end         index of the character after the range
+		 * @param granularity ranges, that are not longer than this number of characters, are not split
+		 */
+		private ParseTask(String story, int start, int end, int granularity) {
+			this.story = story;
+			this.start = start;
+			this.end = end;
+			this.granularity = granularity;
+		}
 
-			choiceBlock = StringUtils.substringAfter(choiceBlock, "{");
+		/**
+		 * @return parsed parts of the range, in the order of the story
+		 */
+		@Override
+		protected List<ElementCollector> compute() {
+			int middle = end - start > granularity ? StoryParser.findElementStart(story, start + (end - start) / 2, end) : end;
+			if (middle >= end) {
+				ElementCollector collector = new ElementCollector(new HashMap<>(), new LinkedHashMap<>(), new HashMap<>(), new ArrayList<>());
+				StoryParser.parse(story, start, end, collector);
+				List<ElementCollector> parts = new ArrayList<>();
+				parts.add(collector);
+				return parts;
+			}
+			ParseTask right = new ParseTask(story, middle, end, granularity);
+			right.fork();
+			List<ElementCollector> parts = new ParseTask(story, start, middle, granularity).compute();
+			parts.addAll(right.join());
+			return parts;
 		}
-		log.info("Choices initialized");
 	}
 
 	/**
@@ -194,9 +403,10 @@ public class ElementInitializer {
 	 * @param flag the flag string from the JSON
 	 * @return true if the flag indicates navigation, false otherwise
 	 */
-	private boolean flagHandler(String flag) {
+	private static boolean flagHandler(String flag) {
+		if (flag == null) return false;
 		switch (flag) {
-			case "goNext", "victory", "fail" -> {
+			case "goNext", "victory", "fail", "continue" -> {
 				return true;
 			}
 			default -> {
@@ -205,17 +415,44 @@ public class ElementInitializer {
 		}
 	}
 
+	/**
+	 * Returns index of the element, that the choice leads to ('Ведет к')
+	 * @param choiceIndex index of the choice
+	 * @return index of the next element, or null if the choice is not parsed or its next element is not specified
+	 */
+	String getLeadToIndex(String choiceIndex) {
+		ChoiceLink link = choiceLinks.get(choiceIndex);
+		return link == null ? null : link.leadToIndex();
+	}
+
+	/**
+	 * Returns problems found while parsing and linking, e.g. elements with duplicate indexes
+	 * @return list of problems, that {@link StoryValidator} can't find in the elements
+	 */
+	List<ValidationReport.Problem> getLinkProblems() {
+		return linkProblems;
+	}
+
+	/**
+	 * Returns indexes of elements by indexes of choices, listed in their 'Привело из'
+	 * @return map of recorded hints, e.g. "Y3" to "S2"
+	 */
+	Map<String, String> getLeadFromHints() {
+		return leadFromHints;
+	}
+
 	/**
 	 * Links Choices and Situations by adding link to {@link Situation} to {@code leadTo} property of {@link Choice} and
-	 * adds {@link Choice} to {@code leadFrom} property of {@link Situation}
+	 * adds {@link Choice} to {@code leadFrom} property of {@link Situation}.
+	 * <p>Next elements are taken from links recorded while parsing, so every choice is linked with one map lookup.
+	 * A choice, that leads to "-" or to an element, that is not a situation, is repaired with
+	 * {@link StoryRepairer#resolveLeadTo}, if it can't be repaired, it is left unlinked and reported to {@code linkProblems}.</p>
 	 */
 	private void setNextSituationForChoice() {
 		log.info("Setting next situations to choices");
-		Map<String, Element> choiceMap = elements.entrySet().stream()
-				.filter((entry) -> entry.getValue().getClass().equals(Choice.class))
-				.collect((Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
-		for (String choiceIndex : choiceMap.keySet()) {
-			Choice choice = (Choice) choiceMap.get(choiceIndex);
+		for (Map.Entry<String, ChoiceLink> entry : choiceLinks.entrySet()) {
+			String choiceIndex = entry.getKey();
+			if (!(elements.get(choiceIndex) instanceof Choice choice)) continue;
 			log.debug("Current choice: {}, goNext status: {}", choiceIndex, choice.isGoNext());
 
 			if (!choice.isGoNext()) {
@@ -223,15 +460,21 @@ public class ElementInitializer {
 				continue;
 			}
 
-			String choiceBlock = StringUtils.substringBetween(story, "'Индекс выбора': '" + choiceIndex + "'", "}");
-			String leadToIndex = StringUtils.substringBetween(choiceBlock, "'Ведет к': '", "'");
-
-			if (leadToIndex.equals("-")) {
-				log.error("Choice {} leadTo \"-\"", choiceIndex);
-				throw new ChoiceInitializeException("Choice " + choiceIndex + "leadTo \"-\"");
+			String leadToIndex = StoryRepairer.resolveLeadTo(choiceIndex, entry.getValue().leadToIndex(), elements::get, leadFromHints);
+			if (leadToIndex == null) leadToIndex = entry.getValue().leadToIndex();
+			if (leadToIndex == null || leadToIndex.equals("-")) {
+				log.error("Choice {} leadTo \"{}\"", choiceIndex, leadToIndex);
+				linkProblems.add(new ValidationReport.Problem(ValidationReport.ProblemType.UNRESOLVED_REFERENCE, choiceIndex,
+						"Choice leadTo \"" + leadToIndex + "\""));
+				continue;
+			}
+			if (!(elements.get(leadToIndex) instanceof Situation leadToSituation)) {
+				log.error("Choice {} leads to missing situation {}", choiceIndex, leadToIndex);
+				linkProblems.add(new ValidationReport.Problem(ValidationReport.ProblemType.UNRESOLVED_REFERENCE, choiceIndex,
+						"Choice leads to missing situation " + leadToIndex));
+				continue;
 			}
-			choice.setLeadTo((Situation) elements.get(leadToIndex));
-			Situation leadToSituation = (Situation) elements.get(leadToIndex);
+			choice.setLeadTo(leadToSituation);
 			leadToSituation.addLeadFrom(choice);
 			log.debug("Choice {} lead to Situation {} ", choiceIndex, leadToIndex);
 		}
@@ -240,32 +483,25 @@ public class ElementInitializer {
 
 	/**
 	 * Links Situations and Choices by adding {@link Choice} to {@code choices[]} of {@link Situation} and adds {@link Situation}
-	 * to {@code leadFrom} property of {@link Choice}
+	 * to {@code leadFrom} property of {@link Choice}.
+	 * <p>Choices are added in the order of the story, situations are taken from links recorded while parsing.
+	 * A choice, which index or situation index belongs to an element of another type, is not linked
+	 * and reported to {@code linkProblems}.</p>
 	 */
 	private void setChoicesToSituation() {
 		log.info("Setting Choices to Situations");
-		Map<String, Element> situationMap = elements.entrySet().stream()
-				.filter(entry -> entry.getValue().getClass().equals(MainSituation.class)
-						|| entry.getValue().getClass().equals(Situation.class))
-				.collect((Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
-
-		for (String situationIndex : situationMap.keySet()) {
-			MainSituation situation = (MainSituation) elements.get(situationIndex);
-			log.debug("Current situation: {}", situationIndex);
-			String situationBlock = StringUtils.substringBetween(story, "'Индекс ситуации': '" + situationIndex + "',", "]");
-			while (situationBlock.contains("'Индекс выбора'")) {
-				String choiceIndex = StringUtils.substringBetween(situationBlock, "Индекс выбора': '", "'");
-				if (elements.containsKey(choiceIndex)) {
-					Choice c = (Choice) elements.get(choiceIndex);
-					situation.addChoice(c);
-					c.setLeadFrom(situation);
-					log.debug("Situation {} and choice {} linked", situationIndex, choiceIndex);
-				} else {
-					log.error("element map doesn't contain key {}", choiceIndex);
-					throw new NoSuchElementException();
-				}
-				situationBlock = StringUtils.substringAfter(situationBlock, "'Индекс выбора'");
+		for (Map.Entry<String, ChoiceLink> entry : choiceLinks.entrySet()) {
+			String choiceIndex = entry.getKey();
+			String situationIndex = entry.getValue().situationIndex();
+			if (!(elements.get(choiceIndex) instanceof Choice c) || !(elements.get(situationIndex) instanceof MainSituation situation)) {
+				log.error("Choice {} of situation {} can't be linked", choiceIndex, situationIndex);
+				linkProblems.add(new ValidationReport.Problem(ValidationReport.ProblemType.UNRESOLVED_REFERENCE, choiceIndex,
+						"Choice " + choiceIndex + " of situation " + situationIndex + " can't be linked"));
+				continue;
 			}
+			situation.addChoice(c);
+			c.setLeadFrom(situation);
+			log.debug("Situation {} and choice {} linked", situationIndex, choiceIndex);
 		}
 		log.info("Choices set to Situations");
 	}
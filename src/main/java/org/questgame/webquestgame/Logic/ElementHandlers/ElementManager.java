@@ -1,12 +1,17 @@
 package org.questgame.webquestgame.Logic.ElementHandlers;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Logic.CompiledStory;
 import org.questgame.webquestgame.Logic.Elements.*;
 import org.questgame.webquestgame.Logic.Story;
 
+import java.util.Arrays;
+import java.util.EmptyStackException;
 import java.util.Stack;
 
 /**
@@ -16,6 +21,10 @@ import java.util.Stack;
  * It uses a stack-based structure to track the progression of {@link MainSituation} elements, allowing the user
  * to move between the main situation, current situation, and previous or next situations as required.
  * </p>
+ * <p>
+ * A {@link CompiledStory} is navigated by ordinals: the history is a stack of ints, and situations are returned
+ * as views created by {@link CompiledStory#situation(int)}.
+ * </p>
  *
  * @see Story
  * @see MainSituation
@@ -42,11 +51,31 @@ public class ElementManager {
 	 */
 	private final Stack<MainSituation> elementStack = new Stack<>();
 
+	/**
+	 * The compiled story, or null, if the story is navigated by its elements
+	 */
+	private final CompiledStory compiled;
+
+	/**
+	 * Navigation history of the compiled story, ordinals of situations, the current one is at {@code depth - 1}
+	 */
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private int[] path = new int[16];
+
+	/**
+	 * Number of situations in {@link #path}
+	 */
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private int depth;
+
 	/**
 	 * Retrieves the current situation from the top of the stack.
 	 * @return the current {@link MainSituation}
 	 */
 	public MainSituation getCurrentSituation() {
+		if (compiled != null) return compiled.situation(getCurrentOrdinal());
 		log.debug("Returning current situation ({})", elementStack.peek().getDescription());
 		return elementStack.peek();
 	}
@@ -57,9 +86,13 @@ public class ElementManager {
 	 * @return the previous {@link MainSituation}
 	 */
 	public MainSituation getPreviousSituation() {
-		if (elementStack.size() <= 1) {
+		if ((compiled != null ? depth : elementStack.size()) <= 1) {
 			return getMainSituation();
 		}
+		if (compiled != null) {
+			depth--;
+			return getCurrentSituation();
+		}
 		elementStack.pop();
 		log.debug("Returning previous situation ({})", elementStack.peek().getDescription());
 		return elementStack.peek();
@@ -68,14 +101,36 @@ public class ElementManager {
 	/**
 	 * Retrieves the next situation based on the choice index provided.
 	 * This method pushes the next situation onto the stack to maintain navigation history.
+	 * <p>If the story is still being generated and the next situation is not generated yet,
+	 * the method waits for it up to {@link Settings#STREAM_WAIT_TIMEOUT}. A {@link PendingSituation} is generated
+	 * with {@link StoryExpander}, if it is not generated in background yet, the method waits for it as well.</p>
 	 * @param index the index of the choice leading to the next situation
 	 * @return the next {@link MainSituation}
+	 * @throws IllegalStateException if the next situation was not generated in time, or it can't be generated
 	 */
 	public MainSituation getNextSituation(int index) {
+		if (compiled != null) {
+			int next = compiled.target(compiled.choice(getCurrentOrdinal(), index));
+			if (next == CompiledStory.NONE) throw new IllegalStateException("Choice doesn't lead to a situation");
+			push(next);
+			log.debug("Returning next situation ({})", compiled.description(next));
+			return getCurrentSituation();
+		}
 		if (index > getCurrentChoices().length) throw new IllegalArgumentException("Index is invalid, " + index + " > " + getCurrentChoices().length);
-		MainSituation next = elementStack.peek().getChoices()[index].goNext();
+		Choice choice = elementStack.peek().getChoices()[index];
+		if (STORY.isLoading() && !STORY.awaitLink(choice, Settings.STREAM_WAIT_TIMEOUT)) {
+			log.error("Next situation is still being generated, waiting time is over");
+			throw new IllegalStateException("Next situation is still being generated");
+		}
+		MainSituation next = choice.goNext();
+		if (next instanceof PendingSituation) next = StoryExpander.of(STORY).await(choice, Settings.STREAM_WAIT_TIMEOUT);
+		if (next == null) {
+			log.error("Choice doesn't lead to a situation, story is loaded without it");
+			throw new IllegalStateException("Next situation can't be generated");
+		}
 		elementStack.push(next);
 		log.debug("Returning next situation ({})", next.getDescription());
+		lookahead();
 		return elementStack.peek();
 	}
 
@@ -85,16 +140,31 @@ public class ElementManager {
 	 * @return the main {@link MainSituation}
 	 */
 	public MainSituation getMainSituation() {
+		if (compiled != null) {
+			push(compiled.getMain());
+			log.debug("Returning Main Situation ({})", compiled.description(compiled.getMain()));
+			return getCurrentSituation();
+		}
 		elementStack.push((MainSituation) STORY.getSTORY_ELEMENTS().get("S1"));
 		log.debug("Returning Main Situation ({})", elementStack.peek().getDescription());
+		lookahead();
 		return elementStack.peek();
 	}
 
+	/**
+	 * Generates pending situations ahead of the current situation in background, while the player reads it
+	 */
+	private void lookahead() {
+		StoryExpander expander = STORY.getExpander();
+		if (expander != null) expander.prefetch(elementStack.peek());
+	}
+
 	/**
 	 * Retrieves the choices available in the current situation.
 	 * @return an array of {@link Choice} objects representing the available choices
 	 */
 	public Choice[] getCurrentChoices() {
+		if (compiled != null) return getCurrentSituation().getChoices();
 		log.debug("Returning choices for Situation {}", elementStack.peek().getDescription());
 		return elementStack.peek().getChoices();
 	}
@@ -107,5 +177,38 @@ public class ElementManager {
 	public ElementManager(Story STORY) {
 		log.info("Element Manager created");
 		this.STORY = STORY;
+		this.compiled = null;
+	}
+
+	/**
+	 * Constructs an {@code ElementManager}, that navigates the compiled story by ordinals.
+	 * {@link #getSTORY()} returns null, the story is not changed while it is played
+	 * @param compiled the {@link CompiledStory} containing the game elements
+	 */
+	public ElementManager(CompiledStory compiled) {
+		log.info("Element Manager created for compiled story");
+		this.STORY = null;
+		this.compiled = compiled;
+	}
+
+	/**
+	 * Returns ordinal of the current situation of the compiled story
+	 * @return ordinal of the current situation
+	 * @throws EmptyStackException if no situation is returned yet
+	 * @throws IllegalStateException if the story is not compiled
+	 */
+	public int getCurrentOrdinal() {
+		if (compiled == null) throw new IllegalStateException("Story is not compiled");
+		if (depth == 0) throw new EmptyStackException();
+		return path[depth - 1];
+	}
+
+	/**
+	 * Adds situation of the compiled story to the navigation history
+	 * @param ordinal ordinal of the situation
+	 */
+	private void push(int ordinal) {
+		if (depth == path.length) path = Arrays.copyOf(path, depth * 2);
+		path[depth++] = ordinal;
 	}
 }
@@ -0,0 +1,60 @@
+package org.questgame.webquestgame.Logic.ElementHandlers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.ContentSink;
+import org.questgame.webquestgame.Exceptions.StoryValidationException;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The {@code StoryContentSink} class builds a {@link Story} from every content of chat-completions response
+ * while the response is being received.
+ * <p>
+ * Every content is passed to its own {@link StoryStreamParser}, that keeps only the current top-level block,
+ * so memory used for parsing is bounded by the story elements, not by the size of the response.
+ * </p>
+ *
+ * @see org.questgame.webquestgame.Additional.ChatResponseSubscriber
+ * @see StoryStreamParser
+ */
+public class StoryContentSink implements ContentSink<List<Story>> {
+
+	/**
+	 * Logger instance for recording parsing events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Parsers of contents, in the order of the response
+	 */
+	private final List<StoryStreamParser> parsers = new ArrayList<>();
+
+	@Override
+	public Consumer<String> nextContent() {
+		StoryStreamParser parser = new StoryStreamParser();
+		parsers.add(parser);
+		return parser;
+	}
+
+	/**
+	 * Finishes all parsers, stories are marked as loaded, because they are not played before the response is parsed
+	 * @return stories in the order of the response
+	 * @throws StoryValidationException if a story can't be played, see {@link StoryValidator}
+	 */
+	@Override
+	public List<Story> finish() {
+		List<Story> stories = new ArrayList<>(parsers.size());
+		for (StoryStreamParser parser : parsers) {
+			boolean valid = parser.finish();
+			parser.getStory().finishLoading();
+			if (!valid) throw new StoryValidationException(parser.getReport(), parser.getStory());
+			stories.add(parser.getStory());
+		}
+		log.info("{} stories parsed from response", stories.size());
+		return stories;
+	}
+}
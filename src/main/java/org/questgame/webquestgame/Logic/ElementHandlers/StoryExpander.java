@@ -0,0 +1,267 @@
+package org.questgame.webquestgame.Logic.ElementHandlers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Logic.Elements.*;
+import org.questgame.webquestgame.Logic.Generators.StoryGenerators;
+import org.questgame.webquestgame.Logic.Interfaces.StoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.time.Duration;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code StoryExpander} class generates a story in parts, while it is being played.
+ * <p>
+ * A part is a story of a few situations in a row (see {@link Settings#LAZY_DEPTH}), its choices, after which the story
+ * should continue, lead to {@link PendingSituation}s. When the player chooses such a choice, the branch is generated
+ * with {@link StoryGenerator#generateBranchAsync} and spliced into the story: its elements are added with indexes
+ * prefixed with the index of the pending situation (e.g. "PY5>S1"), and the choice leads to its main situation,
+ * which becomes a {@link Situation} linked with the choice both ways (see {@link StoryRepairer#branchElements}).
+ * </p>
+ * <p>
+ * While the player reads the current situation, pending situations, that are up to {@link Settings#LAZY_LOOKAHEAD}
+ * situations ahead, are expanded in background, so the next choice rarely waits. Every pending situation is expanded
+ * once, all sessions of the shared story wait for the same expansion. The last part of a path
+ * (see {@link Settings#LAZY_MAX_PARTS}) is generated without pending situations, so the story ends.
+ * </p>
+ *
+ * @see PendingSituation
+ * @see ElementManager
+ */
+public class StoryExpander {
+
+	/**
+	 * Logger instance for recording expansion events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Story, that is expanded
+	 */
+	private final Story story;
+
+	/**
+	 * Generator of branches
+	 */
+	private final StoryGenerator generator;
+
+	/**
+	 * Prompt of the story
+	 */
+	private final String userPrompt;
+
+	/**
+	 * Situations ahead of the player, which pending situations are expanded in background
+	 */
+	private final int lookahead;
+
+	/**
+	 * Parts on one path of the story
+	 */
+	private final int maxParts;
+
+	/**
+	 * Expansions in progress or completed, by pending situations
+	 */
+	private final Map<PendingSituation, CompletableFuture<MainSituation>> expansions = new IdentityHashMap<>();
+
+	/**
+	 * Number of started expansions
+	 */
+	private final AtomicLong started = new AtomicLong();
+
+	/**
+	 * Creates expander configured with values from {@link Settings}
+	 * @param story      story, that is expanded
+	 * @param generator  generator of branches
+	 * @param userPrompt prompt of the story
+	 */
+	public StoryExpander(Story story, StoryGenerator generator, String userPrompt) {
+		this(story, generator, userPrompt, Settings.LAZY_LOOKAHEAD, Settings.LAZY_MAX_PARTS);
+	}
+
+	/**
+	 * Creates expander. Elements of the story are moved to a concurrent map, because the story is read by players
+	 * while branches are added to it
+	 * @param story      story, that is expanded
+	 * @param generator  generator of branches
+	 * @param userPrompt prompt of the story
+	 * @param lookahead  situations ahead of the player, which pending situations are expanded in background, 0 - only on demand
+	 * @param maxParts   parts on one path of the story
+	 */
+	public StoryExpander(Story story, StoryGenerator generator, String userPrompt, int lookahead, int maxParts) {
+		this.story = story;
+		this.generator = generator;
+		this.userPrompt = userPrompt;
+		this.lookahead = Math.max(0, lookahead);
+		this.maxParts = Math.max(1, maxParts);
+		synchronized (story) {
+			if (!(story.getSTORY_ELEMENTS() instanceof ConcurrentHashMap)) {
+				story.setSTORY_ELEMENTS(new ConcurrentHashMap<>(story.getSTORY_ELEMENTS()));
+			}
+		}
+	}
+
+	/**
+	 * Returns expander of the story, creates it with the default generator, if the story has no expander
+	 * (e.g. the story is uploaded), the main situation is used as the prompt
+	 * @param story story with pending situations
+	 * @return {@link StoryExpander} of the story
+	 */
+	public static StoryExpander of(Story story) {
+		synchronized (story) {
+			if (story.getExpander() == null) {
+				String prompt = story.getSTORY_ELEMENTS().get("S1").getDescription();
+				story.setExpander(new StoryExpander(story, StoryGenerators.getDefault(), prompt));
+			}
+			return story.getExpander();
+		}
+	}
+
+	/**
+	 * Returns prompt, that generates a part of the story
+	 * @param userPrompt the input prompt from the user
+	 * @return prompt with instructions to stop after {@link Settings#LAZY_DEPTH} situations
+	 */
+	public static String partPrompt(String userPrompt) {
+		return userPrompt + String.format(Settings.PROMPT_FOR_LAZY_PART, Settings.LAZY_DEPTH);
+	}
+
+	/**
+	 * Expands pending situations, that are up to {@code lookahead} situations ahead of the situation, in background
+	 * @param situation situation, that the player reads
+	 */
+	public void prefetch(MainSituation situation) {
+		prefetch(situation, lookahead);
+	}
+
+	/**
+	 * Expands pending situations ahead of the situation in background
+	 * @param situation situation, which choices are checked
+	 * @param levels    situations ahead, that are checked
+	 */
+	private void prefetch(MainSituation situation, int levels) {
+		if (levels <= 0 || situation == null || situation.getChoices() == null) return;
+		for (Choice choice : situation.getChoices()) {
+			if (!choice.isGoNext()) continue;
+			MainSituation next = choice.getLeadTo();
+			if (next instanceof PendingSituation) expand(choice);
+			else if (!(next instanceof Victory || next instanceof Fail)) prefetch(next, levels - 1);
+		}
+	}
+
+	/**
+	 * Waits until the situation, that the choice leads to, is generated
+	 * @param choice  choice, that leads to a pending situation
+	 * @param timeout maximum time to wait
+	 * @return generated situation
+	 * @throws IllegalStateException if the situation is not generated in time, or it can't be generated
+	 */
+	public MainSituation await(Choice choice, Duration timeout) {
+		try {
+			return expand(choice).get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			log.error("Next situation is still being generated, waiting time is over");
+			throw new IllegalStateException("Next situation is still being generated");
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Next situation can't be generated", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Waiting for the next situation is interrupted");
+		}
+	}
+
+	/**
+	 * Starts expansion of the situation, that the choice leads to, if it is pending and not expanded yet
+	 * @param choice choice of the story
+	 * @return {@link CompletableFuture} completed with the situation, that the choice leads to
+	 */
+	public CompletableFuture<MainSituation> expand(Choice choice) {
+		if (!(choice.getLeadTo() instanceof PendingSituation pending)) return CompletableFuture.completedFuture(choice.getLeadTo());
+		synchronized (expansions) {
+			CompletableFuture<MainSituation> expansion = expansions.get(pending);
+			if (expansion == null) {
+				expansion = start(choice, pending);
+				expansions.put(pending, expansion);
+			}
+			return expansion;
+		}
+	}
+
+	/**
+	 * @return number of started expansions
+	 */
+	public long getExpansions() {
+		return started.get();
+	}
+
+	/**
+	 * Generates the branch, that replaces the pending situation
+	 * @param choice  choice, that leads to the pending situation
+	 * @param pending pending situation
+	 * @return {@link CompletableFuture} completed with the main situation of the branch
+	 */
+	private CompletableFuture<MainSituation> start(Choice choice, PendingSituation pending) {
+		String index = indexOf(pending);
+		int part = index == null ? maxParts : (int) index.chars().filter(c -> c == '>').count() + 2;
+		String prompt = part < maxParts ? partPrompt(userPrompt) : userPrompt;
+		started.incrementAndGet();
+		log.info("Generating part {} of the story for {}", part, index);
+		String situation = choice.getLeadFrom() == null ? null : choice.getLeadFrom().getDescription();
+		return generator.generateBranchAsync(prompt, situation, choice.getDescription())
+				.exceptionallyCompose(e -> new StoryRepairer(generator).recover(prompt, e))
+				.thenApply(branch -> splice(index, pending, branch))
+				.whenComplete((next, e) -> {
+					if (e == null) return;
+					log.error("Part of the story for {} can't be generated: {}", index, e.getMessage());
+					synchronized (expansions) {
+						expansions.remove(pending);
+					}
+				});
+	}
+
+	/**
+	 * Adds generated branch to the story instead of the pending situation
+	 * @param index   index of the pending situation, prefix of indexes of the branch elements
+	 * @param pending pending situation
+	 * @param branch  generated branch
+	 * @return main situation of the branch
+	 */
+	private MainSituation splice(String index, PendingSituation pending, Story branch) {
+		String prefix = index == null ? "P" + started.get() : index;
+		Map<String, Element> spliced = StoryRepairer.branchElements(prefix, branch);
+		Situation start = (Situation) spliced.get(prefix + ">S1");
+		synchronized (story) {
+			if (pending.getLeadFrom() != null) {
+				for (Choice choice : pending.getLeadFrom()) {
+					StoryRepairer.link(choice, start);
+				}
+			}
+			if (index != null) story.getSTORY_ELEMENTS().remove(index);
+			story.addElements(spliced);
+		}
+		log.info("Part of {} elements spliced to {}", branch.getSTORY_ELEMENTS().size(), prefix);
+		return start;
+	}
+
+	/**
+	 * Finds index of the pending situation
+	 * @param pending pending situation
+	 * @return index of the situation, or null if it is not an element of the story
+	 */
+	private String indexOf(PendingSituation pending) {
+		for (Map.Entry<String, Element> entry : story.getSTORY_ELEMENTS().entrySet()) {
+			if (entry.getValue() == pending) return entry.getKey();
+		}
+		return null;
+	}
+}
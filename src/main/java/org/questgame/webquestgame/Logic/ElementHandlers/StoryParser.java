@@ -0,0 +1,497 @@
+package org.questgame.webquestgame.Logic.ElementHandlers;
+
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code StoryParser} class reads story content in one pass and reports every element to a {@link Handler}.
+ * <p>
+ * Story content looks like JSON with single quotes:
+ * <pre>
+ * { 'Ситуация': { 'Описание': '...', 'Индекс ситуации': 'S1', 'Привело из': '-', 'Выборы ситуации': [
+ *     { 'Описание': '...', 'Индекс выбора': 'Y1', 'Флаг': 'goNext', 'Ведет к': 'S2' }, ... ] },
+ *   'Победа': { 'Описание': '...', 'Индекс победы': 'V1', 'Привело из': 'Y7' },
+ *   'Поражение': { 'Описание': '...', 'Индекс поражения': 'F1', 'Привело из': 'Y4' } }
+ * </pre>
+ * The parser moves a single position over the {@link CharSequence} from start to end: keys are compared in place,
+ * unknown keys and values are skipped, so only descriptions, indexes and flags are copied into new strings.
+ * Parsing takes linear time and doesn't depend on the order of fields in an element.
+ * </p>
+ * <p>
+ * The parser is lenient to the text around the elements: AI may add a sentence before the story,
+ * and streamed blocks come without the outer curly brackets. A string value ends with the single quote,
+ * that is followed by {@code ,}, {@code }} or {@code ]}, so descriptions may contain apostrophes.
+ * </p>
+ *
+ * @see ElementInitializer
+ */
+public class StoryParser {
+
+	/**
+	 * Keys of the story content
+	 */
+	private static final String SITUATION = "Ситуация";
+	private static final String VICTORY = "Победа";
+	private static final String FAIL = "Поражение";
+	private static final String DESCRIPTION = "Описание";
+	private static final String SITUATION_INDEX = "Индекс ситуации";
+	private static final String VICTORY_INDEX = "Индекс победы";
+	private static final String FAIL_INDEX = "Индекс поражения";
+	private static final String LEAD_FROM = "Привело из";
+	private static final String CHOICES = "Выборы ситуации";
+	private static final String CHOICE_INDEX = "Индекс выбора";
+	private static final String FLAG = "Флаг";
+	private static final String LEAD_TO = "Ведет к";
+
+	/**
+	 * Receiver of parsed elements. Choices of a situation are reported right after the situation, in the order of the content.
+	 */
+	public interface Handler {
+
+		/**
+		 * Called for every situation
+		 * @param index       index of the situation, e.g. "S2"
+		 * @param description description of the situation
+		 * @param main        true if the situation is the main one ('Привело из' is '-')
+		 * @param leadFrom    indexes of choices, that lead to the situation ('Привело из'), null if it is not specified
+		 */
+		void situation(String index, String description, boolean main, String leadFrom);
+
+		/**
+		 * Called for every choice
+		 * @param situationIndex index of the situation, that contains the choice
+		 * @param index          index of the choice, e.g. "Y3"
+		 * @param description    description of the choice
+		 * @param flag           flag of the choice, e.g. "goNext"
+		 * @param leadTo         index of the next element, null if it is not specified
+		 */
+		void choice(String situationIndex, String index, String description, String flag, String leadTo);
+
+		/**
+		 * Called for every victory
+		 * @param index       index of the victory, e.g. "V1"
+		 * @param description description of the victory
+		 * @param leadFrom    indexes of choices, that lead to the victory ('Привело из'), null if it is not specified
+		 */
+		void victory(String index, String description, String leadFrom);
+
+		/**
+		 * Called for every fail
+		 * @param index       index of the fail, e.g. "F1"
+		 * @param description description of the fail
+		 * @param leadFrom    indexes of choices, that lead to the fail ('Привело из'), null if it is not specified
+		 */
+		void fail(String index, String description, String leadFrom);
+	}
+
+	/**
+	 * All keys of the story content
+	 */
+	static final List<String> KEYS = List.of(SITUATION, VICTORY, FAIL, DESCRIPTION, SITUATION_INDEX, VICTORY_INDEX, FAIL_INDEX,
+			LEAD_FROM, CHOICES, CHOICE_INDEX, FLAG, LEAD_TO);
+
+	/**
+	 * Choice, that is reported after its situation
+	 */
+	private record ParsedChoice(String index, String description, String flag, String leadTo) {
+	}
+
+	/**
+	 * Parsed content
+	 */
+	private final CharSequence content;
+
+	/**
+	 * Receiver of parsed elements
+	 */
+	private final Handler handler;
+
+	/**
+	 * Index of the character after the parsed part of the content
+	 */
+	private final int end;
+
+	/**
+	 * Index of the next character to read
+	 */
+	private int position;
+
+	/**
+	 * Bounds of the last read key or string value
+	 */
+	private int tokenStart;
+	private int tokenEnd;
+
+	/**
+	 * Creates parser
+	 * @param content story content
+	 * @param start   index of the first character to parse
+	 * @param end     index of the character after the parsed part
+	 * @param handler receiver of parsed elements
+	 */
+	private StoryParser(CharSequence content, int start, int end, Handler handler) {
+		this.content = content;
+		this.position = start;
+		this.end = end;
+		this.handler = handler;
+	}
+
+	/**
+	 * Parses story content and reports all elements to the handler
+	 * @param content story content, or a part of it, that contains whole elements
+	 * @param handler receiver of parsed elements
+	 * @throws ChatGptGenerationException if an element has no index or a string is not closed
+	 */
+	public static void parse(CharSequence content, Handler handler) {
+		parse(content, 0, content.length(), handler);
+	}
+
+	/**
+	 * Parses a part of story content, e.g. a range between two {@link #findElementStart element starts},
+	 * without copying it
+	 * @param content story content
+	 * @param start   index of the first character to parse
+	 * @param end     index of the character after the parsed part
+	 * @param handler receiver of parsed elements
+	 * @throws ChatGptGenerationException if an element has no index or a string is not closed
+	 */
+	public static void parse(CharSequence content, int start, int end, Handler handler) {
+		new StoryParser(content, start, end, handler).parseElements();
+	}
+
+	/**
+	 * Finds the start of the next top-level element: the quote of 'Ситуация', 'Победа' or 'Поражение' key.
+	 * These keys are not used inside elements, so the content can be split at the found position
+	 * without parsing the content before it.
+	 * @param content story content
+	 * @param from    index to start from
+	 * @param end     index of the character after the searched part
+	 * @return index of the opening quote of the key, or {@code end} if there are no more elements
+	 */
+	public static int findElementStart(CharSequence content, int from, int end) {
+		for (int i = from; i < end; i++) {
+			if (content.charAt(i) != '\'') continue;
+			if (isKeyAt(content, i, end, SITUATION) || isKeyAt(content, i, end, VICTORY) || isKeyAt(content, i, end, FAIL)) return i;
+		}
+		return end;
+	}
+
+	/**
+	 * Finds top-level keys and parses elements, text between them is skipped
+	 */
+	private void parseElements() {
+		while (position < end) {
+			if (content.charAt(position) != '\'') {
+				position++;
+				continue;
+			}
+			if (!readKey()) continue;
+			if (isToken(SITUATION)) parseSituation();
+			else if (isToken(VICTORY)) parseEnding(true);
+			else if (isToken(FAIL)) parseEnding(false);
+			else skipValue();
+		}
+	}
+
+	/**
+	 * Parses a situation with its choices
+	 */
+	private void parseSituation() {
+		if (!openObject()) return;
+		int start = position;
+		String index = null;
+		String description = null;
+		String leadFrom = null;
+		boolean main = false;
+		List<ParsedChoice> choices = new ArrayList<>(2);
+		while (nextField()) {
+			if (isToken(DESCRIPTION)) description = readString() ? token() : null;
+			else if (isToken(SITUATION_INDEX)) index = readString() ? token() : null;
+			else if (isToken(LEAD_FROM) && readString()) {
+				main = isToken("-");
+				leadFrom = token();
+			}
+			else if (isToken(CHOICES)) parseChoices(choices);
+			else skipValue();
+		}
+		if (index == null) throw malformed("Situation without index", start);
+		handler.situation(index, description, main, leadFrom);
+		for (ParsedChoice choice : choices) {
+			handler.choice(index, choice.index(), choice.description(), choice.flag(), choice.leadTo());
+		}
+	}
+
+	/**
+	 * Parses array of choices
+	 * @param choices list, that parsed choices are added to
+	 */
+	private void parseChoices(List<ParsedChoice> choices) {
+		skipWhitespace();
+		if (position >= end || content.charAt(position) != '[') {
+			skipValue();
+			return;
+		}
+		position++;
+		while (position < end) {
+			char c = content.charAt(position);
+			if (c == ']') {
+				position++;
+				return;
+			}
+			if (c == '{') choices.add(parseChoice());
+			else if (c == '\'') skipValue();
+			else position++;
+		}
+	}
+
+	/**
+	 * Parses one choice
+	 * @return parsed choice
+	 */
+	private ParsedChoice parseChoice() {
+		openObject();
+		int start = position;
+		String index = null;
+		String description = null;
+		String flag = null;
+		String leadTo = null;
+		while (nextField()) {
+			if (isToken(DESCRIPTION)) description = readString() ? token() : null;
+			else if (isToken(CHOICE_INDEX)) index = readString() ? token() : null;
+			else if (isToken(FLAG)) flag = readString() ? token() : null;
+			else if (isToken(LEAD_TO)) leadTo = readString() ? token() : null;
+			else skipValue();
+		}
+		if (index == null) throw malformed("Choice without index", start);
+		return new ParsedChoice(index, description, flag, leadTo);
+	}
+
+	/**
+	 * Parses a victory or a fail
+	 * @param victory true for a victory, false for a fail
+	 */
+	private void parseEnding(boolean victory) {
+		if (!openObject()) return;
+		int start = position;
+		String index = null;
+		String description = null;
+		String leadFrom = null;
+		String indexKey = victory ? VICTORY_INDEX : FAIL_INDEX;
+		while (nextField()) {
+			if (isToken(DESCRIPTION)) description = readString() ? token() : null;
+			else if (isToken(indexKey)) index = readString() ? token() : null;
+			else if (isToken(LEAD_FROM)) leadFrom = readString() ? token() : null;
+			else skipValue();
+		}
+		if (index == null) throw malformed((victory ? "Victory" : "Fail") + " without index", start);
+		if (victory) handler.victory(index, description, leadFrom);
+		else handler.fail(index, description, leadFrom);
+	}
+
+	/**
+	 * Moves to the first character after the opening curly bracket of the value
+	 * @return true if the value is an object, otherwise the value is skipped
+	 */
+	private boolean openObject() {
+		skipWhitespace();
+		if (position < end && content.charAt(position) == '{') {
+			position++;
+			return true;
+		}
+		skipValue();
+		return false;
+	}
+
+	/**
+	 * Moves to the next key of the current object
+	 * @return true if the key is read, false if the object is closed
+	 */
+	private boolean nextField() {
+		while (position < end) {
+			char c = content.charAt(position);
+			if (c == '}') {
+				position++;
+				return false;
+			}
+			if (c == '\'') {
+				if (readKey()) return true;
+			} else {
+				position++;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads a quoted key and the following colon
+	 * @return true if the key is read, false if the quoted text is not followed by a colon (it is skipped)
+	 */
+	private boolean readKey() {
+		int close = indexOf('\'', position + 1);
+		if (close < 0) {
+			position = end;
+			return false;
+		}
+		tokenStart = position + 1;
+		tokenEnd = close;
+		position = skipWhitespace(close + 1);
+		if (position < end && content.charAt(position) == ':') {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reads a quoted string value
+	 * @return true if the value is read, false if the value is not a string (it is skipped)
+	 * @throws ChatGptGenerationException if the string is not closed
+	 */
+	private boolean readString() {
+		skipWhitespace();
+		if (position >= end || content.charAt(position) != '\'') {
+			skipValue();
+			return false;
+		}
+		int start = position;
+		for (int i = position + 1; i < end; i++) {
+			if (content.charAt(i) != '\'') continue;
+			int next = skipWhitespace(i + 1);
+			if (next >= end || isValueEnd(content.charAt(next))) {
+				tokenStart = position + 1;
+				tokenEnd = i;
+				position = i + 1;
+				return true;
+			}
+		}
+		throw malformed("String is not closed", start);
+	}
+
+	/**
+	 * Skips the value of the current key: a string, an object, an array or a literal
+	 */
+	private void skipValue() {
+		skipWhitespace();
+		if (position >= end) return;
+		char first = content.charAt(position);
+		if (first == '\'') {
+			readString();
+			return;
+		}
+		if (first != '{' && first != '[') {
+			while (position < end && !isValueEnd(content.charAt(position))) position++;
+			return;
+		}
+		int depth = 0;
+		while (position < end) {
+			char c = content.charAt(position);
+			if (c == '\'') {
+				readString();
+				continue;
+			}
+			if (c == '{' || c == '[') {
+				depth++;
+			} else if (c == '}' || c == ']') {
+				if (--depth == 0) {
+					position++;
+					return;
+				}
+			}
+			position++;
+		}
+	}
+
+	/**
+	 * Compares the last read token with the text, ignoring surrounding whitespace, without copying the token
+	 * @param text expected text
+	 * @return true if the token is equal to the text
+	 */
+	private boolean isToken(String text) {
+		int start = tokenStart;
+		int end = tokenEnd;
+		while (start < end && Character.isWhitespace(content.charAt(start))) start++;
+		while (end > start && Character.isWhitespace(content.charAt(end - 1))) end--;
+		if (end - start != text.length()) return false;
+		for (int i = 0; i < text.length(); i++) {
+			if (content.charAt(start + i) != text.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return copy of the last read token
+	 */
+	private String token() {
+		return content.subSequence(tokenStart, tokenEnd).toString();
+	}
+
+	/**
+	 * Finds the character
+	 * @param c     character to find
+	 * @param start index to start from
+	 * @return index of the character, or -1 if it is not found
+	 */
+	private int indexOf(char c, int start) {
+		for (int i = start; i < end; i++) {
+			if (content.charAt(i) == c) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Skips whitespace characters from the current position
+	 */
+	private void skipWhitespace() {
+		position = skipWhitespace(position);
+	}
+
+	/**
+	 * Skips whitespace characters
+	 * @param start index to start from
+	 * @return index of the first non-whitespace character
+	 */
+	private int skipWhitespace(int start) {
+		int i = start;
+		while (i < end && Character.isWhitespace(content.charAt(i))) i++;
+		return i;
+	}
+
+	/**
+	 * Checks that the quoted key, followed by a colon, starts at the position
+	 * @param content story content
+	 * @param start   position of the opening quote
+	 * @param end     index of the character after the searched part
+	 * @param key     expected key
+	 * @return true if the key is found
+	 */
+	private static boolean isKeyAt(CharSequence content, int start, int end, String key) {
+		int close = start + 1 + key.length();
+		if (close >= end || content.charAt(close) != '\'') return false;
+		for (int i = 0; i < key.length(); i++) {
+			if (content.charAt(start + 1 + i) != key.charAt(i)) return false;
+		}
+		int colon = close + 1;
+		while (colon < end && Character.isWhitespace(content.charAt(colon))) colon++;
+		return colon < end && content.charAt(colon) == ':';
+	}
+
+	/**
+	 * @param c character after a value
+	 * @return true if the character ends a value
+	 */
+	private static boolean isValueEnd(char c) {
+		return c == ',' || c == '}' || c == ']';
+	}
+
+	/**
+	 * Creates exception for malformed content
+	 * @param message  description of the problem
+	 * @param position position of the element in the content
+	 * @return new {@link ChatGptGenerationException}
+	 */
+	private static ChatGptGenerationException malformed(String message, int position) {
+		return new ChatGptGenerationException(message + " at position " + position + " of story content");
+	}
+}
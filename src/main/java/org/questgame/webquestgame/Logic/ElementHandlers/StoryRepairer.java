@@ -0,0 +1,408 @@
+package org.questgame.webquestgame.Logic.ElementHandlers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Exceptions.StoryValidationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.ValidationReport.Problem;
+import org.questgame.webquestgame.Logic.ElementHandlers.ValidationReport.ProblemType;
+import org.questgame.webquestgame.Logic.Elements.*;
+import org.questgame.webquestgame.Logic.Interfaces.StoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * The {@code StoryRepairer} class makes a generated story playable, when {@link StoryValidator} rejects it,
+ * instead of generating the whole story again.
+ * <p>
+ * Trivial problems are fixed locally, without requests to the generator:
+ * <ul>
+ *     <li>malformed content (missing quotes and commas) is fixed with {@link #repairText(String)} before parsing;</li>
+ *     <li>a choice, that leads to "-" or to a missing situation, is linked to the element, that lists the choice
+ *     in its 'Привело из', see {@link #resolveLeadTo};</li>
+ *     <li>elements, that can't be reached from the main situation, are removed.</li>
+ * </ul>
+ * Every other broken place (a choice, that leads nowhere, a dead end, a story without reachable victory) is replaced
+ * with a branch generated by {@link StoryGenerator#generateBranchAsync}: only the broken subtree is generated, its
+ * elements are added to the existing story with indexes prefixed by the place they continue (e.g. "Y7>S1").
+ * The main situation of the branch becomes a {@link Situation}, that is linked with the choice leading to it both ways.
+ * Number of generated branches is limited by {@link Settings#REPAIR_MAX_BRANCHES}.
+ * </p>
+ *
+ * @see StoryValidator
+ * @see ValidationReport
+ */
+public class StoryRepairer {
+
+	/**
+	 * Logger instance for recording repair events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Any key of the story content, e.g. {@code Ведет к}
+	 */
+	private static final String KEY = StoryParser.KEYS.stream().map(Pattern::quote).collect(Collectors.joining("|", "(?:", ")"));
+
+	/**
+	 * Keys, which values are indexes or flags
+	 */
+	private static final String SHORT_VALUE_KEY = StoryParser.KEYS.stream()
+			.filter(key -> key.startsWith("Индекс") || key.equals("Флаг") || key.equals("Ведет к") || key.equals("Привело из"))
+			.map(Pattern::quote).collect(Collectors.joining("|", "(?:", ")"));
+
+	/**
+	 * Value, that is not followed by a comma: {@code 'S1' 'Привело из':}
+	 */
+	private static final Pattern MISSING_COMMA = Pattern.compile("'\\s+(?='" + KEY + "'\\s*:)");
+
+	/**
+	 * Blocks, that are not separated with a comma: <code>} 'Победа':</code> or <code>} {</code>
+	 */
+	private static final Pattern MISSING_BLOCK_COMMA = Pattern.compile("}\\s+(?=\\{|'" + KEY + "'\\s*:)");
+
+	/**
+	 * Value without closing quote: {@code 'Описание': 'text, 'Индекс ситуации':}
+	 */
+	private static final Pattern MISSING_CLOSING_QUOTE = Pattern.compile("(:\\s*'[^'{}\\[\\]]*?)\\s*,(\\s*'" + KEY + "'\\s*:)");
+
+	/**
+	 * Short value without opening quote: {@code 'Ведет к': S2'}
+	 */
+	private static final Pattern MISSING_OPENING_QUOTE = Pattern.compile("('" + SHORT_VALUE_KEY + "'\\s*:\\s*)([^'\\s{}\\[\\],][^'{}\\[\\],]*?)'?(\\s*[,}\\]])");
+
+	/**
+	 * Generator of replacements for broken branches
+	 */
+	private final StoryGenerator generator;
+
+	/**
+	 * Maximum number of branches generated for one story
+	 */
+	private final int maxBranches;
+
+	/**
+	 * Creates repairer configured with values from {@link Settings}
+	 * @param generator generator of replacements for broken branches
+	 */
+	public StoryRepairer(StoryGenerator generator) {
+		this(generator, Settings.REPAIR_MAX_BRANCHES);
+	}
+
+	/**
+	 * Creates repairer
+	 * @param generator   generator of replacements for broken branches
+	 * @param maxBranches maximum number of branches generated for one story, 0 - only local fixes
+	 */
+	public StoryRepairer(StoryGenerator generator, int maxBranches) {
+		this.generator = generator;
+		this.maxBranches = Math.max(0, maxBranches);
+	}
+
+	/**
+	 * Fixes trivial syntax errors of story content: double quotes, missing quotes around values
+	 * and missing commas between values and blocks
+	 * @param content malformed story content
+	 * @return repaired content, or the same content if nothing is fixed
+	 */
+	public static String repairText(String content) {
+		String repaired = content.replace('"', '\'');
+		repaired = MISSING_COMMA.matcher(repaired).replaceAll("', ");
+		repaired = MISSING_BLOCK_COMMA.matcher(repaired).replaceAll("}, ");
+		repaired = MISSING_CLOSING_QUOTE.matcher(repaired).replaceAll("$1',$2");
+		repaired = MISSING_OPENING_QUOTE.matcher(repaired).replaceAll(match -> Matcher.quoteReplacement(
+				match.group(1) + "'" + match.group(2).strip() + "'" + match.group(3)));
+		if (!repaired.equals(content)) log.info("Story content repaired, {} characters changed", Math.abs(repaired.length() - content.length()));
+		return repaired;
+	}
+
+	/**
+	 * Finds the situation, that a goNext choice should lead to. The index from 'Ведет к' is used, if it refers to a situation,
+	 * then the same index without spaces and in upper case (e.g. "s 5" is "S5"), then the element, that lists the choice in its
+	 * 'Привело из'
+	 * @param choiceIndex   index of the choice
+	 * @param leadToIndex   index from 'Ведет к', may be null or "-"
+	 * @param elements      elements of the story by their indexes
+	 * @param leadFromHints indexes of elements by indexes of choices, listed in their 'Привело из'
+	 * @return index of the situation, or null if the choice can't be linked
+	 */
+	static String resolveLeadTo(String choiceIndex, String leadToIndex, Function<String, Element> elements, Map<String, String> leadFromHints) {
+		if (leadToIndex != null && elements.apply(leadToIndex) instanceof Situation) return leadToIndex;
+		String repaired = null;
+		if (leadToIndex != null) {
+			String normalized = leadToIndex.replaceAll("[\\s'()]", "").replace('С', 'S').toUpperCase(Locale.ROOT);
+			if (elements.apply(normalized) instanceof Situation) repaired = normalized;
+		}
+		if (repaired == null && choiceIndex != null) {
+			String hint = leadFromHints.get(choiceIndex);
+			if (hint != null && elements.apply(hint) instanceof Situation) repaired = hint;
+		}
+		if (repaired != null) log.warn("Choice {} leadTo \"{}\" is repaired, it leads to {}", choiceIndex, leadToIndex, repaired);
+		return repaired;
+	}
+
+	/**
+	 * Repairs the story, that was rejected with {@link StoryValidationException}
+	 * @param userPrompt the input prompt of the story
+	 * @param failure    failure of generation
+	 * @return {@link CompletableFuture} completed with the repaired story, or with the same failure,
+	 * if it is not a validation failure or repair is disabled
+	 */
+	public CompletableFuture<Story> recover(String userPrompt, Throwable failure) {
+		Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+		if (Settings.REPAIR_ENABLED && cause instanceof StoryValidationException e && e.getStory() != null) {
+			return repair(userPrompt, e.getStory(), e.getReport());
+		}
+		return CompletableFuture.failedFuture(cause);
+	}
+
+	/**
+	 * Repairs the story: fixes problems locally, then replaces broken branches with generated ones
+	 * @param userPrompt the input prompt of the story
+	 * @param story      story, that can't be played
+	 * @param report     problems of the story
+	 * @return {@link CompletableFuture} completed with the same story, when it is repaired,
+	 * or with {@link StoryValidationException}, if it can't be repaired
+	 */
+	public CompletableFuture<Story> repair(String userPrompt, Story story, ValidationReport report) {
+		if (!report.getProblems(ProblemType.MISSING_MAIN_SITUATION).isEmpty()) {
+			log.error("Story without main situation can't be repaired");
+			return CompletableFuture.failedFuture(new StoryValidationException(report, story));
+		}
+		Map<String, Branch> branches;
+		synchronized (story) {
+			ValidationReport local = repairLocally(story, report);
+			if (local.isValid()) {
+				log.info("Story repaired locally");
+				return CompletableFuture.completedFuture(story);
+			}
+			branches = findBrokenBranches(story, local);
+			if (branches == null || branches.size() > maxBranches) {
+				log.error("Story can't be repaired, {} broken branches, {} allowed: {}",
+						branches == null ? "unknown" : branches.size(), maxBranches, local);
+				return CompletableFuture.failedFuture(new StoryValidationException(local, story));
+			}
+		}
+		log.info("Regenerating {} broken branches of the story", branches.size());
+		List<CompletableFuture<Void>> generated = new ArrayList<>(branches.size());
+		for (Map.Entry<String, Branch> entry : branches.entrySet()) {
+			Branch branch = entry.getValue();
+			generated.add(generator.generateBranchAsync(userPrompt, branch.situation().getDescription(),
+							branch.choice() == null ? null : branch.choice().getDescription())
+					.thenAccept(generatedBranch -> splice(story, entry.getKey(), branch, generatedBranch)));
+		}
+		return CompletableFuture.allOf(generated.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+			ValidationReport result = StoryValidator.validate(story);
+			if (!result.isValid()) throw new StoryValidationException(result, story);
+			log.info("Story repaired, {} branches regenerated", branches.size());
+			return story;
+		});
+	}
+
+	/**
+	 * Place of the story, that is continued with a generated branch
+	 * @param situation situation, from which the branch starts
+	 * @param choice    choice, that will lead to the branch, null if a new choice is added to the situation
+	 */
+	private record Branch(MainSituation situation, Choice choice) {
+	}
+
+	/**
+	 * Relinks broken choices and removes unreachable elements
+	 * @param story  story to repair
+	 * @param report problems of the story
+	 * @return problems, that are left
+	 */
+	private static ValidationReport repairLocally(Story story, ValidationReport report) {
+		Map<String, Element> elements = story.getSTORY_ELEMENTS();
+		Map<String, String> leadFromHints = null;
+		for (Problem problem : report.getProblems(ProblemType.UNRESOLVED_REFERENCE)) {
+			if (!(elements.get(problem.index()) instanceof Choice choice) || !choice.isGoNext()) continue;
+			if (leadFromHints == null) leadFromHints = leadFromHints(elements);
+			String leadTo = resolveLeadTo(problem.index(), null, elements::get, leadFromHints);
+			if (leadTo == null) continue;
+			Situation situation = (Situation) elements.get(leadTo);
+			choice.setLeadTo(situation);
+			situation.addLeadFrom(choice);
+		}
+		ValidationReport relinked = leadFromHints == null ? report : StoryValidator.validate(story);
+		List<Problem> unreachable = relinked.getProblems(ProblemType.UNREACHABLE);
+		if (unreachable.isEmpty()) return relinked;
+		for (Problem problem : unreachable) {
+			elements.remove(problem.index());
+		}
+		log.info("{} unreachable elements removed from the story", unreachable.size());
+		return StoryValidator.validate(story);
+	}
+
+	/**
+	 * Restores hints of 'Привело из' from linked situations
+	 * @param elements elements of the story
+	 * @return indexes of situations by indexes of choices, that lead to them
+	 */
+	private static Map<String, String> leadFromHints(Map<String, Element> elements) {
+		Map<Element, String> indexes = new IdentityHashMap<>();
+		for (Map.Entry<String, Element> entry : elements.entrySet()) {
+			indexes.put(entry.getValue(), entry.getKey());
+		}
+		Map<String, String> hints = new HashMap<>();
+		for (Map.Entry<String, Element> entry : elements.entrySet()) {
+			if (!(entry.getValue() instanceof Situation situation) || situation.getLeadFrom() == null) continue;
+			for (Choice choice : situation.getLeadFrom()) {
+				String choiceIndex = indexes.get(choice);
+				if (choiceIndex != null) hints.putIfAbsent(choiceIndex, entry.getKey());
+			}
+		}
+		return hints;
+	}
+
+	/**
+	 * Finds places of the story, that should be continued with generated branches.
+	 * <p>Branches replace choices, that lead nowhere, and continue situations without choices. Situations, that are dead ends
+	 * only because of these places, are fixed with them, a new branch is added to such situation (or to the farthest situation,
+	 * if the story has no reachable victory) only if nothing else is broken.</p>
+	 * @param story  story to repair
+	 * @param report problems, that are left after local repair
+	 * @return branches by prefixes of their indexes, or null if some problem can't be fixed with a branch
+	 */
+	private static Map<String, Branch> findBrokenBranches(Story story, ValidationReport report) {
+		Map<String, Element> elements = story.getSTORY_ELEMENTS();
+		Map<String, Branch> branches = new LinkedHashMap<>();
+		String deadEnd = null;
+		for (Problem problem : report.getProblems()) {
+			Element element = problem.index() == null ? null : elements.get(problem.index());
+			switch (problem.type()) {
+				case UNRESOLVED_REFERENCE -> {
+					if (!(element instanceof Choice choice) || choice.getLeadFrom() == null) return null;
+					branches.put(problem.index(), new Branch(choice.getLeadFrom(), choice));
+				}
+				case DEAD_END -> {
+					if (!(element instanceof MainSituation situation)) return null;
+					if (situation.getChoices() == null || situation.getChoices().length == 0) {
+						branches.put(problem.index(), new Branch(situation, null));
+					} else if (deadEnd == null) {
+						deadEnd = problem.index();
+					}
+				}
+				case NO_VICTORY -> {
+				}
+				default -> {
+					return null;
+				}
+			}
+		}
+		if (branches.isEmpty()) {
+			String last = deadEnd != null ? deadEnd : lastSituation(elements);
+			if (last == null) return null;
+			branches.put(last, new Branch((MainSituation) elements.get(last), null));
+		}
+		return branches;
+	}
+
+	/**
+	 * Finds the situation, that is the farthest from the main situation, a branch with a victory is added to it
+	 * @param elements elements of the story
+	 * @return index of the situation, or null if the story has no situations with choices
+	 */
+	private static String lastSituation(Map<String, Element> elements) {
+		Map<Element, String> indexes = new IdentityHashMap<>();
+		for (Map.Entry<String, Element> entry : elements.entrySet()) {
+			indexes.put(entry.getValue(), entry.getKey());
+		}
+		Queue<MainSituation> queue = new ArrayDeque<>();
+		Map<MainSituation, Boolean> visited = new IdentityHashMap<>();
+		MainSituation main = (MainSituation) elements.get("S1");
+		queue.add(main);
+		visited.put(main, true);
+		String last = null;
+		while (!queue.isEmpty()) {
+			MainSituation situation = queue.remove();
+			if (situation instanceof Victory || situation instanceof Fail || situation.getChoices() == null) continue;
+			last = indexes.get(situation);
+			for (Choice choice : situation.getChoices()) {
+				MainSituation next = choice.getLeadTo();
+				if (choice.isGoNext() && next != null && visited.put(next, true) == null) queue.add(next);
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * Adds generated branch to the story and links it with the broken place
+	 * @param story  story to repair
+	 * @param prefix prefix of indexes of the branch elements
+	 * @param branch broken place
+	 * @param generatedBranch generated continuation, its "S1" continues the broken place
+	 */
+	private static void splice(Story story, String prefix, Branch branch, Story generatedBranch) {
+		Map<String, Element> spliced = branchElements(prefix, generatedBranch);
+		Situation start = (Situation) spliced.get(prefix + ">S1");
+		synchronized (story) {
+			Choice choice = branch.choice();
+			if (choice == null) {
+				choice = new Choice("Продолжить путь.", true);
+				choice.setLeadFrom(branch.situation());
+				branch.situation().addChoice(choice);
+				spliced.put(prefix + ">Y0", choice);
+			}
+			link(choice, start);
+			story.addElements(spliced);
+		}
+		log.info("Branch of {} elements spliced to {}", generatedBranch.getSTORY_ELEMENTS().size(), prefix);
+	}
+
+	/**
+	 * Prepares elements of the generated branch to be added to the story: indexes are prefixed with the place,
+	 * that the branch continues, and the main situation of the branch is replaced with a {@link Situation}, so choices,
+	 * that lead to it, can be recorded in its 'Привело из'
+	 * @param prefix prefix of indexes of the branch elements
+	 * @param branch generated branch, its "S1" continues the story
+	 * @return elements of the branch by prefixed indexes, the first situation is {@code prefix + ">S1"}
+	 * @throws StoryValidationException if the branch has no main situation
+	 */
+	static Map<String, Element> branchElements(String prefix, Story branch) {
+		Map<String, Element> branchElements = branch.getSTORY_ELEMENTS();
+		if (!(branchElements.get("S1") instanceof MainSituation main)) {
+			throw new StoryValidationException(StoryValidator.validate(branch), branch);
+		}
+		Situation start = main instanceof Situation situation ? situation : new Situation(main.getDescription(), main.getChoices(), null);
+		Map<String, Element> spliced = new HashMap<>(branchElements.size() + 1);
+		for (Map.Entry<String, Element> entry : branchElements.entrySet()) {
+			Element element = entry.getValue() == main ? start : entry.getValue();
+			if (start != main && element instanceof Choice choice) {
+				if (choice.getLeadFrom() == main) choice.setLeadFrom(start);
+				if (choice.getLeadTo() == main) {
+					choice.setLeadTo(start);
+					if (choice.isGoNext()) start.addLeadFrom(choice);
+				}
+			}
+			spliced.put(prefix + ">" + entry.getKey(), element);
+		}
+		return spliced;
+	}
+
+	/**
+	 * Links the choice and the first situation of a spliced branch
+	 * @param choice choice, that leads to the branch
+	 * @param start  first situation of the branch
+	 */
+	static void link(Choice choice, Situation start) {
+		choice.setLeadTo(start);
+		start.addLeadFrom(choice);
+	}
+}
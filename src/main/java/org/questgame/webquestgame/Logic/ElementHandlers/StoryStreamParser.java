@@ -0,0 +1,355 @@
+package org.questgame.webquestgame.Logic.ElementHandlers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+import org.questgame.webquestgame.Exceptions.StoryValidationException;
+import org.questgame.webquestgame.Logic.Elements.*;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The {@code StoryStreamParser} class builds a {@link Story} from story content, that arrives in pieces
+ * while it is still being generated.
+ * <p>
+ * Content is scanned once, counting curly brackets: every time a top-level block ('Ситуация' with its choices,
+ * 'Победа' or 'Поражение') is closed, it is initialized with {@link ElementInitializer} and added to the story.
+ * Choices, which next situation is not generated yet, are remembered and linked when that situation arrives.
+ * </p>
+ * <p>
+ * A malformed block is parsed again after {@link StoryRepairer#repairText(String)}, if it is still malformed, it is skipped.
+ * When the stream is finished, choices, that are still not linked, are repaired with 'Привело из' of parsed elements,
+ * see {@link StoryRepairer#resolveLeadTo}.
+ * </p>
+ * <p>
+ * {@link #getFirstSituation()} is completed as soon as the main situation (S1) and its choices are parsed,
+ * so the game can be started long before the whole story is generated.
+ * The stream must be finished with {@link #finish()} or {@link #fail(Throwable)}. {@link #finish()} only validates
+ * the story, it stays in loading state, so broken choices may still be repaired while the story is played: the owner
+ * of the story calls {@link Story#finishLoading()} when the story is complete.
+ * </p>
+ *
+ * @see ElementInitializer
+ * @see Story#createLoading()
+ */
+public class StoryStreamParser implements Consumer<String> {
+
+	/**
+	 * Logger instance for recording parsing events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Story, that is filled while content arrives
+	 */
+	private final Story story = Story.createLoading();
+
+	/**
+	 * Completed when the main situation is added to the story
+	 */
+	private final CompletableFuture<Story> firstSituation = new CompletableFuture<>();
+
+	/**
+	 * Choices, that wait for their next situation, grouped by the index of that situation
+	 */
+	private final Map<String, List<Choice>> pendingLinks = new HashMap<>();
+
+	/**
+	 * Choices, that lead to "-" or don't specify their next situation, by their indexes
+	 */
+	private final Map<String, Choice> unlinkedChoices = new HashMap<>();
+
+	/**
+	 * Indexes of elements by indexes of choices, listed in their 'Привело из'
+	 */
+	private final Map<String, String> leadFromHints = new HashMap<>();
+
+	/**
+	 * Problems of parsed blocks, e.g. elements with indexes, that are already used
+	 */
+	private final List<ValidationReport.Problem> blockProblems = new ArrayList<>();
+
+	/**
+	 * Number of blocks, that were skipped, because they couldn't be parsed
+	 */
+	private int skippedBlocks;
+
+	/**
+	 * Content, that is not parsed yet
+	 */
+	private final StringBuilder buffer = new StringBuilder();
+
+	/**
+	 * Index of the next character of {@code buffer} to scan
+	 */
+	private int position;
+
+	/**
+	 * Start of the current top-level block in {@code buffer}
+	 */
+	private int blockStart;
+
+	/**
+	 * Current depth of curly brackets
+	 */
+	private int depth;
+
+	/**
+	 * Result of validation of the finished story
+	 */
+	private ValidationReport report;
+
+	/**
+	 * Accepts next piece of generated content and parses all blocks, that are completed by it
+	 * @param content piece of story content
+	 */
+	@Override
+	public synchronized void accept(String content) {
+		buffer.append(content);
+		for (; position < buffer.length(); position++) {
+			char c = buffer.charAt(position);
+			if (c == '{') {
+				depth++;
+				if (depth == 1) blockStart = position + 1;
+			} else if (c == '}' && depth > 0) {
+				depth--;
+				if (depth == 1) {
+					parseBlock(buffer.substring(blockStart, position + 1));
+					blockStart = position + 1;
+				}
+			}
+		}
+		if (depth <= 1) {
+			buffer.delete(0, blockStart);
+			position -= blockStart;
+			blockStart = 0;
+		}
+	}
+
+	/**
+	 * Finishes parsing, must be called when the whole content is received. The story is validated with {@link StoryValidator},
+	 * the result is available with {@link #getReport()}. The story is not marked as loaded, see {@link Story#finishLoading()}
+	 * @return true if the story is complete and valid: it has the main situation, all choices are linked
+	 * and an ending can be reached from every situation
+	 */
+	public synchronized boolean finish() {
+		List<ValidationReport.Problem> linkProblems;
+		synchronized (story) {
+			linkProblems = repairLinks();
+			linkProblems.addAll(blockProblems);
+		}
+		if (skippedBlocks > 0) log.warn("{} malformed blocks were skipped", skippedBlocks);
+		report = StoryValidator.validate(story.getSTORY_ELEMENTS(), linkProblems);
+		if (!firstSituation.isDone()) {
+			log.error("Story is finished, but main situation is not generated");
+			firstSituation.completeExceptionally(new StoryValidationException(report));
+			return false;
+		}
+		if (!report.isValid()) {
+			log.error("Story is finished, but it can't be played: {}", report);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns result of validation of the finished story
+	 * @return {@link ValidationReport}, or null if the story is not finished
+	 */
+	public synchronized ValidationReport getReport() {
+		return report;
+	}
+
+	/**
+	 * @return number of blocks, that were skipped, because they couldn't be parsed
+	 */
+	public synchronized int getSkippedBlocks() {
+		return skippedBlocks;
+	}
+
+	/**
+	 * Links choices, that are still waiting for their next situations, with elements, that list them in 'Привело из'
+	 * @return problems of choices, that can't be repaired
+	 */
+	private List<ValidationReport.Problem> repairLinks() {
+		List<ValidationReport.Problem> linkProblems = new ArrayList<>();
+		if (pendingLinks.isEmpty() && unlinkedChoices.isEmpty()) return linkProblems;
+		Map<String, Element> elements = story.getSTORY_ELEMENTS();
+		Map<Element, String> indexes = indexes();
+		for (Map.Entry<String, List<Choice>> entry : pendingLinks.entrySet()) {
+			for (Choice choice : entry.getValue()) {
+				String choiceIndex = indexes.get(choice);
+				if (!repairLink(choiceIndex, choice, entry.getKey(), elements)) {
+					linkProblems.add(new ValidationReport.Problem(ValidationReport.ProblemType.UNRESOLVED_REFERENCE, choiceIndex,
+							"Choice leads to missing situation " + entry.getKey()));
+				}
+			}
+		}
+		pendingLinks.clear();
+		for (Map.Entry<String, Choice> entry : unlinkedChoices.entrySet()) {
+			repairLink(entry.getKey(), entry.getValue(), null, elements);
+		}
+		unlinkedChoices.clear();
+		return linkProblems;
+	}
+
+	/**
+	 * Links the choice with the situation found by {@link StoryRepairer#resolveLeadTo}
+	 * @param choiceIndex index of the choice
+	 * @param choice      the choice
+	 * @param leadToIndex index of the next situation, that was specified in the content
+	 * @param elements    all elements of the story
+	 * @return true if the choice is linked
+	 */
+	private boolean repairLink(String choiceIndex, Choice choice, String leadToIndex, Map<String, Element> elements) {
+		String repaired = StoryRepairer.resolveLeadTo(choiceIndex, leadToIndex, elements::get, leadFromHints);
+		if (repaired == null) return false;
+		link(choice, (Situation) elements.get(repaired));
+		return true;
+	}
+
+	/**
+	 * @return indexes of all elements of the story
+	 */
+	private Map<Element, String> indexes() {
+		Map<Element, String> indexes = new IdentityHashMap<>();
+		for (Map.Entry<String, Element> entry : story.getSTORY_ELEMENTS().entrySet()) {
+			indexes.put(entry.getValue(), entry.getKey());
+		}
+		return indexes;
+	}
+
+	/**
+	 * Finishes parsing, when generation or repair failed, the story is marked as failed
+	 * @param e the cause of generation failure
+	 */
+	public synchronized void fail(Throwable e) {
+		log.error("Story generation failed, {} elements were parsed", story.getSTORY_ELEMENTS().size());
+		story.failLoading();
+		firstSituation.completeExceptionally(e);
+	}
+
+	/**
+	 * Returns future, that is completed with the story as soon as its main situation can be played
+	 * @return {@link CompletableFuture} of the loading {@link Story}
+	 */
+	public CompletableFuture<Story> getFirstSituation() {
+		return firstSituation;
+	}
+
+	/**
+	 * Returns the story, that is being filled by this parser
+	 * @return loading {@link Story}
+	 */
+	public Story getStory() {
+		return story;
+	}
+
+	/**
+	 * Initializes elements of the completed block, links them with already parsed elements and adds them to the story
+	 * @param block text of the top-level block
+	 */
+	private void parseBlock(String block) {
+		log.debug("Parsing streamed block: \n{}", block);
+		ElementInitializer initializer = new ElementInitializer();
+		Map<String, Element> elements;
+		try {
+			elements = initializer.initializeBlock(block);
+		} catch (ChatGptGenerationException e) {
+			initializer = new ElementInitializer();
+			try {
+				elements = initializer.initializeBlock(StoryRepairer.repairText(block));
+				log.warn("Malformed block is repaired: {}", e.getMessage());
+			} catch (ChatGptGenerationException | ClassCastException | NoSuchElementException repairFailure) {
+				skippedBlocks++;
+				log.error("Malformed block is skipped: {}", e.getMessage());
+				return;
+			}
+		}
+		synchronized (story) {
+			blockProblems.addAll(initializer.getLinkProblems());
+			for (Iterator<Map.Entry<String, Element>> entries = elements.entrySet().iterator(); entries.hasNext(); ) {
+				Map.Entry<String, Element> entry = entries.next();
+				if (!story.getSTORY_ELEMENTS().containsKey(entry.getKey())) continue;
+				log.error("Index {} is already used, element of streamed block is skipped", entry.getKey());
+				blockProblems.add(new ValidationReport.Problem(ValidationReport.ProblemType.DUPLICATE_INDEX, entry.getKey(),
+						"Index is used by several elements, " + entry.getValue().getClass().getSimpleName() + " is skipped"));
+				entries.remove();
+			}
+			leadFromHints.putAll(initializer.getLeadFromHints());
+			for (Map.Entry<String, Element> entry : elements.entrySet()) {
+				if (entry.getValue() instanceof Situation situation) {
+					resolvePendingLinks(entry.getKey(), situation);
+				}
+			}
+			for (Map.Entry<String, Element> entry : elements.entrySet()) {
+				if (entry.getValue() instanceof Choice choice) {
+					linkChoice(entry.getKey(), choice, initializer.getLeadToIndex(entry.getKey()), elements);
+				}
+			}
+			story.addElements(elements);
+		}
+		if (elements.get("S1") instanceof MainSituation) {
+			log.info("Main situation is generated, story can be started");
+			firstSituation.complete(story);
+		}
+	}
+
+	/**
+	 * Links the choice with its next situation, or remembers it, if the situation is not generated yet
+	 * @param choiceIndex index of the choice
+	 * @param choice      the choice
+	 * @param leadToIndex index of the next situation, recorded while parsing the block
+	 * @param elements    elements of the block, that are not added to the story yet
+	 */
+	private void linkChoice(String choiceIndex, Choice choice, String leadToIndex, Map<String, Element> elements) {
+		if (!choice.isGoNext()) {
+			choice.setLeadTo(choice.getLeadFrom());
+			return;
+		}
+		if (leadToIndex == null || leadToIndex.equals("-")) {
+			log.warn("Choice {} leadTo \"{}\", it will be repaired when the story is finished", choiceIndex, leadToIndex);
+			unlinkedChoices.put(choiceIndex, choice);
+			return;
+		}
+		Element leadTo = elements.containsKey(leadToIndex) ? elements.get(leadToIndex) : story.getSTORY_ELEMENTS().get(leadToIndex);
+		if (leadTo instanceof Situation situation) {
+			link(choice, situation);
+		} else {
+			pendingLinks.computeIfAbsent(leadToIndex, k -> new ArrayList<>()).add(choice);
+		}
+	}
+
+	/**
+	 * Links all choices, that were waiting for the new situation
+	 * @param situationIndex index of the new situation
+	 * @param situation      the new situation
+	 */
+	private void resolvePendingLinks(String situationIndex, Situation situation) {
+		List<Choice> choices = pendingLinks.remove(situationIndex);
+		if (choices == null) return;
+		for (Choice choice : choices) {
+			link(choice, situation);
+		}
+		log.debug("{} choices linked to situation {}", choices.size(), situationIndex);
+	}
+
+	/**
+	 * Links the choice and its next situation
+	 * @param choice    the choice
+	 * @param situation the next situation
+	 */
+	private void link(Choice choice, Situation situation) {
+		choice.setLeadTo(situation);
+		situation.addLeadFrom(choice);
+	}
+}
@@ -0,0 +1,240 @@
+package org.questgame.webquestgame.Logic.ElementHandlers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Exceptions.StoryValidationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.ValidationReport.Problem;
+import org.questgame.webquestgame.Logic.ElementHandlers.ValidationReport.ProblemType;
+import org.questgame.webquestgame.Logic.Elements.*;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code StoryValidator} class checks, that a linked story can be played from the beginning to an ending.
+ * <p>
+ * Elements of the story form a graph: a situation leads to its choices, a choice with {@code goNext} flag leads
+ * to the next situation, victories and fails are endings. The validator checks that
+ * <ul>
+ *     <li>the main situation "S1" exists;</li>
+ *     <li>all choices lead to situations of the same story;</li>
+ *     <li>every element can be reached from "S1";</li>
+ *     <li>an ending can be reached from every situation, so the player never gets stuck;</li>
+ *     <li>the story has a victory, that can be reached from "S1".</li>
+ * </ul>
+ * A {@link PendingSituation} is a part of the story, that will be generated later, so it is treated as an ending,
+ * that may lead to a victory.
+ * Elements are numbered once, the graph is walked forward from "S1" and backward from the endings,
+ * so validation takes O(V+E) time. All problems are collected into {@link ValidationReport}, validation doesn't stop
+ * at the first one.
+ * </p>
+ *
+ * @see ValidationReport
+ * @see ElementInitializer
+ */
+public class StoryValidator {
+
+	/**
+	 * Logger instance for recording validation results.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Validates the story
+	 * @param story linked story
+	 * @return report with found problems
+	 */
+	public static ValidationReport validate(Story story) {
+		return validate(story.getSTORY_ELEMENTS(), List.of());
+	}
+
+	/**
+	 * Validates the story and rejects it, if it can't be played
+	 * @param story linked story
+	 * @return the same story
+	 * @throws StoryValidationException if the story has problems
+	 */
+	public static Story requireValid(Story story) {
+		ValidationReport report = validate(story);
+		if (!report.isValid()) throw new StoryValidationException(report);
+		return story;
+	}
+
+	/**
+	 * Validates linked elements of the story
+	 * @param elements     linked elements by their indexes
+	 * @param linkProblems problems, found while the elements were linked, they are added to the report first
+	 * @return report with found problems
+	 */
+	static ValidationReport validate(Map<String, Element> elements, List<Problem> linkProblems) {
+		ValidationReport report = new ValidationReport();
+		Set<String> unresolved = new HashSet<>();
+		for (Problem problem : linkProblems) {
+			report.add(problem);
+			if (problem.index() != null) unresolved.add(problem.index());
+		}
+
+		int size = elements.size();
+		Element[] nodes = new Element[size];
+		String[] indexes = new String[size];
+		Map<Element, Integer> ids = new IdentityHashMap<>(size);
+		int id = 0;
+		for (Map.Entry<String, Element> entry : elements.entrySet()) {
+			nodes[id] = entry.getValue();
+			indexes[id] = entry.getKey();
+			ids.put(entry.getValue(), id++);
+		}
+
+		int[][] next = new int[size][];
+		int[] previousCount = new int[size];
+		for (int i = 0; i < size; i++) {
+			next[i] = successors(nodes[i], indexes[i], ids, unresolved, report);
+			for (int successor : next[i]) previousCount[successor]++;
+		}
+		int[][] previous = new int[size][];
+		for (int i = 0; i < size; i++) previous[i] = new int[previousCount[i]];
+		for (int i = 0; i < size; i++) {
+			for (int successor : next[i]) previous[successor][--previousCount[successor]] = i;
+		}
+
+		Integer main = ids.get(elements.get("S1"));
+		if (main == null || !(nodes[main] instanceof MainSituation) || isEnding(nodes[main])) {
+			report.add(ProblemType.MISSING_MAIN_SITUATION, "S1", "Story has no main situation");
+			checkVictories(nodes, null, report);
+			report.setCounts(size, 0);
+			return logged(report);
+		}
+
+		boolean[] reachable = walk(new int[]{main}, next, size);
+		int[] endings = new int[size];
+		int endingCount = 0;
+		for (int i = 0; i < size; i++) {
+			if (isEnding(nodes[i])) endings[endingCount++] = i;
+		}
+		boolean[] canEnd = walk(Arrays.copyOf(endings, endingCount), previous, size);
+
+		int reachableCount = 0;
+		for (int i = 0; i < size; i++) {
+			if (!reachable[i]) {
+				report.add(ProblemType.UNREACHABLE, indexes[i], "Element can't be reached from S1");
+				continue;
+			}
+			reachableCount++;
+			if (nodes[i] instanceof MainSituation && !isEnding(nodes[i]) && next[i].length > 0 && !canEnd[i]) {
+				report.add(ProblemType.DEAD_END, indexes[i], "No path from the situation leads to a victory or a fail");
+			}
+		}
+		checkVictories(nodes, reachable, report);
+		report.setCounts(size, reachableCount);
+		return logged(report);
+	}
+
+	/**
+	 * Returns elements, that the element leads to, and reports broken references
+	 * @param element    the element
+	 * @param index      index of the element
+	 * @param ids        numbers of elements
+	 * @param unresolved indexes of choices, which references are already reported
+	 * @param report     report to add problems to
+	 * @return numbers of the next elements
+	 */
+	private static int[] successors(Element element, String index, Map<Element, Integer> ids, Set<String> unresolved, ValidationReport report) {
+		if (element instanceof Choice choice) {
+			if (!choice.isGoNext() || unresolved.contains(index)) return new int[0];
+			Integer leadTo = choice.getLeadTo() == null ? null : ids.get(choice.getLeadTo());
+			if (leadTo == null) {
+				report.add(ProblemType.UNRESOLVED_REFERENCE, index, choice.getLeadTo() == null
+						? "Choice doesn't lead to any situation" : "Choice leads to a situation of another story");
+				return new int[0];
+			}
+			return new int[]{leadTo};
+		}
+		if (!(element instanceof MainSituation situation) || isEnding(element)) return new int[0];
+		Choice[] choices = situation.getChoices();
+		if (choices == null || choices.length == 0) {
+			report.add(ProblemType.DEAD_END, index, "Situation has no choices");
+			return new int[0];
+		}
+		int[] result = new int[choices.length];
+		int count = 0;
+		for (Choice choice : choices) {
+			Integer choiceId = ids.get(choice);
+			if (choiceId != null) result[count++] = choiceId;
+			else report.add(ProblemType.UNRESOLVED_REFERENCE, index, "Situation contains a choice of another story");
+		}
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Walks the graph breadth-first
+	 * @param start numbers of the first elements
+	 * @param edges numbers of adjacent elements of every element
+	 * @param size  number of elements
+	 * @return visited elements
+	 */
+	private static boolean[] walk(int[] start, int[][] edges, int size) {
+		boolean[] visited = new boolean[size];
+		int[] queue = new int[size];
+		int head = 0;
+		int tail = 0;
+		for (int element : start) {
+			visited[element] = true;
+			queue[tail++] = element;
+		}
+		while (head < tail) {
+			for (int adjacent : edges[queue[head++]]) {
+				if (visited[adjacent]) continue;
+				visited[adjacent] = true;
+				queue[tail++] = adjacent;
+			}
+		}
+		return visited;
+	}
+
+	/**
+	 * Checks that the story has a victory, that can be reached from S1, or a pending situation, that may lead to a victory
+	 * @param nodes     elements of the story
+	 * @param reachable elements reachable from S1, null if S1 is missing
+	 * @param report    report to add problems to
+	 */
+	private static void checkVictories(Element[] nodes, boolean[] reachable, ValidationReport report) {
+		boolean exists = false;
+		for (int i = 0; i < nodes.length; i++) {
+			if (!(nodes[i] instanceof Victory || nodes[i] instanceof PendingSituation)) continue;
+			if (reachable == null || reachable[i]) return;
+			exists = true;
+		}
+		if (!exists) report.add(ProblemType.NO_VICTORY, null, "Story has no victory");
+		else if (reachable != null) report.add(ProblemType.NO_VICTORY, null, "No victory can be reached from S1");
+	}
+
+	/**
+	 * @param element story element
+	 * @return true if the element is a victory, a fail or a pending situation
+	 */
+	private static boolean isEnding(Element element) {
+		return element instanceof Victory || element instanceof Fail || element instanceof PendingSituation;
+	}
+
+	/**
+	 * Logs the result of validation
+	 * @param report validation report
+	 * @return the same report
+	 */
+	private static ValidationReport logged(ValidationReport report) {
+		if (report.isValid()) log.info("{}", report);
+		else log.warn("{}", report);
+		return report;
+	}
+
+	/**
+	 * Private constructor, utility class
+	 */
+	private StoryValidator() {
+	}
+}
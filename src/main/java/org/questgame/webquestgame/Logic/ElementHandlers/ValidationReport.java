@@ -0,0 +1,148 @@
+package org.questgame.webquestgame.Logic.ElementHandlers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code ValidationReport} class contains problems of the story graph, found by {@link StoryValidator}.
+ * <p>
+ * The story is playable only if the report has no problems: {@link #isValid()}. Every problem has a type,
+ * index of the element it is related to (e.g. "S3", "Y5") and a human-readable message.
+ * </p>
+ *
+ * @see StoryValidator
+ * @see org.questgame.webquestgame.Exceptions.StoryValidationException
+ */
+public class ValidationReport {
+
+	/**
+	 * Types of problems
+	 */
+	public enum ProblemType {
+		/**
+		 * Story has no main situation "S1"
+		 */
+		MISSING_MAIN_SITUATION,
+		/**
+		 * Choice leads to "-", to a missing element or to an element, that is not a situation,
+		 * or it belongs to an element, that is not a situation
+		 */
+		UNRESOLVED_REFERENCE,
+		/**
+		 * Several elements have the same index, only the first of them is kept
+		 */
+		DUPLICATE_INDEX,
+		/**
+		 * Element can't be reached from the main situation
+		 */
+		UNREACHABLE,
+		/**
+		 * Situation has no choices, or no path from it leads to a victory or a fail
+		 */
+		DEAD_END,
+		/**
+		 * Story has no victory, or no victory can be reached from the main situation
+		 */
+		NO_VICTORY
+	}
+
+	/**
+	 * Problem of the story
+	 * @param type    type of the problem
+	 * @param index   index of the element, null if the problem is related to the whole story
+	 * @param message description of the problem
+	 */
+	public record Problem(ProblemType type, String index, String message) {
+		@Override
+		public String toString() {
+			return type + (index == null ? "" : " " + index) + ": " + message;
+		}
+	}
+
+	/**
+	 * Found problems, in the order they were found
+	 */
+	private final List<Problem> problems = new ArrayList<>();
+
+	/**
+	 * Number of checked elements
+	 */
+	private int elements;
+
+	/**
+	 * Number of elements, that can be reached from the main situation
+	 */
+	private int reachable;
+
+	/**
+	 * Adds problem to the report
+	 * @param type    type of the problem
+	 * @param index   index of the element, null if the problem is related to the whole story
+	 * @param message description of the problem
+	 */
+	void add(ProblemType type, String index, String message) {
+		problems.add(new Problem(type, index, message));
+	}
+
+	/**
+	 * Adds problem to the report
+	 * @param problem found problem
+	 */
+	void add(Problem problem) {
+		problems.add(problem);
+	}
+
+	/**
+	 * Sets statistics of the checked story
+	 * @param elements  number of checked elements
+	 * @param reachable number of elements, that can be reached from the main situation
+	 */
+	void setCounts(int elements, int reachable) {
+		this.elements = elements;
+		this.reachable = reachable;
+	}
+
+	/**
+	 * @return true if the story has no problems and can be played
+	 */
+	public boolean isValid() {
+		return problems.isEmpty();
+	}
+
+	/**
+	 * @return unmodifiable list of found problems
+	 */
+	public List<Problem> getProblems() {
+		return Collections.unmodifiableList(problems);
+	}
+
+	/**
+	 * Returns problems of the specified type
+	 * @param type type of problems
+	 * @return found problems of this type
+	 */
+	public List<Problem> getProblems(ProblemType type) {
+		return problems.stream().filter(problem -> problem.type() == type).toList();
+	}
+
+	/**
+	 * @return number of checked elements
+	 */
+	public int getElements() {
+		return elements;
+	}
+
+	/**
+	 * @return number of elements, that can be reached from the main situation
+	 */
+	public int getReachable() {
+		return reachable;
+	}
+
+	@Override
+	public String toString() {
+		if (isValid()) return "Story is valid (" + elements + " elements)";
+		return "Story has " + problems.size() + " problems (" + reachable + " of " + elements + " elements reachable): " + problems;
+	}
+}
@@ -0,0 +1,35 @@
+package org.questgame.webquestgame.Logic.Elements;
+
+import java.io.Serializable;
+
+/**
+ * A subclass of {@link Situation} representing a part of the story, that is not generated yet.
+ * <p>A choice with {@code continue} flag leads to a pending situation. It has no choices, and it is replaced with
+ * a generated branch, when the player approaches it (see {@code StoryExpander}).</p>
+ * <p>The class implements {@link Serializable}, allowing its state to be saved and restored when needed.</p>
+ * @see Situation
+ * @see Choice
+ */
+public class PendingSituation extends Situation implements Serializable {
+
+	/**
+	 * Prefix of indexes of pending situations, the index of a pending situation is the prefix with the index of its choice
+	 */
+	public static final String INDEX_PREFIX = "P";
+
+	/**
+	 * Constructor to create a pending situation
+	 */
+	public PendingSituation() {
+		super("Продолжение истории еще не написано.");
+	}
+
+	/**
+	 * Returns index of the pending situation, that the choice leads to
+	 * @param choiceIndex index of the choice with {@code continue} flag, e.g. "Y5"
+	 * @return index of the pending situation, e.g. "PY5"
+	 */
+	public static String indexFor(String choiceIndex) {
+		return INDEX_PREFIX + choiceIndex;
+	}
+}
@@ -0,0 +1,189 @@
+package org.questgame.webquestgame.Logic.Generators;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer;
+import org.questgame.webquestgame.Logic.Interfaces.StoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The {@code DeterministicStoryGenerator} class generates stories in-process, without any network requests.
+ * <p>
+ * Story content is built from templates in the same format, as the content of AI Response, and is parsed with
+ * {@link ElementInitializer}, so the whole pipeline (parsing, streaming, caching, playing) can be tested and benchmarked
+ * offline. The same prompt always produces the same story: templates are chosen with a random generator seeded with the prompt.
+ * </p>
+ * Every story is a chain of {@code situations} situations: one choice of every situation leads to the next one
+ * (the last one leads to the victory), the other choice leads to a fail.
+ *
+ * @see StoryGenerator
+ * @see Settings
+ */
+public class DeterministicStoryGenerator implements StoryGenerator {
+
+	/**
+	 * Logger instance for recording generation events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Templates of situation descriptions, %s is replaced with the prompt
+	 */
+	private static final String[] SITUATIONS = {
+			"История начинается: %s. Перед вами развилка старой дороги, и солнце уже клонится к закату.",
+			"Вы продолжаете путь (%s). Впереди слышен шум, и кто-то зовет на помощь.",
+			"Тропа приводит вас к заброшенной башне. Ее двери приоткрыты, а внутри мерцает свет.",
+			"На пути встречается странник, который предлагает показать короткую дорогу.",
+			"Начинается гроза. Нужно срочно решить, где переждать непогоду.",
+			"Вы находите старую карту с отметкой, которая может быть связана с вашей целью.",
+			"Мост через реку наполовину разрушен, но другого пути не видно."
+	};
+
+	/**
+	 * Templates of choices, that lead further
+	 */
+	private static final String[] NEXT_CHOICES = {
+			"Идти вперед, не сворачивая.",
+			"Осторожно осмотреться и продолжить путь.",
+			"Довериться интуиции и двигаться дальше.",
+			"Попросить совета у местных жителей.",
+			"Подготовиться и только потом идти дальше."
+	};
+
+	/**
+	 * Templates of choices, that lead to a fail
+	 */
+	private static final String[] FAIL_CHOICES = {
+			"Повернуть назад и вернуться домой.",
+			"Рискнуть и пойти напролом.",
+			"Довериться первому встречному.",
+			"Остаться на месте и ждать."
+	};
+
+	/**
+	 * Templates of fail descriptions
+	 */
+	private static final String[] FAILS = {
+			"Вы заблудились, и путешествие закончилось ничем.",
+			"Решение оказалось ошибкой, и цель была упущена.",
+			"Ловушка захлопнулась, и выбраться из нее не удалось."
+	};
+
+	/**
+	 * Template of victory description, %s is replaced with the prompt
+	 */
+	private static final String VICTORY = "Вы достигли цели (%s). Путешествие завершилось победой!";
+
+	/**
+	 * Number of situations in every story
+	 */
+	private final int situations;
+
+	/**
+	 * Number of characters in one streamed piece of content
+	 */
+	private final int chunkSize;
+
+	/**
+	 * Creates generator configured with values from {@link Settings}
+	 */
+	public DeterministicStoryGenerator() {
+		this(Settings.DETERMINISTIC_STORY_SITUATIONS, Settings.DETERMINISTIC_STREAM_CHUNK);
+	}
+
+	/**
+	 * Creates generator
+	 * @param situations number of situations in every story
+	 * @param chunkSize  number of characters in one streamed piece of content
+	 */
+	public DeterministicStoryGenerator(int situations, int chunkSize) {
+		this.situations = Math.max(1, situations);
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	@Override
+	public String getName() {
+		return "deterministic:" + situations;
+	}
+
+	@Override
+	public Story generate(String userPrompt) {
+		return ElementInitializer.createStoryFromContent(createContent(userPrompt));
+	}
+
+	@Override
+	public CompletableFuture<Story> generateAsync(String userPrompt) {
+		return CompletableFuture.supplyAsync(() -> generate(userPrompt));
+	}
+
+	@Override
+	public CompletableFuture<Void> stream(String userPrompt, Consumer<String> contentConsumer) {
+		return CompletableFuture.runAsync(() -> {
+			String content = createContent(userPrompt);
+			for (int i = 0; i < content.length(); i += chunkSize) {
+				contentConsumer.accept(content.substring(i, Math.min(content.length(), i + chunkSize)));
+			}
+		});
+	}
+
+	/**
+	 * Builds story content for the prompt
+	 * @param userPrompt the input prompt from the user
+	 * @return story content in the format of AI Response
+	 * @throws ChatGptGenerationException if the prompt is empty
+	 */
+	public String createContent(String userPrompt) {
+		if (StringUtils.isBlank(userPrompt)) {
+			log.warn("User prompt is not valid, story can't be generated");
+			throw new ChatGptGenerationException("User prompt is not valid, story can't be generated");
+		}
+		String prompt = userPrompt.replaceAll("['\"{}\\[\\]\\\\]", "").strip();
+		Random random = new Random(prompt.toLowerCase(Locale.ROOT).hashCode());
+		StringBuilder content = new StringBuilder("{ ");
+		for (int i = 1; i <= situations; i++) {
+			boolean last = i == situations;
+			String next = "{ 'Описание': '" + (last ? "Сделать решающий шаг." : pick(random, NEXT_CHOICES)) + "', " +
+					"'Индекс выбора': 'Y" + (2 * i - 1) + "', " +
+					"'Флаг': '" + (last ? "victory" : "goNext") + "', " +
+					"'Ведет к': '" + (last ? "V1" : "S" + (i + 1)) + "' }";
+			String fail = "{ 'Описание': '" + pick(random, FAIL_CHOICES) + "', " +
+					"'Индекс выбора': 'Y" + (2 * i) + "', " +
+					"'Флаг': 'fail', " +
+					"'Ведет к': 'F" + i + "' }";
+			boolean failFirst = random.nextBoolean();
+			content.append("'Ситуация': { ")
+					.append("'Описание': '").append(String.format(SITUATIONS[(i - 1) % SITUATIONS.length], prompt)).append("', ")
+					.append("'Индекс ситуации': 'S").append(i).append("', ")
+					.append("'Привело из': '").append(i == 1 ? "-" : "Y" + (2 * i - 3)).append("', ")
+					.append("'Выборы ситуации': [ ")
+					.append(failFirst ? fail : next).append(", ").append(failFirst ? next : fail)
+					.append(" ] }, ");
+		}
+		content.append("'Победа': { 'Описание': '").append(String.format(VICTORY, prompt)).append("', ")
+				.append("'Индекс победы': 'V1', 'Привело из': 'Y").append(2 * situations - 1).append("' }");
+		for (int i = 1; i <= situations; i++) {
+			content.append(", 'Поражение': { 'Описание': '").append(pick(random, FAILS)).append("', ")
+					.append("'Индекс поражения': 'F").append(i).append("', 'Привело из': 'Y").append(2 * i).append("' }");
+		}
+		content.append(" }");
+		return content.toString();
+	}
+
+	/**
+	 * Picks random template
+	 * @param random    random generator seeded with the prompt
+	 * @param templates templates to pick from
+	 * @return picked template
+	 */
+	private static String pick(Random random, String[] templates) {
+		return templates[random.nextInt(templates.length)];
+	}
+}
@@ -0,0 +1,334 @@
+package org.questgame.webquestgame.Logic.Generators;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Exceptions.StoryValidationException;
+import org.questgame.webquestgame.Logic.Interfaces.StoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The {@code HedgedStoryGenerator} class cuts tail latency of generation by generating several candidates of the same story.
+ * <p>
+ * The first candidate is started at once. If it is not generated within the configured percentile of recent generation
+ * times, or if it is rejected by {@link org.questgame.webquestgame.Logic.ElementHandlers.StoryValidator}, the next candidate
+ * is started in parallel. The first candidate, that is generated and parsed with
+ * {@link org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer}, wins, the other ones are cancelled.
+ * </p>
+ * <p>
+ * Every additional candidate costs a full generation, so they are limited by a budget: every story adds
+ * {@code budget} percent of a candidate to the budget, every additional candidate takes one. Streamed generation
+ * is not hedged, because the consumer can't receive content of two candidates.
+ * </p>
+ *
+ * @see StoryGenerators
+ * @see Settings#HEDGE_MAX_CANDIDATES
+ */
+public class HedgedStoryGenerator implements StoryGenerator {
+
+	/**
+	 * Logger instance for recording hedging events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Number of the last generation times, from which the percentile is calculated
+	 */
+	private static final int LATENCY_WINDOW = 100;
+
+	/**
+	 * Generation times needed before the percentile replaces the initial delay
+	 */
+	private static final int MIN_LATENCY_SAMPLES = 20;
+
+	/**
+	 * Generator of candidates
+	 */
+	private final StoryGenerator delegate;
+
+	/**
+	 * Maximum number of candidates of one story
+	 */
+	private final int maxCandidates;
+
+	/**
+	 * Percentile of generation time, after which the next candidate is started
+	 */
+	private final int percentile;
+
+	/**
+	 * Delay before the next candidate, until enough generations are measured
+	 */
+	private final Duration initialDelay;
+
+	/**
+	 * Additional candidates added to the budget by every story
+	 */
+	private final double budgetPerStory;
+
+	/**
+	 * Last generation times of winning candidates, in nanoseconds
+	 */
+	private final long[] latencies = new long[LATENCY_WINDOW];
+
+	/**
+	 * Number of recorded generation times
+	 */
+	private long latencyCount;
+
+	/**
+	 * Available additional candidates
+	 */
+	private double budget;
+
+	/**
+	 * Number of started additional candidates
+	 */
+	private final AtomicLong hedges = new AtomicLong();
+
+	/**
+	 * Number of stories won by additional candidates
+	 */
+	private final AtomicLong hedgeWins = new AtomicLong();
+
+	/**
+	 * Creates generator configured with values from {@link Settings}
+	 * @param delegate generator of candidates
+	 */
+	public HedgedStoryGenerator(StoryGenerator delegate) {
+		this(delegate, Settings.HEDGE_MAX_CANDIDATES, Settings.HEDGE_PERCENTILE, Settings.HEDGE_INITIAL_DELAY, Settings.HEDGE_BUDGET);
+	}
+
+	/**
+	 * Creates generator
+	 * @param delegate      generator of candidates
+	 * @param maxCandidates maximum number of candidates of one story
+	 * @param percentile    percentile of generation time, after which the next candidate is started, 1-99
+	 * @param initialDelay  delay before the next candidate, until enough generations are measured
+	 * @param budget        additional candidates in percent of stories
+	 */
+	public HedgedStoryGenerator(StoryGenerator delegate, int maxCandidates, int percentile, Duration initialDelay, int budget) {
+		this.delegate = delegate;
+		this.maxCandidates = Math.max(1, maxCandidates);
+		this.percentile = Math.min(99, Math.max(1, percentile));
+		this.initialDelay = initialDelay;
+		this.budgetPerStory = Math.max(0, budget) / 100.0;
+	}
+
+	@Override
+	public String getName() {
+		return delegate.getName();
+	}
+
+	@Override
+	public Story generate(String userPrompt) {
+		try {
+			return generateAsync(userPrompt).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) throw cause;
+			throw e;
+		}
+	}
+
+	@Override
+	public CompletableFuture<Story> generateAsync(String userPrompt) {
+		synchronized (this) {
+			budget = Math.min(maxCandidates, budget + budgetPerStory);
+		}
+		Hedge hedge = new Hedge(userPrompt);
+		hedge.start();
+		return hedge.result;
+	}
+
+	@Override
+	public CompletableFuture<Void> stream(String userPrompt, Consumer<String> contentConsumer) {
+		return delegate.stream(userPrompt, contentConsumer);
+	}
+
+	/**
+	 * Returns time, after which the next candidate is started
+	 * @return configured percentile of recent generation times, or the initial delay, if not enough generations are measured
+	 */
+	public synchronized Duration getHedgeDelay() {
+		if (latencyCount < MIN_LATENCY_SAMPLES) return initialDelay;
+		long[] sorted = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_WINDOW));
+		Arrays.sort(sorted);
+		return Duration.ofNanos(sorted[(int) Math.ceil(sorted.length * percentile / 100.0) - 1]);
+	}
+
+	/**
+	 * @return number of started additional candidates
+	 */
+	public long getHedges() {
+		return hedges.get();
+	}
+
+	/**
+	 * @return number of stories won by additional candidates
+	 */
+	public long getHedgeWins() {
+		return hedgeWins.get();
+	}
+
+	/**
+	 * Records generation time of the story, measured from the start of its first candidate, so that hedged
+	 * stories don't look faster than they were for the caller
+	 * @param nanos generation time, in nanoseconds
+	 */
+	private synchronized void recordLatency(long nanos) {
+		latencies[(int) (latencyCount++ % LATENCY_WINDOW)] = nanos;
+	}
+
+	/**
+	 * Takes one additional candidate from the budget
+	 * @return true if the candidate may be started
+	 */
+	private synchronized boolean tryTakeBudget() {
+		if (budget < 1) return false;
+		budget--;
+		return true;
+	}
+
+	/**
+	 * Candidates of one story
+	 */
+	private class Hedge {
+
+		/**
+		 * Prompt of the story
+		 */
+		private final String userPrompt;
+
+		/**
+		 * Completed with the first generated candidate
+		 */
+		private final CompletableFuture<Story> result = new CompletableFuture<>();
+
+		/**
+		 * Started candidates
+		 */
+		private final List<CompletableFuture<Story>> candidates = new ArrayList<>();
+
+		/**
+		 * Set by the first generated candidate
+		 */
+		private final AtomicBoolean won = new AtomicBoolean();
+
+		/**
+		 * Start time of the first candidate, in nanoseconds
+		 */
+		private final long started = System.nanoTime();
+
+		/**
+		 * Number of started candidates
+		 */
+		private int launched;
+
+		/**
+		 * Number of failed candidates
+		 */
+		private int failed;
+
+		/**
+		 * Creates candidates of the story
+		 * @param userPrompt prompt of the story
+		 */
+		private Hedge(String userPrompt) {
+			this.userPrompt = userPrompt;
+			result.whenComplete((story, e) -> cancelCandidates());
+		}
+
+		/**
+		 * Starts the first candidate
+		 */
+		private void start() {
+			synchronized (this) {
+				launched = 1;
+			}
+			launch(0);
+		}
+
+		/**
+		 * Starts an additional candidate, if the story is not generated yet and the budget allows it
+		 * @param reason reason of the additional candidate, for logging
+		 * @return true if the candidate is started
+		 */
+		private boolean hedge(String reason) {
+			int number;
+			synchronized (this) {
+				if (won.get() || result.isDone() || launched >= maxCandidates) return false;
+				if (!tryTakeBudget()) {
+					log.debug("Additional candidate ({}) is not started, hedging budget is spent", reason);
+					return false;
+				}
+				number = launched++;
+			}
+			hedges.incrementAndGet();
+			log.info("Starting candidate {} of the story: {}", number + 1, reason);
+			launch(number);
+			return true;
+		}
+
+		/**
+		 * Starts candidate and schedules the next one after the hedge delay
+		 * @param number number of the candidate, starting from 0
+		 */
+		private void launch(int number) {
+			CompletableFuture<Story> candidate = delegate.generateAsync(userPrompt);
+			synchronized (this) {
+				candidates.add(candidate);
+			}
+			if (won.get() || result.isDone()) candidate.cancel(true);
+			if (maxCandidates > 1) {
+				CompletableFuture.delayedExecutor(getHedgeDelay().toNanos(), TimeUnit.NANOSECONDS)
+						.execute(() -> hedge("candidate " + (number + 1) + " is not generated in time"));
+			}
+			candidate.whenComplete((story, e) -> {
+				if (e == null) {
+					if (!won.compareAndSet(false, true)) return;
+					recordLatency(System.nanoTime() - started);
+					if (number > 0) hedgeWins.incrementAndGet();
+					log.info("Candidate {} of the story is generated first", number + 1);
+					cancelCandidates();
+					result.complete(story);
+					return;
+				}
+				Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+				if (won.get() || result.isDone()) return;
+				synchronized (this) {
+					failed++;
+				}
+				if (cause instanceof StoryValidationException && hedge("candidate " + (number + 1) + " can't be played")) return;
+				boolean last;
+				synchronized (this) {
+					last = failed == launched;
+				}
+				if (last) result.completeExceptionally(cause);
+			});
+		}
+
+		/**
+		 * Cancels all candidates, that are still being generated
+		 */
+		private void cancelCandidates() {
+			List<CompletableFuture<Story>> started;
+			synchronized (this) {
+				started = new ArrayList<>(candidates);
+			}
+			for (CompletableFuture<Story> candidate : started) {
+				candidate.cancel(true);
+			}
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package org.questgame.webquestgame.Logic.Generators;
+
+import org.questgame.webquestgame.Additional.ChatEndpoint;
+import org.questgame.webquestgame.Additional.Settings;
+
+/**
+ * The {@code LocalEndpointStoryGenerator} class generates stories with a local server, that implements
+ * OpenAI-compatible chat-completions API (e.g. Ollama, llama.cpp server, vLLM).
+ * <p>
+ * URI, model and optional API key of the server are configured with {@code questgame.generator.local.*} options.
+ * </p>
+ *
+ * @see OpenAiStoryGenerator
+ * @see Settings
+ */
+public class LocalEndpointStoryGenerator extends OpenAiStoryGenerator {
+
+	/**
+	 * Creates generator for the local server configured in {@link Settings}
+	 */
+	public LocalEndpointStoryGenerator() {
+		super("local", new ChatEndpoint(Settings.LOCAL_GENERATOR_URI, Settings.LOCAL_GENERATOR_API_KEY,
+				Settings.LOCAL_GENERATOR_MODEL, Settings.TEMPERATURE));
+	}
+}
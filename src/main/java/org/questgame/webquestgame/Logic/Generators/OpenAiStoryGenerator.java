@@ -0,0 +1,97 @@
+package org.questgame.webquestgame.Logic.Generators;
+
+import org.questgame.webquestgame.Additional.ChatEndpoint;
+import org.questgame.webquestgame.Additional.ChatGPTClient;
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryContentSink;
+import org.questgame.webquestgame.Logic.Interfaces.StoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The {@code OpenAiStoryGenerator} class generates stories with the chat-completions API of OpenAI,
+ * or of any other server, that is compatible with it.
+ * <p>
+ * Requests are sent with {@link ChatGPTClient}, so they share its HTTP client, rate limiter, retries
+ * and circuit breaker. Responses are parsed into stories with {@link StoryContentSink} while they are received,
+ * the whole response is never kept in memory.
+ * </p>
+ *
+ * @see ChatGPTClient
+ * @see ChatEndpoint
+ */
+public class OpenAiStoryGenerator implements StoryGenerator {
+
+	/**
+	 * Endpoint, that generates stories
+	 */
+	private final ChatEndpoint endpoint;
+
+	/**
+	 * Name of the generator
+	 */
+	private final String name;
+
+	/**
+	 * Creates generator for the OpenAI endpoint configured in {@link org.questgame.webquestgame.Additional.Settings}
+	 */
+	public OpenAiStoryGenerator() {
+		this("openai", ChatEndpoint.getDefault());
+	}
+
+	/**
+	 * Creates generator for the specified endpoint
+	 * @param name     name of the generator
+	 * @param endpoint OpenAI-compatible endpoint
+	 */
+	protected OpenAiStoryGenerator(String name, ChatEndpoint endpoint) {
+		this.name = name + ":" + endpoint.getModel();
+		this.endpoint = endpoint;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public Story generate(String userPrompt) {
+		return first(ChatGPTClient.generateMainQuestLines(endpoint, userPrompt, 1, StoryContentSink::new));
+	}
+
+	/**
+	 * Generates several stories with one API request, every story is a separate choice of the response
+	 * @param userPrompt the input prompt from the user
+	 * @param count      number of stories
+	 * @return generated stories
+	 */
+	@Override
+	public List<Story> generate(String userPrompt, int count) {
+		return ChatGPTClient.generateMainQuestLines(endpoint, userPrompt, count, StoryContentSink::new);
+	}
+
+	@Override
+	public CompletableFuture<Story> generateAsync(String userPrompt) {
+		CompletableFuture<List<Story>> response = ChatGPTClient.generateMainQuestLinesAsync(endpoint, userPrompt, 1, StoryContentSink::new);
+		return ChatGPTClient.cancelling(response.thenApply(OpenAiStoryGenerator::first), response);
+	}
+
+	@Override
+	public CompletableFuture<Void> stream(String userPrompt, Consumer<String> contentConsumer) {
+		return ChatGPTClient.streamMainQuestLine(endpoint, userPrompt, contentConsumer);
+	}
+
+	/**
+	 * Returns the only story of the response
+	 * @param stories stories parsed from the response
+	 * @return the first story
+	 * @throws ChatGptGenerationException if the response doesn't contain a story
+	 */
+	private static Story first(List<Story> stories) {
+		if (stories.isEmpty()) throw new ChatGptGenerationException("AI Response doesn't contain a story");
+		return stories.get(0);
+	}
+}
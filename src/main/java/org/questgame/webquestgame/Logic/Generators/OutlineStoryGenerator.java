@@ -0,0 +1,387 @@
+package org.questgame.webquestgame.Logic.Generators;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.ChatEndpoint;
+import org.questgame.webquestgame.Additional.ChatGPTClient;
+import org.questgame.webquestgame.Additional.ChatRequestBody;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Additional.TextContentSink;
+import org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer;
+import org.questgame.webquestgame.Logic.Elements.Choice;
+import org.questgame.webquestgame.Logic.Elements.Element;
+import org.questgame.webquestgame.Logic.Elements.Fail;
+import org.questgame.webquestgame.Logic.Elements.MainSituation;
+import org.questgame.webquestgame.Logic.Elements.PendingSituation;
+import org.questgame.webquestgame.Logic.Elements.Situation;
+import org.questgame.webquestgame.Logic.Elements.Victory;
+import org.questgame.webquestgame.Logic.Interfaces.StoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * The {@code OutlineStoryGenerator} class generates a story in two steps, so generation time is close to the time of
+ * the longest branch, instead of the time of the whole story:
+ * <ol>
+ *     <li>a compact outline is requested: the whole graph of the story in the usual format, but with descriptions of a few
+ *     words. It is parsed and validated with {@link ElementInitializer};</li>
+ *     <li>the graph is split into branches, and detailed descriptions of every branch are requested in parallel.
+ *     Descriptions are set to the elements of the outline.</li>
+ * </ol>
+ * <p>
+ * The graph is split at the first level of situations (counting from S1), that has enough situations for all branches.
+ * Elements above this level form the trunk, every element below it belongs to the branch of its nearest situation
+ * of this level, every choice belongs to the branch of its situation. If descriptions of a branch can't be generated,
+ * the branch keeps descriptions of the outline, so the story can still be played.
+ * </p>
+ * Requests are sent with {@link ChatGPTClient}, so they share its HTTP client, rate limiter, retries and circuit breaker.
+ *
+ * @see Settings#OUTLINE_BRANCHES
+ * @see StoryGenerators
+ */
+public class OutlineStoryGenerator implements StoryGenerator {
+
+	/**
+	 * Logger instance for recording generation events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * One line of detailed descriptions, e.g. {@code S2: text}
+	 */
+	private static final Pattern DETAIL_LINE = Pattern.compile("^\\s*'?([SYVF]\\d+)'?\\s*[:—–-]\\s*'?(.+?)'?\\s*,?\\s*$", Pattern.MULTILINE);
+
+	/**
+	 * Endpoint, that generates outlines and descriptions
+	 */
+	private final ChatEndpoint endpoint;
+
+	/**
+	 * Name of the generator
+	 */
+	private final String name;
+
+	/**
+	 * Request body template for outlines
+	 */
+	private final ChatRequestBody outlineBody;
+
+	/**
+	 * Request body template for detailed descriptions
+	 */
+	private final ChatRequestBody detailsBody;
+
+	/**
+	 * Maximum number of branches, which descriptions are generated in parallel
+	 */
+	private final int branches;
+
+	/**
+	 * Creates generator for the OpenAI endpoint configured in {@link Settings}
+	 */
+	public OutlineStoryGenerator() {
+		this("outline", ChatEndpoint.getDefault(), Settings.OUTLINE_BRANCHES);
+	}
+
+	/**
+	 * Creates generator for the specified endpoint
+	 * @param name     name of the generator
+	 * @param endpoint OpenAI-compatible endpoint
+	 * @param branches maximum number of branches, which descriptions are generated in parallel
+	 */
+	protected OutlineStoryGenerator(String name, ChatEndpoint endpoint, int branches) {
+		this.name = name + ":" + endpoint.getModel();
+		this.endpoint = endpoint;
+		this.outlineBody = endpoint.createRequestBody(Settings.PROMPT_CONTEXT_FOR_OUTLINE);
+		this.detailsBody = endpoint.createRequestBody(Settings.PROMPT_CONTEXT_FOR_DETAILS);
+		this.branches = Math.max(1, branches);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public Story generate(String userPrompt) {
+		try {
+			return generateAsync(userPrompt).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) throw cause;
+			throw e;
+		}
+	}
+
+	@Override
+	public CompletableFuture<Story> generateAsync(String userPrompt) {
+		CompletableFuture<String> outline = requestOutline(userPrompt);
+		AtomicReference<CompletableFuture<Story>> described = new AtomicReference<>();
+		CompletableFuture<Story> result = outline
+				.thenApply(ElementInitializer::createStoryFromContent)
+				.thenCompose(story -> {
+					CompletableFuture<Story> details = describe(userPrompt, story);
+					described.set(details);
+					return details;
+				});
+		ChatGPTClient.cancelling(result, outline);
+		return ChatGPTClient.cancelling(result, described::get);
+	}
+
+	/**
+	 * Generates the story and passes its content to the consumer at once, because the content can't be streamed
+	 * before descriptions of all branches are generated
+	 * @param userPrompt      the input prompt from the user
+	 * @param contentConsumer receives content of the story
+	 * @return {@link CompletableFuture} completed when the content is passed to the consumer
+	 */
+	@Override
+	public CompletableFuture<Void> stream(String userPrompt, Consumer<String> contentConsumer) {
+		CompletableFuture<Story> generated = generateAsync(userPrompt);
+		return ChatGPTClient.cancelling(generated.thenAccept(story -> contentConsumer.accept(toContent(story))), generated);
+	}
+
+	/**
+	 * Requests outline of the story
+	 * @param userPrompt the input prompt from the user
+	 * @return {@link CompletableFuture} completed with story content with short descriptions
+	 */
+	protected CompletableFuture<String> requestOutline(String userPrompt) {
+		log.info("Requesting outline of the story");
+		return ChatGPTClient.completeAsync(endpoint, outlineBody, userPrompt, TextContentSink::new);
+	}
+
+	/**
+	 * Requests detailed descriptions of one branch of the story
+	 * @param userPrompt the input prompt from the user
+	 * @param outline    the whole outline, one element per line
+	 * @param indexes    indexes of elements of the branch
+	 * @return {@link CompletableFuture} completed with lines in the format {@code index: description}
+	 */
+	protected CompletableFuture<String> requestDetails(String userPrompt, String outline, List<String> indexes) {
+		String prompt = "Тема: " + userPrompt + "\nПлан:\n" + outline + "\nОпиши элементы: " + String.join(", ", indexes);
+		return ChatGPTClient.completeAsync(endpoint, detailsBody, prompt, TextContentSink::new);
+	}
+
+	/**
+	 * Requests descriptions of all branches in parallel and sets them to elements of the outline
+	 * @param userPrompt the input prompt from the user
+	 * @param outline    validated story with short descriptions
+	 * @return {@link CompletableFuture} completed with the same story, when all branches are described,
+	 * cancelling it cancels requests of all branches
+	 */
+	private CompletableFuture<Story> describe(String userPrompt, Story outline) {
+		Map<String, Element> elements = outline.getSTORY_ELEMENTS();
+		String plan = toPlan(elements);
+		List<List<String>> groups = partition(elements);
+		log.info("Outline of {} elements is split into {} branches", elements.size(), groups.size());
+		CompletableFuture<?>[] requests = new CompletableFuture<?>[groups.size()];
+		CompletableFuture<?>[] exchanges = new CompletableFuture<?>[groups.size()];
+		for (int i = 0; i < groups.size(); i++) {
+			List<String> group = groups.get(i);
+			CompletableFuture<String> exchange = requestDetails(userPrompt, plan, group);
+			exchanges[i] = exchange;
+			requests[i] = exchange
+					.thenAccept(details -> applyDetails(elements, group, details))
+					.exceptionally(e -> {
+						log.warn("Descriptions of branch {} are not generated, outline is kept: {}", group.get(0), e.getMessage());
+						return null;
+					});
+		}
+		CompletableFuture<Story> described = CompletableFuture.allOf(requests).thenApply(ignored -> outline);
+		for (CompletableFuture<?> exchange : exchanges) {
+			ChatGPTClient.cancelling(described, exchange);
+		}
+		return described;
+	}
+
+	/**
+	 * Sets detailed descriptions to elements of the branch
+	 * @param elements elements of the story
+	 * @param group    indexes of elements of the branch, descriptions of other elements are ignored
+	 * @param details  lines in the format {@code index: description}
+	 */
+	private static void applyDetails(Map<String, Element> elements, List<String> group, String details) {
+		Set<String> members = new HashSet<>(group);
+		int described = 0;
+		Matcher matcher = DETAIL_LINE.matcher(details);
+		while (matcher.find()) {
+			String index = matcher.group(1);
+			if (!members.remove(index)) continue;
+			elements.get(index).setDescription(matcher.group(2).strip());
+			described++;
+		}
+		if (described < group.size()) {
+			log.warn("{} of {} elements of branch {} are described, the other ones keep outline", described, group.size(), group.get(0));
+		}
+	}
+
+	/**
+	 * Splits elements of the story into the trunk and up to {@code branches} branches
+	 * @param elements elements of the story
+	 * @return indexes of elements of every non-empty group
+	 */
+	private List<List<String>> partition(Map<String, Element> elements) {
+		Map<Element, String> indexes = new IdentityHashMap<>();
+		elements.forEach((index, element) -> indexes.put(element, index));
+
+		List<List<String>> levels = new ArrayList<>();
+		Map<String, Integer> groupOf = new HashMap<>();
+		List<String> level = elements.containsKey("S1") ? List.of("S1") : List.of();
+		Set<String> visited = new HashSet<>(level);
+		while (!level.isEmpty()) {
+			levels.add(level);
+			List<String> next = new ArrayList<>();
+			for (String index : level) {
+				for (String child : next(elements.get(index), indexes)) {
+					if (visited.add(child)) next.add(child);
+				}
+			}
+			level = next;
+		}
+
+		int split = 0;
+		for (int i = 0; i < levels.size(); i++) {
+			if (levels.get(i).size() >= branches) {
+				split = i;
+				break;
+			}
+			if (levels.get(i).size() > levels.get(split).size()) split = i;
+		}
+		for (int i = 0; i < split; i++) {
+			levels.get(i).forEach(index -> groupOf.put(index, 0));
+		}
+		Deque<String> queue = new ArrayDeque<>();
+		if (!levels.isEmpty()) {
+			List<String> roots = levels.get(split);
+			for (int i = 0; i < roots.size(); i++) {
+				groupOf.put(roots.get(i), 1 + i % branches);
+				queue.add(roots.get(i));
+			}
+		}
+		while (!queue.isEmpty()) {
+			String index = queue.poll();
+			for (String child : next(elements.get(index), indexes)) {
+				if (groupOf.putIfAbsent(child, groupOf.get(index)) == null) queue.add(child);
+			}
+		}
+
+		Map<Integer, List<String>> groups = new LinkedHashMap<>();
+		elements.forEach((index, element) -> {
+			if (element instanceof PendingSituation) return;
+			String owner = element instanceof Choice choice ? indexes.get(choice.getLeadFrom()) : index;
+			groups.computeIfAbsent(groupOf.getOrDefault(owner, 0), group -> new ArrayList<>()).add(index);
+		});
+		return groups.entrySet().stream()
+				.sorted(Map.Entry.comparingByKey())
+				.map(Map.Entry::getValue)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Returns indexes of situations, that choices of the situation lead to
+	 * @param element situation
+	 * @param indexes indexes of elements
+	 * @return indexes of next situations, empty for endings
+	 */
+	private static List<String> next(Element element, Map<Element, String> indexes) {
+		List<String> next = new ArrayList<>();
+		if (element instanceof MainSituation situation && situation.getChoices() != null) {
+			for (Choice choice : situation.getChoices()) {
+				if (choice.isGoNext() && choice.getLeadTo() != null) next.add(indexes.get(choice.getLeadTo()));
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Builds compact plan of the story, that is sent with every request of descriptions
+	 * @param elements elements of the story
+	 * @return one line per element, e.g. {@code Y1: Идти вперед -> S2}
+	 */
+	private static String toPlan(Map<String, Element> elements) {
+		Map<Element, String> indexes = new IdentityHashMap<>();
+		elements.forEach((index, element) -> indexes.put(element, index));
+		StringBuilder plan = new StringBuilder();
+		elements.forEach((index, element) -> {
+			plan.append(index).append(": ").append(element.getDescription());
+			if (element instanceof Choice choice && choice.isGoNext()) plan.append(" -> ").append(indexes.get(choice.getLeadTo()));
+			plan.append('\n');
+		});
+		return plan.toString();
+	}
+
+	/**
+	 * Writes the story back to content in the format of AI Response
+	 * @param story generated story
+	 * @return story content, that can be parsed with {@link ElementInitializer}
+	 */
+	static String toContent(Story story) {
+		Map<String, Element> elements = story.getSTORY_ELEMENTS();
+		Map<Element, String> indexes = new IdentityHashMap<>();
+		elements.forEach((index, element) -> indexes.put(element, index));
+		List<String> blocks = new ArrayList<>();
+		elements.forEach((index, element) -> {
+			if (element instanceof PendingSituation) return;
+			if (element instanceof Victory victory) {
+				blocks.add("'Победа': { 'Описание': '" + quote(victory) + "', 'Индекс победы': '" + index +
+						"', 'Привело из': '" + leadFrom(victory, indexes) + "' }");
+			} else if (element instanceof Fail fail) {
+				blocks.add("'Поражение': { 'Описание': '" + quote(fail) + "', 'Индекс поражения': '" + index +
+						"', 'Привело из': '" + leadFrom(fail, indexes) + "' }");
+			} else if (element instanceof MainSituation situation) {
+				List<String> choices = new ArrayList<>();
+				if (situation.getChoices() != null) {
+					for (Choice choice : situation.getChoices()) {
+						boolean pending = choice.getLeadTo() instanceof PendingSituation;
+						String flag = !choice.isGoNext() ? "stay" : pending ? "continue" : choice.getLeadTo() instanceof Victory ? "victory"
+								: choice.getLeadTo() instanceof Fail ? "fail" : "goNext";
+						choices.add("{ 'Описание': '" + quote(choice) + "', 'Индекс выбора': '" + indexes.get(choice) + "', 'Флаг': '" + flag +
+								"', 'Ведет к': '" + (choice.isGoNext() && !pending ? indexes.get(choice.getLeadTo()) : "-") + "' }");
+					}
+				}
+				blocks.add("'Ситуация': { 'Описание': '" + quote(situation) + "', 'Индекс ситуации': '" + index +
+						"', 'Привело из': '" + leadFrom(situation, indexes) + "', 'Выборы ситуации': [ " + String.join(", ", choices) + " ] }");
+			}
+		});
+		return "{ " + String.join(", ", blocks) + " }";
+	}
+
+	/**
+	 * @param element element of the story
+	 * @return description, which quotes are replaced, so it can be written to content
+	 */
+	private static String quote(Element element) {
+		return element.getDescription() == null ? "" : element.getDescription().replace('\'', '’');
+	}
+
+	/**
+	 * @param situation situation of the story
+	 * @param indexes   indexes of elements
+	 * @return indexes of choices, that lead to the situation, or "-"
+	 */
+	private static String leadFrom(MainSituation situation, Map<Element, String> indexes) {
+		if (!(situation instanceof Situation s) || s.getLeadFrom() == null || s.getLeadFrom().length == 0) return "-";
+		List<String> leadFrom = new ArrayList<>();
+		for (Choice choice : s.getLeadFrom()) {
+			leadFrom.add(indexes.get(choice));
+		}
+		return String.join(", ", leadFrom);
+	}
+}
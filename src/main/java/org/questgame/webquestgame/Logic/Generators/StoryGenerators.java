@@ -0,0 +1,77 @@
+package org.questgame.webquestgame.Logic.Generators;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Logic.Interfaces.StoryGenerator;
+
+import java.util.Locale;
+
+/**
+ * The {@code StoryGenerators} class selects {@link StoryGenerator} implementation with {@code questgame.generator} option:
+ * <ul>
+ *     <li>{@code openai} - {@link OpenAiStoryGenerator} (default);</li>
+ *     <li>{@code local} - {@link LocalEndpointStoryGenerator};</li>
+ *     <li>{@code outline} - {@link OutlineStoryGenerator}, generates an outline and then descriptions of its branches in parallel;</li>
+ *     <li>{@code deterministic} - {@link DeterministicStoryGenerator}, works without network.</li>
+ * </ul>
+ * If {@code questgame.hedge.candidates} is greater than 1, the selected generator is wrapped into {@link HedgedStoryGenerator}.
+ *
+ * @see StoryGenerator
+ * @see Settings#GENERATOR
+ */
+public class StoryGenerators {
+
+	/**
+	 * Logger instance for recording generator selection.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Generator selected in {@link Settings}, created lazily by {@link #getDefault()}
+	 */
+	private static StoryGenerator defaultGenerator;
+
+	/**
+	 * Returns generator selected in {@link Settings}, hedged if {@link Settings#HEDGE_MAX_CANDIDATES} is greater than 1
+	 * @return shared {@link StoryGenerator}
+	 */
+	public static synchronized StoryGenerator getDefault() {
+		if (defaultGenerator == null) {
+			StoryGenerator generator = create(Settings.GENERATOR);
+			defaultGenerator = Settings.HEDGE_MAX_CANDIDATES > 1 ? new HedgedStoryGenerator(generator) : generator;
+			log.info("Stories are generated with {}", defaultGenerator.getName());
+		}
+		return defaultGenerator;
+	}
+
+	/**
+	 * Replaces shared generator, e.g. with a deterministic generator in tests
+	 * @param generator new {@link StoryGenerator}, if null - generator selected in {@link Settings} will be created on next request
+	 */
+	public static synchronized void setDefault(StoryGenerator generator) {
+		defaultGenerator = generator;
+	}
+
+	/**
+	 * Creates generator by its type
+	 * @param type openai, local, outline or deterministic
+	 * @return new {@link StoryGenerator}
+	 * @throws IllegalArgumentException if the type is unknown
+	 */
+	public static StoryGenerator create(String type) {
+		return switch (type.toLowerCase(Locale.ROOT)) {
+			case "openai" -> new OpenAiStoryGenerator();
+			case "local" -> new LocalEndpointStoryGenerator();
+			case "outline" -> new OutlineStoryGenerator();
+			case "deterministic" -> new DeterministicStoryGenerator();
+			default -> throw new IllegalArgumentException("Unknown story generator: " + type);
+		};
+	}
+
+	/**
+	 * Private constructor, utility class
+	 */
+	private StoryGenerators() {
+	}
+}
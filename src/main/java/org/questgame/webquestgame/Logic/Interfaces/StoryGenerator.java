@@ -0,0 +1,73 @@
+package org.questgame.webquestgame.Logic.Interfaces;
+
+import org.questgame.webquestgame.Logic.Story;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Generator of game stories from the user prompt.
+ * <p>
+ * Implementations are selected with {@code questgame.generator} option, see
+ * {@link org.questgame.webquestgame.Logic.Generators.StoryGenerators}.
+ * Streamed content must have the same format, as the content of AI Response
+ * ('Ситуация', 'Выборы ситуации', 'Победа', 'Поражение' blocks).
+ * </p>
+ */
+public interface StoryGenerator {
+
+	/**
+	 * @return name of the generator and its model, stories of different generators are cached separately
+	 */
+	String getName();
+
+	/**
+	 * Generates the story, blocking the calling thread
+	 * @param userPrompt the input prompt from the user
+	 * @return generated {@link Story}
+	 */
+	Story generate(String userPrompt);
+
+	/**
+	 * Generates several different stories for the same prompt, blocking the calling thread
+	 * @param userPrompt the input prompt from the user
+	 * @param count      number of stories
+	 * @return generated stories
+	 */
+	default List<Story> generate(String userPrompt, int count) {
+		List<Story> stories = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			stories.add(generate(userPrompt));
+		}
+		return stories;
+	}
+
+	/**
+	 * Generates the story without blocking the calling thread
+	 * @param userPrompt the input prompt from the user
+	 * @return {@link CompletableFuture} completed with generated {@link Story}
+	 */
+	CompletableFuture<Story> generateAsync(String userPrompt);
+
+	/**
+	 * Generates continuation of the story from the situation, used to replace a broken branch of a generated story
+	 * @param userPrompt           the input prompt of the story
+	 * @param situationDescription description of the situation, from which the branch starts
+	 * @param choiceDescription    description of the choice, that leads to the branch, null if the branch starts right after the situation
+	 * @return {@link CompletableFuture} completed with the branch, its main situation "S1" continues the situation
+	 */
+	default CompletableFuture<Story> generateBranchAsync(String userPrompt, String situationDescription, String choiceDescription) {
+		return generateAsync(userPrompt + ". Продолжи историю с ситуации: " + situationDescription
+				+ (choiceDescription == null ? "" : " Игрок выбрал: " + choiceDescription));
+	}
+
+	/**
+	 * Generates the story content and passes it to the consumer in pieces, as soon as they are generated
+	 * @param userPrompt      the input prompt from the user
+	 * @param contentConsumer consumer of story content pieces, it is called sequentially
+	 * @return {@link CompletableFuture} completed when the whole content is passed to the consumer
+	 */
+	CompletableFuture<Void> stream(String userPrompt, Consumer<String> contentConsumer);
+}
@@ -4,10 +4,15 @@ import lombok.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.questgame.webquestgame.Exceptions.SerializationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryExpander;
+import org.questgame.webquestgame.Logic.Elements.Choice;
 import org.questgame.webquestgame.Logic.Elements.Element;
 
 import java.io.*;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.stream.Collectors.toMap;
 
@@ -20,12 +25,21 @@ import static java.util.stream.Collectors.toMap;
  * <p>The class implements the {@link Serializable} interface, which allows you to save the state of an object
  * and restore it from a file or another stream.</p>
  *
+ * <p>A story can be created while it is still being generated (see {@link #createLoading()}): in this case elements
+ * are added with {@link #addElements(Map)} as soon as they are parsed, and readers may wait for the missing
+ * links with {@link #awaitLink(Choice, Duration)}. Loading state is not serialized.</p>
+ *
+ * <p>A story, that is generated in parts, has a {@link StoryExpander}, which generates its pending situations.
+ * The expander is not serialized either.</p>
+ *
+ * <p>Complete stories are shared by sessions through {@link org.questgame.webquestgame.Logic.StoryHandlers.StoryRegistry}
+ * by their content hash, which is remembered in the story, so it is calculated once.</p>
+ *
  * @see java.io.Serializable
  * @see org.questgame.webquestgame.Logic.Elements.Element
  */
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class Story implements Serializable {
 	/**
 	 * Logger for recording information about the execution of operations
@@ -50,6 +64,116 @@ public class Story implements Serializable {
 	 */
 	private Map<String, Element> STORY_ELEMENTS;
 
+	/**
+	 * Shows that the story is still being generated and new elements may be added
+	 */
+	private transient volatile boolean loading;
+
+	/**
+	 * Shows that generation of the story failed, choices, that are not linked yet, will never be linked
+	 */
+	private transient volatile boolean failed;
+
+	/**
+	 * Generates pending situations of the story, that is generated in parts, null for complete stories
+	 */
+	private transient volatile StoryExpander expander;
+
+	/**
+	 * Content hash of the complete story, calculated once by {@link org.questgame.webquestgame.Logic.StoryHandlers.StoryRegistry}
+	 */
+	private transient volatile String contentId;
+
+	/**
+	 * Constructor to create a fully loaded story from already initialized and linked elements
+	 * @param STORY_ELEMENTS map of story elements
+	 */
+	public Story(Map<String, Element> STORY_ELEMENTS) {
+		this.STORY_ELEMENTS = STORY_ELEMENTS;
+	}
+
+	/**
+	 * Creates an empty story, that will be filled with elements while it is being generated
+	 * @return new {@link Story} in loading state
+	 */
+	public static Story createLoading() {
+		Story story = new Story(new ConcurrentHashMap<>());
+		story.loading = true;
+		return story;
+	}
+
+	/**
+	 * Adds linked elements to the loading story and wakes up threads, that are waiting for new elements
+	 * @param elements new elements of the story
+	 */
+	public synchronized void addElements(Map<String, Element> elements) {
+		STORY_ELEMENTS.putAll(elements);
+		notifyAll();
+	}
+
+	/**
+	 * Marks the story as fully loaded and wakes up all waiting threads
+	 */
+	public synchronized void finishLoading() {
+		loading = false;
+		notifyAll();
+		log.info("Story loaded, {} elements", STORY_ELEMENTS.size());
+	}
+
+	/**
+	 * Marks the story as failed: it is not loading any more, but some of its choices may be not linked.
+	 * Wakes up all waiting threads
+	 */
+	public synchronized void failLoading() {
+		loading = false;
+		failed = true;
+		notifyAll();
+		log.warn("Story generation failed, {} elements are loaded", STORY_ELEMENTS.size());
+	}
+
+	/**
+	 * Waits until the choice is linked to the next situation, or until the story is loaded or failed
+	 * @param choice  the choice, which next situation is awaited
+	 * @param timeout maximum time to wait
+	 * @return true if the choice can be processed (it is linked, or it doesn't lead to other situation), false otherwise,
+	 * e.g. if the story failed before the choice was linked
+	 */
+	public synchronized boolean awaitLink(Choice choice, Duration timeout) {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		while (loading && choice.isGoNext() && choice.getLeadTo() == null) {
+			long left = deadline - System.nanoTime();
+			if (left <= 0) break;
+			log.debug("Waiting for situation, that is still being generated");
+			try {
+				TimeUnit.NANOSECONDS.timedWait(this, left);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return !choice.isGoNext() || choice.getLeadTo() != null;
+	}
+
+	/**
+	 * Waits until the story is fully loaded
+	 * @param timeout maximum time to wait
+	 * @return true if the story is loaded, false if timeout elapsed
+	 */
+	public synchronized boolean awaitLoaded(Duration timeout) {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		while (loading) {
+			long left = deadline - System.nanoTime();
+			if (left <= 0) return false;
+			try {
+				TimeUnit.NANOSECONDS.timedWait(this, left);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Serialization method for saving instance of object in specified output stream
 	 * @param outputStream output stream for serializing object
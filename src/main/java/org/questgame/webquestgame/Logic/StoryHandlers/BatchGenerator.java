@@ -0,0 +1,337 @@
+package org.questgame.webquestgame.Logic.StoryHandlers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.RateLimiter;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryRepairer;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryValidator;
+import org.questgame.webquestgame.Logic.Generators.StoryGenerators;
+import org.questgame.webquestgame.Logic.Interfaces.StoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * The {@code BatchGenerator} class generates stories for a list of prompts in background, e.g. to seed the library of
+ * featured stories, and puts them to {@link StoryCache}, so players get them instantly.
+ * <p>
+ * Stories are generated by a bounded pool of {@code concurrency} workers (the project is built for Java 17, so these are
+ * platform threads, not virtual ones; a worker blocks only while its story is generated). Every story is generated with
+ * the shared {@link StoryGenerator}, so requests go through the same HTTP client, {@link RateLimiter} and circuit breaker,
+ * as requests of players, parsed and validated with {@link org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer}
+ * and repaired with {@link StoryRepairer}, if needed.
+ * </p>
+ * <p>
+ * Batch requests never wait in the queue of the rate limiter: a worker starts the next story only when nobody waits
+ * and more than {@link Settings#BATCH_RESERVED_PERCENT} percent of both limits is available, so players are not starved.
+ * Prompts, which stories are already cached, are skipped.
+ * </p>
+ * Batches can be started with {@code POST /batch} or from the command line with {@link #main(String[])}.
+ *
+ * @see StoryCache
+ * @see RateLimiter
+ * @see org.questgame.webquestgame.Servlets.BatchServlet
+ */
+public class BatchGenerator {
+
+	/**
+	 * Logger instance for recording batch events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Shortest pause of a worker, that waits for free capacity of the rate limiter
+	 */
+	private static final Duration MIN_PAUSE = Duration.ofMillis(50);
+
+	/**
+	 * Longest pause of a worker, that waits for free capacity of the rate limiter
+	 */
+	private static final Duration MAX_PAUSE = Duration.ofSeconds(2);
+
+	/**
+	 * Generator configured with values from {@link Settings}, created lazily by {@link #getDefault()}
+	 */
+	private static BatchGenerator defaultGenerator;
+
+	/**
+	 * Generator of stories
+	 */
+	private final StoryGenerator generator;
+
+	/**
+	 * Store of generated stories
+	 */
+	private final StoryCache cache;
+
+	/**
+	 * Rate limiter shared with requests of players
+	 */
+	private final RateLimiter limiter;
+
+	/**
+	 * Number of stories generated at the same time
+	 */
+	private final int concurrency;
+
+	/**
+	 * Share of rate limits in percent, that is left to players
+	 */
+	private final int reservedPercent;
+
+	/**
+	 * Counters of the current batch
+	 */
+	private final AtomicInteger total = new AtomicInteger();
+	private final AtomicInteger generated = new AtomicInteger();
+	private final AtomicInteger skipped = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	/**
+	 * Reasons of failures by prompts
+	 */
+	private final Map<String, String> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+
+	/**
+	 * Start of the current batch, in nanoseconds
+	 */
+	private volatile long startNanos;
+
+	/**
+	 * End of the current batch, in nanoseconds, 0 while the batch is running
+	 */
+	private volatile long endNanos;
+
+	/**
+	 * Creates generator configured with values from {@link Settings}
+	 */
+	public BatchGenerator() {
+		this(StoryGenerators.getDefault(), StoryCache.getDefault(), RateLimiter.getDefault(), Settings.BATCH_CONCURRENCY,
+				Settings.BATCH_RESERVED_PERCENT);
+	}
+
+	/**
+	 * Creates generator
+	 * @param generator       generator of stories
+	 * @param cache           store of generated stories
+	 * @param limiter         rate limiter shared with requests of players
+	 * @param concurrency     number of stories generated at the same time
+	 * @param reservedPercent share of rate limits in percent, that is left to players
+	 */
+	public BatchGenerator(StoryGenerator generator, StoryCache cache, RateLimiter limiter, int concurrency, int reservedPercent) {
+		this.generator = generator;
+		this.cache = cache;
+		this.limiter = limiter;
+		this.concurrency = Math.max(1, concurrency);
+		this.reservedPercent = reservedPercent;
+	}
+
+	/**
+	 * Returns generator configured with values from {@link Settings}
+	 * @return shared {@link BatchGenerator}
+	 */
+	public static synchronized BatchGenerator getDefault() {
+		if (defaultGenerator == null) defaultGenerator = new BatchGenerator();
+		return defaultGenerator;
+	}
+
+	/**
+	 * Generates stories for prompts from a file, one prompt per line, empty lines and lines starting with # are ignored.
+	 * Prints the report and exits with status 1, if some stories are not generated
+	 * @param args path of the file with prompts
+	 * @throws IOException if the file can't be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: BatchGenerator <file with prompts, one per line>");
+			System.exit(2);
+		}
+		Report report = new BatchGenerator().run(readPrompts(Files.readAllLines(Path.of(args[0]), StandardCharsets.UTF_8)));
+		System.out.print(report);
+		System.exit(report.failed() == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Removes empty lines, comments and duplicates from the list of prompts
+	 * @param lines lines of the list
+	 * @return prompts in the order of the list
+	 */
+	public static List<String> readPrompts(List<String> lines) {
+		Map<String, String> prompts = new LinkedHashMap<>();
+		for (String line : lines) {
+			String prompt = line.strip();
+			if (prompt.isEmpty() || prompt.startsWith("#")) continue;
+			prompts.putIfAbsent(StoryCache.key(prompt), prompt);
+		}
+		return new ArrayList<>(prompts.values());
+	}
+
+	/**
+	 * Generates stories for all prompts and waits until the batch is finished
+	 * @param prompts prompts of stories
+	 * @return report of the batch
+	 */
+	public Report run(List<String> prompts) {
+		return start(prompts).join();
+	}
+
+	/**
+	 * Starts generation of stories for all prompts in background
+	 * @param prompts prompts of stories
+	 * @return {@link CompletableFuture} completed with report of the batch, when all stories are generated or failed
+	 * @throws IllegalStateException if another batch of this generator is running
+	 */
+	public synchronized CompletableFuture<Report> start(List<String> prompts) {
+		if (isRunning()) throw new IllegalStateException("Batch is already running");
+		total.set(prompts.size());
+		generated.set(0);
+		skipped.set(0);
+		failed.set(0);
+		failures.clear();
+		startNanos = System.nanoTime();
+		endNanos = 0;
+		log.info("Batch of {} stories started, {} at the same time", prompts.size(), concurrency);
+
+		AtomicInteger threads = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(concurrency, runnable -> {
+			Thread thread = new Thread(runnable, "batch-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		List<CompletableFuture<Void>> stories = new ArrayList<>(prompts.size());
+		for (String prompt : prompts) {
+			stories.add(CompletableFuture.runAsync(() -> generate(prompt), workers));
+		}
+		return CompletableFuture.allOf(stories.toArray(CompletableFuture[]::new)).handle((ignored, e) -> {
+			workers.shutdown();
+			endNanos = System.nanoTime();
+			Report report = getReport();
+			log.info("Batch finished: {} generated, {} skipped, {} failed in {} s", report.generated(), report.skipped(),
+					report.failed(), report.elapsed().toSeconds());
+			return report;
+		});
+	}
+
+	/**
+	 * @return true if a batch is running
+	 */
+	public boolean isRunning() {
+		return startNanos != 0 && endNanos == 0;
+	}
+
+	/**
+	 * Returns progress of the current batch, or the report of the last one
+	 * @return report of the batch
+	 */
+	public Report getReport() {
+		long end = endNanos != 0 ? endNanos : System.nanoTime();
+		Map<String, String> failed;
+		synchronized (failures) {
+			failed = new LinkedHashMap<>(failures);
+		}
+		return new Report(total.get(), generated.get(), skipped.get(), this.failed.get(),
+				Duration.ofNanos(startNanos == 0 ? 0 : end - startNanos), failed);
+	}
+
+	/**
+	 * Generates, validates and caches the story, is called on worker threads
+	 * @param prompt prompt of the story
+	 */
+	private void generate(String prompt) {
+		if (cache.get(prompt) != null) {
+			skipped.incrementAndGet();
+			return;
+		}
+		try {
+			awaitHeadroom();
+			Story story = generator.generateAsync(prompt)
+					.exceptionallyCompose(e -> new StoryRepairer(generator).recover(prompt, e))
+					.join();
+			cache.put(prompt, StoryValidator.requireValid(story));
+			generated.incrementAndGet();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(prompt, e);
+		} catch (RuntimeException e) {
+			fail(prompt, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+		}
+	}
+
+	/**
+	 * Waits until a request can be sent without delaying requests of players
+	 * @throws InterruptedException if the worker is interrupted
+	 */
+	private void awaitHeadroom() throws InterruptedException {
+		long pause = MIN_PAUSE.toMillis();
+		while (!limiter.hasHeadroom(reservedPercent)) {
+			log.debug("Rate limit is needed by players, batch is waiting for {} ms", pause);
+			Thread.sleep(pause);
+			pause = Math.min(pause * 2, MAX_PAUSE.toMillis());
+		}
+	}
+
+	/**
+	 * Records failed story
+	 * @param prompt prompt of the story
+	 * @param e      reason of the failure
+	 */
+	private void fail(String prompt, Throwable e) {
+		failed.incrementAndGet();
+		failures.put(prompt, e.getClass().getSimpleName() + ": " + e.getMessage());
+		log.warn("Story of the batch is not generated: {}", e.getMessage());
+	}
+
+	/**
+	 * Report of a batch
+	 * @param total     number of prompts
+	 * @param generated number of generated stories
+	 * @param skipped   number of prompts, which stories were already cached
+	 * @param failed    number of stories, that can't be generated
+	 * @param elapsed   time of the batch
+	 * @param failures  reasons of failures by prompts
+	 */
+	public record Report(int total, int generated, int skipped, int failed, Duration elapsed, Map<String, String> failures) {
+
+		/**
+		 * @return generated stories per minute
+		 */
+		public double storiesPerMinute() {
+			return elapsed.isZero() ? 0 : generated * 60_000.0 / Math.max(1, elapsed.toMillis());
+		}
+
+		/**
+		 * @return report as lines in the form of {@code name value}, failures are listed after the counters
+		 */
+		@Override
+		public String toString() {
+			StringBuilder report = new StringBuilder()
+					.append("batch_total ").append(total).append('\n')
+					.append("batch_generated ").append(generated).append('\n')
+					.append("batch_skipped ").append(skipped).append('\n')
+					.append("batch_failed ").append(failed).append('\n')
+					.append("batch_elapsed_ms ").append(elapsed.toMillis()).append('\n')
+					.append("batch_stories_per_minute ").append(String.format(Locale.ROOT, "%.1f", storiesPerMinute())).append('\n');
+			report.append(failures.entrySet().stream()
+					.map(failure -> "failed " + failure.getKey() + " - " + failure.getValue() + "\n")
+					.collect(Collectors.joining()));
+			return report.toString();
+		}
+	}
+}
@@ -0,0 +1,366 @@
+package org.questgame.webquestgame.Logic.StoryHandlers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Exceptions.SerializationException;
+import org.questgame.webquestgame.Logic.Generators.StoryGenerators;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The {@code StoryCache} class keeps already generated stories, so the same prompt doesn't trigger a new generation.
+ * <p>
+ * Stories are cached by a key built from the normalized prompt (trimmed, lower case, single spaces),
+ * the generator with its model and the temperature. The cache has two tiers:
+ * <ul>
+ *     <li>in-memory LRU map, limited by the number of stories;</li>
+ *     <li>directory with references to stories, that survives application redeploys; stories themselves are stored
+ *     once in {@link StoryRepository}, so prompts with the same story share one file.</li>
+ * </ul>
+ * Entries of both tiers expire after TTL. Cached stories are shared between sessions and must not be modified.
+ * </p>
+ *
+ * @see Story
+ * @see Settings
+ */
+public class StoryCache {
+
+	/**
+	 * Logger instance for recording cache events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Extension of files of the disk tier, that contain ID of the story in {@link StoryRepository}
+	 */
+	private static final String REFERENCE_EXTENSION = ".ref";
+
+	/**
+	 * Cache configured with values from {@link Settings}, created lazily by {@link #getDefault()}
+	 */
+	private static StoryCache defaultCache;
+
+	/**
+	 * In-memory tier, ordered from least to most recently used
+	 */
+	private final LinkedHashMap<String, CachedStory> memory;
+
+	/**
+	 * Directory of the disk tier, or null if disk tier is disabled
+	 */
+	private final Path directory;
+
+	/**
+	 * Store of stories, that are referenced from the disk tier
+	 */
+	private final StoryRepository repository;
+
+	/**
+	 * Maximum number of stories in the disk tier
+	 */
+	private final int maxDiskEntries;
+
+	/**
+	 * Time after which cached story expires
+	 */
+	private final Duration ttl;
+
+	/**
+	 * Counters of cache requests
+	 */
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates cache, that stores stories in its own repository in {@code stories} subdirectory of the disk tier
+	 * @param maxEntries     maximum number of stories in memory
+	 * @param maxDiskEntries maximum number of stories on disk
+	 * @param ttl            time after which cached story expires
+	 * @param directory      directory of the disk tier, if null - stories are kept only in memory
+	 */
+	public StoryCache(int maxEntries, int maxDiskEntries, Duration ttl, Path directory) {
+		this(maxEntries, maxDiskEntries, ttl, directory,
+				directory == null ? null : new StoryRepository(directory.resolve("stories"), Long.MAX_VALUE, maxEntries));
+	}
+
+	/**
+	 * Creates cache
+	 * @param maxEntries     maximum number of stories in memory
+	 * @param maxDiskEntries maximum number of stories on disk
+	 * @param ttl            time after which cached story expires
+	 * @param directory      directory of the disk tier, if null - stories are kept only in memory
+	 * @param repository     store of stories, that are referenced from the disk tier
+	 */
+	public StoryCache(int maxEntries, int maxDiskEntries, Duration ttl, Path directory, StoryRepository repository) {
+		this.maxDiskEntries = maxDiskEntries;
+		this.ttl = ttl;
+		this.directory = repository == null ? null : directory;
+		this.repository = repository;
+		this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedStory> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns cache configured with values from {@link Settings}
+	 * @return shared {@link StoryCache}
+	 */
+	public static synchronized StoryCache getDefault() {
+		if (defaultCache == null) {
+			defaultCache = new StoryCache(Settings.CACHE_MAX_ENTRIES, Settings.CACHE_MAX_DISK_ENTRIES, Settings.CACHE_TTL,
+					Path.of(Settings.CACHE_DIRECTORY), StoryRepository.getDefault());
+		}
+		return defaultCache;
+	}
+
+	/**
+	 * Builds cache key for the prompt, current generator and temperature
+	 * @param userPrompt the input prompt from the user
+	 * @return cache key
+	 */
+	public static String key(String userPrompt) {
+		return normalize(userPrompt) + "|" + StoryGenerators.getDefault().getName() + "|" + Settings.TEMPERATURE;
+	}
+
+	/**
+	 * Normalizes the prompt, so prompts, that differ only in case and whitespace, have the same key
+	 * @param userPrompt the input prompt from the user
+	 * @return normalized prompt
+	 */
+	public static String normalize(String userPrompt) {
+		if (userPrompt == null) return "";
+		return Normalizer.normalize(userPrompt, Normalizer.Form.NFC)
+				.trim()
+				.replaceAll("\\s+", " ")
+				.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns cached story for the prompt
+	 * @param userPrompt the input prompt from the user
+	 * @return cached {@link Story}, or null if there is no story, or it is expired
+	 */
+	public Story get(String userPrompt) {
+		String key = key(userPrompt);
+		synchronized (this) {
+			CachedStory cached = memory.get(key);
+			if (cached != null && !isExpired(cached.createdAt())) {
+				hits.incrementAndGet();
+				log.info("Story cache hit (memory)");
+				return cached.story();
+			}
+			if (cached != null) memory.remove(key);
+		}
+		Story story = readFromDisk(key);
+		if (story != null) {
+			hits.incrementAndGet();
+			diskHits.incrementAndGet();
+			log.info("Story cache hit (disk)");
+			return story;
+		}
+		misses.incrementAndGet();
+		log.info("Story cache miss");
+		return null;
+	}
+
+	/**
+	 * Puts fully generated story to the cache
+	 * @param userPrompt the input prompt from the user
+	 * @param story      generated {@link Story}
+	 */
+	public void put(String userPrompt, Story story) {
+		if (story == null || story.isLoading()) {
+			log.warn("Story is not loaded, it can't be cached");
+			return;
+		}
+		String key = key(userPrompt);
+		synchronized (this) {
+			memory.put(key, new CachedStory(story, System.currentTimeMillis()));
+		}
+		writeToDisk(key, story);
+		log.info("Story cached");
+	}
+
+	/**
+	 * Removes all stories from memory and disk
+	 */
+	public synchronized void clear() {
+		memory.clear();
+		for (Path file : listDiskEntries()) {
+			deleteQuietly(file);
+		}
+	}
+
+	/**
+	 * @return number of requests, that were answered from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of requests, that were answered from the disk tier
+	 */
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	/**
+	 * @return number of requests, that were not found in the cache
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of stories in memory
+	 */
+	public synchronized int size() {
+		return memory.size();
+	}
+
+	/**
+	 * Reads reference from the disk tier, puts the referenced story to memory
+	 * @param key cache key
+	 * @return cached {@link Story}, or null if there is no story, or it is expired
+	 */
+	private Story readFromDisk(String key) {
+		if (directory == null) return null;
+		Path file = directory.resolve(fileName(key));
+		try {
+			if (!Files.exists(file)) return null;
+			long createdAt = Files.getLastModifiedTime(file).toMillis();
+			if (isExpired(createdAt)) {
+				log.debug("Cached story {} is expired", file);
+				deleteQuietly(file);
+				return null;
+			}
+			Story story = repository.get(Files.readString(file, StandardCharsets.US_ASCII).trim());
+			if (story == null) {
+				log.debug("Cached story {} is removed from repository", file);
+				deleteQuietly(file);
+				return null;
+			}
+			synchronized (this) {
+				memory.put(key, new CachedStory(story, createdAt));
+			}
+			return story;
+		} catch (IOException e) {
+			log.error("Cached story {} can't be read, it is removed", file, e);
+			deleteQuietly(file);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores story in the repository and writes reference to it to the disk tier. The reference is written to
+	 * a temporary file, which is then moved, so readers never see partially written file
+	 * @param key   cache key
+	 * @param story story to write
+	 */
+	private void writeToDisk(String key, Story story) {
+		if (directory == null) return;
+		try {
+			String id = repository.put(story);
+			Files.createDirectories(directory);
+			Path file = directory.resolve(fileName(key));
+			Path temp = Files.createTempFile(directory, "story", ".tmp");
+			Files.writeString(temp, id, StandardCharsets.US_ASCII);
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			evictFromDisk();
+		} catch (IOException | SerializationException e) {
+			log.error("Story can't be written to cache directory {}", directory, e);
+		}
+	}
+
+	/**
+	 * Removes the oldest stories from the disk tier, when there are more than {@code maxDiskEntries} stories
+	 */
+	private void evictFromDisk() {
+		List<Path> files = listDiskEntries();
+		if (files.size() <= maxDiskEntries) return;
+		files.sort(Comparator.comparingLong(StoryCache::lastModified));
+		for (Path file : files.subList(0, files.size() - maxDiskEntries)) {
+			log.debug("Cached story {} is evicted from disk", file);
+			deleteQuietly(file);
+		}
+	}
+
+	/**
+	 * @return files of the disk tier
+	 */
+	private List<Path> listDiskEntries() {
+		if (directory == null || !Files.isDirectory(directory)) return new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().endsWith(REFERENCE_EXTENSION))
+					.collect(Collectors.toList());
+		} catch (IOException e) {
+			log.error("Cache directory {} can't be read", directory, e);
+			return new ArrayList<>();
+		}
+	}
+
+	private boolean isExpired(long createdAt) {
+		return System.currentTimeMillis() - createdAt > ttl.toMillis();
+	}
+
+	private static long lastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file).toMillis();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			log.warn("File {} can't be deleted", file, e);
+		}
+	}
+
+	/**
+	 * Builds file name for the key, key is hashed, because prompts may contain any characters
+	 * @param key cache key
+	 * @return file name
+	 */
+	private static String fileName(String key) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(hash) + REFERENCE_EXTENSION;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not supported", e);
+		}
+	}
+
+	/**
+	 * Cached story with the time it was cached
+	 * @param story     cached {@link Story}
+	 * @param createdAt time in milliseconds
+	 */
+	private record CachedStory(Story story, long createdAt) {
+	}
+}
@@ -0,0 +1,497 @@
+package org.questgame.webquestgame.Logic.StoryHandlers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Exceptions.FileFormatException;
+import org.questgame.webquestgame.Exceptions.SerializationException;
+import org.questgame.webquestgame.Logic.Elements.*;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code StoryCodec} class writes stories in the compact binary format and reads them back.
+ * <p>
+ * Java serialization of a story writes class descriptors and follows links between elements recursively, so files
+ * are large, long stories may overflow the stack, and any change of element classes breaks old files. The binary
+ * format stores only the graph:
+ * </p>
+ * <pre>
+ * magic "QGST", version (1 byte)
+ * string table:  count, then length and UTF-8 bytes of every unique index and description
+ * elements:      count, then type (1 byte), index and description (+1, 0 - null) as numbers of strings
+ * links:         for every situation - its choices and choices leading to it (count +1, 0 - null, then ordinals),
+ *                for every choice - goNext (1 byte), ordinals of leadFrom and leadTo (+1, 0 - null)
+ * checksum:      CRC32 of all previous bytes (4 bytes)
+ * </pre>
+ * All counts and numbers are unsigned varints. Files in the legacy format (Java serialization, {@code .ser}) are
+ * still read by {@link #read(InputStream)}, the format is detected by the first bytes.
+ * <p>
+ * Files from players are read with {@link Limits}: the stream is read in chunks and rejected as soon as it is larger
+ * than the limit, the number of elements is checked before arrays are allocated, and legacy files are deserialized
+ * with a filter, that accepts only classes of stories and limits nesting depth, references and bytes.
+ * </p>
+ *
+ * @see Story
+ */
+public class StoryCodec {
+
+	/**
+	 * Logger instance for recording encoding events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Extension of files in the binary format
+	 */
+	public static final String EXTENSION = ".story";
+
+	/**
+	 * Current version of the format
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * First bytes of files in the binary format
+	 */
+	private static final byte[] MAGIC = {'Q', 'G', 'S', 'T'};
+
+	/**
+	 * First bytes of Java serialization stream
+	 */
+	private static final int LEGACY_MAGIC = 0xACED;
+
+	/**
+	 * Size of chunks, in which stories are read
+	 */
+	private static final int CHUNK_SIZE = 8192;
+
+	/**
+	 * Classes, that legacy files may contain, all other classes are rejected
+	 */
+	private static final String LEGACY_CLASSES = "org.questgame.webquestgame.Logic.Story;org.questgame.webquestgame.Logic.Elements.*;"
+			+ "java.util.HashMap;java.util.LinkedHashMap;java.util.Map$Entry;java.util.concurrent.ConcurrentHashMap;"
+			+ "java.util.concurrent.ConcurrentHashMap$Segment;java.util.concurrent.locks.*;java.lang.String;!*";
+
+	/**
+	 * Types of elements
+	 */
+	private static final byte MAIN_SITUATION = 0;
+	private static final byte SITUATION = 1;
+	private static final byte VICTORY = 2;
+	private static final byte FAIL = 3;
+	private static final byte PENDING = 4;
+	private static final byte CHOICE = 5;
+
+	private StoryCodec() {
+	}
+
+	/**
+	 * Writes the story in the binary format
+	 * @param story story to write
+	 * @param out   output stream, it is not closed
+	 * @throws SerializationException if Input / Output error occurs
+	 */
+	public static void write(Story story, OutputStream out) {
+		try {
+			out.write(encode(story));
+			out.flush();
+		} catch (IOException e) {
+			log.error("Error in writing story");
+			throw new SerializationException("Error in writing story", e);
+		}
+	}
+
+	/**
+	 * Reads the story in the binary or the legacy format
+	 * @param in input stream, it is read to the end, but not closed
+	 * @return read {@link Story}
+	 * @throws SerializationException if Input / Output error occurs, or the legacy story can't be deserialized
+	 * @throws FileFormatException    if the stream is neither in the binary nor in the legacy format, or it is damaged
+	 */
+	public static Story read(InputStream in) {
+		return read(in, Limits.UNLIMITED);
+	}
+
+	/**
+	 * Reads the story in the binary or the legacy format, the stream is read only up to the size limit
+	 * @param in     input stream, it is read to the end, but not closed
+	 * @param limits limits of the story
+	 * @return read {@link Story}
+	 * @throws SerializationException if Input / Output error occurs, or the legacy story can't be deserialized
+	 * @throws FileFormatException    if the stream is not a story, it is damaged, or it exceeds the limits
+	 */
+	public static Story read(InputStream in, Limits limits) {
+		try {
+			return decode(readCapped(in, limits.maxBytes()), limits);
+		} catch (IOException e) {
+			log.error("Error in reading story");
+			throw new SerializationException("Error in reading story", e);
+		}
+	}
+
+	/**
+	 * Reads the story from the file in the binary or the legacy format
+	 * @param file file of the story
+	 * @return read {@link Story}
+	 * @throws SerializationException if Input / Output error occurs, or the legacy story can't be deserialized
+	 * @throws FileFormatException    if the file is neither in the binary nor in the legacy format, or it is damaged
+	 */
+	public static Story read(Path file) {
+		try (InputStream in = Files.newInputStream(file)) {
+			return read(in);
+		} catch (IOException e) {
+			log.error("Error in reading story from file {}", file);
+			throw new SerializationException("Error in reading story from file " + file, e);
+		}
+	}
+
+	/**
+	 * Encodes the story in the binary format. Links to elements, that are not in the story, are not written
+	 * @param story story to encode
+	 * @return bytes of the story
+	 */
+	public static byte[] encode(Story story) {
+		Map<String, Element> elements = story.getSTORY_ELEMENTS();
+		Map<Element, Integer> ordinals = new IdentityHashMap<>(elements.size());
+		Map<String, Integer> strings = new LinkedHashMap<>(elements.size() * 3);
+		int ordinal = 0;
+		for (Map.Entry<String, Element> entry : elements.entrySet()) {
+			ordinals.putIfAbsent(entry.getValue(), ordinal++);
+			strings.putIfAbsent(entry.getKey(), strings.size());
+			if (entry.getValue().getDescription() != null) strings.putIfAbsent(entry.getValue().getDescription(), strings.size());
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64 + elements.size() * 48);
+		out.writeBytes(MAGIC);
+		out.write(VERSION);
+		writeVarInt(out, strings.size());
+		for (String string : strings.keySet()) {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			writeVarInt(out, bytes.length);
+			out.writeBytes(bytes);
+		}
+
+		writeVarInt(out, elements.size());
+		for (Map.Entry<String, Element> entry : elements.entrySet()) {
+			Element element = entry.getValue();
+			out.write(typeOf(element));
+			writeVarInt(out, strings.get(entry.getKey()));
+			writeVarInt(out, element.getDescription() == null ? 0 : strings.get(element.getDescription()) + 1);
+		}
+		for (Element element : elements.values()) {
+			if (element instanceof Choice choice) {
+				out.write(choice.isGoNext() ? 1 : 0);
+				writeReference(out, ordinals, choice.getLeadFrom());
+				writeReference(out, ordinals, choice.getLeadTo());
+				continue;
+			}
+			MainSituation situation = (MainSituation) element;
+			writeReferences(out, ordinals, situation.getChoices());
+			if (situation instanceof Situation linked) writeReferences(out, ordinals, linked.getLeadFrom());
+		}
+
+		CRC32 checksum = new CRC32();
+		checksum.update(out.toByteArray());
+		long crc = checksum.getValue();
+		out.write((int) (crc >>> 24));
+		out.write((int) (crc >>> 16));
+		out.write((int) (crc >>> 8));
+		out.write((int) crc);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes the story in the binary or the legacy format
+	 * @param bytes bytes of the story
+	 * @return decoded {@link Story}
+	 * @throws SerializationException if the legacy story can't be deserialized
+	 * @throws FileFormatException    if bytes are neither in the binary nor in the legacy format, or they are damaged
+	 */
+	public static Story decode(byte[] bytes) {
+		return decode(bytes, Limits.UNLIMITED);
+	}
+
+	/**
+	 * Decodes the story in the binary or the legacy format
+	 * @param bytes  bytes of the story
+	 * @param limits limits of the story
+	 * @return decoded {@link Story}
+	 * @throws SerializationException if the legacy story can't be deserialized
+	 * @throws FileFormatException    if bytes are not a story, they are damaged, or the story exceeds the limits
+	 */
+	public static Story decode(byte[] bytes, Limits limits) {
+		if (bytes.length > limits.maxBytes()) throw new FileFormatException("Story file is larger than " + limits.maxBytes() + " bytes");
+		if (bytes.length >= 2 && ((bytes[0] & 0xFF) << 8 | bytes[1] & 0xFF) == LEGACY_MAGIC) return deserializeLegacy(bytes, limits);
+		if (bytes.length < MAGIC.length + 5 || !startsWithMagic(bytes)) {
+			throw new FileFormatException("File is not a story");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, bytes.length - 4);
+		CRC32 checksum = new CRC32();
+		checksum.update(buffer.duplicate());
+		if ((int) checksum.getValue() != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt()) {
+			throw new FileFormatException("Story file is damaged, checksum doesn't match");
+		}
+		buffer.position(MAGIC.length);
+		int version = buffer.get() & 0xFF;
+		if (version != VERSION) throw new FileFormatException("Story format version " + version + " is not supported");
+		try {
+			Story story = decodeElements(buffer, limits);
+			if (buffer.hasRemaining()) throw new FileFormatException("Story file has unexpected data after elements");
+			log.info("Story of {} elements decoded", story.getSTORY_ELEMENTS().size());
+			return story;
+		} catch (BufferUnderflowException | ClassCastException e) {
+			throw new FileFormatException("Story file is damaged", e);
+		}
+	}
+
+	/**
+	 * Decodes string table, elements and links
+	 * @param buffer bytes after the version
+	 * @param limits limits of the story
+	 * @return decoded {@link Story}
+	 */
+	private static Story decodeElements(ByteBuffer buffer, Limits limits) {
+		String[] strings = new String[readCount(buffer)];
+		for (int i = 0; i < strings.length; i++) {
+			byte[] string = new byte[readCount(buffer)];
+			buffer.get(string);
+			strings[i] = new String(string, StandardCharsets.UTF_8);
+		}
+
+		int size = readCount(buffer);
+		if (size > limits.maxElements()) throw new FileFormatException("Story has more than " + limits.maxElements() + " elements");
+		byte[] types = new byte[size];
+		String[] keys = new String[size];
+		Element[] elements = new Element[size];
+		for (int i = 0; i < size; i++) {
+			types[i] = buffer.get();
+			keys[i] = strings[readIndex(buffer, strings.length)];
+			int description = readIndex(buffer, strings.length + 1);
+			elements[i] = create(types[i], description == 0 ? null : strings[description - 1]);
+		}
+		for (int i = 0; i < size; i++) {
+			if (elements[i] instanceof Choice choice) {
+				choice.setGoNext(buffer.get() != 0);
+				choice.setLeadFrom((MainSituation) readReference(buffer, elements));
+				choice.setLeadTo((MainSituation) readReference(buffer, elements));
+				continue;
+			}
+			Choice[] choices = readReferences(buffer, elements);
+			if (choices != null) {
+				for (Choice choice : choices) ((MainSituation) elements[i]).addChoice(choice);
+			}
+			if (!(elements[i] instanceof Situation situation)) continue;
+			Choice[] leadFrom = readReferences(buffer, elements);
+			if (leadFrom != null) {
+				for (Choice choice : leadFrom) situation.addLeadFrom(choice);
+			}
+		}
+
+		Map<String, Element> story = new HashMap<>(size * 4 / 3 + 1);
+		for (int i = 0; i < size; i++) {
+			story.put(keys[i], elements[i]);
+		}
+		return new Story(story);
+	}
+
+	/**
+	 * Creates element of the type without links
+	 * @param type        type of the element
+	 * @param description description of the element
+	 * @return new {@link Element}
+	 */
+	private static Element create(byte type, String description) {
+		Element element = switch (type) {
+			case MAIN_SITUATION -> new MainSituation();
+			case SITUATION -> new Situation();
+			case VICTORY -> new Victory(null);
+			case FAIL -> new Fail(null);
+			case PENDING -> new PendingSituation();
+			case CHOICE -> new Choice();
+			default -> throw new FileFormatException("Unknown type of element: " + type);
+		};
+		element.setDescription(description);
+		return element;
+	}
+
+	private static byte typeOf(Element element) {
+		if (element instanceof Choice) return CHOICE;
+		if (element instanceof PendingSituation) return PENDING;
+		if (element instanceof Victory) return VICTORY;
+		if (element instanceof Fail) return FAIL;
+		if (element instanceof Situation) return SITUATION;
+		if (element instanceof MainSituation) return MAIN_SITUATION;
+		throw new SerializationException("Element " + element.getClass().getName() + " can't be written");
+	}
+
+	/**
+	 * Deserializes the story in the legacy format. Only classes of stories are accepted, depth of nesting,
+	 * number of references and bytes are limited
+	 * @param bytes  Java serialization stream of the story
+	 * @param limits limits of the story
+	 * @return deserialized {@link Story}
+	 * @throws FileFormatException    if the stream contains other classes, or it exceeds the limits
+	 * @throws SerializationException if the story can't be deserialized
+	 */
+	private static Story deserializeLegacy(byte[] bytes, Limits limits) {
+		log.info("Story is in the legacy format, deserializing it");
+		ObjectInputFilter filter = ObjectInputFilter.Config.createFilter("maxdepth=" + limits.maxDepth()
+				+ ";maxrefs=" + (long) limits.maxElements() * 8 + ";maxbytes=" + limits.maxBytes() + ";" + LEGACY_CLASSES);
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			in.setObjectInputFilter(filter);
+			Story story = (Story) in.readObject();
+			if (story.getSTORY_ELEMENTS() == null || story.getSTORY_ELEMENTS().size() > limits.maxElements()) {
+				throw new FileFormatException("Story has no elements or more than " + limits.maxElements() + " elements");
+			}
+			return story;
+		} catch (InvalidClassException e) {
+			log.error("Legacy story is rejected: {}", e.getMessage());
+			throw new FileFormatException("Story file exceeds limits or contains unexpected classes", e);
+		} catch (IOException | ClassNotFoundException | ClassCastException | StackOverflowError e) {
+			log.error("Error in deserializing legacy story", e);
+			throw new SerializationException("Error in deserializing legacy story", e);
+		}
+	}
+
+	/**
+	 * Reads the stream in chunks, until it ends or it is larger than the limit
+	 * @param in       input stream
+	 * @param maxBytes maximum number of bytes
+	 * @return read bytes
+	 * @throws IOException         if Input / Output error occurs
+	 * @throws FileFormatException if the stream is larger than the limit
+	 */
+	private static byte[] readCapped(InputStream in, long maxBytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(CHUNK_SIZE);
+		byte[] chunk = new byte[CHUNK_SIZE];
+		long total = 0;
+		int read;
+		while ((read = in.read(chunk)) != -1) {
+			total += read;
+			if (total > maxBytes) throw new FileFormatException("Story file is larger than " + maxBytes + " bytes");
+			out.write(chunk, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static boolean startsWithMagic(byte[] bytes) {
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (bytes[i] != MAGIC[i]) return false;
+		}
+		return true;
+	}
+
+	private static void writeReference(ByteArrayOutputStream out, Map<Element, Integer> ordinals, Element element) {
+		Integer ordinal = element == null ? null : ordinals.get(element);
+		writeVarInt(out, ordinal == null ? 0 : ordinal + 1);
+	}
+
+	private static void writeReferences(ByteArrayOutputStream out, Map<Element, Integer> ordinals, Choice[] choices) {
+		if (choices == null) {
+			writeVarInt(out, 0);
+			return;
+		}
+		int count = 0;
+		for (Choice choice : choices) {
+			if (choice != null && ordinals.containsKey(choice)) count++;
+		}
+		writeVarInt(out, count + 1);
+		for (Choice choice : choices) {
+			if (choice != null && ordinals.containsKey(choice)) writeVarInt(out, ordinals.get(choice));
+		}
+	}
+
+	private static Element readReference(ByteBuffer buffer, Element[] elements) {
+		int reference = readIndex(buffer, elements.length + 1);
+		return reference == 0 ? null : elements[reference - 1];
+	}
+
+	private static Choice[] readReferences(ByteBuffer buffer, Element[] elements) {
+		int count = readIndex(buffer, elements.length + 2);
+		if (count == 0) return null;
+		Choice[] choices = new Choice[count - 1];
+		for (int i = 0; i < choices.length; i++) {
+			choices[i] = (Choice) elements[readIndex(buffer, elements.length)];
+		}
+		return choices;
+	}
+
+	/**
+	 * Reads count of items, every item takes at least one byte, so the count can't exceed remaining bytes
+	 * @param buffer bytes of the story
+	 * @return count of items
+	 */
+	private static int readCount(ByteBuffer buffer) {
+		return readIndex(buffer, buffer.remaining() + 1);
+	}
+
+	/**
+	 * Reads number, that must be less than {@code bound}
+	 * @param buffer bytes of the story
+	 * @param bound  upper bound of the number, exclusive
+	 * @return read number
+	 */
+	private static int readIndex(ByteBuffer buffer, int bound) {
+		int value = readVarInt(buffer);
+		if (value < 0 || value >= bound) throw new FileFormatException("Story file is damaged, number " + value + " is out of range");
+		return value;
+	}
+
+	private static void writeVarInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write(value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVarInt(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) return value;
+		}
+		throw new FileFormatException("Story file is damaged, number is too long");
+	}
+
+	/**
+	 * Limits of stories, that are read from untrusted files
+	 * @param maxBytes    maximum size of the file in bytes
+	 * @param maxElements maximum number of elements
+	 * @param maxDepth    maximum depth of nesting of objects in legacy files
+	 */
+	public record Limits(long maxBytes, int maxElements, int maxDepth) {
+
+		/**
+		 * No limits, for files written by the application
+		 */
+		public static final Limits UNLIMITED = new Limits(Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+		/**
+		 * @return limits of uploaded stories from {@link Settings}
+		 */
+		public static Limits forUploads() {
+			return new Limits(Settings.UPLOAD_MAX_BYTES, Settings.UPLOAD_MAX_ELEMENTS, Settings.UPLOAD_MAX_DEPTH);
+		}
+	}
+}
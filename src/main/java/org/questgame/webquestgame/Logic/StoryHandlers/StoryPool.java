@@ -0,0 +1,230 @@
+package org.questgame.webquestgame.Logic.StoryHandlers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Logic.Generators.StoryGenerators;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The {@code StoryPool} class keeps several pre-generated, already parsed stories, that can be played instantly.
+ * <p>
+ * Stories are generated in background by a bounded pool of workers from random prompts
+ * ({@link Settings#RANDOM_STORY_PROMPTS}), optionally several stories per API request.
+ * Every time a story is taken, the pool is refilled. After a failed generation workers pause for
+ * {@link Settings#POOL_RETRY_DELAY}, so an unavailable API is not flooded with requests.
+ * </p>
+ * Stories from the pool are not shared: every story is given to exactly one player.
+ *
+ * @see StoryService
+ * @see Settings
+ */
+public class StoryPool {
+
+	/**
+	 * Logger instance for recording pool events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Pool configured with values from {@link Settings}, created lazily by {@link #getDefault()}
+	 */
+	private static StoryPool defaultPool;
+
+	/**
+	 * Ready-to-play stories
+	 */
+	private final BlockingQueue<Story> ready = new LinkedBlockingQueue<>();
+
+	/**
+	 * Workers, that generate stories
+	 */
+	private final ScheduledExecutorService workers;
+
+	/**
+	 * Generator of a batch of stories, is called on worker threads
+	 */
+	private final Supplier<List<Story>> generator;
+
+	/**
+	 * Number of stories the pool keeps ready
+	 */
+	private final int size;
+
+	/**
+	 * Number of stories one call of {@code generator} produces
+	 */
+	private final int batchSize;
+
+	/**
+	 * Pause after failed generation
+	 */
+	private final Duration retryDelay;
+
+	/**
+	 * Number of stories, that are being generated now
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
+
+	/**
+	 * Counters of pool requests
+	 */
+	private final AtomicLong taken = new AtomicLong();
+	private final AtomicLong empty = new AtomicLong();
+
+	/**
+	 * Shows that workers pause after failed generation
+	 */
+	private volatile boolean pausedAfterFailure;
+
+	/**
+	 * Creates pool, generation starts after {@link #start()}
+	 * @param size       number of stories the pool keeps ready
+	 * @param workers    number of threads, that generate stories
+	 * @param batchSize  number of stories one call of {@code generator} produces
+	 * @param retryDelay pause after failed generation
+	 * @param generator  generator of a batch of stories
+	 */
+	public StoryPool(int size, int workers, int batchSize, Duration retryDelay, Supplier<List<Story>> generator) {
+		this.size = size;
+		this.batchSize = Math.max(1, batchSize);
+		this.retryDelay = retryDelay;
+		this.generator = generator;
+		AtomicInteger threadCounter = new AtomicInteger();
+		this.workers = Executors.newScheduledThreadPool(Math.max(1, workers), runnable -> {
+			Thread thread = new Thread(runnable, "story-pool-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Returns pool configured with values from {@link Settings}
+	 * @return shared {@link StoryPool}
+	 */
+	public static synchronized StoryPool getDefault() {
+		if (defaultPool == null) {
+			defaultPool = new StoryPool(Settings.POOL_SIZE, Settings.POOL_WORKERS, Settings.POOL_COMPLETIONS_PER_REQUEST,
+					Settings.POOL_RETRY_DELAY, () -> generateRandomStories(Settings.POOL_COMPLETIONS_PER_REQUEST));
+		}
+		return defaultPool;
+	}
+
+	/**
+	 * Returns a random prompt from {@link Settings#RANDOM_STORY_PROMPTS}
+	 * @return random prompt
+	 */
+	public static String randomPrompt() {
+		String[] prompts = Settings.RANDOM_STORY_PROMPTS;
+		return prompts[ThreadLocalRandom.current().nextInt(prompts.length)];
+	}
+
+	/**
+	 * Generates stories from a random prompt with the configured generator (with one API request, if the generator supports it)
+	 * @param completions number of stories to generate
+	 * @return generated stories
+	 */
+	private static List<Story> generateRandomStories(int completions) {
+		return StoryGenerators.getDefault().generate(randomPrompt(), completions);
+	}
+
+	/**
+	 * Starts filling the pool in background
+	 */
+	public void start() {
+		if (size <= 0) {
+			log.info("Story pool is disabled");
+			return;
+		}
+		log.info("Starting story pool, {} stories", size);
+		refill();
+	}
+
+	/**
+	 * Stops background generation
+	 */
+	public void shutdown() {
+		log.info("Shutting down story pool");
+		workers.shutdownNow();
+	}
+
+	/**
+	 * Takes a ready-to-play story from the pool and starts generating a new one
+	 * @return {@link Story}, or null if the pool is empty
+	 */
+	public Story take() {
+		Story story = ready.poll();
+		if (story == null) {
+			empty.incrementAndGet();
+			log.info("Story pool is empty");
+		} else {
+			taken.incrementAndGet();
+			log.info("Story taken from pool, {} stories left", ready.size());
+		}
+		refill();
+		return story;
+	}
+
+	/**
+	 * @return number of ready-to-play stories
+	 */
+	public int getReady() {
+		return ready.size();
+	}
+
+	/**
+	 * @return number of stories taken from the pool
+	 */
+	public long getTaken() {
+		return taken.get();
+	}
+
+	/**
+	 * @return number of requests, that found the pool empty
+	 */
+	public long getEmpty() {
+		return empty.get();
+	}
+
+	/**
+	 * Schedules generation of missing stories, taking into account stories, that are already being generated
+	 */
+	private void refill() {
+		if (size <= 0 || pausedAfterFailure || workers.isShutdown()) return;
+		while (true) {
+			int current = pending.get();
+			if (ready.size() + current >= size) return;
+			if (pending.compareAndSet(current, current + batchSize)) {
+				workers.execute(this::generateBatch);
+			}
+		}
+	}
+
+	/**
+	 * Generates one batch of stories on a worker thread and puts them to the pool
+	 */
+	private void generateBatch() {
+		try {
+			List<Story> stories = generator.get();
+			ready.addAll(stories);
+			log.info("{} stories added to pool, {} stories ready", stories.size(), ready.size());
+		} catch (RuntimeException e) {
+			log.error("Story for pool can't be generated, retrying in {} seconds", retryDelay.toSeconds(), e);
+			pausedAfterFailure = true;
+			workers.schedule(() -> {
+				pausedAfterFailure = false;
+				refill();
+			}, retryDelay.toMillis(), TimeUnit.MILLISECONDS);
+		} finally {
+			pending.addAndGet(-batchSize);
+		}
+		refill();
+	}
+}
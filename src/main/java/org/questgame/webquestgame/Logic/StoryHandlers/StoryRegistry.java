@@ -0,0 +1,248 @@
+package org.questgame.webquestgame.Logic.StoryHandlers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Logic.CompiledStory;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code StoryRegistry} class keeps one shared {@link CompiledStory} for every complete story, that is played.
+ * <p>
+ * Stories are identified by the hash of their content (SHA-256 of {@link StoryCodec} encoding with sorted keys), so the
+ * same story, uploaded again, taken from {@link StoryCache} or generated again, is kept in memory once, and sessions
+ * store only its ID. The registry remembers, which sessions play every story; when the last of them releases it,
+ * the story is kept for {@link Settings#REGISTRY_IDLE_TIMEOUT}, so a player, that starts it again, gets the same
+ * instance, and then it is removed.
+ * </p>
+ *
+ * @see CompiledStory
+ * @see org.questgame.webquestgame.Servlets.InitServlet
+ */
+public class StoryRegistry {
+
+	/**
+	 * Logger instance for recording registry events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Registry configured with values from {@link Settings}, created lazily by {@link #getDefault()}
+	 */
+	private static StoryRegistry defaultRegistry;
+
+	/**
+	 * Time story is kept without sessions
+	 */
+	private final Duration idleTimeout;
+
+	/**
+	 * Registered stories by IDs
+	 */
+	private final Map<String, Entry> stories = new HashMap<>();
+
+	/**
+	 * Number of registrations, that found the story already registered
+	 */
+	private final AtomicLong shared = new AtomicLong();
+
+	/**
+	 * Number of stories removed after idle timeout
+	 */
+	private final AtomicLong reclaimed = new AtomicLong();
+
+	/**
+	 * Creates registry configured with values from {@link Settings}
+	 */
+	public StoryRegistry() {
+		this(Settings.REGISTRY_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Creates registry
+	 * @param idleTimeout time story is kept after the last session releases it
+	 */
+	public StoryRegistry(Duration idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Returns registry configured with values from {@link Settings}
+	 * @return shared {@link StoryRegistry}
+	 */
+	public static synchronized StoryRegistry getDefault() {
+		if (defaultRegistry == null) defaultRegistry = new StoryRegistry();
+		return defaultRegistry;
+	}
+
+	/**
+	 * Replaces shared registry, e.g. in tests
+	 * @param registry new shared registry
+	 */
+	public static synchronized void setDefault(StoryRegistry registry) {
+		defaultRegistry = registry;
+	}
+
+	/**
+	 * Returns content hash of the complete story, the hash is calculated once and remembered in the story
+	 * @param story complete story
+	 * @return ID of the story
+	 */
+	public static String idOf(Story story) {
+		String id = story.getContentId();
+		if (id != null) return id;
+		id = hash(canonicalContent(story));
+		story.setContentId(id);
+		return id;
+	}
+
+	/**
+	 * Encodes the story with elements ordered by their indexes, so equal stories have equal content
+	 * @param story complete story
+	 * @return content in the format of {@link StoryCodec}
+	 */
+	static byte[] canonicalContent(Story story) {
+		return StoryCodec.encode(new Story(new TreeMap<>(story.getSTORY_ELEMENTS())));
+	}
+
+	/**
+	 * Calculates ID of the canonical content of a story
+	 * @param content content returned by {@link #canonicalContent(Story)}
+	 * @return SHA-256 of the content in hex
+	 */
+	static String hash(byte[] content) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not supported", e);
+		}
+	}
+
+	/**
+	 * Registers the story played by the session, the story is compiled only, if it is not registered yet
+	 * @param story     complete story
+	 * @param sessionId ID of the session, that plays the story
+	 * @return ID of the story
+	 * @throws IllegalArgumentException if the story is not complete (see {@link CompiledStory#canCompile(Story)})
+	 */
+	public String register(Story story, String sessionId) {
+		if (!CompiledStory.canCompile(story)) throw new IllegalArgumentException("Story is not complete, it can't be shared");
+		String id = idOf(story);
+		synchronized (this) {
+			reclaim();
+			Entry entry = stories.get(id);
+			if (entry == null) {
+				entry = new Entry(CompiledStory.compile(story));
+				stories.put(id, entry);
+				log.info("Story {} registered, {} elements", id, entry.story.size());
+			} else {
+				shared.incrementAndGet();
+				log.debug("Story {} is already registered, shared instance is used", id);
+			}
+			entry.sessions.add(sessionId);
+			entry.idleSince = 0;
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the shared story
+	 * @param id ID of the story
+	 * @return shared {@link CompiledStory}, or null if it is not registered
+	 */
+	public synchronized CompiledStory get(String id) {
+		Entry entry = stories.get(id);
+		return entry == null ? null : entry.story;
+	}
+
+	/**
+	 * Releases the story, that the session doesn't play any more. The story without sessions is removed
+	 * after idle timeout
+	 * @param id        ID of the story
+	 * @param sessionId ID of the session
+	 */
+	public synchronized void release(String id, String sessionId) {
+		Entry entry = stories.get(id);
+		if (entry != null && entry.sessions.remove(sessionId) && entry.sessions.isEmpty()) {
+			entry.idleSince = System.nanoTime();
+			log.debug("Story {} is not played by any session", id);
+		}
+		reclaim();
+	}
+
+	/**
+	 * Removes stories, that are not played longer than idle timeout
+	 * @return number of removed stories
+	 */
+	public synchronized int reclaim() {
+		long now = System.nanoTime();
+		int removed = 0;
+		for (Iterator<Entry> entries = stories.values().iterator(); entries.hasNext(); ) {
+			Entry entry = entries.next();
+			if (entry.sessions.isEmpty() && now - entry.idleSince >= idleTimeout.toNanos()) {
+				entries.remove();
+				removed++;
+			}
+		}
+		if (removed > 0) {
+			reclaimed.addAndGet(removed);
+			log.info("{} idle stories removed from registry", removed);
+		}
+		return removed;
+	}
+
+	/**
+	 * @param id ID of the story
+	 * @return number of sessions, that play the story
+	 */
+	public synchronized int getReferences(String id) {
+		Entry entry = stories.get(id);
+		return entry == null ? 0 : entry.sessions.size();
+	}
+
+	/**
+	 * @return number of registered stories
+	 */
+	public synchronized int size() {
+		return stories.size();
+	}
+
+	/**
+	 * @return number of registrations, that found the story already registered
+	 */
+	public long getShared() {
+		return shared.get();
+	}
+
+	/**
+	 * @return number of stories removed after idle timeout
+	 */
+	public long getReclaimed() {
+		return reclaimed.get();
+	}
+
+	/**
+	 * Registered story and sessions, that play it
+	 */
+	private static class Entry {
+		private final CompiledStory story;
+		private final Set<String> sessions = new HashSet<>();
+		private long idleSince;
+
+		private Entry(CompiledStory story) {
+			this.story = story;
+		}
+	}
+}
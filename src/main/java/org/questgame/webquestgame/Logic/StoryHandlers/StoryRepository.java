@@ -0,0 +1,320 @@
+package org.questgame.webquestgame.Logic.StoryHandlers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Exceptions.FileFormatException;
+import org.questgame.webquestgame.Exceptions.SerializationException;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The {@code StoryRepository} class stores complete stories on disk by the hash of their content.
+ * <p>
+ * Every story is stored once, in the binary format of {@link StoryCodec}, in a directory outside the webapp
+ * ({@link Settings#REPOSITORY_DIRECTORY}), so stories survive redeploys and files with the same name never collide.
+ * Files are sharded by the first characters of the ID ({@code ab/cd/abcd...story}), so directories stay small,
+ * and written to a temporary file, that is then moved, so readers never see partially written stories.
+ * </p>
+ * <p>
+ * The repository keeps an index of stored stories in memory, ordered from least to most recently played, and the last
+ * decoded stories in an LRU map, so a story, that is played again, is not read from disk. When stories take more than
+ * {@link Settings#REPOSITORY_QUOTA} bytes, the least recently played ones are removed. Time of the last play is stored
+ * as the modification time of the file, so the order survives restarts.
+ * </p>
+ *
+ * @see StoryRegistry
+ * @see StoryCache
+ */
+public class StoryRepository {
+
+	/**
+	 * Logger instance for recording repository events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * ID of a story, SHA-256 in hex
+	 */
+	private static final Pattern ID = Pattern.compile("[0-9a-f]{64}");
+
+	/**
+	 * Repository configured with values from {@link Settings}, created lazily by {@link #getDefault()}
+	 */
+	private static StoryRepository defaultRepository;
+
+	/**
+	 * Root directory of the repository
+	 */
+	private final Path directory;
+
+	/**
+	 * Maximum size of all stored stories in bytes
+	 */
+	private final long quota;
+
+	/**
+	 * Sizes of stored stories by IDs, ordered from least to most recently played
+	 */
+	private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Decoded stories by IDs, ordered from least to most recently used
+	 */
+	private final LinkedHashMap<String, Story> decoded;
+
+	/**
+	 * Size of all stored stories in bytes
+	 */
+	private long usedBytes;
+
+	/**
+	 * Creates repository configured with values from {@link Settings}
+	 */
+	public StoryRepository() {
+		this(Path.of(Settings.REPOSITORY_DIRECTORY), Settings.REPOSITORY_QUOTA, Settings.REPOSITORY_DECODED_STORIES);
+	}
+
+	/**
+	 * Creates repository and reads index of stories, that are already stored in the directory
+	 * @param directory  root directory of the repository
+	 * @param quota      maximum size of all stored stories in bytes
+	 * @param maxDecoded maximum number of decoded stories kept in memory
+	 */
+	public StoryRepository(Path directory, long quota, int maxDecoded) {
+		this.directory = directory;
+		this.quota = quota;
+		this.decoded = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Story> eldest) {
+				return size() > maxDecoded;
+			}
+		};
+		loadIndex();
+	}
+
+	/**
+	 * Returns repository configured with values from {@link Settings}
+	 * @return shared {@link StoryRepository}
+	 */
+	public static synchronized StoryRepository getDefault() {
+		if (defaultRepository == null) defaultRepository = new StoryRepository();
+		return defaultRepository;
+	}
+
+	/**
+	 * Replaces shared repository, e.g. in tests
+	 * @param repository new shared repository
+	 */
+	public static synchronized void setDefault(StoryRepository repository) {
+		defaultRepository = repository;
+	}
+
+	/**
+	 * Stores the story, if it is not stored yet, and marks it as the most recently played one. The story is encoded
+	 * once, the same canonical content is hashed to get the ID and written to the file
+	 * @param story complete story
+	 * @return ID of the story
+	 * @throws IllegalArgumentException if the story is still being generated
+	 * @throws SerializationException   if the story can't be written
+	 */
+	public String put(Story story) {
+		if (story.isLoading()) throw new IllegalArgumentException("Story is not loaded, it can't be stored");
+		String id = story.getContentId();
+		byte[] content = null;
+		if (id == null) {
+			content = StoryRegistry.canonicalContent(story);
+			id = StoryRegistry.hash(content);
+			story.setContentId(id);
+		}
+		synchronized (this) {
+			if (index.get(id) != null) {
+				decoded.putIfAbsent(id, story);
+				touch(id);
+				return id;
+			}
+		}
+		if (content == null) content = StoryRegistry.canonicalContent(story);
+		Path file = fileOf(id);
+		try {
+			Files.createDirectories(file.getParent());
+			Path temp = Files.createTempFile(file.getParent(), "story", ".tmp");
+			try {
+				Files.write(temp, content);
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			log.error("Story {} can't be written to repository {}", id, directory, e);
+			throw new SerializationException("Story can't be written to repository", e);
+		}
+		List<String> evicted;
+		synchronized (this) {
+			if (index.put(id, (long) content.length) == null) usedBytes += content.length;
+			decoded.put(id, story);
+			evicted = evict(id);
+		}
+		for (String old : evicted) deleteQuietly(fileOf(old));
+		log.info("Story {} stored, {} bytes", id, content.length);
+		return id;
+	}
+
+	/**
+	 * Returns the stored story, decoded stories are shared and must not be modified
+	 * @param id ID of the story
+	 * @return stored {@link Story}, or null if there is no such story, or it can't be read
+	 */
+	public Story get(String id) {
+		synchronized (this) {
+			Story story = decoded.get(id);
+			if (story != null) return story;
+			if (!index.containsKey(id)) return null;
+		}
+		Path file = fileOf(id);
+		try {
+			Story story = StoryCodec.read(file);
+			story.setContentId(id);
+			synchronized (this) {
+				decoded.put(id, story);
+			}
+			return story;
+		} catch (SerializationException | FileFormatException e) {
+			log.error("Story {} can't be read, it is removed from repository", id, e);
+			remove(id);
+			return null;
+		}
+	}
+
+	/**
+	 * @param id ID of the story
+	 * @return true if the story is stored
+	 */
+	public synchronized boolean contains(String id) {
+		return index.containsKey(id);
+	}
+
+	/**
+	 * Removes the story from the repository
+	 * @param id ID of the story
+	 */
+	public void remove(String id) {
+		synchronized (this) {
+			Long size = index.remove(id);
+			if (size != null) usedBytes -= size;
+			decoded.remove(id);
+		}
+		deleteQuietly(fileOf(id));
+	}
+
+	/**
+	 * @return number of stored stories
+	 */
+	public synchronized int size() {
+		return index.size();
+	}
+
+	/**
+	 * @return size of all stored stories in bytes
+	 */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * Removes the least recently played stories from the index, while stories take more than the quota
+	 * @param keep ID of the story, that is never removed
+	 * @return IDs of removed stories, which files must be deleted
+	 */
+	private List<String> evict(String keep) {
+		List<String> evicted = new ArrayList<>();
+		for (Iterator<Map.Entry<String, Long>> entries = index.entrySet().iterator(); usedBytes > quota && entries.hasNext(); ) {
+			Map.Entry<String, Long> entry = entries.next();
+			if (entry.getKey().equals(keep)) continue;
+			entries.remove();
+			usedBytes -= entry.getValue();
+			decoded.remove(entry.getKey());
+			evicted.add(entry.getKey());
+		}
+		if (!evicted.isEmpty()) log.info("{} least recently played stories removed from repository", evicted.size());
+		return evicted;
+	}
+
+	/**
+	 * Moves the story to the end of the index and updates time of the last play of its file
+	 * @param id ID of the story
+	 */
+	private void touch(String id) {
+		try {
+			Files.setLastModifiedTime(fileOf(id), FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			log.warn("Time of the last play of story {} can't be saved", id);
+		}
+	}
+
+	/**
+	 * Reads index of stored stories from the directory, ordered by time of the last play
+	 */
+	private synchronized void loadIndex() {
+		if (!Files.isDirectory(directory)) return;
+		try (Stream<Path> files = Files.walk(directory, 3)) {
+			List<Path> stories = files
+					.filter(file -> file.getFileName().toString().endsWith(StoryCodec.EXTENSION))
+					.filter(file -> ID.matcher(idOf(file)).matches())
+					.sorted(Comparator.comparingLong(StoryRepository::lastModified))
+					.collect(Collectors.toList());
+			for (Path file : stories) {
+				long size = Files.size(file);
+				index.put(idOf(file), size);
+				usedBytes += size;
+			}
+			log.info("Story repository {} opened, {} stories, {} bytes", directory, index.size(), usedBytes);
+		} catch (IOException e) {
+			log.error("Story repository {} can't be read", directory, e);
+		}
+	}
+
+	/**
+	 * Builds path of the story file, files are sharded by the first 4 characters of the ID
+	 * @param id ID of the story
+	 * @return path of the file
+	 */
+	private Path fileOf(String id) {
+		return directory.resolve(id.substring(0, 2)).resolve(id.substring(2, 4)).resolve(id + StoryCodec.EXTENSION);
+	}
+
+	private static String idOf(Path file) {
+		String name = file.getFileName().toString();
+		return name.substring(0, name.length() - StoryCodec.EXTENSION.length());
+	}
+
+	private static long lastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file).toMillis();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			log.warn("File {} can't be deleted", file, e);
+		}
+	}
+}
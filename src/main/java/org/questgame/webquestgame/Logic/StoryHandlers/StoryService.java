@@ -0,0 +1,175 @@
+package org.questgame.webquestgame.Logic.StoryHandlers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Exceptions.StoryValidationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryExpander;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryRepairer;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryStreamParser;
+import org.questgame.webquestgame.Logic.Generators.StoryGenerators;
+import org.questgame.webquestgame.Logic.Interfaces.StoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code StoryService} class provides a ready-to-play {@link Story} for the user prompt.
+ * <p>
+ * The story is taken from {@link StoryCache} if the same prompt was already generated, otherwise it is generated
+ * with the configured {@link StoryGenerator} (as a stream, if {@link Settings#STREAMING_ENABLED} is set) and cached when
+ * it is fully loaded. A story, that can't be played to the end, is repaired with {@link StoryRepairer} before it is cached.
+ * If {@link Settings#LAZY_ENABLED} is set, only the first part of the story is generated, the rest is generated
+ * by {@link StoryExpander} while the story is played.
+ * </p>
+ * <p>
+ * Concurrent requests for the same prompt are coalesced: only the first request starts the generation,
+ * all the others wait for the same result. The resulting story is shared read-only between sessions,
+ * every session navigates it with its own {@code ElementManager}.
+ * </p>
+ *
+ * @see StoryCache
+ * @see StoryGenerator
+ * @see StoryStreamParser
+ */
+public class StoryService {
+
+	/**
+	 * Logger instance for recording story preparation events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Generations in progress, by cache key of the prompt. Generation is removed when its story is fully loaded
+	 */
+	private static final ConcurrentHashMap<String, CompletableFuture<Story>> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * Number of requests, that joined already running generation
+	 */
+	private static final AtomicLong coalescedRequests = new AtomicLong();
+
+	/**
+	 * Returns a story for the user prompt without blocking the calling thread on generation
+	 * @param userPrompt the input prompt from the user
+	 * @return {@link CompletableFuture}, that is completed with the story as soon as it can be played.
+	 * Cancelling the returned future doesn't affect other requests for the same prompt
+	 */
+	public static CompletableFuture<Story> getStory(String userPrompt) {
+		Story cached = StoryCache.getDefault().get(userPrompt);
+		if (cached != null) {
+			log.info("Story for prompt is taken from cache");
+			return CompletableFuture.completedFuture(expandable(cached, userPrompt));
+		}
+		String key = StoryCache.key(userPrompt);
+		CompletableFuture<Story> playable = new CompletableFuture<>();
+		CompletableFuture<Story> running = inFlight.putIfAbsent(key, playable);
+		if (running != null) {
+			coalescedRequests.incrementAndGet();
+			log.info("Story for the same prompt is already being generated, waiting for it");
+			return running.copy();
+		}
+		startGeneration(userPrompt, key, playable);
+		return playable.copy();
+	}
+
+	/**
+	 * @return number of requests, that joined already running generation
+	 */
+	public static long getCoalescedRequests() {
+		return coalescedRequests.get();
+	}
+
+	/**
+	 * @return number of generations in progress
+	 */
+	public static int getGenerationsInProgress() {
+		return inFlight.size();
+	}
+
+	/**
+	 * Starts generation of the story, that is registered as in-flight until the story is fully loaded
+	 * @param userPrompt the input prompt from the user
+	 * @param key        cache key of the prompt
+	 * @param playable   registered future to complete with the story as soon as it can be played
+	 */
+	private static void startGeneration(String userPrompt, String key, CompletableFuture<Story> playable) {
+		CompletableFuture<?> loaded = Settings.STREAMING_ENABLED
+				? generateStreaming(userPrompt, playable)
+				: generate(userPrompt, playable);
+		loaded.whenComplete((ignored, e) -> inFlight.remove(key, playable));
+	}
+
+	/**
+	 * Generates the whole story and parses it
+	 * @param userPrompt the input prompt from the user
+	 * @param playable   future to complete with the parsed story
+	 * @return {@link CompletableFuture}, that is completed when the story is fully loaded
+	 */
+	private static CompletableFuture<?> generate(String userPrompt, CompletableFuture<Story> playable) {
+		StoryGenerator generator = StoryGenerators.getDefault();
+		String prompt = Settings.LAZY_ENABLED ? StoryExpander.partPrompt(userPrompt) : userPrompt;
+		return generator.generateAsync(prompt)
+				.exceptionallyCompose(e -> new StoryRepairer(generator).recover(prompt, e))
+				.whenComplete((story, e) -> {
+					if (e != null) {
+						playable.completeExceptionally(e);
+						return;
+					}
+					expandable(story, userPrompt);
+					StoryCache.getDefault().put(userPrompt, story);
+					playable.complete(story);
+				});
+	}
+
+	/**
+	 * Starts streamed generation of the story
+	 * @param userPrompt the input prompt from the user
+	 * @param playable   future to complete as soon as the main situation of the story is generated,
+	 *                   the rest of the story is added to it in background
+	 * @return {@link CompletableFuture}, that is completed when the story is fully loaded. The story stays in loading
+	 * state until it is repaired, so players wait for repaired choices, a story, that can't be repaired, is marked as failed
+	 */
+	private static CompletableFuture<?> generateStreaming(String userPrompt, CompletableFuture<Story> playable) {
+		StoryStreamParser parser = new StoryStreamParser();
+		expandable(parser.getStory(), userPrompt);
+		parser.getFirstSituation().whenComplete((story, e) -> {
+			if (e != null) playable.completeExceptionally(e);
+			else playable.complete(story);
+		});
+		StoryGenerator generator = StoryGenerators.getDefault();
+		String prompt = Settings.LAZY_ENABLED ? StoryExpander.partPrompt(userPrompt) : userPrompt;
+		return generator.stream(prompt, parser)
+				.thenCompose(ignored -> {
+					if (parser.finish()) return CompletableFuture.completedFuture(parser.getStory());
+					if (!Settings.REPAIR_ENABLED || !parser.getFirstSituation().isDone()) {
+						return CompletableFuture.failedFuture(new StoryValidationException(parser.getReport(), parser.getStory()));
+					}
+					return new StoryRepairer(generator).repair(prompt, parser.getStory(), parser.getReport());
+				})
+				.whenComplete((story, e) -> {
+					if (e != null) {
+						parser.fail(e);
+						return;
+					}
+					story.finishLoading();
+					StoryCache.getDefault().put(userPrompt, story);
+				});
+	}
+
+	/**
+	 * Adds {@link StoryExpander} to the story, if stories are generated in parts
+	 * @param story      generated or cached story
+	 * @param userPrompt the input prompt from the user, pending situations are generated with it
+	 * @return the same story
+	 */
+	private static Story expandable(Story story, String userPrompt) {
+		if (!Settings.LAZY_ENABLED) return story;
+		synchronized (story) {
+			if (story.getExpander() == null) story.setExpander(new StoryExpander(story, StoryGenerators.getDefault(), userPrompt));
+		}
+		return story;
+	}
+}
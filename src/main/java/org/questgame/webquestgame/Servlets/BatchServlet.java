@@ -0,0 +1,86 @@
+package org.questgame.webquestgame.Servlets;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Logic.StoryHandlers.BatchGenerator;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The {@code BatchServlet} class starts generation of stories for a list of prompts and shows its progress as plain text.
+ * <p>
+ * {@code POST /batch} takes prompts from the request body, one prompt per line, and starts the batch in background
+ * with {@link BatchGenerator}. {@code GET /batch} shows progress of the running batch, or the report of the last one,
+ * in the same {@code name value} form, as {@link StatsServlet}. The servlet is disabled, unless
+ * {@link Settings#BATCH_ENABLED} is set, because batches spend tokens of the account.
+ * </p>
+ *
+ * @see HttpServlet
+ * @see BatchGenerator
+ */
+public class BatchServlet extends HttpServlet {
+
+	/**
+	 * Logger instance for recording batch requests.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Handles HTTP POST requests to start a batch.
+	 *
+	 * @param req  the {@link HttpServletRequest} with prompts in the body
+	 * @param resp the {@link HttpServletResponse} used to send the response to the client
+	 * @throws IOException if an I/O error occurs during reading the request or writing the response
+	 */
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		if (!Settings.BATCH_ENABLED) {
+			resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		List<String> prompts = BatchGenerator.readPrompts(req.getReader().lines().collect(Collectors.toList()));
+		if (prompts.isEmpty() || prompts.size() > Settings.BATCH_MAX_PROMPTS) {
+			log.warn("Batch of {} prompts is rejected", prompts.size());
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Batch must contain from 1 to " + Settings.BATCH_MAX_PROMPTS + " prompts");
+			return;
+		}
+		BatchGenerator batch = BatchGenerator.getDefault();
+		try {
+			batch.start(prompts);
+		} catch (IllegalStateException e) {
+			resp.sendError(HttpServletResponse.SC_CONFLICT, e.getMessage());
+			return;
+		}
+		log.info("Batch of {} prompts started", prompts.size());
+		resp.setStatus(HttpServletResponse.SC_ACCEPTED);
+		resp.setContentType("text/plain;charset=UTF-8");
+		resp.getWriter().println("batch_started " + prompts.size());
+	}
+
+	/**
+	 * Handles HTTP GET requests to show progress of the batch.
+	 *
+	 * @param req  the {@link HttpServletRequest} containing client request information
+	 * @param resp the {@link HttpServletResponse} used to send the response to the client
+	 * @throws IOException if an I/O error occurs during writing the response
+	 */
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		if (!Settings.BATCH_ENABLED) {
+			resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		BatchGenerator batch = BatchGenerator.getDefault();
+		resp.setContentType("text/plain;charset=UTF-8");
+		PrintWriter writer = resp.getWriter();
+		writer.println("batch_running " + batch.isRunning());
+		writer.print(batch.getReport());
+	}
+}
@@ -5,7 +5,11 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.Settings;
 import org.questgame.webquestgame.Logic.Story;
+import org.questgame.webquestgame.Logic.CompiledStory;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryCodec;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryRegistry;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
@@ -14,8 +18,8 @@ import java.time.LocalDateTime;
  * The {@code DownloadServlet} class facilitates downloading a serialized game story as a file.
  * <p>
  * This servlet handles HTTP GET requests to allow users to download their current story state.
- * It retrieves the {@link Story} object from the session, serializes it, and streams it as a file
- * attachment to the client.
+ * It retrieves the {@link Story} object from the session, writes it in the binary format of {@link StoryCodec},
+ * and streams it as a file attachment to the client.
  * </p>
  * <p>
  * @see HttpServlet
@@ -33,9 +37,10 @@ public class DownloadServlet extends HttpServlet {
 	 * <p>
 	 * This method:
 	 * <ul>
-	 *     <li>Retrieves the {@link Story} object from the HTTP session.</li>
-	 *     <li>Generates a filename in the format "story-[current timestamp].ser".</li>
-	 *     <li>Serializes the {@code Story} object and writes it to the response's output stream.</li>
+	 *     <li>Retrieves the {@link Story} object from the HTTP session and waits, if it is still being generated,
+	 *     or restores it from the shared {@link CompiledStory}, which ID is stored in the session.</li>
+	 *     <li>Generates a filename in the format "story-[current timestamp].story".</li>
+	 *     <li>Encodes the {@code Story} object with {@link StoryCodec} and writes it to the response's output stream.</li>
 	 * </ul>
 	 * </p>
 	 *
@@ -47,11 +52,34 @@ public class DownloadServlet extends HttpServlet {
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
 		log.info("Preparing to download story");
 		LocalDateTime currentDateTime = LocalDateTime.now();
-		String fileName = "story-" + currentDateTime + ".ser";
-		Story story =  (Story) req.getSession().getAttribute("story");
+		String fileName = "story-" + currentDateTime + StoryCodec.EXTENSION;
+		Story story = getStory(req);
+		if (story == null) {
+			log.error("There is no story in session");
+			resp.sendError(HttpServletResponse.SC_NOT_FOUND, "There is no story to download");
+			return;
+		}
+		if (!story.awaitLoaded(Settings.ASYNC_TIMEOUT)) {
+			log.error("Story is still being generated, it can't be downloaded");
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Story is still being generated");
+			return;
+		}
 		resp.setContentType("application/octet-stream");
 		resp.setHeader("Content-Disposition", "attachment;filename=" + fileName);
 		log.info("File {} is prepared to download", fileName);
-		story.serialize(resp.getOutputStream());
+		StoryCodec.write(story, resp.getOutputStream());
+	}
+
+	/**
+	 * Returns story of the session
+	 * @param req the {@link HttpServletRequest} containing the session
+	 * @return the {@link Story}, or null if the session has no story
+	 */
+	private Story getStory(HttpServletRequest req) {
+		Story story = (Story) req.getSession().getAttribute("story");
+		if (story != null) return story;
+		String storyId = (String) req.getSession().getAttribute("storyId");
+		CompiledStory compiled = storyId == null ? null : StoryRegistry.getDefault().get(storyId);
+		return compiled == null ? null : compiled.toStory();
 	}
 }
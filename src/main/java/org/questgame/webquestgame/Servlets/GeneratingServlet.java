@@ -1,28 +1,57 @@
 package org.questgame.webquestgame.Servlets;
 
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.questgame.webquestgame.Additional.ChatGPTClient;
-import org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+import org.questgame.webquestgame.Exceptions.CircuitBreakerOpenException;
+import org.questgame.webquestgame.Exceptions.RateLimitExceededException;
+import org.questgame.webquestgame.Logic.Interfaces.StoryGenerator;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryCache;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryPool;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryService;
 import org.questgame.webquestgame.Logic.Story;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The {@code GeneratingServlet} class handles the generation of a game story based on user input.
  * <p>
- * This servlet processes a POST request containing a user prompt, interacts with the {@link ChatGPTClient}
- * to generate a main quest storyline, initializes the story elements, and forwards the request to
- * the initialization endpoint.
+ * This servlet processes a POST request containing a user prompt, requests the story from {@link StoryService},
+ * which generates it with the configured {@link StoryGenerator}, and forwards the request to
+ * the initialization endpoint. The servlet doesn't depend on a particular generator: it may be ChatGPT,
+ * a local model server or an in-process deterministic generator.
+ * </p>
+ * <p>
+ * Generation takes tens of seconds, so the servlet is asynchronous: the container thread is released right after
+ * the generation is started, and the request is resumed (dispatched to "/init") when the story is ready.
+ * The servlet must be mapped with {@code async-supported} flag.
+ * </p>
+ * <p>
+ * Stories are requested from {@link StoryService}: a story for a prompt, that was already generated, is taken
+ * from {@link StoryCache} without calling the generator, otherwise the player is sent to "/init" as soon as
+ * the main situation of the new story is ready.
+ * </p>
+ * <p>
+ * If the request to the API is rejected by the rate limiter (too many stories are being generated),
+ * the player is shown "/Pages/BusyPage.jsp" with 503 status. If requests to ChatGPT are suspended by the circuit
+ * breaker (the API keeps failing), the player gets a ready story from {@link StoryPool} instead, or the busy page,
+ * if the pool is empty.
  * </p>
  *
  * @see HttpServlet
- * @see ChatGPTClient
- * @see ElementInitializer
+ * @see StoryGenerator
+ * @see StoryService
  * @see Story
  */
 public class GeneratingServlet extends HttpServlet {
@@ -37,26 +66,162 @@ public class GeneratingServlet extends HttpServlet {
 	 * <p>
 	 * This method:
 	 * <ul>
-	 *     <li>Uses {@link ChatGPTClient} to generate a storyline based on the prompt.</li>
-	 *     <li>Initializes the story elements using {@link ElementInitializer}.</li>
+	 *     <li>Starts asynchronous processing of the request.</li>
+	 *     <li>Requests the story from {@link StoryService}, which takes it from cache or generates it with {@link StoryGenerator}
+	 *     without blocking the container thread.</li>
 	 *     <li>Sets the generated {@link Story} object as a request attribute.</li>
-	 *     <li>Forwards the request to the "/init" endpoint for further processing.</li>
+	 *     <li>Dispatches the request to the "/init" endpoint for further processing.</li>
+	 *     <li>Dispatches the request to the busy page, if generation is rejected by the rate limiter.</li>
+	 *     <li>Takes a story from {@link StoryPool}, if requests to ChatGPT are suspended by the circuit breaker.</li>
 	 * </ul>
+	 *
+	 * If the request has "random" parameter, a ready story is taken from {@link StoryPool} and the request is forwarded
+	 * to "/init" immediately. If the pool is empty, a story for a random prompt is generated as usual.
 	 * </p>
 	 *
 	 * @param req  the {@link HttpServletRequest} containing client request information
 	 * @param resp the {@link HttpServletResponse} used to send the response to the client
-	 * @throws ServletException if a servlet-specific error occurs during processing
-	 * @throws IOException      if an I/O error occurs during request forwarding
+	 * @throws ServletException if a servlet-specific error occurs during forwarding
+	 * @throws IOException      if an I/O error occurs during forwarding
 	 */
 	@Override
 	protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 		String userPrompt = req.getParameter("userPrompt");
-		String response = ChatGPTClient.generateMainQuestLine(userPrompt);
-		Story story = ElementInitializer.createStoryFromAiResponse(response);
-		req.setAttribute("story", story);
+		if (req.getParameter("random") != null) {
+			Story pooled = StoryPool.getDefault().take();
+			if (pooled != null) {
+				req.setAttribute("story", pooled);
+				log.info("Random story taken from pool, redirecting to /init");
+				getServletContext().getRequestDispatcher("/init").forward(req, resp);
+				return;
+			}
+			userPrompt = StoryPool.randomPrompt();
+			log.info("Story pool is empty, generating story for random prompt: {}", userPrompt);
+		}
+		AsyncContext asyncContext = req.startAsync();
+		asyncContext.setTimeout(Settings.ASYNC_TIMEOUT.toMillis());
+		AtomicBoolean finished = new AtomicBoolean(false);
+
+		CompletableFuture<Story> generation = StoryService.getStory(userPrompt);
+		asyncContext.addListener(new TimeoutListener(generation, finished));
+
+		generation.whenComplete((story, e) -> {
+			if (!finished.compareAndSet(false, true)) {
+				log.warn("Story generated after request was finished, result is dropped");
+				return;
+			}
+			Throwable cause = unwrap(e);
+			if (cause instanceof CircuitBreakerOpenException) {
+				Story pooled = StoryPool.getDefault().take();
+				if (pooled != null) {
+					log.warn("ChatGPT API is unavailable, random story is taken from pool instead");
+					dispatchToInit(asyncContext, pooled);
+					return;
+				}
+			}
+			if (cause instanceof RateLimitExceededException || cause instanceof CircuitBreakerOpenException) {
+				showBusyPage(asyncContext);
+				return;
+			}
+			if (e != null) {
+				sendError(asyncContext, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e);
+				return;
+			}
+			dispatchToInit(asyncContext, story);
+		});
+	}
 
+	/**
+	 * Dispatches the request to "/init" with the story
+	 * @param asyncContext the {@link AsyncContext} of the request
+	 * @param story        the story to play
+	 */
+	private static void dispatchToInit(AsyncContext asyncContext, Story story) {
+		asyncContext.getRequest().setAttribute("story", story);
 		log.info("Redirecting to /init");
-		getServletContext().getRequestDispatcher("/init").forward(req, resp);
+		asyncContext.dispatch("/init");
+	}
+
+	/**
+	 * Shows the busy page with 503 status, when generation is rejected by the rate limiter or the circuit breaker
+	 * @param asyncContext the {@link AsyncContext} of the request
+	 */
+	private static void showBusyPage(AsyncContext asyncContext) {
+		log.warn("Story generation is rejected, redirecting to /Pages/BusyPage.jsp");
+		HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+		response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		response.setHeader("Retry-After", String.valueOf(Settings.RATE_LIMIT_MAX_WAIT.toSeconds()));
+		asyncContext.dispatch("/Pages/BusyPage.jsp");
+	}
+
+	/**
+	 * Sends error to the client and completes asynchronous processing
+	 * @param asyncContext the {@link AsyncContext} of the request
+	 * @param status       HTTP status code
+	 * @param e            the cause of the error
+	 */
+	private static void sendError(AsyncContext asyncContext, int status, Throwable e) {
+		Throwable cause = unwrap(e);
+		log.error("Story generation failed", cause);
+		try {
+			((HttpServletResponse) asyncContext.getResponse()).sendError(status, cause.getMessage());
+		} catch (IOException | IllegalStateException ioException) {
+			log.error("Error while sending error response", ioException);
+		} finally {
+			asyncContext.complete();
+		}
+	}
+
+	/**
+	 * Returns the cause of {@link CompletionException}
+	 * @param e exception, may be null
+	 * @return the cause, or {@code e} itself if it is not {@link CompletionException}
+	 */
+	private static Throwable unwrap(Throwable e) {
+		return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+	}
+
+	/**
+	 * {@link AsyncListener} that cancels generation and responds with an error, when the request times out
+	 */
+	private static class TimeoutListener implements AsyncListener {
+
+		/**
+		 * Generation, that is cancelled on timeout
+		 */
+		private final CompletableFuture<Story> generation;
+
+		/**
+		 * Flag, that shows that the request was already finished (dispatched, or finished with error)
+		 */
+		private final AtomicBoolean finished;
+
+		private TimeoutListener(CompletableFuture<Story> generation, AtomicBoolean finished) {
+			this.generation = generation;
+			this.finished = finished;
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			if (finished.compareAndSet(false, true)) {
+				generation.cancel(true);
+				sendError(event.getAsyncContext(), HttpServletResponse.SC_GATEWAY_TIMEOUT, new ChatGptGenerationException("Story generation timed out"));
+			}
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			finished.set(true);
+			generation.cancel(true);
+			log.error("Asynchronous request failed", event.getThrowable());
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+		}
 	}
 }
@@ -7,8 +7,12 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Exceptions.SerializationException;
+import org.questgame.webquestgame.Logic.CompiledStory;
 import org.questgame.webquestgame.Logic.ElementHandlers.ElementManager;
 import org.questgame.webquestgame.Logic.Story;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryRegistry;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryRepository;
 
 import java.io.IOException;
 
@@ -18,8 +22,11 @@ import java.io.IOException;
  * This servlet processes a POST request to set up the game state by:
  * <ul>
  *     <li>Retrieving the {@link Story} object from the request attributes.</li>
+ *     <li>Storing complete stories in {@link StoryRepository} and registering them in {@link StoryRegistry},
+ *     so all sessions share one {@link CompiledStory}.</li>
  *     <li>Creating an {@link ElementManager} for managing game elements.</li>
- *     <li>Storing the story, the element manager, and the main situation in the HTTP session.</li>
+ *     <li>Storing the story ID (or the story, if it is still being generated), the element manager, and the main
+ *     situation in the HTTP session.</li>
  *     <li>Redirecting the user to the game start page ("index.jsp").</li>
  * </ul>
  * </p>
@@ -42,7 +49,10 @@ public class InitServlet extends HttpServlet {
 	 * <ul>
 	 *     <li>Starts a new session or retrieves an existing one.</li>
 	 *     <li>Initializes the {@link Story} and {@link ElementManager} from the request attributes.</li>
-	 *     <li>Stores the story, the element manager, and the main situation in the session.</li>
+	 *     <li>Releases the story, that the session played before, and registers the new one, if it is complete.
+	 *     The story is stored in {@link StoryRepository}, unless the "storedId" request attribute shows,
+	 *     that it is already stored (e.g. by {@link UploadServlet}).</li>
+	 *     <li>Stores the story ID or the story, the element manager, and the main situation in the session.</li>
 	 *     <li>Redirects the client to the "index.jsp" page to begin the game.</li>
 	 * </ul>
 	 * </p>
@@ -57,14 +67,40 @@ public class InitServlet extends HttpServlet {
 		log.info("Init servlet Started");
 		HttpSession session = req.getSession(true);
 		Story story = (Story) req.getAttribute("story");
-		ElementManager em = new ElementManager(story);
+		StoryRegistry registry = StoryRegistry.getDefault();
+		String previousId = (String) session.getAttribute("storyId");
+		if (previousId != null) registry.release(previousId, session.getId());
+		ElementManager em;
+		if (CompiledStory.canCompile(story)) {
+			if (req.getAttribute("storedId") == null) store(story);
+			String storyId = registry.register(story, session.getId());
+			em = new ElementManager(registry.get(storyId));
+			session.setAttribute("storyId", storyId);
+			session.removeAttribute("story");
+		} else {
+			em = new ElementManager(story);
+			session.removeAttribute("storyId");
+			session.setAttribute("story", story);
+		}
 		log.info("New session started");
-		session.setAttribute("story", story);
 		session.setAttribute("currentSituation", em.getMainSituation());
 		session.setAttribute("elementManager", em);
-		log.info("Attribute story, element-manager and first situation added to session");
+		log.info("Attribute story (or storyId), element-manager and first situation added to session");
 
 		log.info("Redirecting to index.jsp");
 		resp.sendRedirect("/index.jsp");
 	}
+
+	/**
+	 * Stores the story in the repository, or marks it as played, if it is already stored.
+	 * The game is started, even if the story can't be stored
+	 * @param story complete story
+	 */
+	private void store(Story story) {
+		try {
+			StoryRepository.getDefault().put(story);
+		} catch (SerializationException e) {
+			log.error("Story can't be stored in repository: {}", e.getMessage());
+		}
+	}
 }
@@ -0,0 +1,93 @@
+package org.questgame.webquestgame.Servlets;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.ChatGPTClient;
+import org.questgame.webquestgame.Additional.CircuitBreaker;
+import org.questgame.webquestgame.Additional.RateLimiter;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryCache;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryPool;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryRegistry;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryService;
+import org.questgame.webquestgame.Simulator.LlmSimulator;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * The {@code StatsServlet} class shows runtime counters of the application as plain text.
+ * <p>
+ * Every line has a form of {@code name value}, so the page can be read both by people and by monitoring tools.
+ * </p>
+ *
+ * @see HttpServlet
+ * @see StoryCache
+ * @see StoryService
+ * @see StoryPool
+ * @see RateLimiter
+ * @see CircuitBreaker
+ * @see LlmSimulator
+ */
+public class StatsServlet extends HttpServlet {
+
+	/**
+	 * Logger instance for recording requests to statistics.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Handles HTTP GET requests to show application counters.
+	 *
+	 * @param req  the {@link HttpServletRequest} containing client request information
+	 * @param resp the {@link HttpServletResponse} used to send the response to the client
+	 * @throws IOException if an I/O error occurs during writing the response
+	 */
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		log.debug("Showing application statistics");
+		resp.setContentType("text/plain;charset=UTF-8");
+		PrintWriter writer = resp.getWriter();
+		StoryCache cache = StoryCache.getDefault();
+		writer.println("story_cache_hits " + cache.getHits());
+		writer.println("story_cache_disk_hits " + cache.getDiskHits());
+		writer.println("story_cache_misses " + cache.getMisses());
+		writer.println("story_cache_size " + cache.size());
+		writer.println("story_generations_in_progress " + StoryService.getGenerationsInProgress());
+		writer.println("story_coalesced_requests " + StoryService.getCoalescedRequests());
+		StoryRegistry registry = StoryRegistry.getDefault();
+		writer.println("story_registry_size " + registry.size());
+		writer.println("story_registry_shared " + registry.getShared());
+		writer.println("story_registry_reclaimed " + registry.getReclaimed());
+		StoryPool pool = StoryPool.getDefault();
+		writer.println("story_pool_ready " + pool.getReady());
+		writer.println("story_pool_taken " + pool.getTaken());
+		writer.println("story_pool_empty " + pool.getEmpty());
+		RateLimiter limiter = RateLimiter.getDefault();
+		writer.println("rate_limiter_queue_depth " + limiter.getQueueDepth());
+		writer.println("rate_limiter_admitted " + limiter.getAdmitted());
+		writer.println("rate_limiter_rejected " + limiter.getRejected());
+		writer.println("rate_limiter_wait_avg_ms " + limiter.getAverageWaitMillis());
+		writer.println("rate_limiter_wait_max_ms " + limiter.getMaxWaitMillis());
+		writer.println("rate_limiter_available_requests " + limiter.getAvailableRequests());
+		writer.println("rate_limiter_available_tokens " + limiter.getAvailableTokens());
+		writer.println("chatgpt_retries " + ChatGPTClient.getRetries());
+		CircuitBreaker breaker = CircuitBreaker.getDefault();
+		writer.println("circuit_breaker_state " + breaker.getState());
+		writer.println("circuit_breaker_opened " + breaker.getOpened());
+		writer.println("circuit_breaker_half_opened " + breaker.getHalfOpened());
+		writer.println("circuit_breaker_rejected " + breaker.getRejected());
+		if (Settings.SIMULATOR_ENABLED) {
+			LlmSimulator simulator = LlmSimulator.getDefault();
+			writer.println("simulator_requests " + simulator.getRequests());
+			writer.println("simulator_succeeded " + simulator.getSucceeded());
+			writer.println("simulator_rate_limited " + simulator.getRateLimited());
+			writer.println("simulator_server_errors " + simulator.getServerErrors());
+			writer.println("simulator_timeouts " + simulator.getTimeouts());
+			writer.println("simulator_active " + simulator.getActive());
+		}
+	}
+}
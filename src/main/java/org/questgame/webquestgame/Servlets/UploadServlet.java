@@ -9,20 +9,28 @@ import jakarta.servlet.http.Part;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Exceptions.FileFormatException;
+import org.questgame.webquestgame.Exceptions.SerializationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryValidator;
+import org.questgame.webquestgame.Logic.ElementHandlers.ValidationReport;
 import org.questgame.webquestgame.Logic.Story;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryCodec;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryRepository;
 
-import java.io.File;
+import java.io.BufferedInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * The {@code UploadServlet} class handles file uploads and processes uploaded story files.
  * <p>
  * This servlet processes POST requests to:
  * <ul>
- *     <li>Upload a story file to the server.</li>
- *     <li>Create the necessary upload directory if it does not exist.</li>
- *     <li>Parse the uploaded file to initialize a {@link Story} object.</li>
+ *     <li>Read the uploaded file with {@link StoryCodec} straight from the request, files in the binary and in the legacy
+ *     format are accepted. Size of the file, number of elements and nesting depth are limited
+ *     ({@link Settings#UPLOAD_MAX_BYTES}, {@link Settings#UPLOAD_MAX_ELEMENTS}, {@link Settings#UPLOAD_MAX_DEPTH}).</li>
+ *     <li>Store the valid story in {@link StoryRepository} by its content hash, so uploads never collide.</li>
  *     <li>Forward the request to the initialization endpoint for further processing.</li>
  * </ul>
  * </p>
@@ -30,7 +38,8 @@ import java.io.IOException;
  * @see HttpServlet
  * @see Story
  */
-@MultipartConfig
+@MultipartConfig(fileSizeThreshold = Settings.UPLOAD_MEMORY_THRESHOLD, maxFileSize = Settings.UPLOAD_MAX_FILE_SIZE,
+		maxRequestSize = Settings.UPLOAD_MAX_FILE_SIZE + Settings.UPLOAD_FORM_OVERHEAD)
 public class UploadServlet extends HttpServlet {
 
 	/**
@@ -43,10 +52,9 @@ public class UploadServlet extends HttpServlet {
 	 * <p>
 	 * This method:
 	 * <ul>
-	 *     <li>Determines the upload directory path.</li>
-	 *     <li>Creates the directory if it does not already exist.</li>
-	 *     <li>Uploads the file and stores it on the server.</li>
-	 *     <li>Parses the uploaded file into a {@link Story} object.</li>
+	 *     <li>Reads the uploaded file into a {@link Story} object, rejects files, that are not stories.</li>
+	 *     <li>Validates the story and only then stores it in {@link StoryRepository}, the game is started,
+	 *     even if the story can't be stored.</li>
 	 *     <li>Forwards the request to the "/init" endpoint for further processing.</li>
 	 * </ul>
 	 * </p>
@@ -59,62 +67,66 @@ public class UploadServlet extends HttpServlet {
 	@Override
 	protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 		log.info("Sending file on server");
-		String uploadPath = getServletContext().getRealPath("") + File.separator + Settings.UPLOAD_DIRECTORY;
-
-		createDirectory(uploadPath);
-		String uploadedPath = uploadFile(req, uploadPath);
-		req.setAttribute("story", Story.getStoryFromFile(uploadedPath));
+		if (req.getContentLengthLong() > Settings.UPLOAD_MAX_BYTES + Settings.UPLOAD_FORM_OVERHEAD) {
+			log.error("Uploaded request is too large: {} bytes", req.getContentLengthLong());
+			resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "File is too large");
+			return;
+		}
+		Part part;
+		try {
+			part = getFilePart(req);
+		} catch (IllegalStateException e) {
+			log.error("Uploaded request is too large: {}", e.getMessage());
+			resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "File is too large");
+			return;
+		}
+		if (part.getSize() > Settings.UPLOAD_MAX_BYTES) {
+			log.error("Uploaded file is too large: {} bytes", part.getSize());
+			resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "File is too large");
+			return;
+		}
+		Story story;
+		try (InputStream in = new BufferedInputStream(part.getInputStream())) {
+			story = StoryCodec.read(in, StoryCodec.Limits.forUploads());
+		} catch (FileFormatException | SerializationException e) {
+			log.error("Uploaded file is not a story: {}", e.getMessage());
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "File is not a story");
+			return;
+		}
+		ValidationReport report = StoryValidator.validate(story);
+		if (!report.isValid()) {
+			log.error("Uploaded story is rejected: {}", report);
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST, report.toString());
+			return;
+		}
+		try {
+			String storyId = StoryRepository.getDefault().put(story);
+			log.info("File {} uploaded as story {}", part.getSubmittedFileName(), storyId);
+			req.setAttribute("storedId", storyId);
+		} catch (SerializationException e) {
+			log.error("Uploaded story can't be stored in repository: {}", e.getMessage());
+		}
+		req.setAttribute("story", story);
 
 		log.info("Redirecting to /init");
 		getServletContext().getRequestDispatcher("/init").forward(req, resp);
 	}
 
 	/**
-	 * Creates the upload directory if it does not already exist.
-	 *
-	 * @param uploadPath the path to the directory where files will be uploaded
-	 */
-	private void createDirectory(String uploadPath) {
-		File uploadDir = new File(uploadPath);
-		if (!uploadDir.exists()) {
-			uploadDir.mkdir();
-			log.info("Directory {} created on {}", Settings.UPLOAD_DIRECTORY, uploadPath);
-		}
-		else {
-			log.debug("Directory {} is already exists", Settings.UPLOAD_DIRECTORY);
-		}
-	}
-
-	/**
-	 * Handles the file upload process.
-	 * <p>
-	 * This method:
-	 * <ul>
-	 *     <li>Iterates through all parts of the HTTP request.</li>
-	 *     <li>Checks for a valid submitted file name.</li>
-	 *     <li>Saves the uploaded file to the specified directory.</li>
-	 *     <li>Returns the full path of the uploaded file.</li>
-	 * </ul>
-	 * </p>
+	 * Finds the uploaded file among parts of the request
 	 *
-	 * @param req        the {@link HttpServletRequest} containing the uploaded file
-	 * @param uploadPath the directory path where the file will be saved
-	 * @return the full path of the uploaded file
-	 * @throws ServletException if an error occurs while processing the request parts
-	 * @throws IOException      if an I/O error occurs during file upload
+	 * @param req the {@link HttpServletRequest} containing the uploaded file
+	 * @return the {@link Part} with the file
+	 * @throws ServletException      if an error occurs while processing the request parts
+	 * @throws IOException           if an I/O error occurs during file upload
+	 * @throws IllegalStateException if the request is larger than limits of {@link MultipartConfig}
 	 * @throws FileNotFoundException if no file is found in the request
 	 */
-	private String uploadFile(HttpServletRequest req, String uploadPath) throws ServletException, IOException {
+	private Part getFilePart(HttpServletRequest req) throws ServletException, IOException {
 		for (Part part : req.getParts()) {
-			String fileName = part.getSubmittedFileName();
-			if (fileName != null) {
-				part.write(uploadPath + File.separator + fileName);
-				log.info("File {} uploaded to server", fileName);
-				return uploadPath + "/" + fileName;
-			}
+			if (part.getSubmittedFileName() != null) return part;
 		}
 		log.error("There is no file in request");
 		throw new FileNotFoundException("There is no file in request");
 	}
-
 }
@@ -0,0 +1,104 @@
+package org.questgame.webquestgame.Simulator;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * The {@code FaultInjector} class decides, which requests to {@link LlmSimulator} fail and how.
+ * <p>
+ * Every request independently fails with the configured probabilities:
+ * <ul>
+ *     <li>{@link Fault#RATE_LIMIT} - 429 response with {@code Retry-After} header, sent immediately;</li>
+ *     <li>{@link Fault#SERVER_ERROR} - 500 response, sent after the usual latency;</li>
+ *     <li>{@link Fault#TIMEOUT} - the request is never answered, the connection is kept open for the hang time.</li>
+ * </ul>
+ * </p>
+ *
+ * @see LlmSimulator
+ */
+public class FaultInjector {
+
+	/**
+	 * Kinds of injected faults
+	 */
+	public enum Fault {
+		NONE,
+		RATE_LIMIT,
+		SERVER_ERROR,
+		TIMEOUT
+	}
+
+	/**
+	 * Probabilities of faults, from 0.0 to 1.0
+	 */
+	private final double rateLimitErrors;
+	private final double serverErrors;
+	private final double timeouts;
+
+	/**
+	 * Retry-After of 429 responses
+	 */
+	private final Duration retryAfter;
+
+	/**
+	 * Time unanswered request is kept open
+	 */
+	private final Duration hangTime;
+
+	/**
+	 * Creates fault injector
+	 * @param rateLimitErrors probability of 429 response
+	 * @param serverErrors    probability of 500 response
+	 * @param timeouts        probability of unanswered request
+	 * @param retryAfter      Retry-After of 429 responses
+	 * @param hangTime        time unanswered request is kept open
+	 * @throws IllegalArgumentException if probabilities are negative or their sum is greater than 1
+	 */
+	public FaultInjector(double rateLimitErrors, double serverErrors, double timeouts, Duration retryAfter, Duration hangTime) {
+		if (rateLimitErrors < 0 || serverErrors < 0 || timeouts < 0 || rateLimitErrors + serverErrors + timeouts > 1) {
+			throw new IllegalArgumentException("Fault probabilities must be from 0 to 1 in total");
+		}
+		this.rateLimitErrors = rateLimitErrors;
+		this.serverErrors = serverErrors;
+		this.timeouts = timeouts;
+		this.retryAfter = retryAfter;
+		this.hangTime = hangTime;
+	}
+
+	/**
+	 * Creates fault injector, that never injects faults
+	 * @return new {@link FaultInjector}
+	 */
+	public static FaultInjector none() {
+		return new FaultInjector(0, 0, 0, Duration.ZERO, Duration.ZERO);
+	}
+
+	/**
+	 * Decides, how the next request fails
+	 * @param random random generator
+	 * @return {@link Fault} of the request, {@link Fault#NONE} if the request succeeds
+	 */
+	public Fault next(Random random) {
+		double value = random.nextDouble();
+		if (value < rateLimitErrors) return Fault.RATE_LIMIT;
+		value -= rateLimitErrors;
+		if (value < serverErrors) return Fault.SERVER_ERROR;
+		value -= serverErrors;
+		if (value < timeouts) return Fault.TIMEOUT;
+		return Fault.NONE;
+	}
+
+	/**
+	 * @return Retry-After of 429 responses
+	 */
+	public Duration getRetryAfter() {
+		return retryAfter;
+	}
+
+	/**
+	 * @return time unanswered request is kept open
+	 */
+	public Duration getHangTime() {
+		return hangTime;
+	}
+}
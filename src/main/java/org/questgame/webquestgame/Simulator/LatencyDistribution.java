@@ -0,0 +1,74 @@
+package org.questgame.webquestgame.Simulator;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * The {@code LatencyDistribution} class generates response times of {@link LlmSimulator}.
+ * <p>
+ * Generation time of language models has a long right tail: most answers take about the same time,
+ * but some take several times longer. The class uses log-normal distribution, fitted by its median (p50)
+ * and 99th percentile (p99), so the tail is as long as the ratio p99 / p50. Generated values are capped
+ * with the maximum latency, e.g. slightly below the client timeout.
+ * </p>
+ *
+ * @see LlmSimulator
+ */
+public class LatencyDistribution {
+
+	/**
+	 * 99th percentile of the standard normal distribution
+	 */
+	private static final double Z_99 = 2.3263478740408408;
+
+	/**
+	 * Median latency, in milliseconds
+	 */
+	private final long p50Millis;
+
+	/**
+	 * Parameters of the log-normal distribution
+	 */
+	private final double mu;
+	private final double sigma;
+
+	/**
+	 * Maximum latency, in milliseconds
+	 */
+	private final long maxMillis;
+
+	/**
+	 * Creates distribution
+	 * @param p50 median latency
+	 * @param p99 99th percentile of latency, must not be less than the median
+	 * @param max maximum latency
+	 * @throws IllegalArgumentException if p99 is less than p50
+	 */
+	public LatencyDistribution(Duration p50, Duration p99, Duration max) {
+		if (p99.compareTo(p50) < 0) throw new IllegalArgumentException("p99 latency must not be less than p50 latency");
+		this.p50Millis = p50.toMillis();
+		this.mu = Math.log(Math.max(1, p50Millis));
+		this.sigma = (Math.log(Math.max(1, p99.toMillis())) - mu) / Z_99;
+		this.maxMillis = max.toMillis();
+	}
+
+	/**
+	 * Creates distribution, that always returns the same latency
+	 * @param latency latency
+	 * @return new {@link LatencyDistribution}
+	 */
+	public static LatencyDistribution fixed(Duration latency) {
+		return new LatencyDistribution(latency, latency, latency);
+	}
+
+	/**
+	 * Generates latency
+	 * @param random random generator
+	 * @return latency in milliseconds, from 0 to the maximum latency
+	 */
+	public long sampleMillis(Random random) {
+		if (p50Millis == 0) return 0;
+		long latency = Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+		return Math.min(maxMillis, latency);
+	}
+}
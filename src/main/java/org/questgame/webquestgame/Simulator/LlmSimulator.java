@@ -0,0 +1,527 @@
+package org.questgame.webquestgame.Simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.JsonUtils;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Exceptions.RecordingException;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code LlmSimulator} class is a local stand-in for the chat-completions API, that is used for capacity
+ * testing: it replays recorded story contents with realistic latency and failures, so the whole application
+ * (servlets, rate limiter, retries, circuit breaker, streaming) can be loaded without calling OpenAI.
+ * <p>
+ * The simulator is a small HTTP server on the loopback interface. It can be started with the application
+ * ({@code -Dquestgame.simulator.enabled=true}) or separately with {@link #main(String[])}, and
+ * {@link org.questgame.webquestgame.Additional.ChatGPTClient} is pointed at it with
+ * {@code -Dquestgame.openai.url=http://localhost:8089/v1/chat/completions}.
+ * </p>
+ * For every POST request the simulator:
+ * <ul>
+ *     <li>takes the next recorded content (see {@link Recordings}), or a story of {@link DeterministicStoryGenerator},
+ *     if no recordings are configured;</li>
+ *     <li>decides with {@link FaultInjector}, if the request fails with 429, 500 or is never answered;</li>
+ *     <li>waits for the latency generated by {@link LatencyDistribution} and sends the response: a completion with
+ *     {@code n} choices, or a stream of server-sent events spread over the latency, if the request has {@code "stream": true}.</li>
+ * </ul>
+ * Waiting doesn't block threads: responses are scheduled on a small pool, so thousands of simultaneous
+ * requests can be simulated.
+ *
+ * @see LatencyDistribution
+ * @see FaultInjector
+ * @see Recordings
+ * @see Settings
+ */
+public class LlmSimulator {
+
+	/**
+	 * Logger instance for recording simulator events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Path of the chat-completions API
+	 */
+	public static final String PATH = "/v1/chat/completions";
+
+	/**
+	 * Matches {@code "stream": true} field of the request
+	 */
+	private static final Pattern STREAM_FIELD = Pattern.compile("\"stream\"\\s*:\\s*true");
+
+	/**
+	 * Simulator configured with values from {@link Settings}, created lazily by {@link #getDefault()}
+	 */
+	private static LlmSimulator defaultSimulator;
+
+	/**
+	 * Port of the server, 0 - any free port
+	 */
+	private final int port;
+
+	/**
+	 * Story contents, that are replayed
+	 */
+	private final List<String> contents;
+
+	/**
+	 * Latency of responses
+	 */
+	private final LatencyDistribution latency;
+
+	/**
+	 * Injected failures
+	 */
+	private final FaultInjector faults;
+
+	/**
+	 * Number of characters in one streamed event
+	 */
+	private final int chunkSize;
+
+	/**
+	 * Number of threads, that handle requests and send responses
+	 */
+	private final int threads;
+
+	/**
+	 * Index of the next replayed content
+	 */
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Counters of requests
+	 */
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong succeeded = new AtomicLong();
+	private final AtomicLong rateLimited = new AtomicLong();
+	private final AtomicLong serverErrors = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicInteger active = new AtomicInteger();
+
+	/**
+	 * Running server, null if the simulator is stopped
+	 */
+	private HttpServer server;
+
+	/**
+	 * Threads of the running server
+	 */
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Creates simulator, it must be started with {@link #start()}
+	 * @param port      port of the server, 0 - any free port
+	 * @param contents  story contents, that are replayed one by one
+	 * @param latency   latency of responses
+	 * @param faults    injected failures
+	 * @param chunkSize number of characters in one streamed event
+	 * @param threads   number of threads, that handle requests and send responses
+	 * @throws IllegalArgumentException if there are no contents
+	 */
+	public LlmSimulator(int port, List<String> contents, LatencyDistribution latency, FaultInjector faults, int chunkSize, int threads) {
+		if (contents.isEmpty()) throw new IllegalArgumentException("Simulator needs at least one story content");
+		this.port = port;
+		this.contents = List.copyOf(contents);
+		this.latency = latency;
+		this.faults = faults;
+		this.chunkSize = Math.max(1, chunkSize);
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Returns simulator configured with values from {@link Settings}
+	 * @return shared {@link LlmSimulator}
+	 * @throws RecordingException if recordings can't be loaded
+	 */
+	public static synchronized LlmSimulator getDefault() {
+		if (defaultSimulator == null) {
+			defaultSimulator = create(Settings.SIMULATOR_PORT);
+		}
+		return defaultSimulator;
+	}
+
+	/**
+	 * Replaces shared simulator, e.g. with a simulator without latency in tests
+	 * @param simulator new {@link LlmSimulator}, if null - simulator configured with values from {@link Settings} will be created on next request
+	 */
+	public static synchronized void setDefault(LlmSimulator simulator) {
+		defaultSimulator = simulator;
+	}
+
+	/**
+	 * Starts the simulator separately from the application
+	 * @param args optional port of the server
+	 * @throws InterruptedException if the main thread is interrupted
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		LlmSimulator simulator = args.length > 0 ? create(Integer.parseInt(args[0])) : getDefault();
+		simulator.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(simulator::stop));
+		Thread.currentThread().join();
+	}
+
+	/**
+	 * Starts the server, does nothing if it is already running
+	 * @throws UncheckedIOException if the port can't be bound
+	 */
+	public synchronized void start() {
+		if (server != null) return;
+		scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "llm-simulator");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		} catch (IOException e) {
+			scheduler.shutdownNow();
+			log.error("LLM simulator can't be started on port {}", port, e);
+			throw new UncheckedIOException(e);
+		}
+		server.createContext("/", this::handle);
+		server.setExecutor(scheduler);
+		server.start();
+		log.info("LLM simulator is started at {}, replaying {} story contents", getUri(), contents.size());
+	}
+
+	/**
+	 * Stops the server, unanswered requests are closed
+	 */
+	public synchronized void stop() {
+		if (server == null) return;
+		server.stop(0);
+		scheduler.shutdownNow();
+		server = null;
+		log.info("LLM simulator is stopped");
+	}
+
+	/**
+	 * @return true if the server is running
+	 */
+	public synchronized boolean isRunning() {
+		return server != null;
+	}
+
+	/**
+	 * @return URI of the simulated chat-completions API
+	 * @throws IllegalStateException if the simulator is not running
+	 */
+	public synchronized URI getUri() {
+		if (server == null) throw new IllegalStateException("LLM simulator is not running");
+		return URI.create("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getAddress().getPort() + PATH);
+	}
+
+	/**
+	 * Handles the request on a thread of the server
+	 * @param exchange request and response
+	 */
+	private void handle(HttpExchange exchange) {
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(200, -1);
+				exchange.close();
+				return;
+			}
+			String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+			requests.incrementAndGet();
+			active.incrementAndGet();
+			Random random = ThreadLocalRandom.current();
+			long delay = latency.sampleMillis(random);
+			switch (faults.next(random)) {
+				case RATE_LIMIT -> {
+					rateLimited.incrementAndGet();
+					exchange.getResponseHeaders().add("Retry-After", String.valueOf(faults.getRetryAfter().toSeconds()));
+					respond(exchange, 429, error("Rate limit reached for requests", "requests"));
+				}
+				case SERVER_ERROR -> {
+					serverErrors.incrementAndGet();
+					schedule(exchange, delay, () -> respond(exchange, 500, error("The server had an error while processing your request", "server_error")));
+				}
+				case TIMEOUT -> {
+					timeouts.incrementAndGet();
+					schedule(exchange, faults.getHangTime().toMillis(), () -> finish(exchange));
+				}
+				case NONE -> {
+					String model = StringUtils.defaultIfEmpty(JsonUtils.extractString(body, "model"), "simulator");
+					int promptTokens = estimateTokens(body);
+					if (STREAM_FIELD.matcher(body).find()) {
+						stream(exchange, model, nextContent(), promptTokens, delay);
+					} else {
+						int completions = (int) Math.max(1, JsonUtils.extractLong(body, "n"));
+						schedule(exchange, delay, () -> respond(exchange, 200, completion(model, completions, promptTokens)));
+					}
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			log.warn("LLM simulator failed to handle request: {}", e.getMessage());
+			finish(exchange);
+		}
+	}
+
+	/**
+	 * Streams the content as server-sent events, evenly spread over the latency
+	 * @param exchange     request and response
+	 * @param model        model name of the request
+	 * @param content      story content
+	 * @param promptTokens estimated number of tokens of the request
+	 * @param delay        latency of the whole stream, in milliseconds
+	 */
+	private void stream(HttpExchange exchange, String model, String content, int promptTokens, long delay) {
+		List<String> events = new ArrayList<>();
+		String id = "chatcmpl-sim-" + requests.get();
+		for (int i = 0; i < content.length(); ) {
+			int end = Math.min(content.length(), i + chunkSize);
+			if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) end++;
+			events.add("{\"id\": \"" + id + "\", \"object\": \"chat.completion.chunk\", \"model\": \"" + JsonUtils.escape(model) + "\", " +
+					"\"choices\": [{\"index\": 0, \"delta\": {\"content\": \"" + JsonUtils.escape(content.substring(i, end)) + "\"}, \"finish_reason\": null}]}");
+			i = end;
+		}
+		int completionTokens = estimateTokens(content);
+		events.add("{\"id\": \"" + id + "\", \"object\": \"chat.completion.chunk\", \"model\": \"" + JsonUtils.escape(model) + "\", \"choices\": [], " +
+				"\"usage\": {\"prompt_tokens\": " + promptTokens + ", \"completion_tokens\": " + completionTokens + ", " +
+				"\"total_tokens\": " + (promptTokens + completionTokens) + "}}");
+		events.add("[DONE]");
+		long interval = delay / events.size();
+		schedule(exchange, interval, () -> {
+			exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+			exchange.sendResponseHeaders(200, 0);
+			sendEvent(exchange, events, 0, interval);
+		});
+	}
+
+	/**
+	 * Sends one event of the stream and schedules the next one
+	 * @param exchange request and response
+	 * @param events   all events of the stream
+	 * @param index    index of the event
+	 * @param interval pause between events, in milliseconds
+	 * @throws IOException if the client closed the connection
+	 */
+	private void sendEvent(HttpExchange exchange, List<String> events, int index, long interval) throws IOException {
+		OutputStream out = exchange.getResponseBody();
+		out.write(("data: " + events.get(index) + "\n\n").getBytes(StandardCharsets.UTF_8));
+		out.flush();
+		if (index + 1 == events.size()) {
+			succeeded.incrementAndGet();
+			finish(exchange);
+			return;
+		}
+		schedule(exchange, interval, () -> sendEvent(exchange, events, index + 1, interval));
+	}
+
+	/**
+	 * Sends the whole response and closes the exchange
+	 * @param exchange request and response
+	 * @param status   status code
+	 * @param body     JSON body
+	 * @throws IOException if the client closed the connection
+	 */
+	private void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+		if (status == 200) succeeded.incrementAndGet();
+		finish(exchange);
+	}
+
+	/**
+	 * Runs the action after the delay on the simulator threads, closes the exchange if the action fails
+	 * @param exchange request and response
+	 * @param delay    delay, in milliseconds
+	 * @param action   action, that writes the response
+	 */
+	private void schedule(HttpExchange exchange, long delay, ExchangeAction action) {
+		scheduler.schedule(() -> {
+			try {
+				action.run();
+			} catch (IOException | RuntimeException e) {
+				log.debug("LLM simulator response is not sent: {}", e.getMessage());
+				finish(exchange);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Closes the exchange of the finished request
+	 * @param exchange request and response
+	 */
+	private void finish(HttpExchange exchange) {
+		if (exchange.getAttribute("finished") != null) return;
+		exchange.setAttribute("finished", Boolean.TRUE);
+		active.decrementAndGet();
+		exchange.close();
+	}
+
+	/**
+	 * Builds completion in the format of the chat-completions API
+	 * @param model        model name of the request
+	 * @param completions  number of choices
+	 * @param promptTokens estimated number of tokens of the request
+	 * @return JSON body
+	 */
+	private String completion(String model, int completions, int promptTokens) {
+		StringBuilder choices = new StringBuilder();
+		int completionTokens = 0;
+		for (int i = 0; i < completions; i++) {
+			String content = nextContent();
+			completionTokens += estimateTokens(content);
+			if (i > 0) choices.append(",\n");
+			choices.append("    {\n")
+					.append("      \"index\": ").append(i).append(",\n")
+					.append("      \"message\": {\n")
+					.append("        \"role\": \"assistant\",\n")
+					.append("        \"content\": \"").append(JsonUtils.escape(content)).append("\",\n")
+					.append("        \"refusal\": null\n")
+					.append("      },\n")
+					.append("      \"logprobs\": null,\n")
+					.append("      \"finish_reason\": \"stop\"\n")
+					.append("    }");
+		}
+		return "{\n" +
+				"  \"id\": \"chatcmpl-sim-" + requests.get() + "\",\n" +
+				"  \"object\": \"chat.completion\",\n" +
+				"  \"created\": " + System.currentTimeMillis() / 1000 + ",\n" +
+				"  \"model\": \"" + JsonUtils.escape(model) + "\",\n" +
+				"  \"choices\": [\n" + choices + "\n  ],\n" +
+				"  \"usage\": {\n" +
+				"    \"prompt_tokens\": " + promptTokens + ",\n" +
+				"    \"completion_tokens\": " + completionTokens + ",\n" +
+				"    \"total_tokens\": " + (promptTokens + completionTokens) + "\n" +
+				"  },\n" +
+				"  \"system_fingerprint\": null\n" +
+				"}";
+	}
+
+	/**
+	 * Builds error in the format of the chat-completions API
+	 * @param message error message
+	 * @param code    error code
+	 * @return JSON body
+	 */
+	private static String error(String message, String code) {
+		return "{\"error\": {\"message\": \"" + message + "\", \"type\": \"simulated_error\", \"code\": \"" + code + "\"}}";
+	}
+
+	/**
+	 * @return next replayed story content
+	 */
+	private String nextContent() {
+		return contents.get(Math.floorMod(next.getAndIncrement(), contents.size()));
+	}
+
+	/**
+	 * Roughly estimates number of tokens of the text
+	 * @param text text
+	 * @return number of tokens
+	 */
+	private static int estimateTokens(String text) {
+		return text.length() / 3 + 1;
+	}
+
+	/**
+	 * Creates simulator configured with values from {@link Settings}
+	 * @param port port of the server
+	 * @return new {@link LlmSimulator}
+	 */
+	private static LlmSimulator create(int port) {
+		return new LlmSimulator(port, defaultContents(),
+				new LatencyDistribution(Settings.SIMULATOR_LATENCY_P50, Settings.SIMULATOR_LATENCY_P99, Settings.SIMULATOR_LATENCY_MAX),
+				new FaultInjector(Settings.SIMULATOR_RATE_LIMIT_ERRORS, Settings.SIMULATOR_SERVER_ERRORS, Settings.SIMULATOR_TIMEOUTS,
+						Settings.SIMULATOR_RETRY_AFTER, Settings.SIMULATOR_HANG_TIME),
+				Settings.SIMULATOR_STREAM_CHUNK, Settings.SIMULATOR_THREADS);
+	}
+
+	/**
+	 * Loads recordings from {@link Settings#SIMULATOR_RECORDINGS_DIRECTORY}, or generates one story for every
+	 * random prompt with {@link DeterministicStoryGenerator}, if the directory is not set
+	 * @return story contents
+	 */
+	private static List<String> defaultContents() {
+		if (StringUtils.isNotBlank(Settings.SIMULATOR_RECORDINGS_DIRECTORY)) {
+			return Recordings.load(Paths.get(Settings.SIMULATOR_RECORDINGS_DIRECTORY));
+		}
+		DeterministicStoryGenerator generator = new DeterministicStoryGenerator();
+		List<String> contents = new ArrayList<>();
+		for (String prompt : Settings.RANDOM_STORY_PROMPTS) {
+			contents.add(generator.createContent(prompt));
+		}
+		return contents;
+	}
+
+	/**
+	 * @return number of received requests
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * @return number of successful responses
+	 */
+	public long getSucceeded() {
+		return succeeded.get();
+	}
+
+	/**
+	 * @return number of injected 429 responses
+	 */
+	public long getRateLimited() {
+		return rateLimited.get();
+	}
+
+	/**
+	 * @return number of injected 500 responses
+	 */
+	public long getServerErrors() {
+		return serverErrors.get();
+	}
+
+	/**
+	 * @return number of requests, that were never answered
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	/**
+	 * @return number of requests, that are not answered yet
+	 */
+	public int getActive() {
+		return active.get();
+	}
+
+	/**
+	 * Action, that writes the response and may fail with {@link IOException}
+	 */
+	@FunctionalInterface
+	private interface ExchangeAction {
+		void run() throws IOException;
+	}
+}
@@ -0,0 +1,108 @@
+package org.questgame.webquestgame.Simulator;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.questgame.webquestgame.Additional.JsonUtils;
+import org.questgame.webquestgame.Additional.Settings;
+import org.questgame.webquestgame.Exceptions.RecordingException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * The {@code Recordings} class records responses of the chat-completions API and loads them for {@link LlmSimulator}.
+ * <p>
+ * If {@link Settings#SIMULATOR_RECORD_DIRECTORY} is set, {@link org.questgame.webquestgame.Additional.ChatGPTClient}
+ * saves every successful non-streamed response to a separate {@code .json} file of this directory. The directory
+ * can be used as {@link Settings#SIMULATOR_RECORDINGS_DIRECTORY} later, to replay real traffic without calling the API.
+ * Any file with a chat-completions response (e.g. copied from logs) can be put there as well.
+ * </p>
+ *
+ * @see LlmSimulator
+ */
+public class Recordings {
+
+	/**
+	 * Logger instance for recording events.
+	 */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Number of recorded responses, makes file names unique
+	 */
+	private static final AtomicLong recorded = new AtomicLong();
+
+	/**
+	 * @return true if responses are saved to {@link Settings#SIMULATOR_RECORD_DIRECTORY}
+	 */
+	public static boolean isEnabled() {
+		return StringUtils.isNotBlank(Settings.SIMULATOR_RECORD_DIRECTORY);
+	}
+
+	/**
+	 * Saves the response to {@link Settings#SIMULATOR_RECORD_DIRECTORY}, if it is set
+	 * @param responseBody body of successful chat-completions response
+	 */
+	public static void record(String responseBody) {
+		if (!isEnabled()) return;
+		record(Paths.get(Settings.SIMULATOR_RECORD_DIRECTORY), responseBody);
+	}
+
+	/**
+	 * Saves the response to the directory. The file is written to a temporary file first and then renamed,
+	 * so the simulator never reads a partially written recording. Failures are logged and don't affect the caller.
+	 * @param directory    directory of recordings
+	 * @param responseBody body of successful chat-completions response
+	 */
+	public static void record(Path directory, String responseBody) {
+		try {
+			Files.createDirectories(directory);
+			Path file = directory.resolve("response-" + System.currentTimeMillis() + "-" + recorded.incrementAndGet() + ".json");
+			Path temp = Files.createTempFile(directory, "response", ".tmp");
+			Files.writeString(temp, responseBody, StandardCharsets.UTF_8);
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+			log.debug("Response is recorded to {}", file);
+		} catch (IOException e) {
+			log.warn("Response can't be recorded to {}: {}", directory, e.getMessage());
+		}
+	}
+
+	/**
+	 * Loads contents of all choices of all recorded responses
+	 * @param directory directory with {@code .json} files of chat-completions responses
+	 * @return story contents in the order of file names
+	 * @throws RecordingException if the directory can't be read or contains no recorded content
+	 */
+	public static List<String> load(Path directory) {
+		List<String> contents = new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : files.filter(f -> f.toString().endsWith(".json")).sorted().toList()) {
+				contents.addAll(JsonUtils.extractStrings(Files.readString(file, StandardCharsets.UTF_8), "content"));
+			}
+		} catch (IOException e) {
+			log.error("Recordings can't be loaded from {}", directory, e);
+			throw new RecordingException("Recordings can't be loaded from " + directory, e);
+		}
+		if (contents.isEmpty()) {
+			log.error("Directory {} contains no recorded responses", directory);
+			throw new RecordingException("Directory " + directory + " contains no recorded responses");
+		}
+		log.info("Loaded {} recorded story contents from {}", contents.size(), directory);
+		return contents;
+	}
+
+	/**
+	 * Private constructor, utility class
+	 */
+	private Recordings() {
+	}
+}
@@ -0,0 +1,18 @@
+<%@ page contentType="text/html;charset=UTF-8" language="java" %>
+<html>
+<head>
+    <title>Busy</title>
+    <link rel="stylesheet" href="${pageContext.request.contextPath}/static/style.css">
+</head>
+<body>
+    <div class="container">
+        <h2>Too many stories are being written right now</h2>
+        <p>Our storyteller is busy with other players. Please try again in a minute.</p>
+        <button onclick="window.location='${pageContext.request.contextPath}/welcome'">Back to start</button>
+        <form id="randomStoryForm" action="${pageContext.request.contextPath}/loading" method="post">
+            <input type="hidden" name="random" value="true">
+            <button type="submit">Play a random story now</button>
+        </form>
+    </div>
+</body>
+</html>
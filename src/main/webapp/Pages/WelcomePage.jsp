@@ -50,6 +50,11 @@
             </label>
         </form>
 
+        <form id="randomStoryForm" action="${pageContext.request.contextPath}/loading" method="post">
+            <input type="hidden" name="random" value="true">
+            <button type="submit">Play a random story now</button>
+        </form>
+
         <button type="button" onclick="toggleFileUpload()">Load story file</button>
 
         <div id="fileUploadBlock">
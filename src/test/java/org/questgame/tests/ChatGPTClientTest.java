@@ -1,7 +1,7 @@
 package org.questgame.tests;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
-import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,16 +9,23 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EmptySource;
 import org.junit.jupiter.params.provider.NullSource;
 import org.mockito.Mock;
-import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.questgame.webquestgame.Additional.ChatGPTClient;
+import org.questgame.webquestgame.Additional.CircuitBreaker;
+import org.questgame.webquestgame.Additional.RateLimiter;
+import org.questgame.webquestgame.Additional.RetryPolicy;
 import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+import org.questgame.webquestgame.Exceptions.ChatGptHttpException;
+import org.questgame.webquestgame.Exceptions.CircuitBreakerOpenException;
 
 import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.mockito.ArgumentMatchers.any;
 
@@ -70,38 +77,99 @@ public class ChatGPTClientTest {
 		Mockito.lenient().when(client.send(Mockito.any(), any(HttpResponse.BodyHandler.class))).thenReturn(response);
 		Mockito.lenient().when(response.body()).thenReturn(AI_RESPONSE_EXAMPLE);
 		Mockito.lenient().when(response.statusCode()).thenReturn(200);
+		Mockito.lenient().when(client.sendAsync(Mockito.any(), any(HttpResponse.BodyHandler.class))).thenReturn(CompletableFuture.completedFuture(response));
+		ChatGPTClient.setHttpClient(client);
+		RateLimiter.setDefault(new RateLimiter(1000, 100_000_000, 10, Duration.ofSeconds(1)));
+		RetryPolicy.setDefault(new RetryPolicy(3, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(5)));
+		CircuitBreaker.setDefault(new CircuitBreaker(10, 5, 50, Duration.ofMinutes(1), 1));
+	}
+
+	@AfterEach
+	public void reset() {
+		ChatGPTClient.setHttpClient(null);
+		RateLimiter.setDefault(null);
+		RetryPolicy.setDefault(null);
+		CircuitBreaker.setDefault(null);
 	}
 
 	@Test
 	public void generateMainQuestLine_withValidUserPrompt_returnStoryInCorrectFormat() {
-		try (MockedStatic<HttpClient> mockedClient = Mockito.mockStatic(HttpClient.class)) {
-			mockedClient.when(HttpClient::newHttpClient).thenReturn(client);
-			Assertions.assertEquals(AI_RESPONSE_EXAMPLE, ChatGPTClient.generateMainQuestLine("smt"));
-		}
+		Assertions.assertEquals(AI_RESPONSE_EXAMPLE, ChatGPTClient.generateMainQuestLine("smt"));
 	}
 
 	@ParameterizedTest
 	@EmptySource
 	@NullSource
 	public void generateMainQuestLine_withEmptyUserPrompt_throwsChatGptGenerationException(String userPrompt) {
-		try (MockedStatic<HttpClient> mockedClient = Mockito.mockStatic(HttpClient.class)) {
-			mockedClient.when(HttpClient::newHttpClient).thenReturn(client);
-			Assertions.assertThrows(
-					ChatGptGenerationException.class,
-					() -> ChatGPTClient.generateMainQuestLine(userPrompt)
-			);
-		}
+		Assertions.assertThrows(
+				ChatGptGenerationException.class,
+				() -> ChatGPTClient.generateMainQuestLine(userPrompt)
+		);
 	}
 
 	@Test
 	public void generateMainQuestLine_whenResponseStatusNotSuccessful_throwsChatGptGenerationException() {
 		Mockito.when(response.statusCode()).thenReturn(500);
-		try (MockedStatic<HttpClient> mockedClient = Mockito.mockStatic(HttpClient.class)) {
-			mockedClient.when(HttpClient::newHttpClient).thenReturn(client);
-			Assertions.assertThrows(
-					ChatGptGenerationException.class,
-					() -> ChatGPTClient.generateMainQuestLine("smt")
-			);
-		}
+		Assertions.assertThrows(
+				ChatGptGenerationException.class,
+				() -> ChatGPTClient.generateMainQuestLine("smt")
+		);
+	}
+
+	@Test
+	public void generateMainQuestLineAsync_withValidUserPrompt_completesWithStory() {
+		Assertions.assertEquals(AI_RESPONSE_EXAMPLE, ChatGPTClient.generateMainQuestLineAsync("smt").join());
+	}
+
+	@ParameterizedTest
+	@EmptySource
+	@NullSource
+	public void generateMainQuestLineAsync_withEmptyUserPrompt_completesExceptionally(String userPrompt) {
+		CompletionException e = Assertions.assertThrows(
+				CompletionException.class,
+				() -> ChatGPTClient.generateMainQuestLineAsync(userPrompt).join()
+		);
+		Assertions.assertInstanceOf(ChatGptGenerationException.class, e.getCause());
+	}
+
+	@Test
+	public void generateMainQuestLineAsync_whenResponseStatusNotSuccessful_completesExceptionally() {
+		Mockito.when(response.statusCode()).thenReturn(500);
+		CompletionException e = Assertions.assertThrows(
+				CompletionException.class,
+				() -> ChatGPTClient.generateMainQuestLineAsync("smt").join()
+		);
+		Assertions.assertInstanceOf(ChatGptGenerationException.class, e.getCause());
+	}
+
+	@Test
+	public void generateMainQuestLine_whenServerErrorIsTransient_retriesRequest() throws IOException, InterruptedException {
+		Mockito.when(response.statusCode()).thenReturn(503, 200);
+		Assertions.assertEquals(AI_RESPONSE_EXAMPLE, ChatGPTClient.generateMainQuestLine("smt"));
+		Mockito.verify(client, Mockito.times(2)).send(Mockito.any(), any(HttpResponse.BodyHandler.class));
+	}
+
+	@Test
+	public void generateMainQuestLine_whenClientError_doesNotRetry() throws IOException, InterruptedException {
+		Mockito.when(response.statusCode()).thenReturn(400);
+		Assertions.assertThrows(ChatGptHttpException.class, () -> ChatGPTClient.generateMainQuestLine("smt"));
+		Mockito.verify(client, Mockito.times(1)).send(Mockito.any(), any(HttpResponse.BodyHandler.class));
+	}
+
+	@Test
+	public void generateMainQuestLineAsync_whenIoErrorIsTransient_retriesRequest() {
+		Mockito.when(client.sendAsync(Mockito.any(), any(HttpResponse.BodyHandler.class)))
+				.thenReturn(CompletableFuture.failedFuture(new IOException("Connection reset")), CompletableFuture.completedFuture(response));
+		Assertions.assertEquals(AI_RESPONSE_EXAMPLE, ChatGPTClient.generateMainQuestLineAsync("smt").join());
+	}
+
+	@Test
+	public void generateMainQuestLine_whenApiKeepsFailing_opensCircuitBreakerAndFailsFast() throws IOException, InterruptedException {
+		Mockito.when(response.statusCode()).thenReturn(500);
+		Assertions.assertThrows(ChatGptHttpException.class, () -> ChatGPTClient.generateMainQuestLine("smt"));
+		Assertions.assertThrows(CircuitBreakerOpenException.class, () -> ChatGPTClient.generateMainQuestLine("smt"));
+		Assertions.assertThrows(CircuitBreakerOpenException.class, () -> ChatGPTClient.generateMainQuestLine("smt"));
+		Assertions.assertEquals(CircuitBreaker.State.OPEN, CircuitBreaker.getDefault().getState());
+		Mockito.verify(client, Mockito.times(5)).send(Mockito.any(), any(HttpResponse.BodyHandler.class));
 	}
 }
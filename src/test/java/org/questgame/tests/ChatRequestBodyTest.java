@@ -0,0 +1,33 @@
+package org.questgame.tests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Additional.ChatRequestBody;
+import org.questgame.webquestgame.Additional.JsonUtils;
+
+import java.nio.charset.StandardCharsets;
+
+public class ChatRequestBodyTest {
+
+	private final ChatRequestBody body = new ChatRequestBody("gpt-4o", 0.2, "Ты - рассказчик 'квестов'");
+
+	@Test
+	public void toBytes_withSimplePrompt_returnsValidJson() {
+		String json = new String(body.toBytes("Рыцарь и Дракон"), StandardCharsets.UTF_8);
+		Assertions.assertEquals("{\"model\": \"gpt-4o\", \"temperature\": 0.2, \"messages\": [" +
+				"{\"role\": \"system\", \"content\": \"Ты - рассказчик 'квестов'\"}, " +
+				"{\"role\": \"user\", \"content\": \"Рыцарь и Дракон\"}]}", json);
+	}
+
+	@Test
+	public void toBytes_withQuotesInPrompt_escapesPrompt() {
+		String json = new String(body.toBytes("say \"hi\"\n"), StandardCharsets.UTF_8);
+		Assertions.assertTrue(json.endsWith("\"content\": \"say \\\"hi\\\"\\n\"}]}"));
+	}
+
+	@Test
+	public void escape_withoutSpecialCharacters_returnsSameString() {
+		String value = "Рыцарь и Дракон";
+		Assertions.assertSame(value, JsonUtils.escape(value));
+	}
+}
@@ -0,0 +1,87 @@
+package org.questgame.tests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Additional.ChatResponseSubscriber;
+import org.questgame.webquestgame.Additional.ContentSink;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class ChatResponseSubscriberTest {
+
+	private final String RESPONSE = "{\"id\":\"chatcmpl-1\",\"choices\":[" +
+			"{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"{ 'Ситуация':\\n\\\"\\u0410\\\" }\"},\"finish_reason\":\"stop\"}," +
+			"{\"index\":1,\"message\":{\"role\":\"assistant\",\"content\":\"second \\\\ story\"},\"finish_reason\":\"stop\"}]," +
+			"\"usage\":{\"prompt_tokens\":100,\"completion_tokens\":23,\"total_tokens\":123}}";
+
+	@Test
+	public void onNext_withResponseSplitIntoSmallBuffers_passesUnescapedContentsToSink() {
+		byte[] bytes = RESPONSE.getBytes(StandardCharsets.UTF_8);
+		for (int size : new int[]{1, 2, 3, 7, bytes.length}) {
+			RecordingSink sink = new RecordingSink();
+			ChatResponseSubscriber<List<String>> subscriber = new ChatResponseSubscriber<>(sink);
+			for (int i = 0; i < bytes.length; i += size) {
+				subscriber.onNext(List.of(ByteBuffer.wrap(bytes, i, Math.min(size, bytes.length - i))));
+			}
+			subscriber.onComplete();
+			Assertions.assertAll(
+					() -> Assertions.assertEquals(List.of("{ 'Ситуация':\n\"А\" }", "second \\ story"), sink.finish()),
+					() -> Assertions.assertEquals(123, subscriber.getTotalTokens()),
+					() -> Assertions.assertEquals(2, subscriber.getContents()),
+					() -> Assertions.assertNull(subscriber.getError())
+			);
+		}
+	}
+
+	@Test
+	public void onNext_withContentKeyInsideValue_ignoresIt() {
+		RecordingSink sink = new RecordingSink();
+		ChatResponseSubscriber<List<String>> subscriber = new ChatResponseSubscriber<>(sink);
+		subscriber.onNext(List.of(ByteBuffer.wrap("{\"note\":\"content\",\"list\":[\"content\",\"x\"],\"content\":\"story\"}".getBytes(StandardCharsets.UTF_8))));
+		subscriber.onComplete();
+		Assertions.assertEquals(List.of("story"), sink.finish());
+	}
+
+	@Test
+	public void onNext_whenSinkThrows_storesErrorAndReadsUsage() {
+		ChatResponseSubscriber<Void> subscriber = new ChatResponseSubscriber<>(new ContentSink<>() {
+			@Override
+			public Consumer<String> nextContent() {
+				return s -> {
+					throw new IllegalStateException();
+				};
+			}
+
+			@Override
+			public Void finish() {
+				return null;
+			}
+		});
+		subscriber.onNext(List.of(ByteBuffer.wrap(RESPONSE.getBytes(StandardCharsets.UTF_8))));
+		subscriber.onComplete();
+		Assertions.assertAll(
+				() -> Assertions.assertInstanceOf(IllegalStateException.class, subscriber.getError()),
+				() -> Assertions.assertEquals(123, subscriber.getTotalTokens())
+		);
+	}
+
+	private static class RecordingSink implements ContentSink<List<String>> {
+		private final List<StringBuilder> contents = new ArrayList<>();
+
+		@Override
+		public Consumer<String> nextContent() {
+			StringBuilder content = new StringBuilder();
+			contents.add(content);
+			return content::append;
+		}
+
+		@Override
+		public List<String> finish() {
+			return contents.stream().map(StringBuilder::toString).toList();
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package org.questgame.tests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Additional.ChatStreamSubscriber;
+
+public class ChatStreamSubscriberTest {
+
+	@Test
+	public void onNext_withContentEvents_passesUnescapedContentToConsumer() {
+		StringBuilder content = new StringBuilder();
+		ChatStreamSubscriber subscriber = new ChatStreamSubscriber(content::append);
+		subscriber.onNext("data: {\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"\"}}]}");
+		subscriber.onNext("");
+		subscriber.onNext("data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"{ 'Ситуация':\\n\"}}]}");
+		subscriber.onNext("data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\" \\\"\\u0410\\\"\"}}]}");
+		subscriber.onNext("data: {\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]}");
+		subscriber.onNext("data: [DONE]");
+		Assertions.assertEquals("{ 'Ситуация':\n \"А\"", content.toString());
+	}
+
+	@Test
+	public void onNext_whenConsumerThrows_storesErrorAndSkipsRestOfStream() {
+		StringBuilder content = new StringBuilder();
+		ChatStreamSubscriber subscriber = new ChatStreamSubscriber(s -> {
+			if (s.equals("bad")) throw new IllegalStateException();
+			content.append(s);
+		});
+		subscriber.onNext("data: {\"choices\":[{\"delta\":{\"content\":\"bad\"}}]}");
+		subscriber.onNext("data: {\"choices\":[{\"delta\":{\"content\":\"good\"}}]}");
+		Assertions.assertAll(
+				() -> Assertions.assertInstanceOf(IllegalStateException.class, subscriber.getError()),
+				() -> Assertions.assertEquals("", content.toString())
+		);
+	}
+
+	@Test
+	public void onNext_withUsageEvent_storesTotalTokens() {
+		ChatStreamSubscriber subscriber = new ChatStreamSubscriber(s -> {});
+		subscriber.onNext("data: {\"choices\":[{\"delta\":{\"content\":\"story\"}}],\"usage\":null}");
+		Assertions.assertEquals(-1, subscriber.getTotalTokens());
+		subscriber.onNext("data: {\"choices\":[],\"usage\":{\"prompt_tokens\":100,\"completion_tokens\":20,\"total_tokens\":120}}");
+		Assertions.assertEquals(120, subscriber.getTotalTokens());
+	}
+}
@@ -0,0 +1,65 @@
+package org.questgame.tests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Additional.CircuitBreaker;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CircuitBreakerTest {
+
+	@Test
+	public void onFailure_whenFailureRateReachesThreshold_opensBreaker() {
+		CircuitBreaker breaker = new CircuitBreaker(4, 4, 50, Duration.ofMinutes(1), 1);
+		breaker.onSuccess();
+		breaker.onSuccess();
+		breaker.onFailure();
+		Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		breaker.onFailure();
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.getState()),
+				() -> Assertions.assertFalse(breaker.tryAcquirePermission()),
+				() -> Assertions.assertEquals(1, breaker.getRejected())
+		);
+	}
+
+	@Test
+	public void onFailure_withOldFailuresOutsideOfWindow_keepsBreakerClosed() {
+		CircuitBreaker breaker = new CircuitBreaker(4, 4, 75, Duration.ofMinutes(1), 1);
+		breaker.onFailure();
+		breaker.onFailure();
+		for (int i = 0; i < 3; i++) breaker.onSuccess();
+		breaker.onFailure();
+		Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void tryAcquirePermission_afterOpenDuration_allowsTrialRequestAndClosesOnSuccess() {
+		CircuitBreaker breaker = new CircuitBreaker(1, 1, 100, Duration.ZERO, 1);
+		List<CircuitBreaker.State> transitions = new ArrayList<>();
+		breaker.addListener((previous, state) -> transitions.add(state));
+		breaker.onFailure();
+		Assertions.assertTrue(breaker.tryAcquirePermission());
+		Assertions.assertFalse(breaker.tryAcquirePermission());
+		breaker.onSuccess();
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState()),
+				() -> Assertions.assertEquals(List.of(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED), transitions),
+				() -> Assertions.assertEquals(1, breaker.getHalfOpened())
+		);
+	}
+
+	@Test
+	public void onFailure_inHalfOpenState_opensBreakerAgain() {
+		CircuitBreaker breaker = new CircuitBreaker(1, 1, 100, Duration.ZERO, 1);
+		breaker.onFailure();
+		breaker.tryAcquirePermission();
+		breaker.onFailure();
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.getState()),
+				() -> Assertions.assertEquals(2, breaker.getOpened())
+		);
+	}
+}
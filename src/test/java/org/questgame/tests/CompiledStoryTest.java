@@ -0,0 +1,63 @@
+package org.questgame.tests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Logic.CompiledStory;
+import org.questgame.webquestgame.Logic.ElementHandlers.ElementManager;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryValidator;
+import org.questgame.webquestgame.Logic.Elements.*;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+
+public class CompiledStoryTest {
+
+	@Test
+	public void getNextSituation_onCompiledStory_followsSamePathAsElements() {
+		Story story = new DeterministicStoryGenerator(5, 32).generate("Пираты");
+		ElementManager elements = new ElementManager(story);
+		ElementManager ordinals = new ElementManager(CompiledStory.compile(story));
+		elements.getMainSituation();
+		ordinals.getMainSituation();
+		while (!(elements.getCurrentSituation() instanceof Victory || elements.getCurrentSituation() instanceof Fail)) {
+			Assertions.assertEquals(elements.getCurrentSituation().getDescription(), ordinals.getCurrentSituation().getDescription());
+			Assertions.assertEquals(elements.getCurrentChoices().length, ordinals.getCurrentChoices().length);
+			int last = elements.getCurrentChoices().length - 1;
+			elements.getNextSituation(last);
+			ordinals.getNextSituation(last);
+		}
+		Assertions.assertAll(
+				() -> Assertions.assertSame(elements.getCurrentSituation().getClass(), ordinals.getCurrentSituation().getClass()),
+				() -> Assertions.assertEquals(elements.getCurrentSituation().getDescription(), ordinals.getCurrentSituation().getDescription()),
+				() -> Assertions.assertEquals(elements.getPreviousSituation().getDescription(), ordinals.getPreviousSituation().getDescription()),
+				() -> Assertions.assertThrows(IllegalArgumentException.class, () -> ordinals.getNextSituation(5))
+		);
+	}
+
+	@Test
+	public void toStory_ofCompiledStory_restoresLinkedElements() {
+		Story story = new DeterministicStoryGenerator(25, 32).generate("Пираты");
+		CompiledStory compiled = CompiledStory.compile(story);
+		Story view = compiled.toStory();
+		Choice choice = (Choice) view.getSTORY_ELEMENTS().get("Y1");
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(story.getSTORY_ELEMENTS().size(), compiled.size()),
+				() -> Assertions.assertEquals(story.getSTORY_ELEMENTS().keySet(), view.getSTORY_ELEMENTS().keySet()),
+				() -> Assertions.assertTrue(StoryValidator.validate(view).isValid()),
+				() -> Assertions.assertSame(view.getSTORY_ELEMENTS().get("S1"), choice.getLeadFrom()),
+				() -> Assertions.assertEquals("S1", compiled.key(compiled.getMain())),
+				() -> Assertions.assertEquals(compiled.getMain(), compiled.ordinalOf("S1"))
+		);
+	}
+
+	@Test
+	public void canCompile_storyWithPendingSituation_returnsFalse() {
+		Story story = new DeterministicStoryGenerator(2, 32).generate("Пираты");
+		Assertions.assertTrue(CompiledStory.canCompile(story));
+		story.getSTORY_ELEMENTS().put("PY1", new PendingSituation());
+		Assertions.assertAll(
+				() -> Assertions.assertFalse(CompiledStory.canCompile(story)),
+				() -> Assertions.assertFalse(CompiledStory.canCompile(Story.createLoading())),
+				() -> Assertions.assertThrows(IllegalArgumentException.class, () -> CompiledStory.compile(story))
+		);
+	}
+}
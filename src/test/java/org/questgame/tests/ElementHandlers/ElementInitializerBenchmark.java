@@ -0,0 +1,237 @@
+package org.questgame.tests.ElementHandlers;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer;
+import org.questgame.webquestgame.Logic.Elements.*;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Compares parsing time of {@link ElementInitializer} with the original multi-pass implementation
+ * on stories from 10 to 10,000 elements, and sequential parsing with parallel parsing on {@link ForkJoinPool}
+ * of different sizes, to find the length of the story, from which parallel parsing is faster.
+ * <p>
+ * The class is not run with other tests, run it with {@code mvn test -Dtest=ElementInitializerBenchmark}.
+ * Logging of the application is switched to WARN level while measuring, so only parsing is measured.
+ * </p>
+ */
+public class ElementInitializerBenchmark {
+
+	private static final int[] SITUATIONS = {2, 25, 250, 2500};
+	private static final int[] PARALLEL_SITUATIONS = {25, 100, 250, 500, 1000, 2500, 10000};
+
+	@BeforeEach
+	public void init() {
+		Configurator.setLevel("org.questgame", Level.WARN);
+	}
+
+	@AfterEach
+	public void reset() {
+		Configurator.setLevel("org.questgame", Level.DEBUG);
+	}
+
+	@Test
+	public void parse_storiesFrom10To10000Elements() throws NoSuchMethodException {
+		Method initializeAllElements = ElementInitializer.class.getDeclaredMethod("initializeAllElements");
+		initializeAllElements.setAccessible(true);
+		System.out.printf("%10s %10s | %-36s | %-36s%n", "", "", "element initialization", "whole story with linking");
+		System.out.printf("%10s %10s | %12s %12s %9s | %12s %12s %9s%n", "elements", "chars",
+				"legacy, ms", "current, ms", "speedup", "legacy, ms", "current, ms", "speedup");
+		for (int situations : SITUATIONS) {
+			String content = new DeterministicStoryGenerator(situations, 32).createContent("Benchmark");
+			Map<String, Element> legacy = new LegacyElementInitializer(content).createStory();
+			Story current = ElementInitializer.createStoryFromContent(content);
+			Assertions.assertEquals(legacy.size(), current.getSTORY_ELEMENTS().size());
+
+			double legacyElements = measure(() -> new LegacyElementInitializer(content).initializeAllElements());
+			double currentElements = measure(() -> {
+				ElementInitializer el = new ElementInitializer();
+				el.setStory(content);
+				try {
+					initializeAllElements.invoke(el);
+				} catch (ReflectiveOperationException e) {
+					throw new IllegalStateException(e);
+				}
+				return el.getElements();
+			});
+			double legacyStory = measure(() -> new LegacyElementInitializer(content).createStory());
+			double currentStory = measure(() -> ElementInitializer.createStoryFromContent(content));
+			System.out.printf("%10d %10d | %12.3f %12.3f %8.1fx | %12.3f %12.3f %8.1fx%n", legacy.size(), content.length(),
+					legacyElements, currentElements, legacyElements / currentElements,
+					legacyStory, currentStory, legacyStory / currentStory);
+		}
+	}
+
+	@Test
+	public void parse_sequentiallyAndInParallel() throws NoSuchMethodException {
+		Method initializeAllElements = ElementInitializer.class.getDeclaredMethod("initializeAllElements");
+		initializeAllElements.setAccessible(true);
+		int processors = Runtime.getRuntime().availableProcessors();
+		int[] parallelism = processors > 2 ? new int[]{2, processors} : new int[]{2};
+		System.out.printf("Available processors: %d%n", processors);
+		System.out.printf("%10s %10s %15s", "elements", "chars", "sequential, ms");
+		for (int p : parallelism) System.out.printf(" %10s %8s", p + " thr, ms", "speedup");
+		System.out.println();
+		for (int situations : PARALLEL_SITUATIONS) {
+			String content = new DeterministicStoryGenerator(situations, 32).createContent("Benchmark");
+			double sequential = measure(() -> initialize(initializeAllElements, content, 0, ForkJoinPool.commonPool()));
+			System.out.printf("%10d %10d %15.3f", 4 * situations + 1, content.length(), sequential);
+			for (int p : parallelism) {
+				ForkJoinPool pool = new ForkJoinPool(p);
+				try {
+					double parallel = measure(() -> initialize(initializeAllElements, content, 1, pool));
+					System.out.printf(" %10.3f %7.2fx", parallel, sequential / parallel);
+				} finally {
+					pool.shutdown();
+				}
+			}
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Initializes elements of the content
+	 * @return initialized elements
+	 */
+	private static Map<String, Element> initialize(Method initializeAllElements, String content, int parallelThreshold, ForkJoinPool pool) {
+		ElementInitializer el = new ElementInitializer();
+		el.setStory(content);
+		el.setParallelThreshold(parallelThreshold);
+		el.setParsingPool(pool);
+		try {
+			initializeAllElements.invoke(el);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+		return el.getElements();
+	}
+
+	/**
+	 * Runs the task until it takes 0.3 s to warm up, then measures it for at least 1 s and 3 runs
+	 * @return average time of one run, in milliseconds
+	 */
+	private static double measure(Supplier<?> task) {
+		long warmUpEnd = System.nanoTime() + 300_000_000L;
+		do {
+			task.get();
+		} while (System.nanoTime() < warmUpEnd);
+		int runs = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			task.get();
+			runs++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < 1_000_000_000L || runs < 3);
+		return elapsed / 1_000_000.0 / runs;
+	}
+
+	/**
+	 * Copy of the original implementation: four passes over the story, every element and every link
+	 * is found with {@link StringUtils#substringBetween} and the rest of the story is copied with
+	 * {@link StringUtils#substringAfter}.
+	 */
+	private static class LegacyElementInitializer {
+		private final Map<String, Element> elements = new HashMap<>();
+		private final String story;
+
+		private LegacyElementInitializer(String story) {
+			this.story = story;
+		}
+
+		private Map<String, Element> createStory() {
+			initializeAllElements();
+			setChoicesToSituation();
+			setNextSituationForChoice();
+			return elements;
+		}
+
+		private Map<String, Element> initializeAllElements() {
+			initializeElements("'Ситуация': {", "]", this::initializeSituation);
+			initializeElements("'Победа': {", "},", this::initializeVictory);
+			initializeElements("'Поражение': {", "}", this::initializeFail);
+			initializeElements("'Выборы ситуации': [", "]", this::initializeChoices);
+			return elements;
+		}
+
+		private void initializeElements(String startToken, String endToken, Consumer<String> elementCreator) {
+			String localStory = story;
+			while (localStory.contains(startToken)) {
+				elementCreator.accept(StringUtils.substringBetween(localStory, startToken, endToken));
+				localStory = StringUtils.substringAfter(localStory, startToken);
+			}
+		}
+
+		private void initializeSituation(String block) {
+			String description = StringUtils.substringBetween(block, "'Описание': '", "',");
+			String index = StringUtils.substringBetween(block, "'Индекс ситуации': '", "',");
+			String leadFrom = StringUtils.substringBetween(block, "'Привело из': '", "',");
+			elements.put(index, leadFrom.equals("-") ? new MainSituation(description) : new Situation(description));
+		}
+
+		private void initializeVictory(String block) {
+			elements.put(StringUtils.substringBetween(block, "'Индекс победы': '", "',"),
+					new Victory(StringUtils.substringBetween(block, "'Описание': '", "',")));
+		}
+
+		private void initializeFail(String block) {
+			elements.put(StringUtils.substringBetween(block, "'Индекс поражения': '", "',"),
+					new Fail(StringUtils.substringBetween(block, "'Описание': '", "',")));
+		}
+
+		private void initializeChoices(String block) {
+			while (block.contains("{")) {
+				String choice = StringUtils.substringBetween(block, "{", "}");
+				String description = StringUtils.substringBetween(choice, "'Описание': '", "',");
+				String index = StringUtils.substringBetween(choice, "'Индекс выбора': '", "',");
+				String flag = StringUtils.substringBetween(choice, "'Флаг': '", "',");
+				elements.put(index, new Choice(description, flag.equals("goNext") || flag.equals("victory") || flag.equals("fail")));
+				block = StringUtils.substringAfter(block, "{");
+			}
+		}
+
+		private void setNextSituationForChoice() {
+			for (Map.Entry<String, Element> entry : elements.entrySet()) {
+				if (!entry.getValue().getClass().equals(Choice.class)) continue;
+				Choice choice = (Choice) entry.getValue();
+				if (!choice.isGoNext()) {
+					choice.setLeadTo(choice.getLeadFrom());
+					continue;
+				}
+				String choiceBlock = StringUtils.substringBetween(story, "'Индекс выбора': '" + entry.getKey() + "'", "}");
+				Situation situation = (Situation) elements.get(StringUtils.substringBetween(choiceBlock, "'Ведет к': '", "'"));
+				choice.setLeadTo(situation);
+				situation.addLeadFrom(choice);
+			}
+		}
+
+		private void setChoicesToSituation() {
+			for (Map.Entry<String, Element> entry : elements.entrySet()) {
+				if (!entry.getValue().getClass().equals(MainSituation.class) && !entry.getValue().getClass().equals(Situation.class)) continue;
+				MainSituation situation = (MainSituation) entry.getValue();
+				String block = StringUtils.substringBetween(story, "'Индекс ситуации': '" + entry.getKey() + "',", "]");
+				while (block.contains("'Индекс выбора'")) {
+					Choice choice = (Choice) elements.get(StringUtils.substringBetween(block, "Индекс выбора': '", "'"));
+					if (choice == null) throw new NoSuchElementException();
+					situation.addChoice(choice);
+					choice.setLeadFrom(situation);
+					block = StringUtils.substringAfter(block, "'Индекс выбора'");
+				}
+			}
+		}
+	}
+}
@@ -7,13 +7,18 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.questgame.webquestgame.Exceptions.StoryValidationException;
 import org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer;
+import org.questgame.webquestgame.Logic.ElementHandlers.ValidationReport;
 import org.questgame.webquestgame.Logic.Elements.*;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 @ExtendWith(MockitoExtension.class)
 public class ElementInitializerTest {
@@ -41,65 +46,6 @@ public class ElementInitializerTest {
 		Assertions.assertEquals(JSON_STORY, extractStory.invoke(el, "\"content\": \"" + JSON_STORY + "\","));
 	}
 
-	@Test
-	public void initializeSituation_whenElementMapIsEmpty_addsMainSituationObjectToElementMap() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException{
-		getPrivateMethod("initializeSituation", String.class).invoke(el, "{ 'Ситуация': { 'Описание': 'Вы - детектив, расследующий кражу Великой Книги Рецептов из известного ресторана. У вас есть несколько зацепок: свидетель, который видел подозрительного повара, и странная записка, оставленная на месте преступления.', 'Индекс ситуации': 'S1', 'Привело из': '-', 'Выборы ситуации': [ { 'Описание': 'Допросить свидетеля.', 'Индекс выбора': 'Y1', 'Флаг': 'goNext', 'Ведет к': 'S2' }, { 'Описание': 'Изучить записку.', 'Индекс выбора': 'Y2', 'Флаг': 'goNext', 'Ведет к': 'S3' } ] },");
-		Assertions.assertAll(
-				() -> Assertions.assertFalse(el.getElements().isEmpty()),
-				() -> Assertions.assertInstanceOf(MainSituation.class, el.getElements().get("S1")),
-				() -> Assertions.assertEquals("Вы - детектив, расследующий кражу Великой Книги Рецептов из известного ресторана. У вас есть несколько зацепок: свидетель, который видел подозрительного повара, и странная записка, оставленная на месте преступления.", el.getElements().get("S1").getDescription())
-		);
-	}
-
-	@Test
-	public void initializeSituation_whenElementMapHaveMainSituation_addsSituationObjectToElementMap() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-		Method initSituations = getPrivateMethod("initializeSituation", String.class);
-		initSituations.invoke(el, "{ 'Ситуация': { 'Описание': 'Вы - детектив, расследующий кражу Великой Книги Рецептов из известного ресторана. У вас есть несколько зацепок: свидетель, который видел подозрительного повара, и странная записка, оставленная на месте преступления.', 'Индекс ситуации': 'S1', 'Привело из': '-', 'Выборы ситуации': [ { 'Описание': 'Допросить свидетеля.', 'Индекс выбора': 'Y1', 'Флаг': 'goNext', 'Ведет к': 'S2' }, { 'Описание': 'Изучить записку.', 'Индекс выбора': 'Y2', 'Флаг': 'goNext', 'Ведет к': 'S3' } ] },");
-		initSituations.invoke(el, " 'Ситуация': { 'Описание': 'Свидетель рассказывает, что видел, как повар уезжал на машине с логотипом ресторана. Он также упоминает, что повар часто посещал странные места.', 'Индекс ситуации': 'S2', 'Привело из': 'Y1', 'Выборы ситуации': [ { 'Описание': 'Отправиться в одно из странных мест.', 'Индекс выбора': 'Y3', 'Флаг': 'goNext', 'Ведет к': 'S4' }, { 'Описание': 'Отследить машину по камерам наблюдения.', 'Индекс выбора': 'Y4', 'Флаг': 'fail', 'Ведет к': 'F1' } ] },");
-		Assertions.assertAll(
-				() -> Assertions.assertEquals(2, el.getElements().size()),
-				() -> Assertions.assertInstanceOf(Situation.class, el.getElements().get("S2")),
-				() -> Assertions.assertEquals("Свидетель рассказывает, что видел, как повар уезжал на машине с логотипом ресторана. Он также упоминает, что повар часто посещал странные места.", el.getElements().get("S2").getDescription())
-		);
-	}
-
-	@Test
-	public void initializeVictory_addsVictoryObjectToElementMap() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-		getPrivateMethod("initializeVictory", String.class).invoke(el, " 'Победа': { 'Описание': 'Вы успешно арестовали повара и вернули Великую Книгу Рецептов в ресторан. Ваша репутация как детектива возросла.', 'Индекс победы': 'V1', 'Привело из': 'Y7' },");
-		Assertions.assertAll(
-				() -> Assertions.assertFalse(el.getElements().isEmpty()),
-				() -> Assertions.assertInstanceOf(Victory.class, el.getElements().get("V1")),
-				() -> Assertions.assertEquals("Вы успешно арестовали повара и вернули Великую Книгу Рецептов в ресторан. Ваша репутация как детектива возросла.", el.getElements().get("V1").getDescription())
-		);
-	}
-
-	@Test
-	public void initializeFail_addsFailObjectToElementMap() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-		getPrivateMethod("initializeFail", String.class).invoke(el, "'Поражение': { 'Описание': 'Вы не смогли отследить машину, и следы повара затерялись. Книга утеряна навсегда.', 'Индекс поражения': 'F1', 'Привело из': 'Y4' }, ");
-		Assertions.assertAll(
-				() -> Assertions.assertFalse(el.getElements().isEmpty()),
-				() -> Assertions.assertInstanceOf(Fail.class, el.getElements().get("F1")),
-				() -> Assertions.assertEquals("Вы не смогли отследить машину, и следы повара затерялись. Книга утеряна навсегда.", el.getElements().get("F1").getDescription())
-		);
-	}
-
-	@Test
-	public void initializeChoices_addsChoicesObjectsToElementMap() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-		getPrivateMethod("initializeChoices", String.class).invoke(el, "'Выборы ситуации': [ { 'Описание': 'Допросить свидетеля.', 'Индекс выбора': 'Y1', 'Флаг': 'goNext', 'Ведет к': 'S2' }, { 'Описание': 'Изучить записку.', 'Индекс выбора': 'Y2', 'Флаг': 'goNext', 'Ведет к': 'S3' } ] },");
-		Choice choice1, choice2;
-		if (el.getElements().size() == 2 && el.getElements().get("Y1") instanceof Choice && el.getElements().get("Y2") instanceof Choice){
-			choice1 = (Choice) el.getElements().get("Y1");
-			choice2 = (Choice) el.getElements().get("Y2");
-		}
-		else throw new RuntimeException("Error in initializing choices");
-		Assertions.assertAll(
-				() -> Assertions.assertEquals("Допросить свидетеля.", choice1.getDescription()),
-				() -> Assertions.assertEquals("Изучить записку.", choice2.getDescription()),
-				() -> Assertions.assertTrue(choice1.isGoNext()),
-				() -> Assertions.assertTrue(choice2.isGoNext())
-		);
-	}
-
 	@ParameterizedTest
 	@CsvSource({"goNext", "victory", "fail", "goBack"})
 	public void flagHandler(String flag) throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
@@ -140,6 +86,47 @@ public class ElementInitializerTest {
 		);
 	}
 
+	@Test
+	public void createStoryFromContent_linksChoicesInOrderOfStory() {
+		Story story = ElementInitializer.createStoryFromContent(JSON_STORY);
+		MainSituation s4 = (MainSituation) story.getSTORY_ELEMENTS().get("S4");
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(story.getSTORY_ELEMENTS().get("Y7"), s4.getChoices()[0]),
+				() -> Assertions.assertEquals(story.getSTORY_ELEMENTS().get("Y8"), s4.getChoices()[1]),
+				() -> Assertions.assertEquals(2, ((Situation) s4).getLeadFrom().length)
+		);
+	}
+
+	@Test
+	public void createStoryFromContent_whenChoiceLeadsToMissingSituation_throwsException() {
+		String story = "{ 'Ситуация': { 'Описание': 'Начало', 'Индекс ситуации': 'S1', 'Привело из': '-', 'Выборы ситуации': [ { 'Описание': 'Вперед', 'Индекс выбора': 'Y1', 'Флаг': 'goNext', 'Ведет к': 'S9' } ] } }";
+		StoryValidationException e = Assertions.assertThrows(StoryValidationException.class, () -> ElementInitializer.createStoryFromContent(story));
+		Assertions.assertEquals("Y1", e.getReport().getProblems(ValidationReport.ProblemType.UNRESOLVED_REFERENCE).get(0).index());
+	}
+
+	@Test
+	public void initializeAllElements_withParallelThreshold_parsesSameElementsAsSequentially() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+		String content = new DeterministicStoryGenerator(400, 32).createContent("Пираты");
+		el.setStory(content);
+		getPrivateMethod("initializeAllElements", null).invoke(el);
+		ElementInitializer parallel = new ElementInitializer();
+		parallel.setStory(content);
+		parallel.setParallelThreshold(1);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		parallel.setParsingPool(pool);
+		try {
+			Story story = (Story) getPrivateMethod("createStory", null).invoke(parallel);
+			Assertions.assertAll(
+					() -> Assertions.assertEquals(el.getElements().keySet(), story.getSTORY_ELEMENTS().keySet()),
+					() -> Assertions.assertEquals(1601, story.getSTORY_ELEMENTS().size()),
+					() -> Assertions.assertEquals(el.getElements().get("S250").getDescription(), story.getSTORY_ELEMENTS().get("S250").getDescription()),
+					() -> Assertions.assertSame(story.getSTORY_ELEMENTS().get("S251"), ((Choice) story.getSTORY_ELEMENTS().get("Y499")).getLeadTo())
+			);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
 	private Method getPrivateMethod(String name, Class<?>... arg) throws NoSuchMethodException {
 		Method method = ElementInitializer.class.getDeclaredMethod(name, arg);
 		method.setAccessible(true);
@@ -6,7 +6,9 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
 import org.questgame.webquestgame.Logic.ElementHandlers.ElementManager;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryStreamParser;
 import org.questgame.webquestgame.Logic.Elements.*;
 import org.questgame.webquestgame.Logic.Story;
 
@@ -92,13 +94,29 @@ public class ElementManagerTest {
 	}
 
 	@Test
-	public void getNextSituation_whenThereAreNoNextSituation_throwsNullPointerException() {
+	public void getNextSituation_whenThereAreNoNextSituation_throwsIllegalStateException() {
 		em.getMainSituation();
-		Assertions.assertThrows(NullPointerException.class,
+		Assertions.assertThrows(IllegalStateException.class,
 				() -> em.getNextSituation(0)
 		);
 	}
 
+	@Test
+	public void getNextSituation_afterStreamWithDanglingLeadTo_throwsIllegalStateException() {
+		StoryStreamParser parser = new StoryStreamParser();
+		parser.accept("{ 'Ситуация': { 'Описание': 'Начало', 'Индекс ситуации': 'S1', 'Привело из': '-', 'Выборы ситуации': [ " +
+				"{ 'Описание': 'Вперед', 'Индекс выбора': 'Y1', 'Флаг': 'goNext', 'Ведет к': 'S9' }, " +
+				"{ 'Описание': 'Сдаться', 'Индекс выбора': 'Y2', 'Флаг': 'fail', 'Ведет к': 'F1' } ] }, ");
+		parser.fail(new ChatGptGenerationException("Connection is closed"));
+		ElementManager manager = new ElementManager(parser.getStory());
+		manager.getMainSituation();
+		Assertions.assertAll(
+				() -> Assertions.assertFalse(parser.getStory().isLoading()),
+				() -> Assertions.assertThrows(IllegalStateException.class, () -> manager.getNextSituation(0)),
+				() -> Assertions.assertEquals("Начало", manager.getCurrentSituation().getDescription())
+		);
+	}
+
 	@Test
 	public void getNextSituation_whenStackIsEmpty_throwsEmptyStackException() {
 		Assertions.assertThrows(EmptyStackException.class,
@@ -0,0 +1,112 @@
+package org.questgame.tests.ElementHandlers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer;
+import org.questgame.webquestgame.Logic.ElementHandlers.ElementManager;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryExpander;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryValidator;
+import org.questgame.webquestgame.Logic.Elements.Choice;
+import org.questgame.webquestgame.Logic.Elements.MainSituation;
+import org.questgame.webquestgame.Logic.Elements.PendingSituation;
+import org.questgame.webquestgame.Logic.Elements.Situation;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Interfaces.StoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryCodec;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class StoryExpanderTest {
+
+	private static final String PART = "{ 'Ситуация': { 'Описание': 'Начало', 'Индекс ситуации': 'S1', 'Привело из': '-', 'Выборы ситуации': [ " +
+			"{ 'Описание': 'Вперед', 'Индекс выбора': 'Y1', 'Флаг': 'goNext', 'Ведет к': 'S2' }, " +
+			"{ 'Описание': 'Сдаться', 'Индекс выбора': 'Y2', 'Флаг': 'fail', 'Ведет к': 'F1' } ] }, " +
+			"'Ситуация': { 'Описание': 'Развилка', 'Индекс ситуации': 'S2', 'Привело из': 'Y1', 'Выборы ситуации': [ " +
+			"{ 'Описание': 'В пещеру', 'Индекс выбора': 'Y3', 'Флаг': 'continue', 'Ведет к': '-' }, " +
+			"{ 'Описание': 'В лес', 'Индекс выбора': 'Y4', 'Флаг': 'continue', 'Ведет к': '-' } ] }, " +
+			"'Поражение': { 'Описание': 'Поражение', 'Индекс поражения': 'F1', 'Привело из': 'Y2' } }";
+
+	@Test
+	public void createStoryFromContent_withContinueFlags_createsPlayablePendingSituations() {
+		Story story = ElementInitializer.createStoryFromContent(PART);
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(StoryValidator.validate(story).isValid()),
+				() -> Assertions.assertInstanceOf(PendingSituation.class, story.getSTORY_ELEMENTS().get("PY3")),
+				() -> Assertions.assertSame(story.getSTORY_ELEMENTS().get("PY4"), ((Choice) story.getSTORY_ELEMENTS().get("Y4")).getLeadTo())
+		);
+	}
+
+	@Test
+	public void getNextSituation_beforePendingSituation_expandsItInBackgroundOnce() {
+		Story story = ElementInitializer.createStoryFromContent(PART);
+		CountingGenerator generator = new CountingGenerator();
+		StoryExpander expander = new StoryExpander(story, generator, "Пираты", 1, 3);
+		story.setExpander(expander);
+		ElementManager em = new ElementManager(story);
+		em.getMainSituation();
+		Assertions.assertEquals(0, expander.getExpansions());
+
+		em.getNextSituation(0);
+		Assertions.assertEquals(2, expander.getExpansions());
+		MainSituation cave = em.getNextSituation(0);
+		Assertions.assertAll(
+				() -> Assertions.assertSame(story.getSTORY_ELEMENTS().get("PY3>S1"), cave),
+				() -> Assertions.assertFalse(story.getSTORY_ELEMENTS().containsKey("PY3")),
+				() -> Assertions.assertEquals(2, generator.prompts.size()),
+				() -> Assertions.assertTrue(generator.prompts.get(0).contains("'continue'"))
+		);
+	}
+
+	@Test
+	public void expand_atLastPart_generatesBranchWithoutPendingSituations() {
+		Story story = ElementInitializer.createStoryFromContent(PART);
+		CountingGenerator generator = new CountingGenerator();
+		StoryExpander expander = new StoryExpander(story, generator, "Пираты", 0, 2);
+		MainSituation next = expander.expand((Choice) story.getSTORY_ELEMENTS().get("Y3")).orTimeout(5, TimeUnit.SECONDS).join();
+		Story decoded = StoryCodec.decode(StoryCodec.encode(story));
+		Assertions.assertAll(
+				() -> Assertions.assertSame(next, ((Choice) story.getSTORY_ELEMENTS().get("Y3")).getLeadTo()),
+				() -> Assertions.assertEquals(List.of("Пираты"), generator.prompts),
+				() -> Assertions.assertTrue(StoryValidator.validate(story).isValid()),
+				() -> Assertions.assertSame(story.getSTORY_ELEMENTS().get("Y3"), ((Situation) next).getLeadFrom()[0]),
+				() -> Assertions.assertSame(decoded.getSTORY_ELEMENTS().get("Y3"),
+						((Situation) decoded.getSTORY_ELEMENTS().get("PY3>S1")).getLeadFrom()[0])
+		);
+	}
+
+	private static class CountingGenerator implements StoryGenerator {
+		private final DeterministicStoryGenerator generator = new DeterministicStoryGenerator(2, 32);
+		private final List<String> prompts = new CopyOnWriteArrayList<>();
+
+		@Override
+		public String getName() {
+			return "counting";
+		}
+
+		@Override
+		public Story generate(String userPrompt) {
+			return generator.generate(userPrompt);
+		}
+
+		@Override
+		public CompletableFuture<Story> generateAsync(String userPrompt) {
+			return generator.generateAsync(userPrompt);
+		}
+
+		@Override
+		public CompletableFuture<Story> generateBranchAsync(String userPrompt, String situationDescription, String choiceDescription) {
+			prompts.add(userPrompt);
+			return generator.generateAsync(userPrompt);
+		}
+
+		@Override
+		public CompletableFuture<Void> stream(String userPrompt, Consumer<String> contentConsumer) {
+			return generator.stream(userPrompt, contentConsumer);
+		}
+	}
+}
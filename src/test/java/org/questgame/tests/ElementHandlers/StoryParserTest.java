@@ -0,0 +1,100 @@
+package org.questgame.tests.ElementHandlers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryParser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StoryParserTest {
+
+	private final String SITUATION_BLOCK = "{ 'Ситуация': { 'Описание': 'Вы - детектив, расследующий кражу Великой Книги Рецептов из известного ресторана. У вас есть несколько зацепок: свидетель, который видел подозрительного повара, и странная записка, оставленная на месте преступления.', 'Индекс ситуации': 'S1', 'Привело из': '-', 'Выборы ситуации': [ { 'Описание': 'Допросить свидетеля.', 'Индекс выбора': 'Y1', 'Флаг': 'goNext', 'Ведет к': 'S2' }, { 'Описание': 'Изучить записку.', 'Индекс выбора': 'Y2', 'Флаг': 'goNext', 'Ведет к': 'S3' } ] },";
+	private final String SECOND_SITUATION_BLOCK = " 'Ситуация': { 'Описание': 'Свидетель рассказывает, что видел, как повар уезжал на машине с логотипом ресторана. Он также упоминает, что повар часто посещал странные места.', 'Индекс ситуации': 'S2', 'Привело из': 'Y1', 'Выборы ситуации': [ { 'Описание': 'Отправиться в одно из странных мест.', 'Индекс выбора': 'Y3', 'Флаг': 'goNext', 'Ведет к': 'S4' }, { 'Описание': 'Отследить машину по камерам наблюдения.', 'Индекс выбора': 'Y4', 'Флаг': 'fail', 'Ведет к': 'F1' } ] },";
+	private RecordingHandler handler;
+
+	@BeforeEach
+	public void init() {
+		handler = new RecordingHandler();
+	}
+
+	@Test
+	public void parse_withMainSituation_reportsMainSituationAndItsChoices() {
+		StoryParser.parse(SITUATION_BLOCK, handler);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(List.of("main S1", "choice S1 Y1 goNext S2", "choice S1 Y2 goNext S3"), handler.events),
+				() -> Assertions.assertEquals("Вы - детектив, расследующий кражу Великой Книги Рецептов из известного ресторана. У вас есть несколько зацепок: свидетель, который видел подозрительного повара, и странная записка, оставленная на месте преступления.", handler.descriptions.get("S1")),
+				() -> Assertions.assertEquals("Допросить свидетеля.", handler.descriptions.get("Y1")),
+				() -> Assertions.assertEquals("Изучить записку.", handler.descriptions.get("Y2"))
+		);
+	}
+
+	@Test
+	public void parse_withSituationLedFromChoice_reportsSituation() {
+		StoryParser.parse(SECOND_SITUATION_BLOCK, handler);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals("situation S2", handler.events.get(0)),
+				() -> Assertions.assertEquals("choice S2 Y4 fail F1", handler.events.get(2)),
+				() -> Assertions.assertEquals("Свидетель рассказывает, что видел, как повар уезжал на машине с логотипом ресторана. Он также упоминает, что повар часто посещал странные места.", handler.descriptions.get("S2"))
+		);
+	}
+
+	@Test
+	public void parse_withVictoryAndFail_reportsEndings() {
+		StoryParser.parse(" 'Победа': { 'Описание': 'Вы успешно арестовали повара и вернули Великую Книгу Рецептов в ресторан. Ваша репутация как детектива возросла.', 'Индекс победы': 'V1', 'Привело из': 'Y7' }, " +
+				"'Поражение': { 'Описание': 'Вы не смогли отследить машину, и следы повара затерялись. Книга утеряна навсегда.', 'Индекс поражения': 'F1', 'Привело из': 'Y4' }", handler);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(List.of("victory V1", "fail F1"), handler.events),
+				() -> Assertions.assertEquals("Вы успешно арестовали повара и вернули Великую Книгу Рецептов в ресторан. Ваша репутация как детектива возросла.", handler.descriptions.get("V1")),
+				() -> Assertions.assertEquals("Вы не смогли отследить машину, и следы повара затерялись. Книга утеряна навсегда.", handler.descriptions.get("F1"))
+		);
+	}
+
+	@Test
+	public void parse_withTextAroundStoryAndApostrophes_reportsElements() {
+		StoryParser.parse("вот пример: { 'Победа': { 'Индекс победы': 'V1', 'Описание': 'Д'Артаньян победил', 'Лишнее': [ 1, { 'a': 'b' } ] } } конец", handler);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(List.of("victory V1"), handler.events),
+				() -> Assertions.assertEquals("Д'Артаньян победил", handler.descriptions.get("V1"))
+		);
+	}
+
+	@Test
+	public void parse_withoutIndex_throwsException() {
+		Assertions.assertThrows(ChatGptGenerationException.class,
+				() -> StoryParser.parse("{ 'Поражение': { 'Описание': 'Поражение' } }", handler));
+	}
+
+	private static class RecordingHandler implements StoryParser.Handler {
+		private final List<String> events = new ArrayList<>();
+		private final Map<String, String> descriptions = new HashMap<>();
+
+		@Override
+		public void situation(String index, String description, boolean main, String leadFrom) {
+			events.add((main ? "main " : "situation ") + index);
+			descriptions.put(index, description);
+		}
+
+		@Override
+		public void choice(String situationIndex, String index, String description, String flag, String leadTo) {
+			events.add("choice " + situationIndex + " " + index + " " + flag + " " + leadTo);
+			descriptions.put(index, description);
+		}
+
+		@Override
+		public void victory(String index, String description, String leadFrom) {
+			events.add("victory " + index);
+			descriptions.put(index, description);
+		}
+
+		@Override
+		public void fail(String index, String description, String leadFrom) {
+			events.add("fail " + index);
+			descriptions.put(index, description);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package org.questgame.tests.ElementHandlers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Exceptions.StoryValidationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryRepairer;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryStreamParser;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryValidator;
+import org.questgame.webquestgame.Logic.Elements.Choice;
+import org.questgame.webquestgame.Logic.Elements.MainSituation;
+import org.questgame.webquestgame.Logic.Elements.Situation;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Interfaces.StoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryCodec;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class StoryRepairerTest {
+
+	private static final String S1 = "'Ситуация': { 'Описание': 'Начало', 'Индекс ситуации': 'S1', 'Привело из': '-', 'Выборы ситуации': [ " +
+			"{ 'Описание': 'Вперед', 'Индекс выбора': 'Y1', 'Флаг': 'goNext', 'Ведет к': '-' }, " +
+			"{ 'Описание': 'Сдаться', 'Индекс выбора': 'Y2', 'Флаг': 'fail', 'Ведет к': 'F1' } ] }, ";
+	private static final String S2 = "'Ситуация': { 'Описание': 'Середина', 'Индекс ситуации': 'S2', 'Привело из': 'Y1', 'Выборы ситуации': [ " +
+			"{ 'Описание': 'Дальше', 'Индекс выбора': 'Y3', 'Флаг': 'goNext', 'Ведет к': 'S7' } ] }, ";
+	private static final String ENDINGS = "'Победа': { 'Описание': 'Победа', 'Индекс победы': 'V1', 'Привело из': 'Y3' }, " +
+			"'Поражение': { 'Описание': 'Поражение', 'Индекс поражения': 'F1', 'Привело из': 'Y2' } }";
+
+	@Test
+	public void createStoryFromContent_withMissingQuotesAndCommas_parsesRepairedContent() {
+		String content = new DeterministicStoryGenerator(5, 32).createContent("Пираты");
+		String broken = content
+				.replace("'Индекс ситуации': 'S3'", "'Индекс ситуации': S3'")
+				.replace("'Ведет к': 'S4' }", "'Ведет к': S4 }")
+				.replace("'Привело из': '-', ", "'Привело из': '-' ")
+				.replace("'Индекс победы': 'V1'", "\"Индекс победы\": \"V1\"")
+				.replace("] }, 'Ситуация'", "] } 'Ситуация'");
+		String repaired = StoryRepairer.repairText(broken);
+		Story story = ElementInitializer.createStoryFromContent(broken);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(content, repaired),
+				() -> Assertions.assertEquals(21, story.getSTORY_ELEMENTS().size())
+		);
+	}
+
+	@Test
+	public void repairText_withUnclosedDescription_closesIt() {
+		String content = "'Описание': 'Вы стоите, у ворот, 'Индекс ситуации': 'S1'";
+		Assertions.assertEquals("'Описание': 'Вы стоите, у ворот', 'Индекс ситуации': 'S1'", StoryRepairer.repairText(content));
+	}
+
+	@Test
+	public void createStoryFromContent_withMissingAndDanglingLeadTo_linksChoicesFromLeadFrom() {
+		String content = "{ " + S1 + S2 + ENDINGS;
+		Story story = ElementInitializer.createStoryFromContent(content);
+		Assertions.assertAll(
+				() -> Assertions.assertSame(story.getSTORY_ELEMENTS().get("S2"), ((Choice) story.getSTORY_ELEMENTS().get("Y1")).getLeadTo()),
+				() -> Assertions.assertSame(story.getSTORY_ELEMENTS().get("V1"), ((Choice) story.getSTORY_ELEMENTS().get("Y3")).getLeadTo())
+		);
+	}
+
+	@Test
+	public void finish_withMissingAndDanglingLeadTo_linksChoicesFromLeadFrom() {
+		StoryStreamParser parser = new StoryStreamParser();
+		String content = "{ " + S1 + S2.replace("'Ведет к': 'S7' }", "'Ведет к': 's 7' }") + ENDINGS;
+		for (int i = 0; i < content.length(); i += 16) {
+			parser.accept(content.substring(i, Math.min(content.length(), i + 16)));
+		}
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(parser.finish(), () -> String.valueOf(parser.getReport())),
+				() -> Assertions.assertEquals(7, parser.getStory().getSTORY_ELEMENTS().size())
+		);
+	}
+
+	@Test
+	public void finish_withMalformedBlock_skipsItAndRepairsText() {
+		StoryStreamParser parser = new StoryStreamParser();
+		parser.accept("{ " + S1.replace("'Описание': 'Начало',", "'Описание': 'Начало' ") + S2 + "'Ситуация': { 'Индекс ситуации': }, " + ENDINGS);
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(parser.finish(), () -> String.valueOf(parser.getReport())),
+				() -> Assertions.assertEquals(1, parser.getSkippedBlocks())
+		);
+	}
+
+	@Test
+	public void repair_withUnreachableElements_removesThemWithoutGeneration() {
+		String content = "{ " + S1.replace("'Ведет к': '-'", "'Ведет к': 'S2'") + S2.replace("'S7'", "'V1'") +
+				"'Ситуация': { 'Описание': 'Лишняя', 'Индекс ситуации': 'S3', 'Привело из': 'Y9', 'Выборы ситуации': [ " +
+				"{ 'Описание': 'Назад', 'Индекс выбора': 'Y4', 'Флаг': 'goNext', 'Ведет к': 'S2' } ] }, " + ENDINGS;
+		StoryValidationException e = Assertions.assertThrows(StoryValidationException.class, () -> ElementInitializer.createStoryFromContent(content));
+		CountingGenerator generator = new CountingGenerator();
+		Story story = new StoryRepairer(generator, 3).recover("Пираты", new CompletionException(e)).join();
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(StoryValidator.validate(story).isValid()),
+				() -> Assertions.assertFalse(story.getSTORY_ELEMENTS().containsKey("S3")),
+				() -> Assertions.assertEquals(0, generator.branches.get())
+		);
+	}
+
+	@Test
+	public void repair_withBrokenBranch_regeneratesOnlyThisBranch() {
+		String content = "{ " + S1.replace("'Ведет к': '-'", "'Ведет к': 'S2'") + S2 + ENDINGS.replace("'Y3'", "'-'");
+		StoryValidationException e = Assertions.assertThrows(StoryValidationException.class, () -> ElementInitializer.createStoryFromContent(content));
+		CountingGenerator generator = new CountingGenerator();
+		Story story = new StoryRepairer(generator, 3).repair("Пираты", e.getStory(), e.getReport()).join();
+		Choice repaired = (Choice) story.getSTORY_ELEMENTS().get("Y3");
+		Story decoded = StoryCodec.decode(StoryCodec.encode(story));
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(StoryValidator.validate(story).isValid(), () -> StoryValidator.validate(story).toString()),
+				() -> Assertions.assertEquals(1, generator.branches.get()),
+				() -> Assertions.assertSame(story.getSTORY_ELEMENTS().get("Y3>S1"), repaired.getLeadTo()),
+				() -> Assertions.assertArrayEquals(new Choice[]{repaired}, ((Situation) repaired.getLeadTo()).getLeadFrom()),
+				() -> Assertions.assertSame(repaired.getLeadTo(), ((Choice) story.getSTORY_ELEMENTS().get("Y3>Y1")).getLeadFrom()),
+				() -> Assertions.assertSame(decoded.getSTORY_ELEMENTS().get("Y3"), ((Situation) decoded.getSTORY_ELEMENTS().get("Y3>S1")).getLeadFrom()[0]),
+				() -> Assertions.assertEquals(6 + 9, story.getSTORY_ELEMENTS().size()),
+				() -> Assertions.assertEquals("Начало", ((MainSituation) story.getSTORY_ELEMENTS().get("S1")).getDescription())
+		);
+	}
+
+	@Test
+	public void repair_withMoreBrokenBranchesThanAllowed_fails() {
+		String content = "{ " + S1.replace("'Ведет к': '-'", "'Ведет к': 'S2'") + S2 + ENDINGS.replace("'Y3'", "'-'");
+		StoryValidationException e = Assertions.assertThrows(StoryValidationException.class, () -> ElementInitializer.createStoryFromContent(content));
+		CountingGenerator generator = new CountingGenerator();
+		CompletableFuture<Story> repaired = new StoryRepairer(generator, 0).repair("Пираты", e.getStory(), e.getReport());
+		CompletionException failure = Assertions.assertThrows(CompletionException.class, repaired::join);
+		Assertions.assertAll(
+				() -> Assertions.assertInstanceOf(StoryValidationException.class, failure.getCause()),
+				() -> Assertions.assertEquals(0, generator.branches.get())
+		);
+	}
+
+	private static class CountingGenerator implements StoryGenerator {
+		private final DeterministicStoryGenerator generator = new DeterministicStoryGenerator(2, 32);
+		private final AtomicInteger branches = new AtomicInteger();
+
+		@Override
+		public String getName() {
+			return "counting";
+		}
+
+		@Override
+		public Story generate(String userPrompt) {
+			return generator.generate(userPrompt);
+		}
+
+		@Override
+		public CompletableFuture<Story> generateAsync(String userPrompt) {
+			return generator.generateAsync(userPrompt);
+		}
+
+		@Override
+		public CompletableFuture<Story> generateBranchAsync(String userPrompt, String situationDescription, String choiceDescription) {
+			branches.incrementAndGet();
+			return StoryGenerator.super.generateBranchAsync(userPrompt, situationDescription, choiceDescription);
+		}
+
+		@Override
+		public CompletableFuture<Void> stream(String userPrompt, Consumer<String> contentConsumer) {
+			return generator.stream(userPrompt, contentConsumer);
+		}
+	}
+}
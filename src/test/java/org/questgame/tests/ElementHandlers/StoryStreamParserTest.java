@@ -0,0 +1,81 @@
+package org.questgame.tests.ElementHandlers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryStreamParser;
+import org.questgame.webquestgame.Logic.Elements.*;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+
+public class StoryStreamParserTest {
+
+	private final String JSON_STORY = "{ 'Ситуация': { 'Описание': 'Вы - детектив, расследующий кражу Великой Книги Рецептов из известного ресторана. У вас есть несколько зацепок: свидетель, который видел подозрительного повара, и странная записка, оставленная на месте преступления.', 'Индекс ситуации': 'S1', 'Привело из': '-', 'Выборы ситуации': [ { 'Описание': 'Допросить свидетеля.', 'Индекс выбора': 'Y1', 'Флаг': 'goNext', 'Ведет к': 'S2' }, { 'Описание': 'Изучить записку.', 'Индекс выбора': 'Y2', 'Флаг': 'goNext', 'Ведет к': 'S3' } ] }, 'Ситуация': { 'Описание': 'Свидетель рассказывает, что видел, как повар уезжал на машине с логотипом ресторана. Он также упоминает, что повар часто посещал странные места.', 'Индекс ситуации': 'S2', 'Привело из': 'Y1', 'Выборы ситуации': [ { 'Описание': 'Отправиться в одно из странных мест.', 'Индекс выбора': 'Y3', 'Флаг': 'goNext', 'Ведет к': 'S4' }, { 'Описание': 'Отследить машину по камерам наблюдения.', 'Индекс выбора': 'Y4', 'Флаг': 'fail', 'Ведет к': 'F1' } ] }, 'Ситуация': { 'Описание': 'Записка содержит загадочные символы и упоминание о тайной встрече в старом складе.', 'Индекс ситуации': 'S3', 'Привело из': 'Y2', 'Выборы ситуации': [ { 'Описание': 'Отправиться на старый склад.', 'Индекс выбора': 'Y5', 'Флаг': 'goNext', 'Ведет к': 'S4' }, { 'Описание': 'Попробовать расшифровать символы.', 'Индекс выбора': 'Y6', 'Флаг': 'fail', 'Ведет к': 'F2' } ] }, 'Ситуация': { 'Описание': 'Вы прибываете на старый склад и находите там повара, который пытается продать книгу на чёрном рынке. У вас есть шанс его задержать.', 'Индекс ситуации': 'S4', 'Привело из': 'Y3 / Y5', 'Выборы ситуации': [ { 'Описание': 'Арестовать повара.', 'Индекс выбора': 'Y7', 'Флаг': 'victory', 'Ведет к': 'V1' }, { 'Описание': 'Попробовать договориться с поваром.', 'Индекс выбора': 'Y8', 'Флаг': 'fail', 'Ведет к': 'F3' } ] }, 'Победа': { 'Описание': 'Вы успешно арестовали повара и вернули Великую Книгу Рецептов в ресторан. Ваша репутация как детектива возросла.', 'Индекс победы': 'V1', 'Привело из': 'Y7' }, 'Поражение': { 'Описание': 'Вы не смогли отследить машину, и следы повара затерялись. Книга утеряна навсегда.', 'Индекс поражения': 'F1', 'Привело из': 'Y4' }, 'Поражение': { 'Описание': 'Попытка расшифровать символы оказалась безуспешной, и вы упустили шанс поймать повара.', 'Индекс поражения': 'F2', 'Привело из': 'Y6' }, 'Поражение': { 'Описание': 'Повар не поддался на уговоры и сбежал, оставив вас ни с чем.', 'Индекс поражения': 'F3', 'Привело из': 'Y8' } }";
+	private StoryStreamParser parser;
+
+	@BeforeEach
+	public void init() {
+		parser = new StoryStreamParser();
+	}
+
+	@Test
+	public void accept_whenMainSituationIsReceived_completesFirstSituation() {
+		int secondSituation = JSON_STORY.indexOf("'Ситуация'", JSON_STORY.indexOf("'Ситуация'") + 1);
+		parser.accept(JSON_STORY.substring(0, secondSituation));
+		Story story = parser.getFirstSituation().getNow(null);
+		Assertions.assertAll(
+				() -> Assertions.assertNotNull(story),
+				() -> Assertions.assertTrue(story.isLoading()),
+				() -> Assertions.assertInstanceOf(MainSituation.class, story.getSTORY_ELEMENTS().get("S1")),
+				() -> Assertions.assertEquals(2, ((MainSituation) story.getSTORY_ELEMENTS().get("S1")).getChoices().length),
+				() -> Assertions.assertNull(((Choice) story.getSTORY_ELEMENTS().get("Y1")).getLeadTo())
+		);
+	}
+
+	@Test
+	public void accept_withStoryInSmallPieces_createsLinkedStory() {
+		for (int i = 0; i < JSON_STORY.length(); i += 7) {
+			parser.accept(JSON_STORY.substring(i, Math.min(JSON_STORY.length(), i + 7)));
+		}
+		boolean valid = parser.finish();
+		Story story = parser.getStory();
+		Choice y1 = (Choice) story.getSTORY_ELEMENTS().get("Y1");
+		Choice y7 = (Choice) story.getSTORY_ELEMENTS().get("Y7");
+		Situation s4 = (Situation) story.getSTORY_ELEMENTS().get("S4");
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(valid),
+				() -> Assertions.assertTrue(story.isLoading()),
+				() -> Assertions.assertEquals(16, story.getSTORY_ELEMENTS().size()),
+				() -> Assertions.assertEquals(story.getSTORY_ELEMENTS().get("S2"), y1.getLeadTo()),
+				() -> Assertions.assertInstanceOf(Victory.class, y7.getLeadTo()),
+				() -> Assertions.assertEquals(2, s4.getLeadFrom().length)
+		);
+	}
+
+	@Test
+	public void finish_withoutMainSituation_completesFirstSituationExceptionally() {
+		parser.accept("{ 'Победа': { 'Описание': 'Победа', 'Индекс победы': 'V1', 'Привело из': 'Y7' } }");
+		parser.finish();
+		CompletionException e = Assertions.assertThrows(CompletionException.class, () -> parser.getFirstSituation().join());
+		Assertions.assertInstanceOf(ChatGptGenerationException.class, e.getCause());
+	}
+
+	@Test
+	public void fail_afterFinishWithDanglingLeadTo_marksStoryFailed() {
+		parser.accept(JSON_STORY.replace("'Ведет к': 'S2'", "'Ведет к': 'S9'").replace("'Привело из': 'Y1'", "'Привело из': '-'"));
+		boolean valid = parser.finish();
+		boolean loadingAfterFinish = parser.getStory().isLoading();
+		parser.fail(new ChatGptGenerationException("Story can't be repaired"));
+		Story story = parser.getStory();
+		Assertions.assertAll(
+				() -> Assertions.assertFalse(valid),
+				() -> Assertions.assertTrue(loadingAfterFinish),
+				() -> Assertions.assertTrue(story.isFailed()),
+				() -> Assertions.assertFalse(story.isLoading()),
+				() -> Assertions.assertFalse(story.awaitLink((Choice) story.getSTORY_ELEMENTS().get("Y1"), Duration.ofSeconds(5)))
+		);
+	}
+}
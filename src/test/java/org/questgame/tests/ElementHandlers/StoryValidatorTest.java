@@ -0,0 +1,96 @@
+package org.questgame.tests.ElementHandlers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Exceptions.StoryValidationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryValidator;
+import org.questgame.webquestgame.Logic.ElementHandlers.ValidationReport;
+import org.questgame.webquestgame.Logic.ElementHandlers.ValidationReport.ProblemType;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+
+public class StoryValidatorTest {
+
+	private static final String S1 = "'Ситуация': { 'Описание': 'Начало', 'Индекс ситуации': 'S1', 'Привело из': '-', 'Выборы ситуации': [ " +
+			"{ 'Описание': 'Вперед', 'Индекс выбора': 'Y1', 'Флаг': 'goNext', 'Ведет к': 'S2' }, " +
+			"{ 'Описание': 'Сдаться', 'Индекс выбора': 'Y2', 'Флаг': 'fail', 'Ведет к': 'F1' } ] }, ";
+	private static final String ENDINGS = "'Победа': { 'Описание': 'Победа', 'Индекс победы': 'V1', 'Привело из': 'Y3' }, " +
+			"'Поражение': { 'Описание': 'Поражение', 'Индекс поражения': 'F1', 'Привело из': 'Y2' } }";
+
+	@Test
+	public void validate_withGeneratedStory_returnsValidReport() {
+		Story story = new DeterministicStoryGenerator(50, 32).generate("Пираты");
+		ValidationReport report = StoryValidator.validate(story);
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(report.isValid(), report::toString),
+				() -> Assertions.assertEquals(201, report.getElements()),
+				() -> Assertions.assertEquals(201, report.getReachable())
+		);
+	}
+
+	@Test
+	public void createStoryFromContent_withUnreachableSituation_reportsIt() {
+		String content = "{ " + S1 +
+				situation("S2", "Y3", "victory", "V1") +
+				situation("S3", "Y4", "goNext", "S2") + ENDINGS;
+		ValidationReport report = reject(content);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(2, report.getProblems(ProblemType.UNREACHABLE).size()),
+				() -> Assertions.assertEquals("S3", report.getProblems(ProblemType.UNREACHABLE).get(0).index()),
+				() -> Assertions.assertEquals(0, report.getProblems(ProblemType.DEAD_END).size())
+		);
+	}
+
+	@Test
+	public void createStoryFromContent_withLoopWithoutEnding_reportsDeadEnds() {
+		String content = "{ " + S1 +
+				situation("S2", "Y3", "goNext", "S3") +
+				situation("S3", "Y4", "goNext", "S2") + ENDINGS;
+		ValidationReport report = reject(content);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(2, report.getProblems(ProblemType.DEAD_END).size()),
+				() -> Assertions.assertEquals(1, report.getProblems(ProblemType.UNREACHABLE).size()),
+				() -> Assertions.assertEquals(1, report.getProblems(ProblemType.NO_VICTORY).size())
+		);
+	}
+
+	@Test
+	public void createStoryFromContent_withChoiceLeadingToChoice_reportsUnresolvedReference() {
+		String content = "{ " + S1 + situation("S2", "Y3", "goNext", "Y1") + ENDINGS.replace("'Y3'", "'-'");
+		ValidationReport report = reject(content);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals("Y3", report.getProblems(ProblemType.UNRESOLVED_REFERENCE).get(0).index()),
+				() -> Assertions.assertFalse(report.getProblems(ProblemType.DEAD_END).isEmpty())
+		);
+	}
+
+	@Test
+	public void createStoryFromContent_withoutMainSituation_reportsMissingMainSituation() {
+		String content = "{ " + situation("S2", "Y3", "victory", "V1") + ENDINGS;
+		ValidationReport report = reject(content);
+		Assertions.assertEquals(1, report.getProblems(ProblemType.MISSING_MAIN_SITUATION).size());
+	}
+
+	@Test
+	public void createStoryFromContent_withDuplicateIndexes_reportsThem() {
+		String choiceAsSituation = "{ " + S1 + situation("S2", "S2", "victory", "V1") + ENDINGS;
+		String situationAsChoice = "{ " + S1 + situation("Y1", "Y3", "victory", "V1") + ENDINGS;
+		ValidationReport choiceReport = reject(choiceAsSituation);
+		ValidationReport situationReport = reject(situationAsChoice);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals("S2", choiceReport.getProblems(ProblemType.DUPLICATE_INDEX).get(0).index()),
+				() -> Assertions.assertEquals("Y1", situationReport.getProblems(ProblemType.DUPLICATE_INDEX).get(0).index()),
+				() -> Assertions.assertEquals("Y3", situationReport.getProblems(ProblemType.UNRESOLVED_REFERENCE).get(0).index())
+		);
+	}
+
+	private static String situation(String index, String choiceIndex, String flag, String leadTo) {
+		return "'Ситуация': { 'Описание': 'Ситуация " + index + "', 'Индекс ситуации': '" + index + "', 'Привело из': 'Y1', 'Выборы ситуации': [ " +
+				"{ 'Описание': 'Выбор', 'Индекс выбора': '" + choiceIndex + "', 'Флаг': '" + flag + "', 'Ведет к': '" + leadTo + "' } ] }, ";
+	}
+
+	private static ValidationReport reject(String content) {
+		return Assertions.assertThrows(StoryValidationException.class, () -> ElementInitializer.createStoryFromContent(content)).getReport();
+	}
+}
@@ -0,0 +1,58 @@
+package org.questgame.tests.Generators;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryStreamParser;
+import org.questgame.webquestgame.Logic.Elements.*;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Generators.StoryGenerators;
+import org.questgame.webquestgame.Logic.Story;
+
+public class DeterministicStoryGeneratorTest {
+
+	private final DeterministicStoryGenerator generator = new DeterministicStoryGenerator(3, 10);
+
+	@Test
+	public void createContent_withSamePrompt_returnsSameContent() {
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(generator.createContent("Пираты"), generator.createContent("Пираты")),
+				() -> Assertions.assertNotEquals(generator.createContent("Пираты"), generator.createContent("Космос"))
+		);
+	}
+
+	@Test
+	public void generate_withPrompt_returnsLinkedStory() {
+		Story story = generator.generate("Пираты");
+		Choice y5 = (Choice) story.getSTORY_ELEMENTS().get("Y5");
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(13, story.getSTORY_ELEMENTS().size()),
+				() -> Assertions.assertInstanceOf(MainSituation.class, story.getSTORY_ELEMENTS().get("S1")),
+				() -> Assertions.assertInstanceOf(Victory.class, y5.getLeadTo()),
+				() -> Assertions.assertInstanceOf(Fail.class, ((Choice) story.getSTORY_ELEMENTS().get("Y2")).getLeadTo())
+		);
+	}
+
+	@Test
+	public void generate_withBlankPrompt_throwsException() {
+		Assertions.assertThrows(ChatGptGenerationException.class, () -> generator.generate(" "));
+	}
+
+	@Test
+	public void stream_withPrompt_passesWholeContentToParser() {
+		StoryStreamParser parser = new StoryStreamParser();
+		generator.stream("Пираты", parser).join();
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(parser.finish()),
+				() -> Assertions.assertEquals(13, parser.getStory().getSTORY_ELEMENTS().size())
+		);
+	}
+
+	@Test
+	public void create_withUnknownType_throwsException() {
+		Assertions.assertAll(
+				() -> Assertions.assertInstanceOf(DeterministicStoryGenerator.class, StoryGenerators.create("Deterministic")),
+				() -> Assertions.assertThrows(IllegalArgumentException.class, () -> StoryGenerators.create("unknown"))
+		);
+	}
+}
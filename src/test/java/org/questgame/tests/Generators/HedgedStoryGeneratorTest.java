@@ -0,0 +1,144 @@
+package org.questgame.tests.Generators;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+import org.questgame.webquestgame.Exceptions.StoryValidationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.ValidationReport;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Generators.HedgedStoryGenerator;
+import org.questgame.webquestgame.Logic.Interfaces.StoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public class HedgedStoryGeneratorTest {
+
+	private final Story story = new DeterministicStoryGenerator(2, 32).generate("Пираты");
+
+	@Test
+	public void generateAsync_withSlowCandidate_returnsHedgedCandidateAndCancelsSlowOne() {
+		CompletableFuture<Story> slow = new CompletableFuture<>();
+		ScriptedGenerator delegate = new ScriptedGenerator(() -> slow, () -> CompletableFuture.completedFuture(story));
+		HedgedStoryGenerator generator = new HedgedStoryGenerator(delegate, 2, 95, Duration.ofMillis(50), 100);
+
+		Story generated = generator.generateAsync("Пираты").orTimeout(5, TimeUnit.SECONDS).join();
+		Assertions.assertAll(
+				() -> Assertions.assertSame(story, generated),
+				() -> Assertions.assertTrue(slow.isCancelled()),
+				() -> Assertions.assertEquals(2, delegate.calls.size()),
+				() -> Assertions.assertEquals(1, generator.getHedgeWins())
+		);
+	}
+
+	@Test
+	public void generateAsync_withInvalidCandidate_startsNextCandidateAtOnce() {
+		ScriptedGenerator delegate = new ScriptedGenerator(
+				() -> CompletableFuture.failedFuture(new StoryValidationException(new ValidationReport())),
+				() -> CompletableFuture.completedFuture(story));
+		HedgedStoryGenerator generator = new HedgedStoryGenerator(delegate, 3, 95, Duration.ofMinutes(1), 100);
+
+		Story generated = generator.generateAsync("Пираты").orTimeout(5, TimeUnit.SECONDS).join();
+		Assertions.assertAll(
+				() -> Assertions.assertSame(story, generated),
+				() -> Assertions.assertEquals(2, delegate.calls.size()),
+				() -> Assertions.assertEquals(1, generator.getHedges())
+		);
+	}
+
+	@Test
+	public void generateAsync_withSpentBudget_waitsForTheOnlyCandidate() {
+		CompletableFuture<Story> slow = new CompletableFuture<>();
+		ScriptedGenerator delegate = new ScriptedGenerator(() -> slow, () -> CompletableFuture.completedFuture(story));
+		HedgedStoryGenerator generator = new HedgedStoryGenerator(delegate, 2, 95, Duration.ofMillis(10), 0);
+
+		CompletableFuture<Story> generated = generator.generateAsync("Пираты");
+		CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS).execute(() -> slow.complete(story));
+		Assertions.assertAll(
+				() -> Assertions.assertSame(story, generated.orTimeout(5, TimeUnit.SECONDS).join()),
+				() -> Assertions.assertEquals(1, delegate.calls.size()),
+				() -> Assertions.assertEquals(0, generator.getHedges())
+		);
+	}
+
+	@Test
+	public void generateAsync_withAllCandidatesFailed_failsWithLastFailure() {
+		ScriptedGenerator delegate = new ScriptedGenerator(
+				() -> CompletableFuture.failedFuture(new StoryValidationException(new ValidationReport())),
+				() -> CompletableFuture.failedFuture(new ChatGptGenerationException("Request error")));
+		HedgedStoryGenerator generator = new HedgedStoryGenerator(delegate, 2, 95, Duration.ofMinutes(1), 100);
+
+		CompletionException e = Assertions.assertThrows(CompletionException.class,
+				() -> generator.generateAsync("Пираты").orTimeout(5, TimeUnit.SECONDS).join());
+		Assertions.assertAll(
+				() -> Assertions.assertEquals("Request error", e.getCause().getMessage()),
+				() -> Assertions.assertEquals(2, delegate.calls.size())
+		);
+	}
+
+	@Test
+	public void getHedgeDelay_afterGenerations_returnsPercentileOfGenerationTime() {
+		ScriptedGenerator delegate = new ScriptedGenerator(() -> CompletableFuture.completedFuture(story));
+		HedgedStoryGenerator generator = new HedgedStoryGenerator(delegate, 2, 95, Duration.ofMinutes(1), 10);
+		for (int i = 0; i < 20; i++) {
+			generator.generate("Пираты");
+		}
+		Assertions.assertTrue(generator.getHedgeDelay().compareTo(Duration.ofSeconds(1)) < 0);
+	}
+
+	@Test
+	public void getHedgeDelay_afterHedgedGenerations_measuresFromFirstCandidate() {
+		AtomicInteger count = new AtomicInteger();
+		ScriptedGenerator delegate = new ScriptedGenerator(() -> count.getAndIncrement() % 2 == 0
+				? new CompletableFuture<>()
+				: CompletableFuture.completedFuture(story));
+		HedgedStoryGenerator generator = new HedgedStoryGenerator(delegate, 2, 50, Duration.ofMillis(30), 100);
+		for (int i = 0; i < 20; i++) {
+			generator.generateAsync("Пираты").orTimeout(5, TimeUnit.SECONDS).join();
+		}
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(20, generator.getHedgeWins()),
+				() -> Assertions.assertTrue(generator.getHedgeDelay().compareTo(Duration.ofMillis(30)) >= 0)
+		);
+	}
+
+	private static class ScriptedGenerator implements StoryGenerator {
+		private final List<Supplier<CompletableFuture<Story>>> script;
+		private final List<CompletableFuture<Story>> calls = new ArrayList<>();
+
+		@SafeVarargs
+		private ScriptedGenerator(Supplier<CompletableFuture<Story>>... script) {
+			this.script = List.of(script);
+		}
+
+		@Override
+		public String getName() {
+			return "scripted";
+		}
+
+		@Override
+		public Story generate(String userPrompt) {
+			return generateAsync(userPrompt).join();
+		}
+
+		@Override
+		public synchronized CompletableFuture<Story> generateAsync(String userPrompt) {
+			CompletableFuture<Story> call = script.get(Math.min(calls.size(), script.size() - 1)).get();
+			calls.add(call);
+			return call;
+		}
+
+		@Override
+		public CompletableFuture<Void> stream(String userPrompt, Consumer<String> contentConsumer) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
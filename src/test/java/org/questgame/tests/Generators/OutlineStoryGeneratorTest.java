@@ -0,0 +1,94 @@
+package org.questgame.tests.Generators;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Additional.ChatEndpoint;
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+import org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryValidator;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Generators.OutlineStoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class OutlineStoryGeneratorTest {
+
+	@Test
+	public void generate_withOutline_describesEveryElementOnceInParallelBranches() {
+		ScriptedOutlineGenerator generator = new ScriptedOutlineGenerator(4, false);
+		Story story = generator.generate("Пираты");
+		List<String> requested = generator.requests.stream().flatMap(List::stream).collect(Collectors.toList());
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(StoryValidator.validate(story).isValid()),
+				() -> Assertions.assertEquals(story.getSTORY_ELEMENTS().keySet(), new HashSet<>(requested)),
+				() -> Assertions.assertEquals(requested.size(), new HashSet<>(requested).size()),
+				() -> Assertions.assertTrue(generator.requests.size() > 2),
+				() -> Assertions.assertTrue(generator.maxConcurrent.get() >= 2),
+				() -> Assertions.assertEquals("Подробно S3", story.getSTORY_ELEMENTS().get("S3").getDescription())
+		);
+	}
+
+	@Test
+	public void generate_withFailedBranch_keepsOutlineOfThisBranch() {
+		ScriptedOutlineGenerator generator = new ScriptedOutlineGenerator(2, true);
+		Story story = generator.generate("Пираты");
+		Story outline = new DeterministicStoryGenerator(6, 32).generate("Пираты");
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(StoryValidator.validate(story).isValid()),
+				() -> Assertions.assertEquals(outline.getSTORY_ELEMENTS().get("S1").getDescription(), story.getSTORY_ELEMENTS().get("S1").getDescription()),
+				() -> Assertions.assertTrue(story.getSTORY_ELEMENTS().values().stream().anyMatch(e -> e.getDescription().startsWith("Подробно")))
+		);
+	}
+
+	@Test
+	public void stream_withOutline_passesContentOfDescribedStory() {
+		ScriptedOutlineGenerator generator = new ScriptedOutlineGenerator(3, false);
+		StringBuilder content = new StringBuilder();
+		generator.stream("Пираты", content::append).orTimeout(5, TimeUnit.SECONDS).join();
+		Story story = ElementInitializer.createStoryFromContent(content.toString());
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(25, story.getSTORY_ELEMENTS().size()),
+				() -> Assertions.assertEquals("Подробно V1", story.getSTORY_ELEMENTS().get("V1").getDescription())
+		);
+	}
+
+	private static class ScriptedOutlineGenerator extends OutlineStoryGenerator {
+		private final boolean failTrunk;
+		private final List<List<String>> requests = new ArrayList<>();
+		private final AtomicInteger concurrent = new AtomicInteger();
+		private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+		private ScriptedOutlineGenerator(int branches, boolean failTrunk) {
+			super("scripted", new ChatEndpoint(URI.create("http://localhost/v1/chat/completions"), "key", "test", 0.5), branches);
+			this.failTrunk = failTrunk;
+		}
+
+		@Override
+		protected CompletableFuture<String> requestOutline(String userPrompt) {
+			return CompletableFuture.completedFuture(new DeterministicStoryGenerator(6, 32).createContent(userPrompt));
+		}
+
+		@Override
+		protected CompletableFuture<String> requestDetails(String userPrompt, String outline, List<String> indexes) {
+			synchronized (requests) {
+				requests.add(indexes);
+			}
+			if (failTrunk && indexes.contains("S1")) return CompletableFuture.failedFuture(new ChatGptGenerationException("Request error"));
+			maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+			Set<String> described = new HashSet<>(indexes);
+			return CompletableFuture.supplyAsync(() -> {
+				concurrent.decrementAndGet();
+				return described.stream().map(index -> index + ": Подробно " + index).collect(Collectors.joining("\n"));
+			}, CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS));
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.questgame.tests;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Additional.RateLimiter;
+import org.questgame.webquestgame.Additional.TokenBucket;
+import org.questgame.webquestgame.Exceptions.RateLimitExceededException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+public class RateLimiterTest {
+
+	private RateLimiter limiter;
+
+	@AfterEach
+	public void shutdown() {
+		if (limiter != null) limiter.shutdown();
+	}
+
+	@Test
+	public void tokenBucket_tryAcquire_takesTokensUntilBucketIsEmpty() {
+		TokenBucket bucket = new TokenBucket(3, Duration.ofHours(1));
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(bucket.tryAcquire(2)),
+				() -> Assertions.assertTrue(bucket.tryAcquire(1)),
+				() -> Assertions.assertFalse(bucket.tryAcquire(1)),
+				() -> Assertions.assertTrue(bucket.nanosUntilAvailable(1) > 0)
+		);
+	}
+
+	@Test
+	public void tokenBucket_release_returnsTokensUpToCapacity() {
+		TokenBucket bucket = new TokenBucket(3, Duration.ofHours(1));
+		bucket.tryAcquire(3);
+		bucket.release(10);
+		Assertions.assertEquals(3, bucket.getAvailable(), 0.01);
+	}
+
+	@Test
+	public void acquireAsync_withinLimits_admitsImmediately() {
+		limiter = new RateLimiter(10, 1000, 1, Duration.ofSeconds(1));
+		CompletableFuture<RateLimiter.Permit> permit = limiter.acquireAsync(100);
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(permit.isDone()),
+				() -> Assertions.assertEquals(100, permit.join().tokens()),
+				() -> Assertions.assertEquals(1, limiter.getAdmitted())
+		);
+	}
+
+	@Test
+	public void acquireAsync_whenQueueIsFull_rejectsImmediately() {
+		limiter = new RateLimiter(1, 1000, 1, Duration.ofSeconds(5));
+		limiter.acquire(10);
+		CompletableFuture<RateLimiter.Permit> waiting = limiter.acquireAsync(10);
+		CompletableFuture<RateLimiter.Permit> rejected = limiter.acquireAsync(10);
+		Assertions.assertAll(
+				() -> Assertions.assertFalse(waiting.isDone()),
+				() -> Assertions.assertEquals(1, limiter.getQueueDepth()),
+				() -> {
+					CompletionException e = Assertions.assertThrows(CompletionException.class, rejected::join);
+					Assertions.assertInstanceOf(RateLimitExceededException.class, e.getCause());
+				},
+				() -> Assertions.assertEquals(1, limiter.getRejected())
+		);
+	}
+
+	@Test
+	public void acquireAsync_whenWaitingTooLong_rejectsRequest() {
+		limiter = new RateLimiter(1, 1000, 1, Duration.ofMillis(50));
+		limiter.acquire(10);
+		Assertions.assertThrows(RateLimitExceededException.class, () -> limiter.acquire(10));
+		Assertions.assertEquals(0, limiter.getQueueDepth());
+	}
+
+	@Test
+	public void acquireAsync_whenTokensAreRefilled_admitsWaitingRequest() throws Exception {
+		limiter = new RateLimiter(6000, 1000, 1, Duration.ofSeconds(5));
+		limiter.acquire(1000);
+		RateLimiter.Permit permit = limiter.acquireAsync(10).get(5, TimeUnit.SECONDS);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(10, permit.tokens()),
+				() -> Assertions.assertEquals(0, limiter.getQueueDepth()),
+				() -> Assertions.assertTrue(limiter.getMaxWaitMillis() > 0)
+		);
+	}
+
+	@Test
+	public void complete_withActualUsage_returnsUnusedTokens() {
+		limiter = new RateLimiter(10, 1000, 1, Duration.ofSeconds(1));
+		RateLimiter.Permit permit = limiter.acquire(800);
+		limiter.complete(permit, 300);
+		Assertions.assertTrue(limiter.getAvailableTokens() >= 700);
+	}
+}
@@ -0,0 +1,65 @@
+package org.questgame.tests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.questgame.webquestgame.Additional.RetryPolicy;
+import org.questgame.webquestgame.Exceptions.ChatGptGenerationException;
+import org.questgame.webquestgame.Exceptions.ChatGptHttpException;
+
+import java.io.IOException;
+import java.time.Duration;
+
+public class RetryPolicyTest {
+
+	private final RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(1), Duration.ofSeconds(10));
+
+	@ParameterizedTest
+	@ValueSource(ints = {408, 429, 500, 502, 503, 504})
+	public void isRetryable_withTransientStatus_returnsTrue(int status) {
+		Assertions.assertTrue(policy.isRetryable(new ChatGptHttpException("error", status, null)));
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {400, 401, 403, 404})
+	public void isRetryable_withClientErrorStatus_returnsFalse(int status) {
+		Assertions.assertFalse(policy.isRetryable(new ChatGptHttpException("error", status, null)));
+	}
+
+	@Test
+	public void isRetryable_withIoErrorAndGenerationError_retriesOnlyIoError() {
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(policy.isRetryable(new IOException())),
+				() -> Assertions.assertFalse(policy.isRetryable(new ChatGptGenerationException("error")))
+		);
+	}
+
+	@Test
+	public void nextDelay_growsExponentiallyWithJitterAndStopsAfterMaxAttempts() {
+		IOException e = new IOException();
+		for (int i = 0; i < 100; i++) {
+			Assertions.assertTrue(policy.nextDelay(1, e, Duration.ofSeconds(10)).toMillis() <= 100);
+			Assertions.assertTrue(policy.nextDelay(2, e, Duration.ofSeconds(10)).toMillis() <= 200);
+		}
+		Assertions.assertNull(policy.nextDelay(3, e, Duration.ofSeconds(10)));
+	}
+
+	@Test
+	public void nextDelay_withRetryAfter_waitsAtLeastRetryAfterWithinDeadline() {
+		ChatGptHttpException e = new ChatGptHttpException("error", 429, Duration.ofSeconds(2));
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(Duration.ofSeconds(2), policy.nextDelay(1, e, Duration.ofSeconds(10))),
+				() -> Assertions.assertNull(policy.nextDelay(1, e, Duration.ofSeconds(1)))
+		);
+	}
+
+	@Test
+	public void parseRetryAfter_withSecondsAndInvalidValue_parsesSeconds() {
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(Duration.ofSeconds(7), RetryPolicy.parseRetryAfter("7")),
+				() -> Assertions.assertNull(RetryPolicy.parseRetryAfter("soon")),
+				() -> Assertions.assertNull(RetryPolicy.parseRetryAfter(null))
+		);
+	}
+}
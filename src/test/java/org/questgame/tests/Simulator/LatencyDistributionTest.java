@@ -0,0 +1,42 @@
+package org.questgame.tests.Simulator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Simulator.LatencyDistribution;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+public class LatencyDistributionTest {
+
+	@Test
+	public void sampleMillis_withManySamples_matchesPercentiles() {
+		LatencyDistribution distribution = new LatencyDistribution(Duration.ofMillis(1000), Duration.ofMillis(5000), Duration.ofMinutes(1));
+		Random random = new Random(42);
+		long[] samples = new long[20000];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = distribution.sampleMillis(random);
+		}
+		Arrays.sort(samples);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(1000, samples[samples.length / 2], 50),
+				() -> Assertions.assertEquals(5000, samples[samples.length * 99 / 100], 500)
+		);
+	}
+
+	@Test
+	public void sampleMillis_withMaximum_capsLatency() {
+		LatencyDistribution distribution = new LatencyDistribution(Duration.ofMillis(1000), Duration.ofMillis(50000), Duration.ofMillis(2000));
+		Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			Assertions.assertTrue(distribution.sampleMillis(random) <= 2000);
+		}
+	}
+
+	@Test
+	public void constructor_withP99LessThanP50_throwsException() {
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> new LatencyDistribution(Duration.ofSeconds(2), Duration.ofSeconds(1), Duration.ofSeconds(3)));
+	}
+}
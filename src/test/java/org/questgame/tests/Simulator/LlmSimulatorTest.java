@@ -0,0 +1,141 @@
+package org.questgame.tests.Simulator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.questgame.webquestgame.Additional.*;
+import org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryContentSink;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryStreamParser;
+import org.questgame.webquestgame.Logic.Elements.MainSituation;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Generators.OpenAiStoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+import org.questgame.webquestgame.Simulator.FaultInjector;
+import org.questgame.webquestgame.Simulator.LatencyDistribution;
+import org.questgame.webquestgame.Simulator.LlmSimulator;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LlmSimulatorTest {
+
+	private final String CONTENT = new DeterministicStoryGenerator(3, 16).createContent("Пираты");
+	private LlmSimulator simulator;
+
+	@BeforeEach
+	public void init() {
+		RateLimiter.setDefault(new RateLimiter(1000, 100_000_000, 10, Duration.ofSeconds(1)));
+		RetryPolicy.setDefault(new RetryPolicy(1, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(5)));
+		CircuitBreaker.setDefault(new CircuitBreaker(10, 5, 50, Duration.ofMinutes(1), 1));
+	}
+
+	@AfterEach
+	public void reset() {
+		if (simulator != null) simulator.stop();
+		ChatGPTClient.setHttpClient(null);
+		RateLimiter.setDefault(null);
+		RetryPolicy.setDefault(null);
+		CircuitBreaker.setDefault(null);
+	}
+
+	@Test
+	public void generateMainQuestLines_withSimulator_returnsReplayedStories() {
+		ChatEndpoint endpoint = start(FaultInjector.none());
+		String response = ChatGPTClient.generateMainQuestLines(endpoint, "Пираты", 2);
+		List<Story> stories = ElementInitializer.createStoriesFromAiResponse(response);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(2, stories.size()),
+				() -> Assertions.assertInstanceOf(MainSituation.class, stories.get(1).getSTORY_ELEMENTS().get("S1")),
+				() -> Assertions.assertTrue(JsonUtils.extractLong(response, "total_tokens") > 0),
+				() -> Assertions.assertEquals(1, simulator.getSucceeded())
+		);
+	}
+
+	@Test
+	public void generateMainQuestLinesAsync_withContentSink_parsesStoriesWhileResponseIsReceived() {
+		ChatEndpoint endpoint = start(FaultInjector.none());
+		List<Story> stories = ChatGPTClient.generateMainQuestLinesAsync(endpoint, "Пираты", 3, StoryContentSink::new).join();
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(3, stories.size()),
+				() -> Assertions.assertEquals(13, stories.get(2).getSTORY_ELEMENTS().size()),
+				() -> Assertions.assertInstanceOf(MainSituation.class, stories.get(0).getSTORY_ELEMENTS().get("S1"))
+		);
+	}
+
+	@Test
+	public void streamMainQuestLine_withSimulator_streamsWholeStory() {
+		ChatEndpoint endpoint = start(FaultInjector.none());
+		StoryStreamParser parser = new StoryStreamParser();
+		ChatGPTClient.streamMainQuestLine(endpoint, "Пираты", parser).join();
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(parser.finish()),
+				() -> Assertions.assertEquals(13, parser.getStory().getSTORY_ELEMENTS().size())
+		);
+	}
+
+	@Test
+	public void handle_withRateLimitFault_returns429WithRetryAfter() throws IOException, InterruptedException {
+		ChatEndpoint endpoint = start(new FaultInjector(1, 0, 0, Duration.ofSeconds(7), Duration.ZERO));
+		HttpResponse<String> response = send(endpoint, Duration.ofSeconds(5));
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(429, response.statusCode()),
+				() -> Assertions.assertEquals("7", response.headers().firstValue("Retry-After").orElse(null)),
+				() -> Assertions.assertEquals(1, simulator.getRateLimited())
+		);
+	}
+
+	@Test
+	public void handle_withTimeoutFault_neverAnswers() {
+		ChatEndpoint endpoint = start(new FaultInjector(0, 0, 1, Duration.ZERO, Duration.ofSeconds(10)));
+		Assertions.assertThrows(HttpTimeoutException.class, () -> send(endpoint, Duration.ofMillis(300)));
+		Assertions.assertEquals(1, simulator.getTimeouts());
+	}
+
+	@Test
+	public void generateAsync_whenCancelled_abortsExchange() throws InterruptedException {
+		simulator = new LlmSimulator(0, List.of(CONTENT), LatencyDistribution.fixed(Duration.ofSeconds(10)), FaultInjector.none(), 16, 2);
+		simulator.start();
+		ChatEndpoint endpoint = new ChatEndpoint(simulator.getUri(), "", "simulator", 0.2);
+		HttpClient real = HttpClient.newHttpClient();
+		AtomicReference<CompletableFuture<?>> exchange = new AtomicReference<>();
+		ChatGPTClient.setHttpClient(Mockito.mock(HttpClient.class, invocation -> {
+			Object result = invocation.getMethod().invoke(real, invocation.getArguments());
+			if (invocation.getMethod().getName().equals("sendAsync")) exchange.set((CompletableFuture<?>) result);
+			return result;
+		}));
+		CompletableFuture<Story> story = new OpenAiStoryGenerator("simulator", endpoint) {}.generateAsync("Пираты");
+		for (int i = 0; i < 100 && simulator.getActive() == 0; i++) {
+			Thread.sleep(20);
+		}
+		story.cancel(true);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(1, simulator.getRequests()),
+				() -> Assertions.assertTrue(exchange.get().isCancelled()),
+				() -> Assertions.assertEquals(0, simulator.getSucceeded())
+		);
+	}
+
+	private ChatEndpoint start(FaultInjector faults) {
+		simulator = new LlmSimulator(0, List.of(CONTENT), LatencyDistribution.fixed(Duration.ofMillis(10)), faults, 16, 2);
+		simulator.start();
+		return new ChatEndpoint(simulator.getUri(), "", "simulator", 0.2);
+	}
+
+	private HttpResponse<String> send(ChatEndpoint endpoint, Duration timeout) throws IOException, InterruptedException {
+		HttpRequest request = HttpRequest.newBuilder(endpoint.getUri())
+				.timeout(timeout)
+				.POST(endpoint.getRequestBody(1).publisher("Пираты"))
+				.build();
+		return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+	}
+}
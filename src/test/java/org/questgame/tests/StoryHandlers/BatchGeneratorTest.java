@@ -0,0 +1,60 @@
+package org.questgame.tests.StoryHandlers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Additional.RateLimiter;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.StoryHandlers.BatchGenerator;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryCache;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class BatchGeneratorTest {
+
+	private StoryCache cache;
+
+	@BeforeEach
+	public void init() {
+		cache = new StoryCache(100, 0, Duration.ofHours(1), null);
+	}
+
+	@Test
+	public void run_withPrompts_cachesStoriesAndReportsFailures() {
+		cache.put("Пираты", new DeterministicStoryGenerator(2, 32).generate("Пираты"));
+		RateLimiter limiter = new RateLimiter(1000, 1_000_000, 10, Duration.ofSeconds(1));
+		BatchGenerator batch = new BatchGenerator(new DeterministicStoryGenerator(3, 32), cache, limiter, 2, 50);
+		BatchGenerator.Report report = batch.run(List.of("Пираты", "Рыцари", "Космос", " "));
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(4, report.total()),
+				() -> Assertions.assertEquals(2, report.generated()),
+				() -> Assertions.assertEquals(1, report.skipped()),
+				() -> Assertions.assertEquals(1, report.failed()),
+				() -> Assertions.assertTrue(report.failures().containsKey(" ")),
+				() -> Assertions.assertNotNull(cache.get("Космос")),
+				() -> Assertions.assertFalse(batch.isRunning())
+		);
+	}
+
+	@Test
+	public void start_whenPlayersUseRateLimit_waitsForHeadroom() {
+		RateLimiter limiter = new RateLimiter(600, 1_000_000, 10, Duration.ofSeconds(1));
+		limiter.acquire(1);
+		BatchGenerator batch = new BatchGenerator(new DeterministicStoryGenerator(2, 32), cache, limiter, 1, 100);
+		CompletableFuture<BatchGenerator.Report> report = batch.start(List.of("Пираты"));
+		Assertions.assertAll(
+				() -> Assertions.assertThrows(IllegalStateException.class, () -> batch.start(List.of("Рыцари"))),
+				() -> Assertions.assertEquals(1, report.orTimeout(5, TimeUnit.SECONDS).join().generated()),
+				() -> Assertions.assertTrue(report.join().elapsed().toMillis() >= 50)
+		);
+	}
+
+	@Test
+	public void readPrompts_withCommentsAndDuplicates_returnsUniquePrompts() {
+		List<String> prompts = BatchGenerator.readPrompts(List.of("# featured", "Пираты", "", "  пираты ", "Рыцари"));
+		Assertions.assertEquals(List.of("Пираты", "Рыцари"), prompts);
+	}
+}
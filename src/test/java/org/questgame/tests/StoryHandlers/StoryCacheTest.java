@@ -0,0 +1,89 @@
+package org.questgame.tests.StoryHandlers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.questgame.webquestgame.Logic.Elements.Element;
+import org.questgame.webquestgame.Logic.Elements.MainSituation;
+import org.questgame.webquestgame.Logic.Story;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryCache;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+public class StoryCacheTest {
+
+	@TempDir
+	Path directory;
+
+	private StoryCache cache;
+
+	private Story story;
+
+	@BeforeEach
+	public void init() {
+		cache = new StoryCache(2, 10, Duration.ofHours(1), directory);
+		Map<String, Element> elements = new HashMap<>();
+		elements.put("S1", new MainSituation("Main situation"));
+		story = new Story(elements);
+	}
+
+	@Test
+	public void get_withSamePromptInDifferentCase_returnsCachedStory() {
+		cache.put("Рыцарь и Дракон", story);
+		Assertions.assertAll(
+				() -> Assertions.assertSame(story, cache.get("  рыцарь   и дракон ")),
+				() -> Assertions.assertEquals(1, cache.getHits()),
+				() -> Assertions.assertEquals(0, cache.getMisses())
+		);
+	}
+
+	@Test
+	public void get_withUnknownPrompt_returnsNullAndCountsMiss() {
+		Assertions.assertAll(
+				() -> Assertions.assertNull(cache.get("unknown")),
+				() -> Assertions.assertEquals(1, cache.getMisses())
+		);
+	}
+
+	@Test
+	public void get_afterRestart_returnsStoryFromDisk() {
+		cache.put("prompt", story);
+		StoryCache restarted = new StoryCache(2, 10, Duration.ofHours(1), directory);
+		Story cached = restarted.get("prompt");
+		Assertions.assertAll(
+				() -> Assertions.assertEquals("Main situation", cached.getSTORY_ELEMENTS().get("S1").getDescription()),
+				() -> Assertions.assertEquals(1, restarted.getDiskHits())
+		);
+	}
+
+	@Test
+	public void put_whenMemoryIsFull_evictsLeastRecentlyUsedStory() {
+		StoryCache memoryOnly = new StoryCache(2, 10, Duration.ofHours(1), null);
+		memoryOnly.put("first", story);
+		memoryOnly.put("second", story);
+		memoryOnly.get("first");
+		memoryOnly.put("third", story);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(2, memoryOnly.size()),
+				() -> Assertions.assertNotNull(memoryOnly.get("first")),
+				() -> Assertions.assertNull(memoryOnly.get("second"))
+		);
+	}
+
+	@Test
+	public void get_whenStoryIsExpired_returnsNull() {
+		StoryCache expiring = new StoryCache(2, 10, Duration.ofMillis(-1), directory);
+		expiring.put("prompt", story);
+		Assertions.assertNull(expiring.get("prompt"));
+	}
+
+	@Test
+	public void put_withLoadingStory_doesNotCacheStory() {
+		cache.put("prompt", Story.createLoading());
+		Assertions.assertNull(cache.get("prompt"));
+	}
+}
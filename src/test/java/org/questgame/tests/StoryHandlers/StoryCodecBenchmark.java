@@ -0,0 +1,103 @@
+package org.questgame.tests.StoryHandlers;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+
+/**
+ * Compares size, encoding and decoding time of stories from 10 to 10,000 elements in the binary format of
+ * {@link StoryCodec} and in the legacy format (Java serialization).
+ * <p>
+ * The class is not run with other tests, run it with {@code mvn test -Dtest=StoryCodecBenchmark}.
+ * Java serialization follows links between elements recursively, so long stories may overflow the stack of the legacy
+ * format, such stories are shown as "overflow".
+ * </p>
+ */
+public class StoryCodecBenchmark {
+
+	private static final int[] SITUATIONS = {2, 25, 250, 2500};
+
+	@BeforeEach
+	public void init() {
+		Configurator.setLevel("org.questgame", Level.WARN);
+	}
+
+	@AfterEach
+	public void reset() {
+		Configurator.setLevel("org.questgame", Level.DEBUG);
+	}
+
+	@Test
+	public void encodeAndDecode_storiesFrom10To10000Elements() {
+		System.out.printf("%10s | %-40s | %-40s%n", "", "legacy (Java serialization)", "binary");
+		System.out.printf("%10s | %12s %12s %12s | %12s %12s %12s%n", "elements",
+				"bytes", "write, ms", "read, ms", "bytes", "write, ms", "read, ms");
+		for (int situations : SITUATIONS) {
+			Story story = new DeterministicStoryGenerator(situations, 32).generate("Benchmark");
+			byte[] binary = StoryCodec.encode(story);
+			Assertions.assertEquals(story.getSTORY_ELEMENTS().keySet(), StoryCodec.decode(binary).getSTORY_ELEMENTS().keySet());
+			double binaryWrite = measure(() -> StoryCodec.encode(story));
+			double binaryRead = measure(() -> StoryCodec.decode(binary));
+
+			System.out.printf("%10d | ", story.getSTORY_ELEMENTS().size());
+			try {
+				byte[] legacy = serialize(story);
+				double legacyWrite = measure(() -> serialize(story));
+				double legacyRead = measure(() -> deserialize(legacy));
+				System.out.printf("%12d %12.3f %12.3f", legacy.length, legacyWrite, legacyRead);
+			} catch (StackOverflowError e) {
+				System.out.printf("%-40s", "overflow");
+			}
+			System.out.printf(" | %12d %12.3f %12.3f%n", binary.length, binaryWrite, binaryRead);
+		}
+	}
+
+	private static byte[] serialize(Story story) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		story.serialize(out);
+		return out.toByteArray();
+	}
+
+	private static Story deserialize(byte[] bytes) {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return (Story) in.readObject();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Runs the task until it takes 0.3 s to warm up, then measures it for at least 1 s and 3 runs
+	 * @return average time of one run, in milliseconds
+	 */
+	private static double measure(Supplier<?> task) {
+		long warmUpEnd = System.nanoTime() + 300_000_000L;
+		do {
+			task.get();
+		} while (System.nanoTime() < warmUpEnd);
+		int runs = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			task.get();
+			runs++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < 1_000_000_000L || runs < 3);
+		return elapsed / 1_000_000.0 / runs;
+	}
+}
@@ -0,0 +1,115 @@
+package org.questgame.tests.StoryHandlers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Exceptions.FileFormatException;
+import org.questgame.webquestgame.Logic.ElementHandlers.ElementInitializer;
+import org.questgame.webquestgame.Logic.ElementHandlers.StoryValidator;
+import org.questgame.webquestgame.Logic.Elements.Choice;
+import org.questgame.webquestgame.Logic.Elements.MainSituation;
+import org.questgame.webquestgame.Logic.Elements.PendingSituation;
+import org.questgame.webquestgame.Logic.Elements.Situation;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+public class StoryCodecTest {
+
+	@Test
+	public void decode_encodedStory_returnsSameGraph() {
+		Story story = new DeterministicStoryGenerator(25, 32).generate("Пираты");
+		byte[] bytes = StoryCodec.encode(story);
+		Story decoded = StoryCodec.decode(bytes);
+		Choice choice = (Choice) story.getSTORY_ELEMENTS().get("Y2");
+		Choice decodedChoice = (Choice) decoded.getSTORY_ELEMENTS().get("Y2");
+		ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+		story.serialize(legacy);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(story.getSTORY_ELEMENTS().keySet(), decoded.getSTORY_ELEMENTS().keySet()),
+				() -> Assertions.assertTrue(StoryValidator.validate(decoded).isValid()),
+				() -> Assertions.assertEquals(choice.getDescription(), decodedChoice.getDescription()),
+				() -> Assertions.assertEquals(choice.isGoNext(), decodedChoice.isGoNext()),
+				() -> Assertions.assertSame(decoded.getSTORY_ELEMENTS().get("S1"), decodedChoice.getLeadFrom()),
+				() -> Assertions.assertEquals(((MainSituation) story.getSTORY_ELEMENTS().get("S1")).getChoices().length,
+						((MainSituation) decoded.getSTORY_ELEMENTS().get("S1")).getChoices().length),
+				() -> Assertions.assertTrue(((Situation) decodedChoice.getLeadTo()).getLeadFrom().length > 0),
+				() -> Assertions.assertTrue(bytes.length < legacy.size() / 2)
+		);
+	}
+
+	@Test
+	public void read_legacyAndPendingStories_returnsPlayableStories() {
+		Story story = ElementInitializer.createStoryFromContent(
+				"{ 'Ситуация': { 'Описание': 'Начало', 'Индекс ситуации': 'S1', 'Привело из': '-', 'Выборы ситуации': [ " +
+				"{ 'Описание': 'Вперед', 'Индекс выбора': 'Y1', 'Флаг': 'continue', 'Ведет к': '-' }, " +
+				"{ 'Описание': 'Сдаться', 'Индекс выбора': 'Y2', 'Флаг': 'fail', 'Ведет к': 'F1' } ] }, " +
+				"'Поражение': { 'Описание': 'Поражение', 'Индекс поражения': 'F1', 'Привело из': 'Y2' } }");
+		ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+		story.serialize(legacy);
+		Story fromLegacy = StoryCodec.read(new ByteArrayInputStream(legacy.toByteArray()));
+		Story fromBinary = StoryCodec.read(new ByteArrayInputStream(StoryCodec.encode(story)));
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(story.getSTORY_ELEMENTS().keySet(), fromLegacy.getSTORY_ELEMENTS().keySet()),
+				() -> Assertions.assertTrue(StoryValidator.validate(fromBinary).isValid()),
+				() -> Assertions.assertInstanceOf(PendingSituation.class, ((Choice) fromBinary.getSTORY_ELEMENTS().get("Y1")).getLeadTo())
+		);
+	}
+
+	@Test
+	public void decode_damagedOrUnknownBytes_throwsFileFormatException() {
+		byte[] bytes = StoryCodec.encode(new DeterministicStoryGenerator(2, 32).generate("Пираты"));
+		byte[] damaged = bytes.clone();
+		damaged[bytes.length / 2] ^= 1;
+		byte[] future = bytes.clone();
+		future[4] = (byte) (StoryCodec.VERSION + 1);
+		CRC32 checksum = new CRC32();
+		checksum.update(future, 0, future.length - 4);
+		ByteBuffer.wrap(future, future.length - 4, 4).putInt((int) checksum.getValue());
+		Assertions.assertAll(
+				() -> Assertions.assertThrows(FileFormatException.class, () -> StoryCodec.decode(damaged)),
+				() -> Assertions.assertTrue(Assertions.assertThrows(FileFormatException.class, () -> StoryCodec.decode(future))
+						.getMessage().contains("version")),
+				() -> Assertions.assertThrows(FileFormatException.class, () -> StoryCodec.decode("text".getBytes())),
+				() -> Assertions.assertThrows(FileFormatException.class, () -> StoryCodec.decode(new byte[0]))
+		);
+	}
+
+	@Test
+	public void read_storyOverLimits_throwsFileFormatException() {
+		Story story = new DeterministicStoryGenerator(5, 32).generate("Пираты");
+		byte[] bytes = StoryCodec.encode(story);
+		ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+		story.serialize(legacy);
+		ByteArrayOutputStream list = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(list)) {
+			out.writeObject(new ArrayList<>(List.of("S1")));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		int elements = story.getSTORY_ELEMENTS().size();
+		Assertions.assertAll(
+				() -> Assertions.assertThrows(FileFormatException.class, () -> StoryCodec.read(new ByteArrayInputStream(bytes),
+						new StoryCodec.Limits(bytes.length - 1, elements, 100))),
+				() -> Assertions.assertThrows(FileFormatException.class, () -> StoryCodec.read(new ByteArrayInputStream(bytes),
+						new StoryCodec.Limits(bytes.length, elements - 1, 100))),
+				() -> Assertions.assertThrows(FileFormatException.class, () -> StoryCodec.decode(legacy.toByteArray(),
+						new StoryCodec.Limits(Long.MAX_VALUE, elements, 3))),
+				() -> Assertions.assertThrows(FileFormatException.class, () -> StoryCodec.decode(list.toByteArray(),
+						new StoryCodec.Limits(Long.MAX_VALUE, elements, 1000))),
+				() -> Assertions.assertEquals(elements, StoryCodec.decode(legacy.toByteArray(),
+						new StoryCodec.Limits(legacy.size(), elements, 1000)).getSTORY_ELEMENTS().size()),
+				() -> Assertions.assertEquals(elements, StoryCodec.read(new ByteArrayInputStream(bytes),
+						new StoryCodec.Limits(bytes.length, elements, 1)).getSTORY_ELEMENTS().size())
+		);
+	}
+}
@@ -0,0 +1,73 @@
+package org.questgame.tests.StoryHandlers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Logic.Story;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryPool;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StoryPoolTest {
+
+	private StoryPool pool;
+
+	@AfterEach
+	public void shutdown() {
+		if (pool != null) pool.shutdown();
+	}
+
+	@Test
+	public void start_fillsPoolUpToSize() throws InterruptedException {
+		AtomicInteger calls = new AtomicInteger();
+		pool = new StoryPool(3, 2, 2, Duration.ofSeconds(1), () -> {
+			calls.incrementAndGet();
+			return List.of(new Story(new HashMap<>()), new Story(new HashMap<>()));
+		});
+		pool.start();
+		awaitReady(3);
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(pool.getReady() >= 3),
+				() -> Assertions.assertEquals(2, calls.get())
+		);
+	}
+
+	@Test
+	public void take_whenPoolIsReady_returnsStoryAndRefillsPool() throws InterruptedException {
+		pool = new StoryPool(2, 1, 1, Duration.ofSeconds(1), () -> List.of(new Story(new HashMap<>())));
+		pool.start();
+		awaitReady(2);
+		Assertions.assertNotNull(pool.take());
+		awaitReady(2);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(2, pool.getReady()),
+				() -> Assertions.assertEquals(1, pool.getTaken())
+		);
+	}
+
+	@Test
+	public void take_whenGenerationFails_returnsNull() throws InterruptedException {
+		AtomicInteger calls = new AtomicInteger();
+		pool = new StoryPool(2, 1, 1, Duration.ofMinutes(1), () -> {
+			calls.incrementAndGet();
+			throw new IllegalStateException("API is unavailable");
+		});
+		pool.start();
+		TimeUnit.MILLISECONDS.sleep(200);
+		Assertions.assertAll(
+				() -> Assertions.assertNull(pool.take()),
+				() -> Assertions.assertEquals(1, pool.getEmpty()),
+				() -> Assertions.assertTrue(calls.get() <= 2)
+		);
+	}
+
+	private void awaitReady(int stories) throws InterruptedException {
+		for (int i = 0; i < 100 && pool.getReady() < stories; i++) {
+			TimeUnit.MILLISECONDS.sleep(20);
+		}
+	}
+}
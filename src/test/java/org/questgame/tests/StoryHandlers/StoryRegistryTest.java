@@ -0,0 +1,60 @@
+package org.questgame.tests.StoryHandlers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.questgame.webquestgame.Logic.CompiledStory;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryCodec;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryRegistry;
+
+import java.time.Duration;
+
+public class StoryRegistryTest {
+
+	@Test
+	public void register_sameContentTwice_sharesOneCompiledStory() {
+		StoryRegistry registry = new StoryRegistry(Duration.ofHours(1));
+		Story generated = new DeterministicStoryGenerator(5, 32).generate("Пираты");
+		Story uploaded = StoryCodec.decode(StoryCodec.encode(generated));
+		String first = registry.register(generated, "session-1");
+		String second = registry.register(uploaded, "session-2");
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(first, second),
+				() -> Assertions.assertEquals(1, registry.size()),
+				() -> Assertions.assertEquals(2, registry.getReferences(first)),
+				() -> Assertions.assertEquals(1, registry.getShared()),
+				() -> Assertions.assertNotEquals(first, StoryRegistry.idOf(new DeterministicStoryGenerator(5, 32).generate("Рыцари")))
+		);
+	}
+
+	@Test
+	public void release_byLastSession_removesStoryAfterIdleTimeout() {
+		StoryRegistry registry = new StoryRegistry(Duration.ZERO);
+		String id = registry.register(new DeterministicStoryGenerator(2, 32).generate("Пираты"), "session-1");
+		registry.register(new DeterministicStoryGenerator(2, 32).generate("Пираты"), "session-2");
+		registry.release(id, "session-1");
+		Assertions.assertNotNull(registry.get(id));
+		registry.release(id, "session-2");
+		Assertions.assertAll(
+				() -> Assertions.assertNull(registry.get(id)),
+				() -> Assertions.assertEquals(0, registry.size()),
+				() -> Assertions.assertEquals(1, registry.getReclaimed())
+		);
+	}
+
+	@Test
+	public void register_idleStoryAgain_keepsSameInstance() {
+		StoryRegistry registry = new StoryRegistry(Duration.ofHours(1));
+		Story story = new DeterministicStoryGenerator(2, 32).generate("Пираты");
+		String id = registry.register(story, "session-1");
+		CompiledStory compiled = registry.get(id);
+		registry.release(id, "session-1");
+		registry.register(story, "session-2");
+		Assertions.assertAll(
+				() -> Assertions.assertSame(compiled, registry.get(id)),
+				() -> Assertions.assertEquals(1, registry.getReferences(id)),
+				() -> Assertions.assertThrows(IllegalArgumentException.class, () -> registry.register(Story.createLoading(), "session-3"))
+		);
+	}
+}
@@ -0,0 +1,75 @@
+package org.questgame.tests.StoryHandlers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.questgame.webquestgame.Logic.Generators.DeterministicStoryGenerator;
+import org.questgame.webquestgame.Logic.Story;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryCodec;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+public class StoryRepositoryTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void put_sameStoryTwice_storesOneShardedFile() throws Exception {
+		StoryRepository repository = new StoryRepository(directory, Long.MAX_VALUE, 10);
+		Story story = new DeterministicStoryGenerator(5, 32).generate("Пираты");
+		String id = repository.put(story);
+		String again = repository.put(StoryCodec.decode(StoryCodec.encode(story)));
+		Path file = directory.resolve(id.substring(0, 2)).resolve(id.substring(2, 4)).resolve(id + StoryCodec.EXTENSION);
+		try (Stream<Path> files = Files.walk(directory)) {
+			long stored = files.filter(Files::isRegularFile).count();
+			Assertions.assertAll(
+					() -> Assertions.assertEquals(id, again),
+					() -> Assertions.assertEquals(1, stored),
+					() -> Assertions.assertTrue(Files.exists(file)),
+					() -> Assertions.assertEquals(Files.size(file), repository.getUsedBytes()),
+					() -> Assertions.assertEquals(id, HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file)))),
+					() -> Assertions.assertSame(story, repository.get(id))
+			);
+		}
+	}
+
+	@Test
+	public void get_afterRestart_readsStoryFromIndex() {
+		Story story = new DeterministicStoryGenerator(5, 32).generate("Пираты");
+		String id = new StoryRepository(directory, Long.MAX_VALUE, 10).put(story);
+		StoryRepository restarted = new StoryRepository(directory, Long.MAX_VALUE, 10);
+		Story read = restarted.get(id);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(1, restarted.size()),
+				() -> Assertions.assertEquals(story.getSTORY_ELEMENTS().keySet(), read.getSTORY_ELEMENTS().keySet()),
+				() -> Assertions.assertSame(read, restarted.get(id)),
+				() -> Assertions.assertNull(restarted.get("unknown"))
+		);
+	}
+
+	@Test
+	public void put_overQuota_removesLeastRecentlyPlayedStories() {
+		Story first = new DeterministicStoryGenerator(5, 32).generate("Пираты");
+		Story second = new DeterministicStoryGenerator(5, 32).generate("Рыцари");
+		Story third = new DeterministicStoryGenerator(5, 32).generate("Космос");
+		long size = StoryCodec.encode(first).length;
+		StoryRepository repository = new StoryRepository(directory, size * 5 / 2, 10);
+		String firstId = repository.put(first);
+		String secondId = repository.put(second);
+		repository.put(first);
+		String thirdId = repository.put(third);
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(2, repository.size()),
+				() -> Assertions.assertTrue(repository.contains(firstId)),
+				() -> Assertions.assertFalse(repository.contains(secondId)),
+				() -> Assertions.assertTrue(repository.contains(thirdId)),
+				() -> Assertions.assertNull(repository.get(secondId))
+		);
+	}
+}
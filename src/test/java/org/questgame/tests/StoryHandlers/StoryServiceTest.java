@@ -0,0 +1,89 @@
+package org.questgame.tests.StoryHandlers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.questgame.webquestgame.Additional.ChatGPTClient;
+import org.questgame.webquestgame.Additional.CircuitBreaker;
+import org.questgame.webquestgame.Additional.RateLimiter;
+import org.questgame.webquestgame.Additional.RetryPolicy;
+import org.questgame.webquestgame.Logic.Story;
+import org.questgame.webquestgame.Logic.StoryHandlers.StoryService;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+
+@ExtendWith(MockitoExtension.class)
+public class StoryServiceTest {
+
+	@Mock
+	HttpClient client;
+
+	private CompletableFuture<HttpResponse<Object>> response;
+
+	@BeforeEach
+	public void init() {
+		response = new CompletableFuture<>();
+		Mockito.lenient().when(client.sendAsync(Mockito.any(), any(HttpResponse.BodyHandler.class))).thenReturn(response);
+		ChatGPTClient.setHttpClient(client);
+		RateLimiter.setDefault(new RateLimiter(1000, 100_000_000, 10, Duration.ofSeconds(1)));
+		RetryPolicy.setDefault(new RetryPolicy(1, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(5)));
+		CircuitBreaker.setDefault(new CircuitBreaker(10, 5, 50, Duration.ofMinutes(1), 1));
+	}
+
+	@AfterEach
+	public void reset() {
+		ChatGPTClient.setHttpClient(null);
+		RateLimiter.setDefault(null);
+		RetryPolicy.setDefault(null);
+		CircuitBreaker.setDefault(null);
+	}
+
+	@Test
+	public void getStory_withConcurrentRequestsForSamePrompt_sendsOneRequest() {
+		String prompt = "Prompt " + UUID.randomUUID();
+		long coalesced = StoryService.getCoalescedRequests();
+		CompletableFuture<Story> first = StoryService.getStory(prompt);
+		CompletableFuture<Story> second = StoryService.getStory(prompt.toUpperCase());
+		Mockito.verify(client, Mockito.times(1)).sendAsync(Mockito.any(), any(HttpResponse.BodyHandler.class));
+		Assertions.assertAll(
+				() -> Assertions.assertEquals(coalesced + 1, StoryService.getCoalescedRequests()),
+				() -> Assertions.assertFalse(first.isDone()),
+				() -> Assertions.assertFalse(second.isDone())
+		);
+	}
+
+	@Test
+	public void getStory_whenGenerationFails_failsAllRequestsAndAllowsNewGeneration() {
+		String prompt = "Prompt " + UUID.randomUUID();
+		CompletableFuture<Story> first = StoryService.getStory(prompt);
+		CompletableFuture<Story> second = StoryService.getStory(prompt);
+		response.completeExceptionally(new IOException("Connection reset"));
+		StoryService.getStory(prompt);
+		Assertions.assertAll(
+				() -> Assertions.assertTrue(first.isCompletedExceptionally()),
+				() -> Assertions.assertTrue(second.isCompletedExceptionally())
+		);
+		Mockito.verify(client, Mockito.times(2)).sendAsync(Mockito.any(), any(HttpResponse.BodyHandler.class));
+	}
+
+	@Test
+	public void getStory_whenReturnedFutureIsCancelled_doesNotCancelOtherRequests() {
+		String prompt = "Prompt " + UUID.randomUUID();
+		CompletableFuture<Story> first = StoryService.getStory(prompt);
+		CompletableFuture<Story> second = StoryService.getStory(prompt);
+		first.cancel(true);
+		Assertions.assertFalse(second.isDone());
+	}
+}